@@ -0,0 +1,28 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.async.api;
+
+/**
+ * An EventHandler that wants the stage to pass it all the contexts picked up by a worker thread in one wakeup through
+ * {@link EventHandler#handleEvents(java.util.Collection)} rather than calling {@link EventHandler#handleEvent} for each
+ * one of them. This lets a handler amortize locking or persistence work over the batch. Contexts in a batch are in
+ * queue order and {@link SpecializedEventContext}s are never part of a batch, they are still executed in order between
+ * batches.
+ */
+public interface BatchEventHandler extends EventHandler {
+  //
+}
@@ -0,0 +1,36 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.async.api;
+
+/**
+ * A {@link BatchEventHandler} that may keep work from one batch open to share it with the next ones, like a
+ * persistence transaction that is committed once for several batches. The stage waits for new contexts no longer than
+ * {@link #getFlushDelay()} and calls {@link #flush()} from the same worker thread once the delay has run out.
+ */
+public interface DeferredFlushEventHandler extends BatchEventHandler {
+
+  /**
+   * @return milliseconds left until the work kept open by the calling thread has to be flushed, 0 if it is due now, or
+   *         -1 if the thread has nothing to flush
+   */
+  public long getFlushDelay();
+
+  /**
+   * Flushes the work kept open by the calling thread.
+   */
+  public void flush() throws EventHandlerException;
+}
@@ -16,6 +16,8 @@
  */
 package com.tc.async.api;
 
+import java.util.List;
+
 /**
  * This is used by the internals to manage the process of processing EventContexts in the manner that makes sense for
  * each one. Individual Stages SHOULD NOT HAVE TO EITHER USE OR IMPLEMENT THIS INTERFACE
@@ -26,6 +28,15 @@ public interface Source {
 
   public EventContext poll(long period) throws InterruptedException;
 
+  /**
+   * Waits up to period for the first context and then moves up to maxContexts - 1 further contexts that are already
+   * queued into batch without waiting for them. Contexts already in batch are taken to be not handled yet, so the
+   * caller must clear the batch once it has handled it.
+   * 
+   * @return the number of contexts added to batch
+   */
+  public int poll(List<EventContext> batch, int maxContexts, long period) throws InterruptedException;
+
   public String getSourceName();
 
 }
@@ -23,6 +23,7 @@ import com.tc.text.PrettyPrintable;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /*
  * All content copyright (c) 2003-2008 Terracotta, Inc., except as may otherwise be noted in a separate copyright
@@ -47,5 +48,10 @@ public interface StageManager extends PrettyPrintable, ClearableCallback {
 
   public Stats[] getStats();
 
+  /**
+   * @return queue wait and service time percentiles in nanoseconds keyed by the name of the stages recording them
+   */
+  public Map<String, Map<String, Long>> getLatencyStats();
+
   public Collection<Stage> getStages();
 }
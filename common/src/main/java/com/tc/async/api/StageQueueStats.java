@@ -23,4 +23,14 @@ public interface StageQueueStats extends Stats {
   String getName();
 
   int getDepth();
+
+  /**
+   * @return the number of contexts waiting in each of the queues the stage uses internally
+   */
+  int[] getQueueDepths();
+
+  /**
+   * @return the number of times a worker thread took over queued work of another worker thread
+   */
+  long getStealCount();
 }
@@ -0,0 +1,27 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.async.api;
+
+/**
+ * An EventHandler that relies on all the {@link MultiThreadedEventContext}s of a key being handled by the same worker
+ * thread for the life of the stage, for example because it keeps per thread state across contexts or because the
+ * producers pick the worker through the key. Work stealing (seda.&lt;stage&gt;.workStealing) hands keys to whichever
+ * worker is idle and is never used for the stages of such handlers.
+ */
+public interface ThreadAffinityEventHandler extends EventHandler {
+  //
+}
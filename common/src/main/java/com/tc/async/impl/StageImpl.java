@@ -16,7 +16,9 @@
  */
 package com.tc.async.impl;
 
+import com.tc.async.api.BatchEventHandler;
 import com.tc.async.api.ConfigurationContext;
+import com.tc.async.api.DeferredFlushEventHandler;
 import com.tc.async.api.EventContext;
 import com.tc.async.api.EventHandler;
 import com.tc.async.api.EventHandlerException;
@@ -24,30 +26,43 @@ import com.tc.async.api.Sink;
 import com.tc.async.api.Source;
 import com.tc.async.api.SpecializedEventContext;
 import com.tc.async.api.Stage;
+import com.tc.async.api.ThreadAffinityEventHandler;
 import com.tc.exception.PlatformRejoinException;
 import com.tc.exception.TCNotRunningException;
 import com.tc.exception.TCRuntimeException;
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLoggerProvider;
+import com.tc.properties.TCPropertiesConsts;
 import com.tc.properties.TCPropertiesImpl;
+import com.tc.stats.LatencyHistogram;
 import com.tc.text.PrettyPrinter;
 import com.tc.util.concurrent.QueueFactory;
+import com.tc.util.concurrent.QueueFactory.QueueType;
 import com.tc.util.concurrent.ThreadUtil;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 /**
  * The SEDA Stage
  */
 public class StageImpl implements Stage {
-  private static final long    pollTime = 3000; // This is the poor man's solution for
-                                                // stage
-  private final String         name;
-  private final EventHandler   handler;
-  private final StageQueueImpl stageQueue;
-  private final WorkerThread[] threads;
-  private final ThreadGroup    group;
-  private final TCLogger       logger;
-  private final int            sleepMs;
-  private final boolean        pausable;
+  private static final long      pollTime                      = 3000; // This is the poor man's solution for
+                                                                      // stage
+  private static final int       DEFAULT_KEY_GROUPS_PER_THREAD = 16;
+  private final String           name;
+  private final EventHandler     handler;
+  private final StageQueue       stageQueue;
+  private final WorkerThread[]   threads;
+  private final ThreadGroup      group;
+  private final TCLogger         logger;
+  private final int              sleepMs;
+  private final boolean          pausable;
+  private final int              batchSize;
+  private final long             maxBatchLatencyMs;
+  private final LatencyHistogram queueWait;
+  private final LatencyHistogram serviceTime;
 
   /**
    * The Constructor.
@@ -74,8 +89,8 @@ public class StageImpl implements Stage {
     if (threadsToQueueRatio > threadCount) {
       logger.warn("Thread to Queue Ratio " + threadsToQueueRatio + " > Worker Threads " + threadCount);
     }
-    this.stageQueue = new StageQueueImpl(threadCount, threadsToQueueRatio, queueFactory, loggerProvider, name,
-                                         queueSize);
+    this.stageQueue = createStageQueue(loggerProvider, name, threadCount, threadsToQueueRatio, queueFactory,
+                                       queueSize);
     this.group = group;
     this.sleepMs = TCPropertiesImpl.getProperties().getInt("seda." + name + ".sleepMs", 0);
     if (this.sleepMs > 0) {
@@ -85,6 +100,63 @@ public class StageImpl implements Stage {
     if (this.pausable) {
       logger.warn("Stage pausing is enabled for stage " + name);
     }
+    final boolean batching = handler instanceof BatchEventHandler;
+    this.batchSize = Math.max(1, TCPropertiesImpl.getProperties().getInt("seda." + name + ".batchSize", 1));
+    this.maxBatchLatencyMs = Math.max(0, TCPropertiesImpl.getProperties()
+        .getLong("seda." + name + ".batchMaxLatencyMs", 0));
+    if (this.batchSize > 1) {
+      logger.info("Worker threads drain up to " + this.batchSize + " events per poll for stage " + name
+                  + (batching ? ", waiting up to " + this.maxBatchLatencyMs + "ms to fill a batch" : ""));
+    }
+    boolean latencyStats = TCPropertiesImpl.getProperties()
+        .getBoolean(TCPropertiesConsts.TC_STAGE_LATENCY_ENABLED, false);
+    latencyStats = TCPropertiesImpl.getProperties().getBoolean("seda." + name + ".latencyStats", latencyStats);
+    if (latencyStats) {
+      this.queueWait = new LatencyHistogram();
+      this.serviceTime = new LatencyHistogram();
+      this.stageQueue.setQueueWaitHistogram(this.queueWait);
+    } else {
+      this.queueWait = null;
+      this.serviceTime = null;
+    }
+  }
+
+  /**
+   * Stages with a queue per thread can be switched to work stealing with seda.&lt;stage&gt;.workStealing. The keys are
+   * then spread over seda.&lt;stage&gt;.keyGroups key groups that idle threads can take over from busy ones. A key is no
+   * longer tied to one thread then, so the setting is ignored for {@link ThreadAffinityEventHandler}s.
+   */
+  private StageQueue createStageQueue(TCLoggerProvider loggerProvider, String stageName, int threadCount,
+                                      int threadsToQueueRatio, QueueFactory queueFactory, int queueSize) {
+    boolean workStealing = TCPropertiesImpl.getProperties().getBoolean("seda." + stageName + ".workStealing", false);
+    if (workStealing && handler instanceof ThreadAffinityEventHandler) {
+      logger.warn("The handler of stage " + stageName + " needs each key handled by the same thread, ignoring "
+                  + "work stealing for it");
+    } else if (workStealing) {
+      if (threadCount > 1 && threadsToQueueRatio == 1) {
+        int keyGroups = TCPropertiesImpl.getProperties()
+            .getInt("seda." + stageName + ".keyGroups", threadCount * DEFAULT_KEY_GROUPS_PER_THREAD);
+        logger.info("Work stealing over " + keyGroups + " key groups enabled for stage " + stageName);
+        return new WorkStealingStageQueueImpl(threadCount, keyGroups, loggerProvider, stageName, queueSize);
+      }
+      logger.warn("Work stealing needs more than one thread and a queue per thread, ignoring it for stage "
+                  + stageName);
+    }
+    return new StageQueueImpl(threadCount, threadsToQueueRatio, queueFactory, getQueueType(stageName),
+                              loggerProvider, stageName, queueSize);
+  }
+
+  private QueueType getQueueType(String stageName) {
+    String type = TCPropertiesImpl.getProperties().getProperty("seda." + stageName + ".queueType", true);
+    if (type == null) { return QueueType.LINKED; }
+    try {
+      QueueType queueType = QueueType.parse(type);
+      logger.info("Using " + queueType + " queues for stage " + stageName);
+      return queueType;
+    } catch (IllegalArgumentException e) {
+      logger.warn("Unknown queue type " + type + " for stage " + stageName + ", using " + QueueType.LINKED);
+      return QueueType.LINKED;
+    }
   }
 
   @Override
@@ -103,6 +175,20 @@ public class StageImpl implements Stage {
     return stageQueue;
   }
 
+  /**
+   * @return how long contexts waited in the queue of this stage, null unless latency stats are enabled for it
+   */
+  public LatencyHistogram getQueueWaitHistogram() {
+    return queueWait;
+  }
+
+  /**
+   * @return how long the handler took per context, null unless latency stats are enabled for this stage
+   */
+  public LatencyHistogram getServiceTimeHistogram() {
+    return serviceTime;
+  }
+
   private synchronized void startThreads() {
     for (int i = 0; i < threads.length; i++) {
       String threadName = "WorkerThread(" + name + ", " + i;
@@ -112,7 +198,7 @@ public class StageImpl implements Stage {
         threadName = threadName + ")";
       }
       threads[i] = new WorkerThread(threadName, this.stageQueue.getSource(i), handler, group, logger, sleepMs,
-                                    pausable, name);
+                                    pausable, name, batchSize, maxBatchLatencyMs, serviceTime);
       threads[i].start();
     }
   }
@@ -136,16 +222,22 @@ public class StageImpl implements Stage {
   }
 
   private static class WorkerThread extends Thread {
-    private final Source       source;
-    private final EventHandler handler;
-    private volatile boolean   shutdownRequested = false;
-    private final TCLogger     tcLogger;
-    private final int          sleepMs;
-    private final boolean      pausable;
-    private final String       stageName;
+    private final Source                    source;
+    private final EventHandler              handler;
+    private volatile boolean                shutdownRequested = false;
+    private final TCLogger                  tcLogger;
+    private final int                       sleepMs;
+    private final boolean                   pausable;
+    private final String                    stageName;
+    private final int                       batchSize;
+    private final long                      maxBatchLatencyMs;
+    private final boolean                   batching;
+    private final DeferredFlushEventHandler flushing;
+    private final LatencyHistogram          serviceTime;
 
     public WorkerThread(String name, Source source, EventHandler handler, ThreadGroup group, TCLogger logger,
-                        int sleepMs, boolean pausable, String stageName) {
+                        int sleepMs, boolean pausable, String stageName, int batchSize, long maxBatchLatencyMs,
+                        LatencyHistogram serviceTime) {
       super(group, name);
       tcLogger = logger;
       setDaemon(true);
@@ -154,6 +246,11 @@ public class StageImpl implements Stage {
       this.sleepMs = sleepMs;
       this.pausable = pausable;
       this.stageName = stageName;
+      this.batchSize = batchSize;
+      this.batching = handler instanceof BatchEventHandler;
+      this.maxBatchLatencyMs = batching ? maxBatchLatencyMs : 0;
+      this.flushing = handler instanceof DeferredFlushEventHandler ? (DeferredFlushEventHandler) handler : null;
+      this.serviceTime = serviceTime;
     }
 
     public void shutdown() {
@@ -176,47 +273,155 @@ public class StageImpl implements Stage {
 
     @Override
     public void run() {
+      final List<EventContext> batch = new ArrayList<EventContext>(batchSize);
       while (!shutdownRequested()) {
-        EventContext ctxt = null;
         try {
-          ctxt = source.poll(pollTime);
-          if (ctxt != null) {
-            handleStageDebugPauses();
-            if (ctxt instanceof SpecializedEventContext) {
-              ((SpecializedEventContext) ctxt).execute();
-            } else {
-              handler.handleEvent(ctxt);
-            }
+          if (source.poll(batch, batchSize, pollTime()) > 0) {
+            fillBatch(batch);
           }
         } catch (InterruptedException ie) {
           if (shutdownRequested()) { return; }
           throw new TCRuntimeException(ie);
-        } catch (EventHandlerException ie) {
-          if (shutdownRequested()) return;
-          throw new TCRuntimeException(ie);
-        } catch (Exception e) {
-          if (isTCNotRunningException(e)) {
-            if (shutdownRequested()) {
-              return;
-            }
-            tcLogger.info("Ignoring " + TCNotRunningException.class.getSimpleName() + " while handling context: "
-                          + ctxt);
-          } else if (isRejoinInProgressException(e)) {
-            if (shutdownRequested()) {
-              return;
-            }
-            tcLogger.info("Ignoring " + PlatformRejoinException.class.getSimpleName() + " while handling context: "
-                          + ctxt, e);
+        }
+        try {
+          if (batching) {
+            if (!handleBatch(batch)) { return; }
           } else {
-            throw new TCRuntimeException("Uncaught exception in stage", e);
+            for (int i = 0; i < batch.size(); i++) {
+              if (!handle(batch.get(i))) { return; }
+              batch.set(i, null);
+            }
           }
         } finally {
-          // Aggressively null out the reference before going around the loop again. If you don't do this, the reference
-          // to the context will exist until another context comes in. This can potentially keep many objects in memory
-          // longer than necessary
-          ctxt = null;
+          // Aggressively null out the references before going around the loop again. If you don't do this, the
+          // references to the contexts will exist until other contexts come in. This can potentially keep many objects
+          // in memory longer than necessary
+          batch.clear();
+        }
+        if (!flushIfDue()) { return; }
+      }
+    }
+
+    /**
+     * Doesn't wait for new contexts past the point where a DeferredFlushEventHandler has to flush
+     */
+    private long pollTime() {
+      if (flushing != null) {
+        long delay = flushing.getFlushDelay();
+        if (delay >= 0) { return Math.min(delay, pollTime); }
+      }
+      return pollTime;
+    }
+
+    /**
+     * @return false if the thread should exit since it was shut down while flushing
+     */
+    private boolean flushIfDue() {
+      if (flushing == null || flushing.getFlushDelay() != 0) { return true; }
+      try {
+        flushing.flush();
+      } catch (Exception e) {
+        return handleException(e, "deferred flush");
+      }
+      return true;
+    }
+
+    /**
+     * Keeps polling for up to maxBatchLatencyMs after the first context arrived to fill a partial batch
+     */
+    private void fillBatch(List<EventContext> batch) throws InterruptedException {
+      if (maxBatchLatencyMs <= 0) { return; }
+      final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxBatchLatencyMs);
+      while (batch.size() < batchSize) {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) { return; }
+        source.poll(batch, batchSize - batch.size(), remaining);
+      }
+    }
+
+    /**
+     * Hands runs of contexts to the handler in one call, SpecializedEventContexts are executed on their own in between.
+     * 
+     * @return false if the thread should exit since it was shut down while handling the batch
+     */
+    private boolean handleBatch(List<EventContext> batch) {
+      int start = 0;
+      for (int i = 0; i < batch.size(); i++) {
+        EventContext ctxt = batch.get(i);
+        if (ctxt instanceof SpecializedEventContext) {
+          if (!handleRun(batch.subList(start, i)) || !handle(ctxt)) { return false; }
+          start = i + 1;
         }
       }
+      return handleRun(batch.subList(start, batch.size()));
+    }
+
+    private boolean handleRun(List<EventContext> run) {
+      if (run.isEmpty()) { return true; }
+      try {
+        handleStageDebugPauses();
+        long start = startTiming();
+        handler.handleEvents(run);
+        stopTiming(start, run.size());
+      } catch (Exception e) {
+        // the handler may have got through part of the run, the rest of it is not handed out again
+        return handleException(e, "batch of " + run.size() + " contexts, the ones not yet handled are dropped: "
+                                  + run);
+      }
+      return true;
+    }
+
+    /**
+     * @return false if the thread should exit since it was shut down while handling the context
+     */
+    private boolean handle(EventContext ctxt) {
+      try {
+        handleStageDebugPauses();
+        long start = startTiming();
+        if (ctxt instanceof SpecializedEventContext) {
+          ((SpecializedEventContext) ctxt).execute();
+        } else {
+          handler.handleEvent(ctxt);
+        }
+        stopTiming(start, 1);
+      } catch (Exception e) {
+        return handleException(e, ctxt);
+      }
+      return true;
+    }
+
+    private long startTiming() {
+      return serviceTime == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * A batch handed to the handler in one call is recorded as that many contexts taking the average time
+     */
+    private void stopTiming(long start, int contexts) {
+      if (serviceTime != null) {
+        serviceTime.record((System.nanoTime() - start) / contexts, contexts);
+      }
+    }
+
+    private boolean handleException(Exception e, Object ctxt) {
+      if (e instanceof EventHandlerException) {
+        if (shutdownRequested()) return false;
+        throw new TCRuntimeException(e);
+      } else if (isTCNotRunningException(e)) {
+        if (shutdownRequested()) {
+          return false;
+        }
+        tcLogger.info("Ignoring " + TCNotRunningException.class.getSimpleName() + " while handling context: " + ctxt);
+      } else if (isRejoinInProgressException(e)) {
+        if (shutdownRequested()) {
+          return false;
+        }
+        tcLogger.info("Ignoring " + PlatformRejoinException.class.getSimpleName() + " while handling context: "
+                      + ctxt, e);
+      } else {
+        throw new TCRuntimeException("Uncaught exception in stage", e);
+      }
+      return true;
     }
   }
 
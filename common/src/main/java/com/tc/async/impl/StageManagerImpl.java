@@ -27,6 +27,7 @@ import com.tc.logging.TCLogger;
 import com.tc.logging.TCLoggerProvider;
 import com.tc.properties.TCPropertiesConsts;
 import com.tc.properties.TCPropertiesImpl;
+import com.tc.stats.LatencyHistogram;
 import com.tc.stats.Stats;
 import com.tc.text.PrettyPrinter;
 import com.tc.text.StringFormatter;
@@ -39,9 +40,11 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -194,6 +197,33 @@ public class StageManagerImpl implements StageManager {
     return stats;
   }
 
+  @Override
+  public Map<String, Map<String, Long>> getLatencyStats() {
+    final Map<String, Map<String, Long>> latencyStats = new TreeMap<String, Map<String, Long>>();
+    for (Stage stage : stages.values()) {
+      if (stage instanceof StageImpl) {
+        StageImpl stageImpl = (StageImpl) stage;
+        if (stageImpl.getQueueWaitHistogram() != null) {
+          Map<String, Long> stats = new LinkedHashMap<String, Long>();
+          putLatencyStats(stats, "QueueWait", stageImpl.getQueueWaitHistogram().snapshot());
+          putLatencyStats(stats, "ServiceTime", stageImpl.getServiceTimeHistogram().snapshot());
+          latencyStats.put(stage.getName(), stats);
+        }
+      }
+    }
+    return latencyStats;
+  }
+
+  private static void putLatencyStats(Map<String, Long> stats, String prefix, LatencyHistogram.Snapshot snapshot) {
+    stats.put(prefix + "Count", snapshot.getCount());
+    stats.put(prefix + "MeanNanos", snapshot.getMean());
+    stats.put(prefix + "P50Nanos", snapshot.getPercentile(50));
+    stats.put(prefix + "P90Nanos", snapshot.getPercentile(90));
+    stats.put(prefix + "P99Nanos", snapshot.getPercentile(99));
+    stats.put(prefix + "P999Nanos", snapshot.getPercentile(99.9));
+    stats.put(prefix + "MaxNanos", snapshot.getMax());
+  }
+
   @Override
   public Collection<Stage> getStages() {
     return stages.values();
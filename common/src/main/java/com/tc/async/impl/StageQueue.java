@@ -0,0 +1,35 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.async.impl;
+
+import com.tc.async.api.Sink;
+import com.tc.async.api.Source;
+import com.tc.stats.LatencyHistogram;
+
+/**
+ * The internal queueing of a stage : a Sink for the outside world and one Source per worker thread.
+ */
+interface StageQueue extends Sink {
+
+  Source getSource(int index);
+
+  /**
+   * Starts recording how long contexts added from now on wait in the queue, null stops it.
+   */
+  void setQueueWaitHistogram(LatencyHistogram queueWait);
+
+}
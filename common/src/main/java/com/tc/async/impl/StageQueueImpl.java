@@ -25,21 +25,26 @@ import com.tc.async.api.StageQueueStats;
 import com.tc.exception.TCRuntimeException;
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLoggerProvider;
+import com.tc.stats.LatencyHistogram;
 import com.tc.stats.Stats;
 import com.tc.util.Assert;
 import com.tc.util.concurrent.QueueFactory;
+import com.tc.util.concurrent.QueueFactory.QueueType;
 import com.tc.util.concurrent.TCQueue;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This StageQueueImpl represents the sink and gives a handle to the source. We are internally justun using a queue
  * since our queues are locally processed. This class can be replaced with a distributed queue to enable processing
  * across process boundaries.
  */
-public class StageQueueImpl implements Sink {
+public class StageQueueImpl implements StageQueue {
 
   private final String            stageName;
   private final TCLogger          logger;
@@ -62,19 +67,40 @@ public class StageQueueImpl implements Sink {
    */
   public StageQueueImpl(int threadCount, int threadsToQueueRatio, QueueFactory queueFactory,
                         TCLoggerProvider loggerProvider, String stageName, int queueSize) {
+    this(threadCount, threadsToQueueRatio, queueFactory, QueueType.LINKED, loggerProvider, stageName, queueSize);
+  }
+
+  /**
+   * @param queueType : The kind of queue used internally. Array backed queues need a bounded queueSize, and the single
+   *        consumer ones need a queue per thread (threadsToQueueRatio of 1), otherwise linked queues are used.
+   */
+  public StageQueueImpl(int threadCount, int threadsToQueueRatio, QueueFactory queueFactory, QueueType queueType,
+                        TCLoggerProvider loggerProvider, String stageName, int queueSize) {
     Assert.eval(threadCount > 0);
     this.logger = loggerProvider.getLogger(Sink.class.getName() + ": " + stageName);
     this.stageName = stageName;
     this.sourceQueues = new SourceQueueImpl[threadCount];
-    createWorkerQueues(threadCount, threadsToQueueRatio, queueFactory, queueSize, loggerProvider, stageName);
+    createWorkerQueues(threadCount, threadsToQueueRatio, queueFactory, queueType, queueSize, loggerProvider,
+                       stageName);
   }
 
-  private void createWorkerQueues(int threads, int threadsToQueueRatio, QueueFactory queueFactory, int queueSize,
-                                  TCLoggerProvider loggerProvider, String stage) {
-    StageQueueStatsCollector statsCollector = new NullStageQueueStatsCollector(stage);
+  private void createWorkerQueues(int threads, int threadsToQueueRatio, QueueFactory queueFactory,
+                                  QueueType queueType, int queueSize, TCLoggerProvider loggerProvider, String stage) {
+    StageQueueStatsCollector statsCollector = new NullStageQueueStatsCollector(stage, this.sourceQueues);
     TCQueue q = null;
     int queueCount = -1;
 
+    if (queueType.isBounded() && queueSize == Integer.MAX_VALUE) {
+      this.logger.warn("Queue type " + queueType + " needs a bounded stage, using " + QueueType.LINKED
+                       + " queues for stage " + stage);
+      queueType = QueueType.LINKED;
+    }
+    if (queueType.isSingleConsumer() && threads > 1 && threadsToQueueRatio != 1) {
+      this.logger.warn("Queue type " + queueType + " needs a queue per worker thread, using " + QueueType.LINKED
+                       + " queues for stage " + stage);
+      queueType = QueueType.LINKED;
+    }
+
     if (queueSize != Integer.MAX_VALUE) {
       int totalQueueToBeConstructed = (int) Math.ceil(((double) threads) / threadsToQueueRatio);
       queueSize = (int) Math.ceil(((double) queueSize) / totalQueueToBeConstructed);
@@ -85,24 +111,33 @@ public class StageQueueImpl implements Sink {
       if (threadsToQueueRatio > 0) {
         if (i % threadsToQueueRatio == 0) {
           // creating new worker queue
-          q = queueFactory.createInstance(queueSize);
+          q = queueFactory.createInstance(queueType, queueSize);
           queueCount++;
         } else {
           // use same queue for this worker too
         }
       } else if (q == null) {
         // all workers share the same queue, create queue only once
-        q = queueFactory.createInstance(queueSize);
+        q = queueFactory.createInstance(queueType, queueSize);
         queueCount++;
       }
-      this.sourceQueues[i] = new SourceQueueImpl(q, String.valueOf(queueCount), statsCollector);
+      this.sourceQueues[i] = new SourceQueueImpl(q, String.valueOf(queueCount), statsCollector,
+                                                 queueType.isSingleConsumer());
     }
   }
 
+  @Override
   public Source getSource(int index) {
     return this.sourceQueues[index];
   }
 
+  @Override
+  public void setQueueWaitHistogram(LatencyHistogram queueWait) {
+    for (SourceQueueImpl sourceQueue : this.sourceQueues) {
+      sourceQueue.setQueueWaitHistogram(queueWait);
+    }
+  }
+
   /**
    * The context will be added if the sink was found to be empty(at somepoint during the call). If the queue was not
    * empty (at somepoint during the call) the context might not be added. This method should only be used where the
@@ -224,9 +259,9 @@ public class StageQueueImpl implements Sink {
   public void enableStatsCollection(boolean enable) {
     StageQueueStatsCollector statsCollector;
     if (enable) {
-      statsCollector = new StageQueueStatsCollectorImpl(this.stageName);
+      statsCollector = new StageQueueStatsCollectorImpl(this.stageName, this.sourceQueues);
     } else {
-      statsCollector = new NullStageQueueStatsCollector(this.stageName);
+      statsCollector = new NullStageQueueStatsCollector(this.stageName, this.sourceQueues);
     }
     for (SourceQueueImpl sourceQueue : this.sourceQueues) {
       sourceQueue.setStatesCollector(statsCollector);
@@ -260,12 +295,21 @@ public class StageQueueImpl implements Sink {
 
     private final TCQueue                     queue;
     private final String                      sourceName;
+    private final boolean                     singleConsumer;
+    // single consumer queues only, see clear()
+    private final AtomicLong                  puts          = new AtomicLong();
+    private final AtomicLong                  clearedUpTo   = new AtomicLong();
+    // only touched by the worker thread
+    private long                              taken;
     private volatile StageQueueStatsCollector statsCollector;
+    private volatile LatencyHistogram         queueWait;
 
-    public SourceQueueImpl(TCQueue queue, String sourceName, StageQueueStatsCollector statsCollector) {
+    public SourceQueueImpl(TCQueue queue, String sourceName, StageQueueStatsCollector statsCollector,
+                           boolean singleConsumer) {
       this.queue = queue;
       this.sourceName = sourceName;
       this.statsCollector = statsCollector;
+      this.singleConsumer = singleConsumer;
     }
 
     public StageQueueStatsCollector getStatsCollector() {
@@ -276,17 +320,36 @@ public class StageQueueImpl implements Sink {
       this.statsCollector = collector;
     }
 
-    // XXX: poor man's clear.
+    public void setQueueWaitHistogram(LatencyHistogram queueWait) {
+      this.queueWait = queueWait;
+    }
+
+    /**
+     * Single consumer queues must only be polled by their worker thread, so instead of polling them here the number of
+     * contexts put so far is recorded and the worker drops contexts until it has taken that many. This never blocks,
+     * unlike queueing a marker into a full bounded queue would. The count returned for those is the number of contexts
+     * queued at the time of the call.
+     */
     public int clear() {
+      if (this.singleConsumer) {
+        int cleared = this.queue.size();
+        long upTo = this.puts.get();
+        long previous;
+        do {
+          previous = this.clearedUpTo.get();
+        } while (previous < upTo && !this.clearedUpTo.compareAndSet(previous, upTo));
+        return cleared;
+      }
+      // XXX: poor man's clear.
       int cleared = 0;
       try {
         while (poll(0) != null) {
           cleared++;
         }
-        return cleared;
       } catch (InterruptedException e) {
         throw new TCRuntimeException(e);
       }
+      return cleared;
     }
 
     public boolean isEmpty() {
@@ -295,15 +358,65 @@ public class StageQueueImpl implements Sink {
 
     @Override
     public EventContext poll(long timeout) throws InterruptedException {
-      EventContext rv = (EventContext) this.queue.poll(timeout);
-      if (rv != null) {
+      while (true) {
+        Object rv = this.queue.poll(timeout);
+        if (rv == null) { return null; }
         this.statsCollector.contextRemoved();
+        if (this.singleConsumer && this.taken++ < this.clearedUpTo.get()) {
+          // queued before a clear
+          timeout = 0;
+          continue;
+        }
+        LatencyHistogram histogram = this.queueWait;
+        return TimestampedEventContext.unwrap(rv, histogram, histogram == null ? 0 : System.nanoTime());
       }
-      return rv;
     }
 
-    public void put(Object obj) throws InterruptedException {
-      this.queue.put(obj);
+    @Override
+    public int poll(List<EventContext> batch, int maxContexts, long timeout) throws InterruptedException {
+      EventContext first = poll(timeout);
+      if (first == null) { return 0; }
+      final int from = batch.size();
+      batch.add(first);
+      if (maxContexts > 1) {
+        int start = batch.size();
+        int drained = this.queue.drainTo(batch, maxContexts - 1);
+        if (drained > 0) {
+          for (int i = 0; i < drained; i++) {
+            this.statsCollector.contextRemoved();
+          }
+          if (this.singleConsumer && dropCleared(batch, from, drained)) {
+            // the first context went too, all that is left still needs unwrapping
+            start = from;
+          }
+          if (batch.size() > start) {
+            TimestampedEventContext.unwrap(batch, start, this.queueWait);
+          }
+        }
+      }
+      return batch.size() - from;
+    }
+
+    /**
+     * Removes the contexts of the batch, starting with the one polled first, that were queued before a clear.
+     *
+     * @return true if anything was removed
+     */
+    private boolean dropCleared(List<EventContext> batch, int from, int drained) {
+      // the first context of the batch was already counted when it was polled
+      long firstTaken = this.taken - 1;
+      this.taken += drained;
+      long cleared = this.clearedUpTo.get() - firstTaken;
+      if (cleared <= 0) { return false; }
+      batch.subList(from, from + (int) Math.min(cleared, batch.size() - from)).clear();
+      return true;
+    }
+
+    public void put(EventContext context) throws InterruptedException {
+      this.queue.put(TimestampedEventContext.wrap(context, this.queueWait));
+      if (this.singleConsumer) {
+        this.puts.incrementAndGet();
+      }
       this.statsCollector.contextAdded();
     }
 
@@ -311,6 +424,10 @@ public class StageQueueImpl implements Sink {
       return this.queue.size();
     }
 
+    boolean sharesQueueWith(SourceQueueImpl other) {
+      return other != null && other.queue == this.queue;
+    }
+
     @Override
     public String getSourceName() {
       return this.sourceName;
@@ -319,6 +436,36 @@ public class StageQueueImpl implements Sink {
 
   private static abstract class StageQueueStatsCollector implements StageQueueStats {
 
+    private final SourceQueueImpl[] sourceQueues;
+
+    protected StageQueueStatsCollector(SourceQueueImpl[] sourceQueues) {
+      this.sourceQueues = sourceQueues;
+    }
+
+    @Override
+    public int[] getQueueDepths() {
+      List<Integer> depths = new ArrayList<Integer>();
+      SourceQueueImpl previous = null;
+      for (SourceQueueImpl sourceQueue : this.sourceQueues) {
+        // workers sharing a queue are next to each other
+        if (sourceQueue != null && !sourceQueue.sharesQueueWith(previous)) {
+          depths.add(Integer.valueOf(sourceQueue.size()));
+        }
+        previous = sourceQueue;
+      }
+      int[] rv = new int[depths.size()];
+      for (int i = 0; i < rv.length; i++) {
+        rv[i] = depths.get(i).intValue();
+      }
+      return rv;
+    }
+
+    @Override
+    public long getStealCount() {
+      // queues are never shared out between workers
+      return 0;
+    }
+
     @Override
     public void logDetails(TCLogger statsLogger) {
       statsLogger.info(getDetails());
@@ -348,7 +495,8 @@ public class StageQueueImpl implements Sink {
     private final String name;
     private final String trimmedName;
 
-    public NullStageQueueStatsCollector(String stage) {
+    public NullStageQueueStatsCollector(String stage, SourceQueueImpl[] sourceQueues) {
+      super(sourceQueues);
       this.trimmedName = stage.trim();
       this.name = makeWidth(stage, 40);
     }
@@ -390,7 +538,8 @@ public class StageQueueImpl implements Sink {
     private final String        name;
     private final String        trimmedName;
 
-    public StageQueueStatsCollectorImpl(String stage) {
+    public StageQueueStatsCollectorImpl(String stage, SourceQueueImpl[] sourceQueues) {
+      super(sourceQueues);
       this.trimmedName = stage.trim();
       this.name = makeWidth(stage, 40);
     }
@@ -0,0 +1,65 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.async.impl;
+
+import com.tc.async.api.EventContext;
+import com.tc.stats.LatencyHistogram;
+
+import java.util.List;
+
+/**
+ * Carries the time a context was queued at through a stage queue, so that the time it waited there can be recorded
+ * when it is taken out again. Never handed to an EventHandler.
+ */
+final class TimestampedEventContext implements EventContext {
+
+  private final EventContext context;
+  private final long         queuedAt;
+
+  private TimestampedEventContext(EventContext context, long queuedAt) {
+    this.context = context;
+    this.queuedAt = queuedAt;
+  }
+
+  static EventContext wrap(EventContext context, LatencyHistogram queueWait) {
+    return queueWait == null ? context : new TimestampedEventContext(context, System.nanoTime());
+  }
+
+  static EventContext unwrap(Object queued, LatencyHistogram queueWait, long now) {
+    if (!(queued instanceof TimestampedEventContext)) { return (EventContext) queued; }
+    TimestampedEventContext timestamped = (TimestampedEventContext) queued;
+    if (queueWait != null) {
+      queueWait.record(now - timestamped.queuedAt);
+    }
+    return timestamped.context;
+  }
+
+  /**
+   * Unwraps the contexts in the batch from index start on in place
+   */
+  static void unwrap(List<EventContext> batch, int start, LatencyHistogram queueWait) {
+    long now = queueWait == null ? 0 : System.nanoTime();
+    for (int i = start; i < batch.size(); i++) {
+      batch.set(i, unwrap(batch.get(i), queueWait, now));
+    }
+  }
+
+  @Override
+  public String toString() {
+    return this.context.toString();
+  }
+}
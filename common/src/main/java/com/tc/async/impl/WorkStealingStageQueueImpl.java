@@ -0,0 +1,473 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.async.impl;
+
+import com.tc.async.api.AddPredicate;
+import com.tc.async.api.EventContext;
+import com.tc.async.api.MultiThreadedEventContext;
+import com.tc.async.api.Sink;
+import com.tc.async.api.Source;
+import com.tc.async.api.StageQueueStats;
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLoggerProvider;
+import com.tc.stats.LatencyHistogram;
+import com.tc.stats.Stats;
+import com.tc.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A stage queue that keeps the per key ordering of {@link MultiThreadedEventContext}s but does not tie a key to one
+ * worker thread.
+ * <p>
+ * Keys are hashed into key groups, each with its own queue. A key group with pending contexts is scheduled on the deque
+ * of its home worker. Workers take key groups from their own deque and, when that is empty, steal whole key groups from
+ * the tail of another worker's deque. A key group is owned by at most one worker at a time, from the moment it is taken
+ * off a deque until the worker polls again with an empty batch, so contexts of one key are never handled concurrently
+ * or out of order. A poll into a batch that still holds contexts tops the batch up and keeps everything owned, since
+ * those contexts have not been handled yet.
+ * Contexts that are not MultiThreadedEventContexts all go to the first key group, like they go to the first queue in
+ * {@link StageQueueImpl}.
+ */
+public class WorkStealingStageQueueImpl implements StageQueue {
+
+  private static final int            DEFAULT_GROUP_BUDGET = 64;
+
+  private final String                stageName;
+  private final TCLogger              logger;
+  private volatile AddPredicate       predicate            = DefaultAddPredicate.getInstance();
+  private final KeyGroup[]            keyGroups;
+  private final WorkerSource[]        sources;
+  private final Semaphore             capacity;
+  private final int                   groupBudget;
+
+  private final ReentrantLock         idleLock             = new ReentrantLock();
+  private final Condition             workAvailable        = idleLock.newCondition();
+  private final AtomicInteger         idleWorkers          = new AtomicInteger();
+  private volatile boolean            statsEnabled;
+  private volatile LatencyHistogram   queueWait;
+
+  /**
+   * @param threadCount : Number of threads working on this stage
+   * @param keyGroupCount : Number of key groups the keys of MultiThreadedEventContexts are hashed into. More groups than
+   *        threads are needed for stealing to be able to even out the load.
+   * @param loggerProvider : logger
+   * @param stageName : The stage name
+   * @param queueSize : Max number of queued contexts, Integer.MAX_VALUE for no limit
+   */
+  public WorkStealingStageQueueImpl(int threadCount, int keyGroupCount, TCLoggerProvider loggerProvider,
+                                    String stageName, int queueSize) {
+    Assert.eval(threadCount > 0);
+    Assert.eval(keyGroupCount > 0);
+    Assert.eval(queueSize > 0);
+    this.logger = loggerProvider.getLogger(Sink.class.getName() + ": " + stageName);
+    this.stageName = stageName;
+    this.groupBudget = DEFAULT_GROUP_BUDGET;
+    this.capacity = queueSize == Integer.MAX_VALUE ? null : new Semaphore(queueSize);
+    this.sources = new WorkerSource[threadCount];
+    for (int i = 0; i < threadCount; i++) {
+      this.sources[i] = new WorkerSource(i);
+    }
+    this.keyGroups = new KeyGroup[keyGroupCount];
+    for (int i = 0; i < keyGroupCount; i++) {
+      this.keyGroups[i] = new KeyGroup(this.sources[i % threadCount]);
+    }
+  }
+
+  @Override
+  public Source getSource(int index) {
+    return this.sources[index];
+  }
+
+  @Override
+  public void setQueueWaitHistogram(LatencyHistogram queueWait) {
+    this.queueWait = queueWait;
+  }
+
+  private KeyGroup getKeyGroupFor(EventContext context) {
+    if (context instanceof MultiThreadedEventContext) {
+      int hashcode = ((MultiThreadedEventContext) context).getKey().hashCode();
+      return this.keyGroups[Math.abs(hashcode % this.keyGroups.length)];
+    } else {
+      return this.keyGroups[0];
+    }
+  }
+
+  @Override
+  public boolean addLossy(EventContext context) {
+    if (getKeyGroupFor(context).isEmpty()) {
+      add(context);
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  @Override
+  public void addMany(Collection contexts) {
+    if (this.logger.isDebugEnabled()) {
+      this.logger.debug("Added many:" + contexts + " to:" + this.stageName);
+    }
+    for (Iterator i = contexts.iterator(); i.hasNext();) {
+      add((EventContext) i.next());
+    }
+  }
+
+  @Override
+  public void add(EventContext context) {
+    Assert.assertNotNull(context);
+    if (this.logger.isDebugEnabled()) {
+      this.logger.debug("Added:" + context + " to:" + this.stageName);
+    }
+    if (!this.predicate.accept(context)) {
+      if (this.logger.isDebugEnabled()) {
+        this.logger.debug("Predicate caused skip add for:" + context + " to:" + this.stageName);
+      }
+      return;
+    }
+
+    if (this.capacity != null) {
+      this.capacity.acquireUninterruptibly();
+    }
+    getKeyGroupFor(context).add(context);
+  }
+
+  private void schedule(KeyGroup group, WorkerSource worker) {
+    worker.scheduled.addLast(group);
+    signalIdleWorker();
+  }
+
+  private void signalIdleWorker() {
+    if (this.idleWorkers.get() > 0) {
+      this.idleLock.lock();
+      try {
+        this.workAvailable.signal();
+      } finally {
+        this.idleLock.unlock();
+      }
+    }
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (KeyGroup group : this.keyGroups) {
+      size += group.size();
+    }
+    return size;
+  }
+
+  @Override
+  public void setAddPredicate(AddPredicate predicate) {
+    Assert.eval(predicate != null);
+    this.predicate = predicate;
+  }
+
+  @Override
+  public AddPredicate getPredicate() {
+    return this.predicate;
+  }
+
+  @Override
+  public String toString() {
+    return "WorkStealingStageQueue(" + this.stageName + ")";
+  }
+
+  @Override
+  public void clear() {
+    int clearCount = 0;
+    for (KeyGroup group : this.keyGroups) {
+      while (group.poll() != null) {
+        clearCount++;
+      }
+    }
+    this.logger.info("Cleared " + clearCount);
+  }
+
+  /*********************************************************************************************************************
+   * Monitorable Interface
+   */
+
+  @Override
+  public void enableStatsCollection(boolean enable) {
+    this.statsEnabled = enable;
+  }
+
+  @Override
+  public boolean isStatsCollectionEnabled() {
+    return this.statsEnabled;
+  }
+
+  @Override
+  public Stats getStats(long frequency) {
+    return new WorkStealingStageQueueStats();
+  }
+
+  @Override
+  public Stats getStatsAndReset(long frequency) {
+    return getStats(frequency);
+  }
+
+  @Override
+  public void resetStats() {
+    for (WorkerSource source : this.sources) {
+      source.steals.set(0);
+    }
+  }
+
+  /**
+   * The queue for all the keys hashing into the same group. The scheduled flag is set while the group sits in a
+   * worker's deque or is owned by a worker, so that it is never handed to two workers at once.
+   */
+  private final class KeyGroup {
+    private final Queue<EventContext> queue     = new ConcurrentLinkedQueue<EventContext>();
+    private final AtomicBoolean       scheduled = new AtomicBoolean();
+    private final WorkerSource        home;
+
+    KeyGroup(WorkerSource home) {
+      this.home = home;
+    }
+
+    void add(EventContext context) {
+      this.queue.offer(TimestampedEventContext.wrap(context, queueWait));
+      if (this.scheduled.compareAndSet(false, true)) {
+        schedule(this, this.home);
+      }
+    }
+
+    EventContext poll() {
+      EventContext context = this.queue.poll();
+      if (context != null && capacity != null) {
+        capacity.release();
+      }
+      return context;
+    }
+
+    /**
+     * Gives the group back after a worker is done with the contexts it took from it.
+     */
+    void release(WorkerSource owner) {
+      if (!this.queue.isEmpty()) {
+        schedule(this, owner);
+        return;
+      }
+      this.scheduled.set(false);
+      // a context may have been added between the isEmpty check and clearing the flag
+      if (!this.queue.isEmpty() && this.scheduled.compareAndSet(false, true)) {
+        schedule(this, owner);
+      }
+    }
+
+    boolean isEmpty() {
+      return this.queue.isEmpty();
+    }
+
+    int size() {
+      return this.queue.size();
+    }
+  }
+
+  private final class WorkerSource implements Source {
+    private final int                           index;
+    private final ConcurrentLinkedDeque<KeyGroup> scheduled = new ConcurrentLinkedDeque<KeyGroup>();
+    private final AtomicLong                    steals    = new AtomicLong();
+    // only ever touched by the worker thread polling this source
+    private final List<KeyGroup>                owned     = new ArrayList<KeyGroup>();
+    private KeyGroup                            current;
+    private int                                 budget;
+
+    WorkerSource(int index) {
+      this.index = index;
+    }
+
+    @Override
+    public String getSourceName() {
+      return String.valueOf(this.index);
+    }
+
+    @Override
+    public EventContext poll(long timeout) throws InterruptedException {
+      List<EventContext> batch = new ArrayList<EventContext>(1);
+      poll(batch, 1, timeout);
+      return batch.isEmpty() ? null : batch.get(0);
+    }
+
+    @Override
+    public int poll(List<EventContext> batch, int maxContexts, long timeout) throws InterruptedException {
+      final int start = batch.size();
+      int polled = 0;
+      KeyGroup keep = null;
+      if (this.current != null && this.budget > 0) {
+        polled = drain(this.current, batch, maxContexts);
+        if (polled > 0) {
+          keep = this.current;
+        }
+      }
+      if (start == 0) {
+        releaseOwned(keep);
+      }
+
+      final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+      while (polled < maxContexts) {
+        KeyGroup group = polled == 0 ? takeGroup(deadline) : nextGroup();
+        if (group == null) {
+          break;
+        }
+        this.current = group;
+        this.budget = groupBudget;
+        int drained = drain(group, batch, maxContexts - polled);
+        if (drained == 0) {
+          // nothing of this group is in flight, it can go right away
+          this.current = null;
+          group.release(this);
+        } else {
+          this.owned.add(group);
+          polled += drained;
+        }
+      }
+      if (polled > 0) {
+        TimestampedEventContext.unwrap(batch, start, queueWait);
+      }
+      return polled;
+    }
+
+    private int drain(KeyGroup group, List<EventContext> batch, int max) {
+      int drained = 0;
+      while (drained < max && this.budget > 0) {
+        EventContext context = group.poll();
+        if (context == null) {
+          break;
+        }
+        batch.add(context);
+        this.budget--;
+        drained++;
+      }
+      return drained;
+    }
+
+    private void releaseOwned(KeyGroup keep) {
+      for (KeyGroup group : this.owned) {
+        if (group != keep) {
+          group.release(this);
+        }
+      }
+      this.owned.clear();
+      if (keep != null) {
+        this.owned.add(keep);
+      } else {
+        this.current = null;
+      }
+    }
+
+    private KeyGroup nextGroup() {
+      KeyGroup group = this.scheduled.pollFirst();
+      if (group != null) { return group; }
+      for (int i = 1; i < sources.length; i++) {
+        WorkerSource victim = sources[(this.index + i) % sources.length];
+        group = victim.scheduled.pollLast();
+        if (group != null) {
+          this.steals.incrementAndGet();
+          return group;
+        }
+      }
+      return null;
+    }
+
+    private KeyGroup takeGroup(long deadline) throws InterruptedException {
+      KeyGroup group = nextGroup();
+      if (group != null) { return group; }
+
+      idleWorkers.incrementAndGet();
+      try {
+        idleLock.lockInterruptibly();
+        try {
+          // check again now that producers know about this idle thread
+          group = nextGroup();
+          while (group == null) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) { return null; }
+            workAvailable.awaitNanos(remaining);
+            group = nextGroup();
+          }
+        } finally {
+          idleLock.unlock();
+        }
+      } finally {
+        idleWorkers.decrementAndGet();
+      }
+      // there may be more work than this thread can take
+      signalIdleWorker();
+      return group;
+    }
+  }
+
+  private class WorkStealingStageQueueStats implements StageQueueStats {
+
+    @Override
+    public String getName() {
+      return stageName.trim();
+    }
+
+    @Override
+    public int getDepth() {
+      return statsEnabled ? size() : -1;
+    }
+
+    @Override
+    public int[] getQueueDepths() {
+      int[] depths = new int[keyGroups.length];
+      for (int i = 0; i < depths.length; i++) {
+        depths[i] = keyGroups[i].size();
+      }
+      return depths;
+    }
+
+    @Override
+    public long getStealCount() {
+      long steals = 0;
+      for (WorkerSource source : sources) {
+        steals += source.steals.get();
+      }
+      return steals;
+    }
+
+    @Override
+    public String getDetails() {
+      if (!statsEnabled) { return stageName + " : Not Monitored"; }
+      return stageName + " : " + getDepth() + " steals " + getStealCount() + " " + Arrays.toString(getQueueDepths());
+    }
+
+    @Override
+    public void logDetails(TCLogger statsLogger) {
+      statsLogger.info(getDetails());
+    }
+  }
+}
@@ -111,6 +111,10 @@ public interface TCPropertiesConsts {
    *                                   - NONE : just send it immediately
    *                                   - RELAYED : make sure it's relayed to all passives
    *                                   - DISK : make sure it's on disk (only applicable when restartable is on)
+   * groupCommit.maxLatencyMillis : Time a due commit of the apply stage may be held back to share one persistence
+   *                                transaction with the transactions that follow, 0 disables group commit
+   * groupCommit.maxTransactions  : Number of transactions after which a group is committed right away
+   * groupCommit.maxChanges       : Number of object changes after which a group is committed right away
    * </code>
    ********************************************************************************************************************/
   public static final String L2_TRANSACTIONMANAGER_LOGGING_ENABLED                          = "l2.transactionmanager.logging.enabled";
@@ -122,6 +126,9 @@ public interface TCPropertiesConsts {
   public static final String L2_TRANSACTIONMANAGER_PASSIVE_THROTTLE_THRESHOLD               = "l2.transactionmanager.passive.throttle.threshold";
   public static final String L2_TRANSACTIONMANAGER_PASSIVE_THROTTLE_MAXSLEEPSECONDS         = "l2.transactionmanager.passive.throttle.maxSleepSeconds";
   public static final String L2_TRANSACTIONMANAGER_BROADCAST_DURABILITY_LEVEL               = "l2.transactionmanager.broadcast.durability.level";
+  public static final String L2_TRANSACTIONMANAGER_GROUP_COMMIT_MAX_LATENCY                 = "l2.transactionmanager.groupCommit.maxLatencyMillis";
+  public static final String L2_TRANSACTIONMANAGER_GROUP_COMMIT_MAX_TXNS                    = "l2.transactionmanager.groupCommit.maxTransactions";
+  public static final String L2_TRANSACTIONMANAGER_GROUP_COMMIT_MAX_CHANGES                 = "l2.transactionmanager.groupCommit.maxChanges";
 
   /*********************************************************************************************************************
    * <code>
@@ -140,6 +147,8 @@ public interface TCPropertiesConsts {
    *                                  active to passive while synching
    * passive.sync.throttle.timeInMillis - Time to wait before sending the next batch of
    *                                  objects to the passive
+   * passive.sync.workers           - Number of threads dehydrating batches for a passive in parallel, each over its
+   *                                  own range of ObjectIDs
    * dgc.throttle.timeInMillis     - Throttle time for dgc for each cycle for every requestsPerThrottle
    *                                 requests for references from object manager
    * dgc.throttle.requestsPerThrottle - Number of objects for which object references are requested
@@ -148,7 +157,14 @@ public interface TCPropertiesConsts {
    * dgc.inline.intervalInSeconds   - Interval in seconds at which to delete objects selected by inline dgc.
    * dgc.inline.maxObjects          - Maximum inline dgc batch size
    * dgc.inline.cleanup.delaySeconds - Seconds to delay the start of inline dgc cleanup after a server becomes active
+   * dgc.concurrentMark.enabled     - Mark with several threads over ObjectID ranges and follow the references changed
+   *                                  while marking before pausing, so the paused rescue only follows the last changes
+   * dgc.concurrentMark.threads     - Number of marking threads
+   * dgc.concurrentMark.precleanThreshold - Keep following changed references before pausing while a round finds more
+   *                                  than this many
    * l2.objectmanager.invalidate.strong.cache.enabled - Enable/disable invalidations for strong cache
+   * servermap.concurrentReads.enabled - Serve server map gets, sizes and key sets without checking the
+   *                                  map out when no write to it is pending
    * </code>
    ********************************************************************************************************************/
 
@@ -162,15 +178,20 @@ public interface TCPropertiesConsts {
   public static final String L2_OBJECTMANAGER_PASSIVE_SYNC_MESSAGE_MAXSIZE_MB               = "l2.objectmanager.passive.sync.message.maxSizeInMegaBytes";
   public static final String L2_OBJECTMANAGER_PASSIVE_SYNC_THROTTLE_TIME                    = "l2.objectmanager.passive.sync.throttle.timeInMillis";
   public static final String L2_OBJECTMANAGER_PASSIVE_SYNC_THROTTLE_PENDING_MSGS            = "l2.objectmanager.passive.sync.throttle.maxPendingMessages";
+  public static final String L2_OBJECTMANAGER_PASSIVE_SYNC_WORKERS                          = "l2.objectmanager.passive.sync.workers";
   public static final String L2_OBJECTMANAGER_DGC_THROTTLE_TIME                             = "l2.objectmanager.dgc.throttle.timeInMillis";
   public static final String L2_OBJECTMANAGER_DGC_REQUEST_PER_THROTTLE                      = "l2.objectmanager.dgc.throttle.requestsPerThrottle";
   public static final String L2_OBJECTMANAGER_DGC_INLINE_ENABLED                            = "l2.objectmanager.dgc.inline.enabled";
   public static final String L2_OBJECTMANAGER_DGC_INLINE_INTERVAL_SECONDS                   = "l2.objectmanager.dgc.inline.intervalInSeconds";
   public static final String L2_OBJECTMANAGER_DGC_INLINE_MAX_OBJECTS                        = "l2.objectmanager.dgc.inline.maxObjects";
   public static final String L2_OBJECTMANAGER_DGC_INLINE_CLEANUP_DELAY_SECONDS              = "l2.objectmanager.dgc.inline.cleanup.delaySeconds";
+  public static final String L2_OBJECTMANAGER_DGC_CONCURRENT_MARK_ENABLED                   = "l2.objectmanager.dgc.concurrentMark.enabled";
+  public static final String L2_OBJECTMANAGER_DGC_CONCURRENT_MARK_THREADS                   = "l2.objectmanager.dgc.concurrentMark.threads";
+  public static final String L2_OBJECTMANAGER_DGC_CONCURRENT_MARK_PRECLEAN_THRESHOLD        = "l2.objectmanager.dgc.concurrentMark.precleanThreshold";
   public static final String L2_OBJECTMANAGER_INVALIDATE_STRONG_CACHE_ENABLED               = "l2.objectmanager.invalidateStrongCache.enabled";
   public static final String L2_OBJECTMANAGER_OIDSET_TYPE                                   = "l2.objectmanager.oidset.type";
   public static final String L2_OBJECTMANAGER_CLIENT_STATE_VERBOSE_THRESHOLD                = "l2.objectmanager.client.state.verbose.threshold";
+  public static final String L2_OBJECTMANAGER_SERVERMAP_CONCURRENT_READS_ENABLED            = "l2.objectmanager.servermap.concurrentReads.enabled";
 
   /**
    * ******************************************************************************************************************
@@ -248,6 +269,12 @@ public interface TCPropertiesConsts {
    * tcgroupcomm.reconnect.maxDelayedAcks - At least one ack per maxDelayedAcks messages received
    * tcgroupcomm.reconnect.sendWindow     - Max outstanding messages before ack received
    * tcgroupcomm.reconnect.enabled        - Enable L2-L2 reconnect
+   * tcgroupcomm.compression.enabled      - Compress the configured group message types for the L2s that announce
+   *                                        they accept it. Enable on every server of the stripe.
+   * tcgroupcomm.compression.messageTypes - Comma separated simple class names of the group messages to compress
+   * tcgroupcomm.compression.minSize      - Serialized size in bytes below which a message is sent uncompressed
+   * relay.window                         - Max relayed transaction batches in flight to each passive before the
+   *                                        active waits for its acks, 0 for no limit
    * send.timeout.millis                  - Number of milliseconds to retry sending a message
    * dirtydb.backup.enabled               - Creates BackUp of DirtyDB only If it is set to true.
    * </code>
@@ -259,8 +286,12 @@ public interface TCPropertiesConsts {
   public static final String L2_NHA_TCGROUPCOMM_RECONNECT_MAX_DELAYEDACKS                   = "l2.nha.tcgroupcomm.reconnect.maxDelayedAcks";
   public static final String L2_NHA_TCGROUPCOMM_RECONNECT_SEND_WINDOW                       = "l2.nha.tcgroupcomm.reconnect.sendWindow";
   public static final String L2_NHA_TCGROUPCOMM_DISCOVERY_INTERVAL                          = "l2.nha.tcgroupcomm.discovery.interval";
+  public static final String L2_NHA_TCGROUPCOMM_COMPRESSION_ENABLED                         = "l2.nha.tcgroupcomm.compression.enabled";
+  public static final String L2_NHA_TCGROUPCOMM_COMPRESSION_MESSAGE_TYPES                   = "l2.nha.tcgroupcomm.compression.messageTypes";
+  public static final String L2_NHA_TCGROUPCOMM_COMPRESSION_MIN_SIZE                        = "l2.nha.tcgroupcomm.compression.minSize";
   // a hidden tc.properties only used for l2 proxy testing purpose
   public static final String L2_NHA_TCGROUPCOMM_RECONNECT_L2PROXY_TO_PORT                   = "l2.nha.tcgroupcomm.l2proxytoport";
+  public static final String L2_NHA_RELAY_WINDOW                                            = "l2.nha.relay.window";
   public static final String L2_NHA_SEND_TIMEOUT_MILLS                                      = "l2.nha.send.timeout.millis";
   public static final String L2_NHA_DIRTYDB_AUTODELETE                                      = "l2.nha.dirtydb.autoDelete";
   public static final String L2_NHA_DIRTYDB_ROLLING                                         = "l2.nha.dirtydb.rolling";
@@ -363,6 +394,13 @@ public interface TCPropertiesConsts {
    *                                 care -- This will cause *lots* of logging to occur
    *    timeoutForAckOnExit        - Max wait time in seconds to wait for ACKs before exit.
    *                                 value 0 for infinite wait.
+   *    throttle.adaptive.enabled  - If true, pace transactions by the latency of the server's
+   *                                 batch acks instead of sleeping by the count of pending
+   *                                 batches. The batches in flight and the batches writers may
+   *                                 queue grow while the latency stays low and are halved when
+   *                                 it rises or the server throttles
+   *    throttle.adaptive.latencyTolerancePercent - How far, in percent of the lowest recent
+   *                                 ack latency, the latency may rise before halving
    * </code>
    ********************************************************************************************************************/
   public static final String L1_TRANSACTIONMANAGER_LOGGING_ENABLED                          = "l1.transactionmanager.logging.enabled";
@@ -379,6 +417,8 @@ public interface TCPropertiesConsts {
   public static final String L1_TRANSACTIONMANAGER_FOLDING_LOCK_LIMIT                       = "l1.transactionmanager.folding.lock.limit";
   public static final String L1_TRANSACTIONMANAGER_FOLDING_DEBUG                            = "l1.transactionmanager.folding.debug";
   public static final String L1_TRANSACTIONMANAGER_TIMEOUTFORACK_ONEXIT                     = "l1.transactionmanager.timeoutForAckOnExit";
+  public static final String L1_TRANSACTIONMANAGER_THROTTLE_ADAPTIVE_ENABLED                = "l1.transactionmanager.throttle.adaptive.enabled";
+  public static final String L1_TRANSACTIONMANAGER_THROTTLE_ADAPTIVE_LATENCY_TOLERANCE      = "l1.transactionmanager.throttle.adaptive.latencyTolerancePercent";
 
   public static final String TC_TRANSPORT_HANDSHAKE_TIMEOUT                                 = "tc.transport.handshake.timeout";
   public static final String TC_CONFIG_SOURCEGET_TIMEOUT                                    = "tc.config.getFromSource.timeout";
@@ -455,12 +495,18 @@ public interface TCPropertiesConsts {
    *                         : Maximum number of requests send immediately after which it will be batched
    * remote.batchLookupTimePeriod
    *                         : Time to wait before sending batch requests
+   * remote.coalesce.enabled : If enabled, gets missing in the local cache from many threads and maps are merged into
+   *                           one request message to the group instead of each being sent on its own
+   * remote.coalesce.windowMicros
+   *                         : Time in microseconds the thread sending a coalesced request waits for other gets to join
    * faultInvalidatedPinnedEntries : If enabled pinned entries will be faulted again from L2 on invalidations.
    * 
    * </code>
    ********************************************************************************************************************/
   public static final String L1_SERVERMAPMANAGER_REMOTE_MAX_REQUEST_SENT_IMMEDIATELY        = "l1.servermapmanager.remote.maxRequestSentImmediately";
   public static final String L1_SERVERMAPMANAGER_REMOTE_BATCH_LOOKUP_TIME_PERIOD            = "l1.servermapmanager.remote.batchLookupTimePeriod";
+  public static final String L1_SERVERMAPMANAGER_REMOTE_COALESCE_ENABLED                    = "l1.servermapmanager.remote.coalesce.enabled";
+  public static final String L1_SERVERMAPMANAGER_REMOTE_COALESCE_WINDOW_MICROS              = "l1.servermapmanager.remote.coalesce.windowMicros";
   public static final String L1_SERVERMAPMANAGER_FAULT_INVALIDATED_PINNED_ENTRIES           = "l1.servermapmanager.faultInvalidatedPinnedEntries";
 
   /*********************************************************************************************************************
@@ -495,19 +541,34 @@ public interface TCPropertiesConsts {
    * Description : Stage monitoring can be enabled or disabled for debugging.
    * stage.monitor.enabled                : &lt;true/false&gt;    - Enable or Disable Monitoring
    * stage.monitor.delay                  : long            - frequency in milliseconds
+   * stage.latency.enabled                : &lt;true/false&gt;    - Record queue wait and service time histograms of
+   *                                        all stages, seda.&lt;stage&gt;.latencyStats overrides it per stage
+   * seda.&lt;stage&gt;.workStealing       : &lt;true/false&gt;    - Let idle worker threads take keys over from busy
+   *                                        ones on stages with a queue per thread. Ignored for stages whose handler
+   *                                        needs each key to stay on one thread, like apply
    * bytebuffer.pooling.enabled           : Enable/disable tc byte buffer pooling
    * bytebuffer.common.pool.maxcount      : Max size of pool for tc byte buffer
    * bytebuffer.threadlocal.pool.maxcount : Thread pool size
+   * messages.gatheringIO.enabled         : Write and read message buffers straight to and from the socket with
+   *                                        gathering writes and scattering reads on cleartext connections
+   * messages.coalescing.maxDelayMicros   : Longest time messages are held back on a busy connection to be grouped with
+   *                                        more messages, 0 (the default) to write them right away
+   * messages.bufferPool.maxKiloBytes     : Direct memory each comm thread keeps pooled for the socket buffers of its
+   *                                        connections, 0 to give every connection its own heap buffers
    * </code>
    ********************************************************************************************************************/
   public static final String TC_STAGE_MONITOR_ENABLED                                       = "tc.stage.monitor.enabled";
   public static final String TC_STAGE_MONITOR_DELAY                                         = "tc.stage.monitor.delay";
+  public static final String TC_STAGE_LATENCY_ENABLED                                       = "tc.stage.latency.enabled";
   public static final String TC_BYTEBUFFER_POOLING_ENABLED                                  = "tc.bytebuffer.pooling.enabled";
   public static final String TC_BYTEBUFFER_COMMON_POOL_MAXCOUNT                             = "tc.bytebuffer.common.pool.maxcount";
   public static final String TC_BYTEBUFFER_THREADLOCAL_POOL_MAXCOUNT                        = "tc.bytebuffer.threadlocal.pool.maxcount";
   public static final String TC_MESSAGE_GROUPING_ENABLED                                    = "tc.messages.grouping.enabled";
   public static final String TC_MESSAGE_GROUPING_MAXSIZE_KB                                 = "tc.messages.grouping.maxSizeKiloBytes";
   public static final String TC_MESSAGE_PACKUP_ENABLED                                      = "tc.messages.packup.enabled";
+  public static final String TC_MESSAGE_GATHERING_IO_ENABLED                                = "tc.messages.gatheringIO.enabled";
+  public static final String TC_MESSAGE_COALESCING_MAX_DELAY_MICROS                         = "tc.messages.coalescing.maxDelayMicros";
+  public static final String TC_MESSAGE_BUFFER_POOL_MAX_KB                                  = "tc.messages.bufferPool.maxKiloBytes";
 
   /*********************************************************************************************************************
    * <code>
@@ -642,21 +703,29 @@ public interface TCPropertiesConsts {
    * enabled            : Enable/disable greedy locks grant from L2
    * leaseTimeInMillis  : Time for which greedy locks are given to L1 if more than one of them
    *                      are contending for them
+   * lockStore.type     : How the server locks are stored, "concurrent" guards every lock on its own,
+   *                      "segmented" guards them by hash segment
+   * lockStore.segments : Number of segments of a segmented lock store, concurrency level of a concurrent one
    * </code>
    ********************************************************************************************************************/
   public static final String L2_LOCKMANAGER_GREEDY_LOCKS_ENABLED                            = "l2.lockmanager.greedy.locks.enabled";
   public static final String L2_LOCKMANAGER_GREEDY_LEASE_ENABLED                            = "l2.lockmanager.greedy.lease.enabled";
   public static final String L2_LOCKMANAGER_GREEDY_LEASE_LEASETIME_INMILLS                  = "l2.lockmanager.greedy.lease.leaseTimeInMillis";
+  public static final String L2_LOCKMANAGER_LOCKSTORE_TYPE                                  = "l2.lockmanager.lockStore.type";
+  public static final String L2_LOCKMANAGER_LOCKSTORE_SEGMENTS                              = "l2.lockmanager.lockStore.segments";
 
   /*********************************************************************************************************************
    * <code>
    * Section : TCP Settings
    * tcpnodelay : Enable/disable tcp packet batching
    * keepalive  : Enable/disable tcp probe for running/broken connections
+   * rebalance.intervalMillis : How often the busiest comm worker thread hands a connection to the least busy one if
+   *                            their load differs too much, 0 to keep connections where they were placed
    * </code>
    ********************************************************************************************************************/
   public static final String NET_CORE_KEEPALIVE                                             = "net.core.keepalive";
   public static final String NET_CORE_TCP_NO_DELAY                                          = "net.core.tcpnodelay";
+  public static final String NET_CORE_REBALANCE_INTERVAL                                    = "net.core.rebalance.intervalMillis";
 
   /*********************************************************************************************************************
    * <code>
@@ -757,6 +826,15 @@ public interface TCPropertiesConsts {
    ********************************************************************************************************************/
   public static final String STATS_PRINTER_INTERVAL                                         = "stats.printer.intervalInMillis";
 
+  /*********************************************************************************************************************
+   * <code>
+   * Section :  Stats Counters
+   * stats.counter.striped.enabled               - Let counters updated from many threads spread their updates over
+   *                                               stripes instead of contending on one value
+   * </code>
+   ********************************************************************************************************************/
+  public static final String STATS_COUNTER_STRIPED_ENABLED                                  = "stats.counter.striped.enabled";
+
   /*********************************************************************************************************************
    * <code>
    * Section :  EnterpriseLicenseResovler
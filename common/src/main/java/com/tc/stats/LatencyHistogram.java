@@ -0,0 +1,171 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds that is cheap enough to record into from hot paths.
+ * <p>
+ * Values are counted in log-linear buckets, four per power of two, so a percentile is off by at most 25%. Recording
+ * threads are spread over a few stripes of atomic counters picked by thread id, which keeps them from contending with
+ * each other without ever taking a lock. Reading sums up the stripes, so a snapshot taken while values are recorded
+ * may be slightly inconsistent.
+ */
+public class LatencyHistogram {
+
+  private static final int   SUB_BUCKET_BITS = 2;
+  private static final int   SUB_BUCKETS     = 1 << SUB_BUCKET_BITS;
+  // values of 2^40ns (about 18 minutes) and above all go to the last bucket
+  private static final int   MAX_EXPONENT    = 40;
+  static final int           BUCKETS         = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+  private static final int   SUM             = BUCKETS;
+  private static final int   MAX             = BUCKETS + 1;
+  private static final int   STRIPE_LENGTH   = BUCKETS + 2;
+  private static final int   MAX_STRIPES     = 8;
+
+  private final AtomicLongArray[] stripes;
+  private final int               stripeMask;
+
+  public LatencyHistogram() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  public LatencyHistogram(int concurrency) {
+    int count = 1;
+    while (count < concurrency && count < MAX_STRIPES) {
+      count <<= 1;
+    }
+    this.stripes = new AtomicLongArray[count];
+    for (int i = 0; i < count; i++) {
+      this.stripes[i] = new AtomicLongArray(STRIPE_LENGTH);
+    }
+    this.stripeMask = count - 1;
+  }
+
+  public void record(long nanos) {
+    record(nanos, 1);
+  }
+
+  /**
+   * Records the same latency for a number of events, e.g. the average time each of a batch of events took.
+   */
+  public void record(long nanos, int events) {
+    if (events <= 0) { return; }
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    AtomicLongArray stripe = this.stripes[(int) Thread.currentThread().getId() & this.stripeMask];
+    stripe.addAndGet(bucketFor(nanos), events);
+    stripe.addAndGet(SUM, nanos * events);
+    long max;
+    while (nanos > (max = stripe.get(MAX))) {
+      if (stripe.compareAndSet(MAX, max, nanos)) {
+        break;
+      }
+    }
+  }
+
+  public void reset() {
+    for (AtomicLongArray stripe : this.stripes) {
+      for (int i = 0; i < STRIPE_LENGTH; i++) {
+        stripe.set(i, 0);
+      }
+    }
+  }
+
+  public Snapshot snapshot() {
+    long[] counts = new long[BUCKETS];
+    long sum = 0;
+    long max = 0;
+    for (AtomicLongArray stripe : this.stripes) {
+      for (int i = 0; i < BUCKETS; i++) {
+        counts[i] += stripe.get(i);
+      }
+      sum += stripe.get(SUM);
+      max = Math.max(max, stripe.get(MAX));
+    }
+    return new Snapshot(counts, sum, max);
+  }
+
+  static int bucketFor(long value) {
+    if (value < SUB_BUCKETS) { return (int) value; }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    if (exponent > MAX_EXPONENT) { return BUCKETS - 1; }
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * @return the largest value that is counted in the given bucket
+   */
+  static long highestValueIn(int bucket) {
+    if (bucket < SUB_BUCKETS) { return bucket; }
+    if (bucket == BUCKETS - 1) { return Long.MAX_VALUE; }
+    int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    long subBucket = bucket % SUB_BUCKETS;
+    return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+
+  /**
+   * A point in time copy of the histogram.
+   */
+  public static class Snapshot {
+    private final long[] counts;
+    private final long   count;
+    private final long   sum;
+    private final long   max;
+
+    Snapshot(long[] counts, long sum, long max) {
+      long total = 0;
+      for (long c : counts) {
+        total += c;
+      }
+      this.counts = counts;
+      this.count = total;
+      this.sum = sum;
+      this.max = max;
+    }
+
+    public long getCount() {
+      return this.count;
+    }
+
+    public long getMean() {
+      return this.count == 0 ? 0 : this.sum / this.count;
+    }
+
+    public long getMax() {
+      return this.max;
+    }
+
+    /**
+     * @param percentile : between 0 and 100
+     * @return an upper bound of the latency the given percentage of the recorded events stayed within
+     */
+    public long getPercentile(double percentile) {
+      if (this.count == 0) { return 0; }
+      long rank = Math.max(1, (long) Math.ceil(this.count * percentile / 100.0));
+      long seen = 0;
+      for (int i = 0; i < this.counts.length; i++) {
+        seen += this.counts[i];
+        if (seen >= rank) { return Math.min(highestValueIn(i), this.max); }
+      }
+      return this.max;
+    }
+  }
+}
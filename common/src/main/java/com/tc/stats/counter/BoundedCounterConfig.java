@@ -35,8 +35,11 @@ public class BoundedCounterConfig extends SimpleCounterConfig {
     return max;
   }
 
+  /**
+   * Bounded counters check their bounds against the exact value and are never striped
+   */
   @Override
-  public Counter createCounter() {
+  public Counter createCounter(boolean striped) {
     return new BoundedCounter(getInitialValue(), min, max);
   }
 }
@@ -18,19 +18,38 @@ package com.tc.stats.counter;
 
 /**
  * A simple counter
+ * <p>
+ * The update methods return the value after the update, except on striped counters (see
+ * {@link CounterImpl#isStriped()}), which do not total their stripes when updated and return 0 instead. Callers that
+ * need the current value have to read it with {@link #getValue()}.
  */
 public interface Counter {
 
+  /**
+   * @return the new value, 0 for striped counters
+   */
   long increment();
 
+  /**
+   * @return the new value, 0 for striped counters
+   */
   long decrement();
 
+  /**
+   * @return the previous value
+   */
   long getAndSet(long newValue);
 
   long getValue();
 
+  /**
+   * @return the new value, 0 for striped counters
+   */
   long increment(long amount);
 
+  /**
+   * @return the new value, 0 for striped counters
+   */
   long decrement(long amount);
 
   void setValue(long newValue);
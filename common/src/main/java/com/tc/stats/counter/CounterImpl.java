@@ -21,51 +21,83 @@ import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A simple counter implementation
+ * <p>
+ * A striped counter keeps its value in a {@link StripedLong} so that threads updating it concurrently do not contend.
+ * It never totals its stripes when updated, so its update methods other than {@link #getAndSet(long)} return 0; read
+ * the value with {@link #getValue()}.
  */
 public class CounterImpl implements Counter, Serializable {
-  private AtomicLong value;
+  private final AtomicLong  value;
+  private final StripedLong stripedValue;
 
   public CounterImpl() {
     this(0L);
   }
 
   public CounterImpl(long initialValue) {
-    this.value = new AtomicLong(initialValue);
+    this(initialValue, false);
+  }
+
+  public CounterImpl(long initialValue, boolean striped) {
+    if (striped) {
+      this.value = null;
+      this.stripedValue = new StripedLong(initialValue);
+    } else {
+      this.value = new AtomicLong(initialValue);
+      this.stripedValue = null;
+    }
+  }
+
+  public boolean isStriped() {
+    return stripedValue != null;
   }
 
   @Override
   public long increment() {
-    return value.incrementAndGet();
+    return add(1L);
   }
 
   @Override
   public long decrement() {
-    return value.decrementAndGet();
+    return add(-1L);
   }
 
   @Override
   public long getAndSet(long newValue) {
-    return value.getAndSet(newValue);
+    if (stripedValue == null) { return value.getAndSet(newValue); }
+    long previous = stripedValue.sumThenReset();
+    stripedValue.add(newValue);
+    return previous;
   }
 
   @Override
   public long getValue() {
-    return value.get();
+    return stripedValue == null ? value.get() : stripedValue.sum();
   }
 
   @Override
   public long increment(long amount) {
-    return value.addAndGet(amount);
+    return add(amount);
   }
 
   @Override
   public long decrement(long amount) {
-    return value.addAndGet(amount * -1);
+    return add(amount * -1);
   }
 
   @Override
   public void setValue(long newValue) {
-    value.set(newValue);
+    if (stripedValue == null) {
+      value.set(newValue);
+    } else {
+      stripedValue.set(newValue);
+    }
+  }
+
+  private long add(long amount) {
+    if (stripedValue == null) { return value.addAndGet(amount); }
+    stripedValue.add(amount);
+    return 0L;
   }
 
 }
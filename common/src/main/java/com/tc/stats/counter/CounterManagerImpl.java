@@ -16,24 +16,33 @@
  */
 package com.tc.stats.counter;
 
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
+import com.tc.stats.counter.sampled.CounterSampler;
 import com.tc.stats.counter.sampled.SampledCounter;
 import com.tc.stats.counter.sampled.SampledCounterImpl;
 
-import java.util.Timer;
-
 public class CounterManagerImpl implements CounterManager {
-  private final Timer timer    = new Timer("SampledCounterManager Timer", true);
-  private boolean     shutdown = false;
+  private final CounterSampler sampler  = new CounterSampler("SampledCounterManager Timer");
+  private final boolean        striped;
+  private boolean              shutdown = false;
 
   public CounterManagerImpl() {
-    super();
+    this(TCPropertiesImpl.getProperties().getBoolean(TCPropertiesConsts.STATS_COUNTER_STRIPED_ENABLED));
+  }
+
+  /**
+   * @param striped whether to create counters that spread their updates over stripes, where the counter supports it
+   */
+  public CounterManagerImpl(boolean striped) {
+    this.striped = striped;
   }
 
   @Override
   public synchronized void shutdown() {
     if (shutdown) { return; }
     try {
-      timer.cancel();
+      sampler.shutdown();
     } finally {
       shutdown = true;
     }
@@ -44,11 +53,10 @@ public class CounterManagerImpl implements CounterManager {
     if (shutdown) { throw new IllegalStateException("counter manager is shutdown"); }
     if (config == null) { throw new NullPointerException("config cannot be null"); }
 
-    Counter counter = config.createCounter();
+    Counter counter = config instanceof SimpleCounterConfig ? ((SimpleCounterConfig) config).createCounter(striped)
+        : config.createCounter();
     if (counter instanceof SampledCounterImpl) {
-      SampledCounterImpl sampledCounter = (SampledCounterImpl) counter;
-      timer.schedule(sampledCounter.getTimerTask(), sampledCounter.getIntervalMillis(), sampledCounter
-          .getIntervalMillis());
+      sampler.register((SampledCounterImpl) counter);
     }
     return counter;
 
@@ -31,6 +31,13 @@ public class SimpleCounterConfig implements CounterConfig {
 
   @Override
   public Counter createCounter() {
-    return new CounterImpl(initialValue);
+    return createCounter(false);
+  }
+
+  /**
+   * @param striped whether the counter should spread its updates over stripes, if it supports that
+   */
+  public Counter createCounter(boolean striped) {
+    return new CounterImpl(initialValue, striped);
   }
 }
@@ -0,0 +1,119 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.stats.counter;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A long that many threads can add to without contending on one cache line, in the manner of the JDK's LongAdder.
+ * Additions go to a single base cell until two threads collide on it; from then on each thread adds to one of several
+ * stripes picked from its thread id. The stripes are spaced two cache lines apart so that neighbouring stripes do not
+ * share a line, or the line the hardware prefetches along with it.
+ * <p>
+ * Reading the value sums the base and the stripes and so is not a snapshot if additions are made meanwhile. Any one
+ * addition is counted by exactly one {@link #sumThenReset()}.
+ */
+public final class StripedLong implements Serializable {
+  private static final int                        STRIPE_SPACING = 16;
+  private static final int                        MAX_STRIPES    = 64;
+  private static final int                        STRIPES        = stripesFor(Runtime.getRuntime()
+                                                                     .availableProcessors());
+
+  private final AtomicLong                        base;
+  private final AtomicReference<AtomicLongArray>  stripes        = new AtomicReference<AtomicLongArray>();
+
+  public StripedLong() {
+    this(0L);
+  }
+
+  public StripedLong(long initialValue) {
+    this.base = new AtomicLong(initialValue);
+  }
+
+  public void add(long amount) {
+    AtomicLongArray cells = stripes.get();
+    if (cells == null) {
+      long current = base.get();
+      if (base.compareAndSet(current, current + amount)) { return; }
+      cells = inflate();
+    }
+    // unlike a compare and set an add never has to be retried, so a collision on a stripe costs no more than that
+    cells.getAndAdd(stripeIndex(), amount);
+  }
+
+  public long sum() {
+    long sum = base.get();
+    AtomicLongArray cells = stripes.get();
+    if (cells != null) {
+      for (int i = 0; i < cells.length(); i += STRIPE_SPACING) {
+        sum += cells.get(i);
+      }
+    }
+    return sum;
+  }
+
+  public long sumThenReset() {
+    long sum = base.getAndSet(0L);
+    AtomicLongArray cells = stripes.get();
+    if (cells != null) {
+      for (int i = 0; i < cells.length(); i += STRIPE_SPACING) {
+        sum += cells.getAndSet(i, 0L);
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * Additions made while the value is being set may be lost
+   */
+  public void set(long newValue) {
+    AtomicLongArray cells = stripes.get();
+    if (cells != null) {
+      for (int i = 0; i < cells.length(); i += STRIPE_SPACING) {
+        cells.set(i, 0L);
+      }
+    }
+    base.set(newValue);
+  }
+
+  private AtomicLongArray inflate() {
+    stripes.compareAndSet(null, new AtomicLongArray(STRIPES * STRIPE_SPACING));
+    return stripes.get();
+  }
+
+  private static int stripeIndex() {
+    long id = Thread.currentThread().getId();
+    int hash = (int) ((id * 0x9E3779B97F4A7C15L) >>> 32);
+    return (hash & (STRIPES - 1)) * STRIPE_SPACING;
+  }
+
+  static int stripesFor(int processors) {
+    int stripes = 1;
+    while (stripes < processors && stripes < MAX_STRIPES) {
+      stripes <<= 1;
+    }
+    return stripes;
+  }
+
+  @Override
+  public String toString() {
+    return String.valueOf(sum());
+  }
+}
@@ -0,0 +1,96 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.stats.counter.sampled;
+
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples sampled counters from one thread. Counters with the same interval are sampled together by one periodic task,
+ * which reads the clock once for all of them, instead of each counter being a task of its own. Counters that have been
+ * shut down are dropped at their next sampling.
+ */
+public class CounterSampler {
+  private static final TCLogger                 logger    = TCLogging.getLogger(CounterSampler.class);
+
+  private final ScheduledThreadPoolExecutor     executor;
+  private final ConcurrentMap<Long, Interval>   intervals = new ConcurrentHashMap<Long, Interval>();
+
+  public CounterSampler(final String threadName) {
+    this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, threadName);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  public void register(SampledCounterImpl counter) {
+    Long intervalMillis = Long.valueOf(counter.getIntervalMillis());
+    Interval interval = intervals.get(intervalMillis);
+    if (interval == null) {
+      synchronized (this) {
+        interval = intervals.get(intervalMillis);
+        if (interval == null) {
+          interval = new Interval();
+          executor.scheduleAtFixedRate(interval, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+          intervals.put(intervalMillis, interval);
+        }
+      }
+    }
+    interval.counters.add(counter);
+  }
+
+  public void shutdown() {
+    executor.shutdownNow();
+    intervals.clear();
+  }
+
+  private static final class Interval implements Runnable {
+    private final Set<SampledCounterImpl> counters = Collections
+                                                       .newSetFromMap(new ConcurrentHashMap<SampledCounterImpl, Boolean>());
+
+    @Override
+    public void run() {
+      long now = System.currentTimeMillis();
+      for (Iterator<SampledCounterImpl> i = counters.iterator(); i.hasNext();) {
+        SampledCounterImpl counter = i.next();
+        if (counter.isShutdown()) {
+          i.remove();
+          continue;
+        }
+        try {
+          counter.recordSample(now);
+        } catch (RuntimeException e) {
+          // a periodic task that throws is never run again, which would stop the sampling of every other counter
+          logger.error("Error sampling " + counter, e);
+        }
+      }
+    }
+  }
+}
@@ -59,7 +59,7 @@ public class SampledCounterConfig extends SimpleCounterConfig {
   }
 
   @Override
-  public Counter createCounter() {
-    return new SampledCounterImpl(this);
+  public Counter createCounter(boolean striped) {
+    return new SampledCounterImpl(this, striped);
   }
 }
@@ -18,54 +18,70 @@ package com.tc.stats.counter.sampled;
 
 import com.tc.stats.counter.CounterImpl;
 
-import java.util.TimerTask;
-
 /**
  * A counter that keeps sampled values
+ * <p>
+ * The most recent sample is kept in place, guarded by a sequence number that is odd while a sample is being written,
+ * so that taking a sample allocates nothing. A {@link TimeStampedCounterValue} is only made when the sample is read.
  */
 public class SampledCounterImpl extends CounterImpl implements SampledCounter {
   protected final boolean                                     resetOnSample;
-  private final TimerTask                                     samplerTask;
   private final long                                          intervalMillis;
-  private volatile TimeStampedCounterValue                    mostRecentSample;
-  
+  private volatile boolean                                    shutdown;
+  private volatile long                                       sampleSequence;
+  private volatile long                                       sampleTimestamp;
+  private volatile long                                       sampleValue;
+  private volatile TimeStampedCounterValue                    lastSampleRead;
+
   public SampledCounterImpl(SampledCounterConfig config) {
-    super(config.getInitialValue());
+    this(config, false);
+  }
+
+  public SampledCounterImpl(SampledCounterConfig config, boolean striped) {
+    super(config.getInitialValue(), striped);
 
     this.intervalMillis = config.getIntervalSecs() * 1000;
     this.resetOnSample = config.isResetOnSample();
 
-    this.samplerTask = new TimerTask() {
-      @Override
-      public void run() {
-        recordSample();
-      }
-    };
-    
-    recordSample();
+    recordSample(System.currentTimeMillis());
   }
 
   @Override
   public TimeStampedCounterValue getMostRecentSample() {
-    return mostRecentSample;
+    long sequence;
+    long timestamp;
+    long value;
+    do {
+      sequence = sampleSequence;
+      timestamp = sampleTimestamp;
+      value = sampleValue;
+    } while ((sequence & 1) != 0 || sequence != sampleSequence);
+
+    TimeStampedCounterValue sample = lastSampleRead;
+    if (sample == null || sample.getTimestamp() != timestamp || sample.getCounterValue() != value) {
+      sample = new TimeStampedCounterValue(timestamp, value);
+      lastSampleRead = sample;
+    }
+    return sample;
   }
 
   @Override
   public void shutdown() {
-    if (samplerTask != null) {
-      samplerTask.cancel();
-    }
+    shutdown = true;
   }
 
-  public TimerTask getTimerTask() {
-    return this.samplerTask;
+  boolean isShutdown() {
+    return shutdown;
   }
 
   public long getIntervalMillis() {
     return intervalMillis;
   }
 
-  void recordSample() {
+  /**
+   * Only called by one thread at a time, the sampler's
+   */
+  void recordSample(long now) {
     final long sample;
     if (resetOnSample) {
       sample = getAndReset();
@@ -73,8 +89,11 @@ public class SampledCounterImpl extends CounterImpl implements SampledCounter {
       sample = getValue();
     }
 
-    final long now = System.currentTimeMillis();
-    mostRecentSample = new TimeStampedCounterValue(now, sample);
+    long sequence = sampleSequence;
+    sampleSequence = sequence + 1;
+    sampleTimestamp = now;
+    sampleValue = sample;
+    sampleSequence = sequence + 2;
   }
 
   @Override
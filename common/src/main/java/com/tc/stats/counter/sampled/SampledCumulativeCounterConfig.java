@@ -28,7 +28,7 @@ public class SampledCumulativeCounterConfig extends SampledCounterConfig {
   }
 
   @Override
-  public Counter createCounter() {
-    return new SampledCumulativeCounterImpl(this);
+  public Counter createCounter(boolean striped) {
+    return new SampledCumulativeCounterImpl(this, striped);
   }
 }
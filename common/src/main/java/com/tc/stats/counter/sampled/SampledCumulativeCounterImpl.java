@@ -16,21 +16,26 @@
  */
 package com.tc.stats.counter.sampled;
 
-import java.util.concurrent.atomic.AtomicLong;
+import com.tc.stats.counter.Counter;
+import com.tc.stats.counter.CounterImpl;
 
 public class SampledCumulativeCounterImpl extends SampledCounterImpl implements SampledCumulativeCounter {
 
-  private AtomicLong cumulativeCount;
+  private final Counter cumulativeCount;
 
   public SampledCumulativeCounterImpl(SampledCounterConfig config) {
-    super(config);
-    cumulativeCount = new AtomicLong(config.getInitialValue());
+    this(config, false);
+  }
+
+  public SampledCumulativeCounterImpl(SampledCounterConfig config, boolean striped) {
+    super(config, striped);
+    cumulativeCount = new CounterImpl(config.getInitialValue(), striped);
   }
 
   @Override
   public long getCumulativeValue() {
     if (resetOnSample) {
-      return cumulativeCount.get();
+      return cumulativeCount.getValue();
     } else {
       return getValue();
     }
@@ -38,25 +43,25 @@ public class SampledCumulativeCounterImpl extends SampledCounterImpl implements
 
   @Override
   public long decrement() {
-    cumulativeCount.decrementAndGet();
+    cumulativeCount.decrement();
     return super.decrement();
   }
 
   @Override
   public long decrement(long amount) {
-    cumulativeCount.addAndGet(amount * -1);
+    cumulativeCount.decrement(amount);
     return super.decrement(amount);
   }
 
   @Override
   public long increment() {
-    cumulativeCount.incrementAndGet();
+    cumulativeCount.increment();
     return super.increment();
   }
 
   @Override
   public long increment(long amount) {
-    cumulativeCount.addAndGet(amount);
+    cumulativeCount.increment(amount);
     return super.increment(amount);
   }
 
@@ -35,8 +35,11 @@ public class SampledRateCounterConfig extends SampledCounterConfig {
     this.initialDenominatorValue = initialDenominatorValue;
   }
 
+  /**
+   * Rate counters update their numerator and denominator together under a lock and are never striped
+   */
   @Override
-  public Counter createCounter() {
+  public Counter createCounter(boolean striped) {
     SampledRateCounterImpl sampledRateCounter = new SampledRateCounterImpl(this);
     sampledRateCounter.setValue(initialNumeratorValue, initialDenominatorValue);
     return sampledRateCounter;
@@ -0,0 +1,191 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.util.concurrent;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Base class for the bounded, array backed ring {@link TCQueue}s. Subclasses decide how producers claim a slot, the
+ * consumer side is shared and assumes that exactly one thread ever takes elements out of the queue.
+ * <p>
+ * A consumer that finds the queue empty parks itself and is unparked by the next producer. Producers that find the
+ * queue full back off with a bounded park since the consumer never signals them.
+ */
+abstract class AbstractTCArrayQueue implements TCQueue {
+
+  private static final int             SPIN_TRIES         = 64;
+  private static final long            MAX_PARK_NANOS     = TimeUnit.MILLISECONDS.toNanos(1);
+
+  protected final AtomicReferenceArray buffer;
+  protected final int                  mask;
+  protected final int                  capacity;
+  protected final AtomicLong           producerIndex      = new AtomicLong();
+  private final AtomicLong             consumerIndex      = new AtomicLong();
+  private volatile Thread              waitingConsumer;
+
+  protected AbstractTCArrayQueue(int capacity) {
+    if (capacity <= 0) { throw new IllegalArgumentException("capacity must be positive : " + capacity); }
+    int actual = 1;
+    while (actual < capacity) {
+      if (actual >= (1 << 30)) { throw new IllegalArgumentException("capacity too large : " + capacity); }
+      actual <<= 1;
+    }
+    this.capacity = actual;
+    this.mask = actual - 1;
+    this.buffer = new AtomicReferenceArray(actual);
+  }
+
+  /**
+   * Try to place the element in the queue without waiting.
+   * 
+   * @return false if the queue is full
+   */
+  protected abstract boolean tryOffer(Object obj);
+
+  protected long consumerIndex() {
+    return this.consumerIndex.get();
+  }
+
+  /**
+   * Called by producers after publishing an element.
+   */
+  protected void signalConsumer() {
+    Thread consumer = this.waitingConsumer;
+    if (consumer != null) {
+      LockSupport.unpark(consumer);
+    }
+  }
+
+  private Object tryPoll() {
+    final long index = this.consumerIndex.get();
+    final int offset = (int) (index & this.mask);
+    Object e = this.buffer.get(offset);
+    if (e == null) {
+      if (index == this.producerIndex.get()) { return null; }
+      // a producer claimed the slot but has not published into it yet
+      do {
+        e = this.buffer.get(offset);
+      } while (e == null);
+    }
+    this.buffer.lazySet(offset, null);
+    this.consumerIndex.lazySet(index + 1);
+    return e;
+  }
+
+  @Override
+  public void put(Object obj) throws InterruptedException {
+    if (obj == null) { throw new NullPointerException(); }
+    long parkNanos = 1;
+    while (!tryOffer(obj)) {
+      parkNanos = backOff(parkNanos);
+    }
+  }
+
+  @Override
+  public boolean offer(Object obj, long timeout) throws InterruptedException {
+    if (obj == null) { throw new NullPointerException(); }
+    if (tryOffer(obj)) { return true; }
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    long parkNanos = 1;
+    while (!tryOffer(obj)) {
+      if (deadline - System.nanoTime() <= 0) { return false; }
+      parkNanos = backOff(parkNanos);
+    }
+    return true;
+  }
+
+  private static long backOff(long parkNanos) throws InterruptedException {
+    LockSupport.parkNanos(parkNanos);
+    if (Thread.interrupted()) { throw new InterruptedException(); }
+    return Math.min(parkNanos << 1, MAX_PARK_NANOS);
+  }
+
+  @Override
+  public Object take() throws InterruptedException {
+    return awaitElement(Long.MAX_VALUE, false);
+  }
+
+  @Override
+  public Object poll(long timeout) throws InterruptedException {
+    return awaitElement(TimeUnit.MILLISECONDS.toNanos(timeout), true);
+  }
+
+  private Object awaitElement(long timeoutNanos, boolean timed) throws InterruptedException {
+    Object e = tryPoll();
+    if (e != null || (timed && timeoutNanos <= 0)) { return e; }
+    for (int i = 0; i < SPIN_TRIES; i++) {
+      e = tryPoll();
+      if (e != null) { return e; }
+    }
+
+    final long deadline = timed ? System.nanoTime() + timeoutNanos : 0L;
+    this.waitingConsumer = Thread.currentThread();
+    try {
+      while (true) {
+        e = tryPoll();
+        if (e != null) { return e; }
+        if (timed) {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) { return null; }
+          LockSupport.parkNanos(this, remaining);
+        } else {
+          LockSupport.park(this);
+        }
+        if (Thread.interrupted()) { throw new InterruptedException(); }
+      }
+    } finally {
+      this.waitingConsumer = null;
+    }
+  }
+
+  @Override
+  public int drainTo(Collection c, int maxElements) {
+    int drained = 0;
+    Object e;
+    while (drained < maxElements && (e = tryPoll()) != null) {
+      c.add(e);
+      drained++;
+    }
+    return drained;
+  }
+
+  @Override
+  public Object peek() {
+    return this.buffer.get((int) (this.consumerIndex.get() & this.mask));
+  }
+
+  @Override
+  public int size() {
+    long consumer = this.consumerIndex.get();
+    long size = this.producerIndex.get() - consumer;
+    if (size < 0) { return 0; }
+    return (int) Math.min(size, this.capacity);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  public int capacity() {
+    return this.capacity;
+  }
+}
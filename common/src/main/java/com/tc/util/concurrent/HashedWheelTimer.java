@@ -0,0 +1,361 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.util.concurrent;
+
+import com.google.common.base.Preconditions;
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link Timer} for large numbers of short lived timeouts, like lock waits, that are mostly cancelled before they
+ * expire. Timeouts are hashed by deadline into the buckets of a wheel that a single thread advances one tick at a time,
+ * expiring the whole bucket of the tick. Scheduling only adds the timeout to a lock free queue and cancelling only
+ * flags it, both in constant time, the worker thread moves them in and out of the buckets on its next tick.
+ * <p>
+ * Timeouts never expire early but may expire up to one tick late. Tasks run on the worker thread so they should be
+ * short, an exception thrown by a task is logged and suppresses further runs of a periodic task.
+ * <p>
+ * Tasks can be scheduled before the timer is started, their delay still counts from the time they were scheduled and
+ * any that became due in the meantime expire on the first tick.
+ */
+public class HashedWheelTimer implements Timer {
+  private static final TCLogger            logger                = TCLogging.getLogger(HashedWheelTimer.class);
+
+  private static final String              ALREADY_CANCELLED_MSG = "Cannot schedule a task - the timer has been already cancelled";
+
+  private static final int                 INIT                  = 0;
+  private static final int                 STARTED               = 1;
+  private static final int                 CANCELLED             = 2;
+
+  private final long                       origin                = System.nanoTime();
+  private final long                       tickNanos;
+  private final Bucket[]                   wheel;
+  private final int                        mask;
+  private final Queue<WheelTimeout>        pending               = new ConcurrentLinkedQueue<WheelTimeout>();
+  private final Queue<WheelTimeout>        cancelled             = new ConcurrentLinkedQueue<WheelTimeout>();
+  private final AtomicInteger              state                 = new AtomicInteger(INIT);
+  private final Thread                     worker;
+
+  /**
+   * @param ticksPerWheel rounded up to the next power of two
+   */
+  public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+    if (tickDuration <= 0) { throw new IllegalArgumentException("tickDuration must be positive: " + tickDuration); }
+    if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+      throw new IllegalArgumentException("ticksPerWheel out of range: " + ticksPerWheel);
+    }
+    int size = 1;
+    while (size < ticksPerWheel) {
+      size <<= 1;
+    }
+    this.wheel = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      wheel[i] = new Bucket();
+    }
+    this.mask = size - 1;
+    this.tickNanos = unit.toNanos(tickDuration);
+    this.worker = new Thread(new Worker(), name);
+    this.worker.setDaemon(true);
+  }
+
+  /**
+   * Starts the worker thread, calling it again has no effect.
+   */
+  public void start() {
+    if (state.compareAndSet(INIT, STARTED)) {
+      worker.start();
+    }
+  }
+
+  @Override
+  public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+    return add(new WheelTimeout(command, deadline(delay, unit), 0));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+    if (period <= 0) { throw new IllegalArgumentException("period must be positive: " + period); }
+    return add(new WheelTimeout(command, deadline(initialDelay, unit), unit.toNanos(period)));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+    if (delay <= 0) { throw new IllegalArgumentException("delay must be positive: " + delay); }
+    return add(new WheelTimeout(command, deadline(initialDelay, unit), -unit.toNanos(delay)));
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    schedule(command, 0, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void cancel() {
+    if (state.getAndSet(CANCELLED) != CANCELLED) {
+      worker.interrupt();
+    }
+  }
+
+  private static long deadline(long delay, TimeUnit unit) {
+    long now = System.nanoTime();
+    long deadline = now + unit.toNanos(Math.max(0, delay));
+    // saturate instead of wrapping around for very long delays
+    return deadline < now ? Long.MAX_VALUE : deadline;
+  }
+
+  private WheelTimeout add(WheelTimeout timeout) {
+    Preconditions.checkState(state.get() != CANCELLED, ALREADY_CANCELLED_MSG);
+    pending.add(timeout);
+    return timeout;
+  }
+
+  private long currentTick() {
+    return (System.nanoTime() - origin) / tickNanos;
+  }
+
+  private class Worker implements Runnable {
+    private long tick;
+
+    @Override
+    public void run() {
+      tick = currentTick();
+      while (state.get() == STARTED) {
+        if (!waitForNextTick()) {
+          break;
+        }
+        removeCancelled();
+        transferPending();
+        wheel[(int) (tick & mask)].expire(System.nanoTime());
+        tick++;
+      }
+      pending.clear();
+      cancelled.clear();
+    }
+
+    /**
+     * @return false if the timer was cancelled while waiting
+     */
+    private boolean waitForNextTick() {
+      long tickEnd = origin + (tick + 1) * tickNanos;
+      while (true) {
+        long sleepNanos = tickEnd - System.nanoTime();
+        if (sleepNanos <= 0) { return true; }
+        try {
+          TimeUnit.NANOSECONDS.sleep(sleepNanos);
+        } catch (InterruptedException e) {
+          if (state.get() == CANCELLED) { return false; }
+        }
+      }
+    }
+
+    private void removeCancelled() {
+      WheelTimeout timeout;
+      while ((timeout = cancelled.poll()) != null) {
+        if (timeout.bucket != null) {
+          timeout.bucket.remove(timeout);
+        }
+      }
+    }
+
+    private void transferPending() {
+      WheelTimeout timeout;
+      while ((timeout = pending.poll()) != null) {
+        if (timeout.isCancelled()) {
+          continue;
+        }
+        long sinceOrigin = timeout.deadline - origin;
+        long deadlineTick = (sinceOrigin < 0 ? Long.MAX_VALUE : sinceOrigin) / tickNanos;
+        long target = Math.max(deadlineTick, tick);
+        timeout.remainingRounds = (target - tick) / wheel.length;
+        wheel[(int) (target & mask)].add(timeout);
+      }
+    }
+  }
+
+  /**
+   * Doubly linked list of the timeouts hashed to one tick of the wheel, only ever touched by the worker thread.
+   */
+  private final class Bucket {
+    private WheelTimeout head;
+    private WheelTimeout tail;
+
+    void add(WheelTimeout timeout) {
+      timeout.bucket = this;
+      if (head == null) {
+        head = tail = timeout;
+      } else {
+        tail.next = timeout;
+        timeout.prev = tail;
+        tail = timeout;
+      }
+    }
+
+    void remove(WheelTimeout timeout) {
+      if (timeout.prev != null) {
+        timeout.prev.next = timeout.next;
+      } else {
+        head = timeout.next;
+      }
+      if (timeout.next != null) {
+        timeout.next.prev = timeout.prev;
+      } else {
+        tail = timeout.prev;
+      }
+      timeout.prev = timeout.next = null;
+      timeout.bucket = null;
+    }
+
+    void expire(long now) {
+      WheelTimeout timeout = head;
+      while (timeout != null) {
+        WheelTimeout next = timeout.next;
+        if (timeout.remainingRounds <= 0 && timeout.deadline <= now) {
+          remove(timeout);
+          timeout.expire();
+        } else {
+          timeout.remainingRounds--;
+        }
+        timeout = next;
+      }
+    }
+  }
+
+  private final class WheelTimeout implements ScheduledFuture<Object> {
+    private static final int    WAITING  = 0;
+    private static final int    CANCEL   = 1;
+    private static final int    DONE     = 2;
+
+    private final Runnable      task;
+    /**
+     * 0 for one-shot tasks, the period for fixed rate tasks, minus the delay for fixed delay tasks
+     */
+    private final long          period;
+    private final AtomicInteger taskState = new AtomicInteger(WAITING);
+    private volatile long       deadline;
+    private Throwable           failure;
+
+    // owned by the worker thread
+    private long                remainingRounds;
+    private Bucket              bucket;
+    private WheelTimeout        prev;
+    private WheelTimeout        next;
+
+    WheelTimeout(Runnable task, long deadline, long period) {
+      Preconditions.checkNotNull(task);
+      this.task = task;
+      this.deadline = deadline;
+      this.period = period;
+    }
+
+    void expire() {
+      if (period == 0 && !taskState.compareAndSet(WAITING, DONE)) { return; }
+      if (period != 0 && taskState.get() != WAITING) { return; }
+      try {
+        task.run();
+      } catch (Throwable t) {
+        logger.error("Error running timer task " + task, t);
+        synchronized (this) {
+          failure = t;
+        }
+        taskState.compareAndSet(WAITING, DONE);
+      }
+      if (period != 0 && taskState.get() == WAITING) {
+        deadline = period > 0 ? deadline + period : System.nanoTime() - period;
+        pending.add(this);
+        return;
+      }
+      synchronized (this) {
+        notifyAll();
+      }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      if (!taskState.compareAndSet(WAITING, CANCEL)) { return false; }
+      cancelled.add(this);
+      synchronized (this) {
+        notifyAll();
+      }
+      return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return taskState.get() == CANCEL;
+    }
+
+    @Override
+    public boolean isDone() {
+      return taskState.get() != WAITING;
+    }
+
+    @Override
+    public Object get() throws InterruptedException, ExecutionException {
+      synchronized (this) {
+        while (!isDone()) {
+          wait();
+        }
+      }
+      return result();
+    }
+
+    @Override
+    public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+      long end = System.nanoTime() + unit.toNanos(timeout);
+      synchronized (this) {
+        while (!isDone()) {
+          long remaining = end - System.nanoTime();
+          if (remaining <= 0) { throw new TimeoutException(); }
+          TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+      }
+      return result();
+    }
+
+    private synchronized Object result() throws ExecutionException {
+      if (isCancelled()) { throw new CancellationException(); }
+      if (failure != null) { throw new ExecutionException(failure); }
+      return null;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed o) {
+      long diff = getDelay(TimeUnit.NANOSECONDS) - o.getDelay(TimeUnit.NANOSECONDS);
+      return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+    }
+
+    @Override
+    public String toString() {
+      return "WheelTimeout[" + task + ", delay=" + getDelay(TimeUnit.MILLISECONDS) + "ms]";
+    }
+  }
+}
@@ -18,6 +18,37 @@ package com.tc.util.concurrent;
 
 public class QueueFactory {
 
+  /**
+   * The queue implementations a stage can be configured with (seda.&lt;stage&gt;.queueType).
+   */
+  public static enum QueueType {
+    /** {@link TCLinkedBlockingQueue}, any number of producers and consumers, optionally unbounded */
+    LINKED,
+    /**
+     * {@link TCMpscArrayQueue}, bounded, many producers and exactly one consumer. There is no single producer type as
+     * stage sinks are shared by any number of producing threads.
+     */
+    MPSC_ARRAY;
+
+    public boolean isSingleConsumer() {
+      return this != LINKED;
+    }
+
+    public boolean isBounded() {
+      return this != LINKED;
+    }
+
+    /**
+     * @return the QueueType for the given (case insensitive) name, "mpsc" is accepted as a short form
+     * @throws IllegalArgumentException for an unknown name
+     */
+    public static QueueType parse(String name) {
+      String n = name.trim().toUpperCase();
+      if ("MPSC".equals(n)) { return MPSC_ARRAY; }
+      return valueOf(n);
+    }
+  }
+
   /**
    * @return a TCQueue backed by LinkedBlockingQueue
    */
@@ -33,4 +64,18 @@ public class QueueFactory {
     return new TCLinkedBlockingQueue(capacity);
   }
 
+  /**
+   * @return a TCQueue of the given type with a capacity as the input parameter. Array backed queues round the capacity
+   *         up to the next power of two.
+   * @throws IllegalArgumentException if the capacity is less than or equal to zero
+   */
+  public TCQueue createInstance(QueueType type, int capacity) {
+    switch (type) {
+      case MPSC_ARRAY:
+        return new TCMpscArrayQueue(capacity);
+      default:
+        return createInstance(capacity);
+    }
+  }
+
 }
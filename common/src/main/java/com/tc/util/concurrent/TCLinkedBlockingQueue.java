@@ -16,6 +16,7 @@
  */
 package com.tc.util.concurrent;
 
+import java.util.Collection;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -45,6 +46,11 @@ public class TCLinkedBlockingQueue implements TCQueue {
     return queue.poll(timeout, TimeUnit.MILLISECONDS);
   }
 
+  @Override
+  public int drainTo(Collection c, int maxElements) {
+    return queue.drainTo(c, maxElements);
+  }
+
   @Override
   public void put(Object obj) throws InterruptedException {
     queue.put(obj);
@@ -0,0 +1,45 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.util.concurrent;
+
+/**
+ * A bounded, lock free ring buffer {@link TCQueue} that allows any number of producer threads but only a single
+ * consumer thread. Producers claim a slot with a CAS on the producer index and then publish into it, so there is no
+ * lock handoff and no node allocation per element.
+ */
+public class TCMpscArrayQueue extends AbstractTCArrayQueue {
+
+  /**
+   * @param capacity rounded up to the next power of two
+   */
+  public TCMpscArrayQueue(int capacity) {
+    super(capacity);
+  }
+
+  @Override
+  protected boolean tryOffer(Object obj) {
+    long index;
+    do {
+      index = this.producerIndex.get();
+      if (index - consumerIndex() >= this.capacity) { return false; }
+    } while (!this.producerIndex.compareAndSet(index, index + 1));
+    // volatile store so that the read of the waiting consumer in signalConsumer() cannot be reordered before it
+    this.buffer.set((int) (index & this.mask), obj);
+    signalConsumer();
+    return true;
+  }
+}
@@ -16,6 +16,8 @@
  */
 package com.tc.util.concurrent;
 
+import java.util.Collection;
+
 public interface TCQueue {
   /**
    * Adds the object in the queue
@@ -39,6 +41,13 @@ public interface TCQueue {
    * @throws InterruptedException 
    */
   public Object poll(long timeout) throws InterruptedException;
+
+  /**
+   * Removes at most maxElements items that are immediately available and adds them to the given collection, without
+   * waiting
+   * @return the number of items transferred
+   */
+  public int drainTo(Collection c, int maxElements);
   
   /**
    * Return, but do not remove object at head of Channel, or null if it is empty
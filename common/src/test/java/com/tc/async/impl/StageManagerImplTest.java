@@ -18,14 +18,29 @@ package com.tc.async.impl;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
 
+import com.tc.async.api.AbstractEventHandler;
+import com.tc.async.api.BatchEventHandler;
 import com.tc.async.api.EventContext;
 import com.tc.async.api.MultiThreadedEventContext;
 import com.tc.async.api.Stage;
+import com.tc.async.api.ThreadAffinityEventHandler;
 import com.tc.lang.TCThreadGroup;
 import com.tc.lang.ThrowableHandlerImpl;
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLogging;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.concurrent.QueueFactory;
+import com.tc.util.concurrent.ThreadUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import junit.framework.TestCase;
 
@@ -166,6 +181,56 @@ public class StageManagerImplTest extends TestCase {
     stageManager.stopAll();
   }
 
+  public void testBatchEventHandler() throws Exception {
+    TCPropertiesImpl.getProperties().setProperty("seda.testBatchStage.batchSize", "32");
+    BatchingTestEventHandler batchHandler = new BatchingTestEventHandler();
+    stageManager.createStage("testBatchStage", batchHandler, 1, 100);
+    Stage s = stageManager.getStage("testBatchStage");
+    for (int i = 0; i < 10; i++) {
+      s.getSink().add(new TestEventContext());
+    }
+    assertEquals(10, s.getSink().size());
+
+    s.start(new ConfigurationContextImpl(null));
+    batchHandler.waitForEventContextCount(10, 60, SECONDS);
+    assertEquals(10, batchHandler.getContexts().size());
+    // everything was queued before the start, the first wakeup sees a full batch
+    assertEquals(Integer.valueOf(10), batchHandler.getBatchSizes().get(0));
+    stageManager.stopAll();
+  }
+
+  public void testWorkStealingIsNotUsedForThreadAffinityHandlers() throws Exception {
+    TCPropertiesImpl.getProperties().setProperty("seda.testStealingStage.workStealing", "true");
+    TCPropertiesImpl.getProperties().setProperty("seda.testAffinityStage.workStealing", "true");
+    stageManager.createStage("testStealingStage", new TestEventHandler(), 2, 1, 100);
+    stageManager.createStage("testAffinityStage", new AffinityTestEventHandler(), 2, 1, 100);
+    assertTrue(stageManager.getStage("testStealingStage").getSink() instanceof WorkStealingStageQueueImpl);
+    assertTrue(stageManager.getStage("testAffinityStage").getSink() instanceof StageQueueImpl);
+    stageManager.stopAll();
+  }
+
+  public void testKeyOrderIsKeptWhenWorkStealingFillsBatches() throws Exception {
+    TCPropertiesImpl.getProperties().setProperty("seda.testStealingBatchStage.workStealing", "true");
+    TCPropertiesImpl.getProperties().setProperty("seda.testStealingBatchStage.batchSize", "8");
+    TCPropertiesImpl.getProperties().setProperty("seda.testStealingBatchStage.batchMaxLatencyMs", "5");
+    final int keys = 20;
+    final int contextsPerKey = 500;
+    OrderCheckingEventHandler orderHandler = new OrderCheckingEventHandler(keys, keys * contextsPerKey);
+    stageManager.createStage("testStealingBatchStage", orderHandler, 4, 1, 1000);
+    Stage s = stageManager.getStage("testStealingBatchStage");
+    assertTrue(s.getSink() instanceof WorkStealingStageQueueImpl);
+    s.start(new ConfigurationContextImpl(null));
+
+    for (int i = 0; i < contextsPerKey; i++) {
+      for (int key = 0; key < keys; key++) {
+        s.getSink().add(new SequencedEventContext(key, i));
+      }
+    }
+    assertTrue(orderHandler.done.await(60, SECONDS));
+    assertNull(orderHandler.error.get());
+    stageManager.stopAll();
+  }
+
   /*
    * @see TestCase#tearDown()
    */
@@ -174,6 +239,89 @@ public class StageManagerImplTest extends TestCase {
     super.tearDown();
   }
 
+  private static class BatchingTestEventHandler extends TestEventHandler implements BatchEventHandler {
+    private final List<Integer> batchSizes = new ArrayList<Integer>();
+
+    @Override
+    public synchronized void handleEvents(Collection contexts) {
+      batchSizes.add(Integer.valueOf(contexts.size()));
+      for (Object context : contexts) {
+        handleEvent((EventContext) context);
+      }
+    }
+
+    public synchronized List<Integer> getBatchSizes() {
+      return new ArrayList<Integer>(batchSizes);
+    }
+  }
+
+  private static class OrderCheckingEventHandler extends AbstractEventHandler implements BatchEventHandler {
+    private final AtomicInteger[]         inFlight;
+    private final int[]                   lastSeen;
+    private final AtomicReference<String> error = new AtomicReference<String>();
+    private final CountDownLatch          done;
+
+    OrderCheckingEventHandler(int keys, int contexts) {
+      this.inFlight = new AtomicInteger[keys];
+      this.lastSeen = new int[keys];
+      for (int i = 0; i < keys; i++) {
+        this.inFlight[i] = new AtomicInteger();
+        this.lastSeen[i] = -1;
+      }
+      this.done = new CountDownLatch(contexts);
+    }
+
+    @Override
+    public void handleEvent(EventContext context) {
+      handleEvents(Collections.singletonList(context));
+    }
+
+    @Override
+    public void handleEvents(Collection contexts) {
+      Set<Integer> keys = new HashSet<Integer>();
+      for (Object context : contexts) {
+        SequencedEventContext sc = (SequencedEventContext) context;
+        if (keys.add(Integer.valueOf(sc.key)) && inFlight[sc.key].incrementAndGet() != 1) {
+          error.set("key " + sc.key + " handled concurrently");
+        }
+      }
+      // give other workers the chance to pick up the keys of this batch
+      ThreadUtil.reallySleep(1);
+      for (Object context : contexts) {
+        SequencedEventContext sc = (SequencedEventContext) context;
+        if (lastSeen[sc.key] + 1 != sc.sequence) {
+          error.set("key " + sc.key + " out of order : " + lastSeen[sc.key] + " -> " + sc.sequence);
+        }
+        lastSeen[sc.key] = sc.sequence;
+      }
+      for (Integer key : keys) {
+        inFlight[key.intValue()].decrementAndGet();
+      }
+      for (int i = 0; i < contexts.size(); i++) {
+        done.countDown();
+      }
+    }
+  }
+
+  private static class SequencedEventContext implements MultiThreadedEventContext {
+    private final int key;
+    private final int sequence;
+
+    SequencedEventContext(int key, int sequence) {
+      this.key = key;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public Object getKey() {
+      return Integer.valueOf(key);
+    }
+  }
+
+  private static class AffinityTestEventHandler extends TestEventHandler implements ThreadAffinityEventHandler {
+    //
+  }
+
   private static class TestEventContext implements EventContext {
     public TestEventContext() {
       //
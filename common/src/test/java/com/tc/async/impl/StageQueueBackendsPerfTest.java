@@ -0,0 +1,130 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.async.impl;
+
+import org.junit.experimental.categories.Category;
+import org.terracotta.test.categories.PerfTests;
+
+import com.tc.async.api.EventContext;
+import com.tc.async.api.MultiThreadedEventContext;
+import com.tc.async.api.Source;
+import com.tc.logging.DefaultLoggerProvider;
+import com.tc.util.concurrent.QueueFactory;
+import com.tc.util.concurrent.QueueFactory.QueueType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the stage queue backends under a stage like load : several producer threads adding keyed contexts to the
+ * sink and one worker thread per source queue draining them, either one at a time or in batches.
+ */
+@Category(PerfTests.class)
+public class StageQueueBackendsPerfTest extends TestCase {
+  private static final int PRODUCERS             = 4;
+  private static final int WORKERS               = 4;
+  private static final int EVENTS_PER_PRODUCER   = 500000;
+  private static final int QUEUE_SIZE            = 16 * 1024;
+
+  public void testQueueBackends() throws Exception {
+    StringBuilder report = new StringBuilder();
+    for (QueueType type : QueueType.values()) {
+      for (int batchSize : new int[] { 1, 32 }) {
+        long time = runLoad(type, batchSize);
+        long rate = (PRODUCERS * (long) EVENTS_PER_PRODUCER * 1000) / Math.max(1, time);
+        report.append(type).append(" batch ").append(batchSize).append(" : ").append(time).append(" ms, ")
+            .append(rate).append(" events/s\n");
+      }
+    }
+    System.out.print("Stage queue backends :\n" + report);
+  }
+
+  private long runLoad(QueueType type, final int batchSize) throws Exception {
+    final StageQueueImpl stageQueue = new StageQueueImpl(WORKERS, 1, new QueueFactory(), type,
+                                                         new DefaultLoggerProvider(), "perf-" + type, QUEUE_SIZE);
+    final int total = PRODUCERS * EVENTS_PER_PRODUCER;
+    final AtomicLong consumed = new AtomicLong();
+    final CountDownLatch done = new CountDownLatch(WORKERS);
+    final CountDownLatch start = new CountDownLatch(1);
+
+    for (int w = 0; w < WORKERS; w++) {
+      final Source source = stageQueue.getSource(w);
+      Thread worker = new Thread("perf worker " + w) {
+        @Override
+        public void run() {
+          List<EventContext> batch = new ArrayList<EventContext>(batchSize);
+          try {
+            while (consumed.get() < total) {
+              int n = source.poll(batch, batchSize, 10);
+              batch.clear();
+              consumed.addAndGet(n);
+            }
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          } finally {
+            done.countDown();
+          }
+        }
+      };
+      worker.setDaemon(true);
+      worker.start();
+    }
+
+    for (int p = 0; p < PRODUCERS; p++) {
+      final int producer = p;
+      Thread t = new Thread("perf producer " + p) {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          }
+          for (int i = 0; i < EVENTS_PER_PRODUCER; i++) {
+            stageQueue.add(new KeyedContext(producer * 31 + (i & 63)));
+          }
+        }
+      };
+      t.setDaemon(true);
+      t.start();
+    }
+
+    long startTime = System.currentTimeMillis();
+    start.countDown();
+    done.await();
+    long time = System.currentTimeMillis() - startTime;
+    assertEquals(total, consumed.get());
+    return time;
+  }
+
+  private static class KeyedContext implements MultiThreadedEventContext {
+    private final Integer key;
+
+    KeyedContext(int key) {
+      this.key = Integer.valueOf(key);
+    }
+
+    @Override
+    public Object getKey() {
+      return key;
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.async.impl;
+
+import com.tc.async.api.EventContext;
+import com.tc.async.api.Source;
+import com.tc.logging.DefaultLoggerProvider;
+import com.tc.util.concurrent.QueueFactory;
+import com.tc.util.concurrent.QueueFactory.QueueType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class StageQueueImplTest extends TestCase {
+
+  public void testClearOfSingleConsumerQueueIsLeftToTheWorker() throws Exception {
+    StageQueueImpl queue = new StageQueueImpl(1, 1, new QueueFactory(), QueueType.MPSC_ARRAY,
+                                              new DefaultLoggerProvider(), "test", 16);
+    queue.add(new Context(0));
+    queue.add(new Context(1));
+    queue.clear();
+    // nothing is taken off the queue by the clearing thread
+    assertTrue(queue.size() >= 2);
+    queue.add(new Context(2));
+
+    Source source = queue.getSource(0);
+    Context context = (Context) source.poll(0);
+    assertEquals(2, context.sequence);
+    assertNull(source.poll(0));
+    assertEquals(0, queue.size());
+  }
+
+  public void testBatchPollDropsContextsAheadOfClear() throws Exception {
+    StageQueueImpl queue = new StageQueueImpl(1, 1, new QueueFactory(), QueueType.MPSC_ARRAY,
+                                              new DefaultLoggerProvider(), "test", 16);
+    Source source = queue.getSource(0);
+    queue.add(new Context(0));
+    List<EventContext> batch = new ArrayList<EventContext>();
+    assertEquals(1, source.poll(batch, 10, 0));
+
+    batch.clear();
+    queue.add(new Context(1));
+    queue.add(new Context(2));
+    queue.clear();
+    queue.add(new Context(3));
+    queue.add(new Context(4));
+    assertEquals(2, source.poll(batch, 10, 0));
+    assertEquals(3, ((Context) batch.get(0)).sequence);
+    assertEquals(4, ((Context) batch.get(1)).sequence);
+  }
+
+  public void testTwoPendingClears() throws Exception {
+    StageQueueImpl queue = new StageQueueImpl(1, 1, new QueueFactory(), QueueType.MPSC_ARRAY,
+                                              new DefaultLoggerProvider(), "test", 16);
+    Source source = queue.getSource(0);
+    queue.add(new Context(0));
+    queue.clear();
+    queue.add(new Context(1));
+    queue.clear();
+    queue.add(new Context(2));
+
+    List<EventContext> batch = new ArrayList<EventContext>();
+    assertEquals(1, source.poll(batch, 10, 0));
+    assertEquals(2, ((Context) batch.get(0)).sequence);
+  }
+
+  public void testClearOfFullSingleConsumerQueueDoesNotBlock() throws Exception {
+    StageQueueImpl queue = new StageQueueImpl(1, 1, new QueueFactory(), QueueType.MPSC_ARRAY,
+                                              new DefaultLoggerProvider(), "test", 2);
+    Source source = queue.getSource(0);
+    queue.add(new Context(0));
+    queue.add(new Context(1));
+    queue.clear();
+    assertNull(source.poll(0));
+    queue.add(new Context(2));
+    assertEquals(2, ((Context) source.poll(0)).sequence);
+  }
+
+  public void testLinkedQueueIsClearedRightAway() throws Exception {
+    StageQueueImpl queue = new StageQueueImpl(2, 1, new QueueFactory(), QueueType.LINKED,
+                                              new DefaultLoggerProvider(), "test", Integer.MAX_VALUE);
+    queue.add(new Context(0));
+    queue.add(new Context(1));
+    queue.clear();
+    assertEquals(0, queue.size());
+  }
+
+  private static class Context implements EventContext {
+    private final int sequence;
+
+    Context(int sequence) {
+      this.sequence = sequence;
+    }
+  }
+}
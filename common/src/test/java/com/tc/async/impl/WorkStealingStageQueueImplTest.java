@@ -0,0 +1,175 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.async.impl;
+
+import com.tc.async.api.EventContext;
+import com.tc.async.api.MultiThreadedEventContext;
+import com.tc.async.api.Source;
+import com.tc.async.api.StageQueueStats;
+import com.tc.logging.DefaultLoggerProvider;
+import com.tc.stats.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class WorkStealingStageQueueImplTest extends TestCase {
+
+  private static final int KEYS = 100;
+
+  public void testIdleWorkerTakesOverKeyGroups() throws Exception {
+    WorkStealingStageQueueImpl queue = new WorkStealingStageQueueImpl(2, 8, new DefaultLoggerProvider(), "test",
+                                                                      Integer.MAX_VALUE);
+    // key groups 0, 2, 4 and 6 are homed on worker 0
+    queue.add(new KeyedContext(0, 0));
+    queue.add(new KeyedContext(2, 0));
+    assertEquals(2, queue.size());
+
+    Source idle = queue.getSource(1);
+    List<EventContext> batch = new ArrayList<EventContext>();
+    assertEquals(1, idle.poll(batch, 1, 0));
+    assertEquals(1, ((StageQueueStats) queue.getStats(0)).getStealCount());
+    assertEquals(1, queue.getSource(0).poll(batch, 10, 0));
+    assertEquals(0, queue.size());
+  }
+
+  public void testQueueWaitIsRecorded() throws Exception {
+    WorkStealingStageQueueImpl queue = new WorkStealingStageQueueImpl(2, 8, new DefaultLoggerProvider(), "test", 10);
+    queue.add(new KeyedContext(1, 0));
+    LatencyHistogram queueWait = new LatencyHistogram(1);
+    queue.setQueueWaitHistogram(queueWait);
+    queue.add(new KeyedContext(1, 1));
+    queue.add(new KeyedContext(1, 2));
+
+    List<EventContext> batch = new ArrayList<EventContext>();
+    assertEquals(3, queue.getSource(1).poll(batch, 10, 0));
+    for (int i = 0; i < batch.size(); i++) {
+      assertEquals(i, ((KeyedContext) batch.get(i)).sequence);
+    }
+    // the context added before the histogram was set carries no timestamp
+    assertEquals(2, queueWait.snapshot().getCount());
+  }
+
+  public void testKeyGroupsStayOwnedWhileTheBatchIsFilled() throws Exception {
+    WorkStealingStageQueueImpl queue = new WorkStealingStageQueueImpl(2, 4, new DefaultLoggerProvider(), "test",
+                                                                      Integer.MAX_VALUE);
+    // key groups 0 and 2 are homed on worker 0
+    queue.add(new KeyedContext(0, 0));
+    queue.add(new KeyedContext(2, 0));
+    Source owner = queue.getSource(0);
+    Source idle = queue.getSource(1);
+
+    List<EventContext> batch = new ArrayList<EventContext>();
+    assertEquals(2, owner.poll(batch, 2, 0));
+    queue.add(new KeyedContext(0, 1));
+    queue.add(new KeyedContext(2, 1));
+    // topping up the unhandled batch must not hand key 0 to another worker
+    assertEquals(1, owner.poll(batch, 1, 0));
+    List<EventContext> stolen = new ArrayList<EventContext>();
+    assertEquals(0, idle.poll(stolen, 10, 0));
+
+    batch.clear();
+    assertEquals(1, owner.poll(batch, 10, 0));
+    assertEquals(0, ((KeyedContext) batch.get(0)).key);
+    assertEquals(1, ((KeyedContext) batch.get(0)).sequence);
+  }
+
+  public void testKeyOrderIsKept() throws Exception {
+    final int workers = 4;
+    final int contextsPerKey = 2000;
+    final WorkStealingStageQueueImpl queue = new WorkStealingStageQueueImpl(workers, workers * 4,
+                                                                            new DefaultLoggerProvider(), "test", 1000);
+    final AtomicInteger[] inFlight = new AtomicInteger[KEYS];
+    final int[] lastSeen = new int[KEYS];
+    for (int i = 0; i < KEYS; i++) {
+      inFlight[i] = new AtomicInteger();
+      lastSeen[i] = -1;
+    }
+    final AtomicReference<String> error = new AtomicReference<String>();
+    final CountDownLatch done = new CountDownLatch(3 * contextsPerKey + (KEYS - 3) * (contextsPerKey / 10));
+
+    for (int w = 0; w < workers; w++) {
+      final Source source = queue.getSource(w);
+      final int batchSize = w + 1;
+      Thread worker = new Thread("worker " + w) {
+        @Override
+        public void run() {
+          List<EventContext> batch = new ArrayList<EventContext>();
+          try {
+            while (true) {
+              batch.clear();
+              source.poll(batch, batchSize, 100);
+              for (EventContext context : batch) {
+                KeyedContext kc = (KeyedContext) context;
+                if (inFlight[kc.key].incrementAndGet() != 1) {
+                  error.set("key " + kc.key + " handled concurrently");
+                }
+                if (lastSeen[kc.key] + 1 != kc.sequence) {
+                  error.set("key " + kc.key + " out of order : " + lastSeen[kc.key] + " -> " + kc.sequence);
+                }
+                lastSeen[kc.key] = kc.sequence;
+                inFlight[kc.key].decrementAndGet();
+                done.countDown();
+              }
+            }
+          } catch (InterruptedException e) {
+            // exit
+          }
+        }
+      };
+      worker.setDaemon(true);
+      worker.start();
+    }
+
+    int total = 0;
+    int[] nextSequence = new int[KEYS];
+    for (int i = 0; i < contextsPerKey; i++) {
+      for (int key = 0; key < KEYS; key++) {
+        // a few hot keys get most of the contexts
+        if (key < 3 || i % 10 == 0) {
+          queue.add(new KeyedContext(key, nextSequence[key]++));
+          total++;
+        }
+      }
+    }
+    assertTrue(done.await(60, TimeUnit.SECONDS));
+    assertNull(error.get());
+    assertEquals(0, queue.size());
+    assertEquals(0, done.getCount());
+    assertEquals(total, 3 * contextsPerKey + (KEYS - 3) * (contextsPerKey / 10));
+  }
+
+  private static class KeyedContext implements MultiThreadedEventContext {
+    private final int key;
+    private final int sequence;
+
+    KeyedContext(int key, int sequence) {
+      this.key = key;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public Object getKey() {
+      return Integer.valueOf(key);
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.stats;
+
+import org.junit.experimental.categories.Category;
+import org.terracotta.test.categories.CheckShorts;
+
+import junit.framework.TestCase;
+
+@Category(CheckShorts.class)
+public class LatencyHistogramTest extends TestCase {
+
+  public void testBuckets() {
+    int previous = -1;
+    for (long value = 0; value < 100000; value++) {
+      int bucket = LatencyHistogram.bucketFor(value);
+      assertTrue(bucket == previous || bucket == previous + 1);
+      assertTrue(value <= LatencyHistogram.highestValueIn(bucket));
+      if (bucket > 0) {
+        assertTrue(value > LatencyHistogram.highestValueIn(bucket - 1));
+      }
+      previous = bucket;
+    }
+    assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketFor(Long.MAX_VALUE));
+  }
+
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram(4);
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i * 1000L);
+    }
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(1000, snapshot.getCount());
+    assertEquals(500500, snapshot.getMean());
+    assertEquals(1000000, snapshot.getMax());
+    assertWithin(500000, snapshot.getPercentile(50));
+    assertWithin(990000, snapshot.getPercentile(99));
+    assertEquals(1000000, snapshot.getPercentile(100));
+
+    histogram.reset();
+    assertEquals(0, histogram.snapshot().getCount());
+    assertEquals(0, histogram.snapshot().getPercentile(50));
+  }
+
+  public void testConcurrentRecording() throws Exception {
+    final LatencyHistogram histogram = new LatencyHistogram(8);
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 100000; j++) {
+            histogram.record(j, 2);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(threads.length * 200000L, histogram.snapshot().getCount());
+    assertEquals(99999, histogram.snapshot().getMax());
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue(actual + " is not within 25% of " + expected, actual >= expected && actual <= expected * 1.25);
+  }
+}
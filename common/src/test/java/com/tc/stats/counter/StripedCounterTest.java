@@ -0,0 +1,118 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.stats.counter;
+
+import com.tc.stats.counter.sampled.SampledCounter;
+import com.tc.stats.counter.sampled.SampledCounterConfig;
+import com.tc.stats.counter.sampled.TimeStampedCounterValue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class StripedCounterTest extends TestCase {
+
+  public void testInitialValue() {
+    Counter counter = new CounterImpl(42L, true);
+    assertEquals(42L, counter.getValue());
+    counter.increment();
+    counter.decrement(3);
+    assertEquals(40L, counter.getValue());
+    assertEquals(40L, counter.getAndSet(7L));
+    assertEquals(7L, counter.getValue());
+    counter.setValue(-1L);
+    assertEquals(-1L, counter.getValue());
+  }
+
+  public void testConcurrentIncrements() throws InterruptedException {
+    final Counter counter = new CounterImpl(0L, true);
+    Thread[] threads = startThreads(16, new Runnable() {
+      @Override
+      public void run() {
+        for (int n = 0; n < 100000; n++) {
+          counter.increment();
+          counter.increment(3);
+          counter.decrement();
+        }
+      }
+    });
+    join(threads);
+    assertEquals(16 * 100000 * 3L, counter.getValue());
+  }
+
+  public void testResetLosesNoUpdates() throws Throwable {
+    final Counter counter = new CounterImpl(0L, true);
+    final AtomicLong reset = new AtomicLong();
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+    final CountDownLatch done = new CountDownLatch(8);
+    Thread[] threads = startThreads(8, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          for (int n = 0; n < 100000; n++) {
+            counter.increment();
+          }
+        } catch (Throwable t) {
+          error.set(t);
+        } finally {
+          done.countDown();
+        }
+      }
+    });
+    while (done.getCount() > 0) {
+      reset.addAndGet(counter.getAndSet(0L));
+    }
+    join(threads);
+    if (error.get() != null) { throw error.get(); }
+    assertEquals(8 * 100000L, reset.get() + counter.getValue());
+  }
+
+  public void testManagerCreatesStripedSampledCounters() {
+    CounterManager manager = new CounterManagerImpl(true);
+    try {
+      SampledCounter counter = (SampledCounter) manager.createCounter(new SampledCounterConfig(1, 300, true, 0L));
+      assertTrue(((CounterImpl) counter).isStriped());
+      counter.increment(5);
+      assertEquals(5L, counter.getValue());
+
+      TimeStampedCounterValue sample = counter.getMostRecentSample();
+      assertSame(sample, counter.getMostRecentSample());
+
+      Counter bounded = manager.createCounter(new BoundedCounterConfig(0L, 0L, 10L));
+      assertFalse(((CounterImpl) bounded).isStriped());
+    } finally {
+      manager.shutdown();
+    }
+  }
+
+  private static Thread[] startThreads(int count, Runnable task) {
+    Thread[] threads = new Thread[count];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(task);
+      threads[i].start();
+    }
+    return threads;
+  }
+
+  private static void join(Thread[] threads) throws InterruptedException {
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+}
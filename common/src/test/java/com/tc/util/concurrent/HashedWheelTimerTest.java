@@ -0,0 +1,130 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.util.concurrent;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+public class HashedWheelTimerTest extends TestCase {
+  private HashedWheelTimer timer;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    timer = new HashedWheelTimer("test wheel", 5, TimeUnit.MILLISECONDS, 8);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    timer.cancel();
+    super.tearDown();
+  }
+
+  public void testNeverExpiresEarly() throws Exception {
+    timer.start();
+    final int count = 50;
+    final CountDownLatch done = new CountDownLatch(count);
+    final AtomicInteger early = new AtomicInteger();
+    for (int i = 0; i < count; i++) {
+      // spans several rounds of the 8 tick wheel
+      final long delay = i * 3;
+      final long scheduledAt = System.nanoTime();
+      timer.schedule(new Runnable() {
+        @Override
+        public void run() {
+          if (System.nanoTime() - scheduledAt < TimeUnit.MILLISECONDS.toNanos(delay)) {
+            early.incrementAndGet();
+          }
+          done.countDown();
+        }
+      }, delay, TimeUnit.MILLISECONDS);
+    }
+    assertTrue(done.await(30, TimeUnit.SECONDS));
+    assertEquals(0, early.get());
+  }
+
+  public void testCancelledTaskDoesNotRun() throws Exception {
+    timer.start();
+    final AtomicInteger runs = new AtomicInteger();
+    Runnable task = new Runnable() {
+      @Override
+      public void run() {
+        runs.incrementAndGet();
+      }
+    };
+    ScheduledFuture<?> cancelled = timer.schedule(task, 50, TimeUnit.MILLISECONDS);
+    ScheduledFuture<?> kept = timer.schedule(task, 50, TimeUnit.MILLISECONDS);
+    assertTrue(cancelled.cancel(false));
+    assertTrue(cancelled.isCancelled());
+    kept.get(30, TimeUnit.SECONDS);
+    assertTrue(kept.isDone());
+    assertFalse(kept.cancel(false));
+    assertEquals(1, runs.get());
+  }
+
+  public void testTasksScheduledBeforeStart() throws Exception {
+    final CountDownLatch ran = new CountDownLatch(1);
+    ScheduledFuture<?> future = timer.schedule(new Runnable() {
+      @Override
+      public void run() {
+        ran.countDown();
+      }
+    }, 10, TimeUnit.MILLISECONDS);
+    assertFalse(ran.await(100, TimeUnit.MILLISECONDS));
+    assertTrue(future.getDelay(TimeUnit.MILLISECONDS) < 0);
+    timer.start();
+    assertTrue(ran.await(30, TimeUnit.SECONDS));
+  }
+
+  public void testFixedDelayRepeatsUntilCancelled() throws Exception {
+    timer.start();
+    final CountDownLatch threeRuns = new CountDownLatch(3);
+    final AtomicLong lastRun = new AtomicLong();
+    ScheduledFuture<?> future = timer.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        lastRun.set(System.nanoTime());
+        threeRuns.countDown();
+      }
+    }, 0, 10, TimeUnit.MILLISECONDS);
+    assertTrue(threeRuns.await(30, TimeUnit.SECONDS));
+    assertTrue(future.cancel(false));
+    long cancelledAt = System.nanoTime();
+    Thread.sleep(100);
+    assertTrue(lastRun.get() <= cancelledAt);
+  }
+
+  public void testScheduleAfterCancelIsRejected() {
+    timer.cancel();
+    try {
+      timer.schedule(new Runnable() {
+        @Override
+        public void run() {
+          //
+        }
+      }, 1, TimeUnit.MILLISECONDS);
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.util.concurrent;
+
+import com.tc.test.TCTestCase;
+import com.tc.util.concurrent.QueueFactory.QueueType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class TCArrayQueueTest extends TCTestCase {
+
+  public void testFactory() {
+    QueueFactory factory = new QueueFactory();
+    assertTrue(factory.createInstance(QueueType.LINKED, 10) instanceof TCLinkedBlockingQueue);
+    assertTrue(factory.createInstance(QueueType.MPSC_ARRAY, 10) instanceof TCMpscArrayQueue);
+    assertEquals(QueueType.MPSC_ARRAY, QueueType.parse("mpsc"));
+    assertEquals(QueueType.MPSC_ARRAY, QueueType.parse(" Mpsc_Array "));
+    assertEquals(QueueType.LINKED, QueueType.parse("linked"));
+    for (String name : new String[] { "ring", "spsc" }) {
+      try {
+        QueueType.parse(name);
+        fail(name);
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  public void testCapacity() throws Exception {
+    TCMpscArrayQueue queue = new TCMpscArrayQueue(100);
+    assertEquals(128, queue.capacity());
+    for (int i = 0; i < 128; i++) {
+      assertTrue(queue.offer(Integer.valueOf(i), 0));
+    }
+    assertEquals(128, queue.size());
+    assertFalse(queue.offer(Integer.valueOf(128), 10));
+    assertEquals(Integer.valueOf(0), queue.peek());
+    assertEquals(Integer.valueOf(0), queue.poll(0));
+    assertTrue(queue.offer(Integer.valueOf(128), 0));
+    for (int i = 1; i <= 128; i++) {
+      assertEquals(Integer.valueOf(i), queue.take());
+    }
+    assertTrue(queue.isEmpty());
+    assertNull(queue.poll(10));
+
+    try {
+      new TCMpscArrayQueue(0);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testDrainTo() throws Exception {
+    TCQueue[] queues = new TCQueue[] { new TCLinkedBlockingQueue(64), new TCMpscArrayQueue(64) };
+    for (TCQueue queue : queues) {
+      for (int i = 0; i < 10; i++) {
+        queue.put(Integer.valueOf(i));
+      }
+      List drained = new ArrayList();
+      assertEquals(4, queue.drainTo(drained, 4));
+      assertEquals(6, queue.drainTo(drained, 100));
+      assertEquals(0, queue.drainTo(drained, 100));
+      for (int i = 0; i < 10; i++) {
+        assertEquals(Integer.valueOf(i), drained.get(i));
+      }
+    }
+  }
+
+  public void testBlockedConsumerIsWokenUp() throws Exception {
+    final TCQueue queue = new TCMpscArrayQueue(16);
+    final Object[] taken = new Object[1];
+    Thread consumer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          taken[0] = queue.poll(60 * 1000);
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+      }
+    };
+    consumer.start();
+    ThreadUtil.reallySleep(200);
+    queue.put("wakeup");
+    consumer.join(30 * 1000);
+    assertFalse(consumer.isAlive());
+    assertEquals("wakeup", taken[0]);
+  }
+
+  public void testMultipleProducers() throws Exception {
+    final int producers = 4;
+    final int perProducer = 100000;
+    final TCQueue queue = new TCMpscArrayQueue(1024);
+    final CountDownLatch start = new CountDownLatch(1);
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            for (int i = 0; i < perProducer; i++) {
+              queue.put(new int[] { producer, i });
+            }
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          }
+        }
+      }.start();
+    }
+    start.countDown();
+
+    int[] lastSeen = new int[producers];
+    for (int p = 0; p < producers; p++) {
+      lastSeen[p] = -1;
+    }
+    for (int i = 0; i < producers * perProducer; i++) {
+      int[] e = (int[]) queue.poll(60 * 1000);
+      assertNotNull(e);
+      // per producer FIFO order must be kept
+      assertEquals(lastSeen[e[0]] + 1, e[1]);
+      lastSeen[e[0]] = e[1];
+    }
+    assertTrue(queue.isEmpty());
+  }
+}
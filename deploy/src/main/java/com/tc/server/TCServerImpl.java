@@ -1051,7 +1051,8 @@ public class TCServerImpl extends SEDA implements TCServer {
     TerracottaOperatorEventHistoryProvider operatorEventHistoryProvider = this.dsoServer
         .getOperatorEventsHistoryProvider();
     DSOMBean dso = new DSO(mgmtContext, configContext, mBeanServer, gcStatsPublisher, operatorEventHistoryProvider,
-                           this.dsoServer.getOffheapStats(), this.dsoServer.getStorageStats());
+                           this.dsoServer.getOffheapStats(), this.dsoServer.getStorageStats(),
+                           this.dsoServer.getStageManager());
     mBeanServer.registerMBean(dso, L2MBeanNames.DSO);
   }
 
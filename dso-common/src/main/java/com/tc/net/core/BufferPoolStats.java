@@ -0,0 +1,64 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.core;
+
+/**
+ * Hit and miss counts of the socket buffer pools of one or more comm threads.
+ */
+public final class BufferPoolStats {
+  public static final BufferPoolStats NONE = new BufferPoolStats(0, 0, 0);
+
+  private final long                  hits;
+  private final long                  misses;
+  private final long                  pooledBytes;
+
+  public BufferPoolStats(long hits, long misses, long pooledBytes) {
+    this.hits = hits;
+    this.misses = misses;
+    this.pooledBytes = pooledBytes;
+  }
+
+  /**
+   * @return number of buffers handed out from the pools
+   */
+  public long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return number of buffers that had to be allocated because the pools had none of the requested size
+   */
+  public long getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return bytes currently kept in the pools
+   */
+  public long getPooledBytes() {
+    return pooledBytes;
+  }
+
+  public BufferPoolStats add(BufferPoolStats other) {
+    return new BufferPoolStats(hits + other.hits, misses + other.misses, pooledBytes + other.pooledBytes);
+  }
+
+  @Override
+  public String toString() {
+    return "[hits: " + hits + ", misses: " + misses + ", pooled bytes: " + pooledBytes + "]";
+  }
+}
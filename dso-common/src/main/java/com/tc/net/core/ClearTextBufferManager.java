@@ -27,15 +27,23 @@ import java.nio.channels.ScatteringByteChannel;
 import java.nio.channels.SocketChannel;
 
 /**
+ * The send and receive buffers are borrowed from the {@link DirectBufferPool} of the comm thread that first needs them
+ * and given back as soon as they are empty again. Each is guarded by its own lock since the connection may be closed
+ * from any thread while a comm thread is using them.
+ * <p>
+ * Scattering reads and gathering writes on a comm thread go through a direct buffer borrowed from its pool for the one
+ * socket call when any of the message buffers is a heap buffer, the JDK would copy those through a temporary direct
+ * buffer of its own otherwise.
+ *
  * @author Ludovic Orban
  */
-class ClearTextBufferManager implements BufferManager {
+class ClearTextBufferManager implements GatheringBufferManager {
   private static final TCLogger logger         = TCLogging.getLogger(ClearTextBufferManager.class);
   private static final String   BUFFER_SIZE    = "clear.text.buffer.size";
   private static final int      BUFFER_SIZE_KB = Integer.getInteger(BUFFER_SIZE, 16) * 1024;
   private final SocketChannel   channel;
-  private final ByteBuffer      sendBuffer     = ByteBuffer.allocate(BUFFER_SIZE_KB);
-  private final ByteBuffer      recvBuffer     = ByteBuffer.allocate(BUFFER_SIZE_KB);
+  private final PooledBuffer    sendBuffer     = new PooledBuffer(BUFFER_SIZE_KB);
+  private final PooledBuffer    recvBuffer     = new PooledBuffer(BUFFER_SIZE_KB);
 
   ClearTextBufferManager(SocketChannel channel) {
     this.channel = channel;
@@ -46,60 +54,203 @@ class ClearTextBufferManager implements BufferManager {
 
   @Override
   public boolean remainingToSend() {
-    int remaining = sendBuffer.position();
-    return remaining != 0;
+    synchronized (sendBuffer) {
+      return !sendBuffer.isEmpty();
+    }
   }
 
   @Override
   public int sendFromBuffer() throws IOException {
-    sendBuffer.flip();
     int written;
-    try {
-      written = this.channel.write(sendBuffer);
-    } finally {
-      sendBuffer.compact();
+    synchronized (sendBuffer) {
+      if (sendBuffer.isEmpty()) { return 0; }
+      ByteBuffer buffer = sendBuffer.get();
+      buffer.flip();
+      try {
+        written = this.channel.write(buffer);
+      } finally {
+        buffer.compact();
+        sendBuffer.releaseIfEmpty();
+      }
     }
     if (written == -1) { throw new EOFException(); }
     return written;
   }
 
+  @Override
+  public long sendFromBuffers(ByteBuffer[] srcs, int offset, int length) throws IOException {
+    long sent = 0;
+    if (remainingToSend()) {
+      sent = sendFromBuffer();
+      if (remainingToSend()) { return sent; }
+    }
+    DirectBufferPool pool = stagingPoolFor(srcs, offset, length);
+    long written = pool != null ? sendThroughPool(pool, srcs, offset, length)
+        : this.channel.write(srcs, offset, length);
+    if (written == -1) { throw new EOFException(); }
+    return sent + written;
+  }
+
+  /**
+   * Copies as much of srcs as fits into a pooled buffer and writes that. The sources are only moved past the bytes
+   * the channel took.
+   */
+  long sendThroughPool(DirectBufferPool pool, ByteBuffer[] srcs, int offset, int length) throws IOException {
+    ByteBuffer staging = pool.acquire(stagingSize(srcs, offset, length));
+    try {
+      for (int i = offset; i < offset + length && staging.hasRemaining(); i++) {
+        forwardBuffer(srcs[i].duplicate(), staging);
+      }
+      staging.flip();
+      long written = this.channel.write(staging);
+      long left = written;
+      for (int i = offset; i < offset + length && left > 0; i++) {
+        int skipped = (int) Math.min(left, srcs[i].remaining());
+        srcs[i].position(srcs[i].position() + skipped);
+        left -= skipped;
+      }
+      return written;
+    } finally {
+      pool.release(staging);
+    }
+  }
+
+  /**
+   * Reads no more than dsts can take into a pooled buffer and spreads it over dsts.
+   */
+  long recvThroughPool(DirectBufferPool pool, ByteBuffer[] dsts, int offset, int length) throws IOException {
+    int size = stagingSize(dsts, offset, length);
+    ByteBuffer staging = pool.acquire(size);
+    try {
+      staging.limit(size);
+      int read = this.channel.read(staging);
+      if (read > 0) {
+        staging.flip();
+        for (int i = offset; i < offset + length && staging.hasRemaining(); i++) {
+          forwardBuffer(staging, dsts[i]);
+        }
+      }
+      return read;
+    } finally {
+      pool.release(staging);
+    }
+  }
+
+  /**
+   * @return the pool of the calling comm thread if any of the buffers is a heap buffer, null otherwise
+   */
+  private static DirectBufferPool stagingPoolFor(ByteBuffer[] buffers, int offset, int length) {
+    for (int i = offset; i < offset + length; i++) {
+      if (!buffers[i].isDirect()) { return DirectBufferPool.forCurrentThread(); }
+    }
+    return null;
+  }
+
+  private static int stagingSize(ByteBuffer[] buffers, int offset, int length) {
+    long size = 0;
+    for (int i = offset; i < offset + length; i++) {
+      size += buffers[i].remaining();
+    }
+    return (int) Math.min(size, DirectBufferPool.MAX_SIZE);
+  }
+
+  @Override
+  public long recvToBuffers(ByteBuffer[] dsts, int offset, int length) throws IOException {
+    long forwarded = 0;
+    synchronized (recvBuffer) {
+      if (!recvBuffer.isEmpty()) {
+        ByteBuffer buffer = recvBuffer.get();
+        buffer.flip();
+        for (int i = offset; i < offset + length && buffer.hasRemaining(); i++) {
+          forwarded += forwardBuffer(buffer, dsts[i]);
+        }
+        buffer.compact();
+        recvBuffer.releaseIfEmpty();
+        if (!recvBuffer.isEmpty()) { return forwarded; }
+      }
+    }
+    DirectBufferPool pool = stagingPoolFor(dsts, offset, length);
+    long read = pool != null ? recvThroughPool(pool, dsts, offset, length) : this.channel.read(dsts, offset, length);
+    if (read == -1) {
+      if (forwarded > 0) { return forwarded; }
+      throw new EOFException();
+    }
+    return forwarded + read;
+  }
+
   @Override
   public int recvToBuffer() throws IOException {
-    int read = this.channel.read(recvBuffer);
+    int read;
+    synchronized (recvBuffer) {
+      try {
+        read = this.channel.read(recvBuffer.get());
+      } finally {
+        recvBuffer.releaseIfEmpty();
+      }
+    }
     if (read == -1) { throw new EOFException(); }
     return read;
   }
 
   @Override
   public void close() {
-    //
+    synchronized (sendBuffer) {
+      sendBuffer.close();
+    }
+    synchronized (recvBuffer) {
+      recvBuffer.close();
+    }
   }
 
   @Override
   public int forwardFromReadBuffer(ByteBuffer dest) {
-    recvBuffer.flip();
-    int forwarded = forwardBuffer(recvBuffer, dest);
-    recvBuffer.compact();
-    return forwarded;
+    synchronized (recvBuffer) {
+      if (recvBuffer.isEmpty()) { return 0; }
+      ByteBuffer buffer = recvBuffer.get();
+      buffer.flip();
+      int forwarded = forwardBuffer(buffer, dest);
+      buffer.compact();
+      recvBuffer.releaseIfEmpty();
+      return forwarded;
+    }
   }
 
   @Override
   public int forwardFromReadBuffer(GatheringByteChannel gbc) throws IOException {
-    recvBuffer.flip();
-    int forwarded = gbc.write(recvBuffer);
-    recvBuffer.compact();
+    int forwarded;
+    synchronized (recvBuffer) {
+      if (recvBuffer.isEmpty()) { return 0; }
+      ByteBuffer buffer = recvBuffer.get();
+      buffer.flip();
+      try {
+        forwarded = gbc.write(buffer);
+      } finally {
+        buffer.compact();
+        recvBuffer.releaseIfEmpty();
+      }
+    }
     if (forwarded == -1) { throw new EOFException(); }
     return forwarded;
   }
 
   @Override
   public int forwardToWriteBuffer(ByteBuffer src) {
-    return forwardBuffer(src, sendBuffer);
+    if (!src.hasRemaining()) { return 0; }
+    synchronized (sendBuffer) {
+      return forwardBuffer(src, sendBuffer.get());
+    }
   }
 
   @Override
   public int forwardToWriteBuffer(ScatteringByteChannel sbc) throws IOException {
-    int read = sbc.read(sendBuffer);
+    int read;
+    synchronized (sendBuffer) {
+      try {
+        read = sbc.read(sendBuffer.get());
+      } finally {
+        sendBuffer.releaseIfEmpty();
+      }
+    }
     if (read == -1) { throw new EOFException(); }
     return read;
   }
@@ -114,4 +265,47 @@ class ClearTextBufferManager implements BufferManager {
     }
     return size;
   }
+
+  /**
+   * A buffer in write mode, borrowed on first use. Callers synchronize on the instance. Outside of comm threads, or with
+   * pooling disabled, a heap buffer is allocated and kept like before. Once closed it stays a zero length buffer so
+   * that late reads and writes move nothing.
+   */
+  private static final class PooledBuffer {
+    private final int        size;
+    private ByteBuffer       buffer;
+    private DirectBufferPool pool;
+
+    PooledBuffer(int size) {
+      this.size = size;
+    }
+
+    ByteBuffer get() {
+      if (buffer == null) {
+        pool = DirectBufferPool.forCurrentThread();
+        buffer = pool != null ? pool.acquire(size) : ByteBuffer.allocate(size);
+      }
+      return buffer;
+    }
+
+    boolean isEmpty() {
+      return buffer == null || buffer.position() == 0;
+    }
+
+    void releaseIfEmpty() {
+      if (pool != null && buffer.position() == 0) {
+        pool.release(buffer);
+        pool = null;
+        buffer = null;
+      }
+    }
+
+    void close() {
+      if (pool != null) {
+        pool.release(buffer);
+        pool = null;
+      }
+      buffer = ByteBuffer.allocate(0);
+    }
+  }
 }
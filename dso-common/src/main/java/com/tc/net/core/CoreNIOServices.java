@@ -25,6 +25,8 @@ import com.tc.net.core.event.TCConnectionEvent;
 import com.tc.net.core.event.TCConnectionEventListener;
 import com.tc.net.core.event.TCListenerEvent;
 import com.tc.net.core.event.TCListenerEventListener;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.Assert;
 import com.tc.util.Util;
 import com.tc.util.concurrent.SetOnceFlag;
@@ -46,12 +48,14 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Objects;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -62,18 +66,27 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 
 class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListener {
-  private static final TCLogger                logger        = TCLogging.getLogger(CoreNIOServices.class);
+  private static final TCLogger                logger                = TCLogging.getLogger(CoreNIOServices.class);
+  private static final long                    BUFFER_POOL_MAX_BYTES = TCPropertiesImpl.getProperties()
+                                                                         .getLong(TCPropertiesConsts.TC_MESSAGE_BUFFER_POOL_MAX_KB,
+                                                                                  4096) * 1024;
+  // how long a migration waits for a comm thread to take a connection off its selector
+  private static final long                    MIGRATION_TIMEOUT_MS  = 1000;
+  private static final int                     TASK_QUEUED           = 0;
+  private static final int                     TASK_STARTED          = 1;
+  private static final int                     TASK_CANCELLED        = 2;
   private final TCWorkerCommManager            workerCommMgr;
   private final String                         commThreadName;
   private final SocketParams                   socketParams;
   private final CommThread                     readerComm;
   private final CommThread                     writerComm;
-  private final SetOnceFlag                    stopRequested = new SetOnceFlag();
+  private final SetOnceFlag                    stopRequested         = new SetOnceFlag();
 
   // maintains weight of all L1 Connections which is handled by this WorkerComm
   private final HashMap<TCConnection, Integer> managedConnectionsMap;
   private int                                  clientWeights;
-  private final List                           listeners     = new ArrayList();
+  private volatile long                        load;
+  private final List                           listeners             = new ArrayList();
   private String                               listenerString;
 
   private static enum COMM_THREAD_MODE {
@@ -168,12 +181,38 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     return readerComm.getTotalBytesWritten() + writerComm.getTotalBytesWritten();
   }
 
+  public BufferPoolStats getBufferPoolStats() {
+    return readerComm.getBufferPoolStats().add(writerComm.getBufferPoolStats());
+  }
+
   public int getWeight() {
     synchronized (managedConnectionsMap) {
       return this.clientWeights;
     }
   }
 
+  /**
+   * @return bytes moved plus the cost of the selector events caused by the connections of this worker comm during the
+   *         last balancing interval, see {@link WorkerCommBalancer}
+   */
+  public long getLoad() {
+    return this.load;
+  }
+
+  void setLoad(long load) {
+    this.load = load;
+  }
+
+  List<TCConnectionImpl> getManagedConnections() {
+    synchronized (managedConnectionsMap) {
+      List<TCConnectionImpl> connections = new ArrayList<TCConnectionImpl>(managedConnectionsMap.size());
+      for (TCConnection connection : managedConnectionsMap.keySet()) {
+        connections.add((TCConnectionImpl) connection);
+      }
+      return connections;
+    }
+  }
+
   protected CommThread getReaderComm() {
     return this.readerComm;
   }
@@ -212,6 +251,82 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     workerComm.requestReadWriteInterest(connection, channel);
   }
 
+  /**
+   * Moves a connection managed by this worker comm over to another one. The connection is pointed at the other worker
+   * comm first, so that interest requests made from now on go there. Then its channel is taken off the selectors of
+   * this worker comm, which waits for a read or write in progress to finish. Finally the channel is registered with the
+   * selectors of the other worker comm, with the interest it had here. Queued messages and buffered data stay with the
+   * connection, so nothing is dropped or handled twice.
+   * <p>
+   * Must not be called from a comm thread. Nothing is moved if the comm threads of either worker comm are not running,
+   * and the connection stays where it is if a comm thread of this worker comm does not get to taking the channel off
+   * its selector within {@link #MIGRATION_TIMEOUT_MS}.
+   *
+   * @return false if the connection was not moved
+   */
+  boolean migrateConnection(TCConnectionImpl connection, SocketChannel channel, CoreNIOServices target) {
+    if (!isRunning() || !target.isRunning()) { return false; }
+    final Integer weight;
+    synchronized (managedConnectionsMap) {
+      weight = managedConnectionsMap.remove(connection);
+      if (weight == null) { return false; }
+      this.clientWeights -= weight;
+      connection.removeListener(this);
+    }
+
+    connection.setCommWorker(target);
+    int readOps = readerComm.unregister(channel, MIGRATION_TIMEOUT_MS);
+    int writeOps = readOps < 0 ? -1 : writerComm.unregister(channel, MIGRATION_TIMEOUT_MS);
+    if (writeOps < 0) {
+      logger.warn("Timed out taking " + connection + " off " + this + ", not moving it");
+      abortMigration(connection, channel, target, weight, readOps);
+      return false;
+    }
+    target.addConnection(connection, weight);
+    target.readerComm.addInterest(connection, channel, readOps);
+    target.writerComm.addInterest(connection, channel, writeOps);
+
+    if (connection.isClosed()) {
+      // closed while moving, the close event might have gone to neither worker comm
+      target.forgetConnection(connection);
+    }
+    return true;
+  }
+
+  /**
+   * Points the connection back at this worker comm. Its channel is still registered with the selectors here, except
+   * with the reader's if that one got unregistered before the writer timed out. Interest requested while the
+   * connection pointed at the target may have registered the channel with the target's selectors, the target's comm
+   * threads hand that back.
+   */
+  private void abortMigration(TCConnectionImpl connection, SocketChannel channel, CoreNIOServices target,
+                              int weight, int readOps) {
+    connection.setCommWorker(this);
+    addConnection(connection, weight);
+    if (readOps > 0) {
+      readerComm.addInterest(connection, channel, readOps);
+    }
+    target.readerComm.handBack(connection, channel, readerComm);
+    target.writerComm.handBack(connection, channel, writerComm);
+    if (connection.isClosed()) {
+      forgetConnection(connection);
+    }
+  }
+
+  boolean isRunning() {
+    return !stopRequested.isSet() && readerComm.isAlive() && writerComm.isAlive();
+  }
+
+  private void forgetConnection(TCConnectionImpl connection) {
+    synchronized (managedConnectionsMap) {
+      Integer weight = managedConnectionsMap.remove(connection);
+      if (weight != null) {
+        this.clientWeights -= weight;
+        connection.removeListener(this);
+      }
+    }
+  }
+
   private void addConnection(TCConnectionImpl connection, int initialWeight) {
     synchronized (managedConnectionsMap) {
       Assert.eval(!managedConnectionsMap.containsKey(connection));
@@ -249,7 +364,7 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
 
   @Override
   public synchronized String toString() {
-    return "[" + this.commThreadName + ", FD, wt:" + getWeight() + "]";
+    return "[" + this.commThreadName + ", FD, wt:" + getWeight() + ", load:" + getLoad() + "]";
   }
 
   void requestConnectInterest(TCConnectionImpl conn, SocketChannel sc) {
@@ -276,6 +391,20 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     writerComm.removeWriteInterest(conn, channel);
   }
 
+  /**
+   * Has the writer comm thread call {@link TCConnectionImpl#flushHeldBackWrites()} at the given System.nanoTime()
+   */
+  void scheduleWrite(TCConnectionImpl conn, long dueNanos) {
+    writerComm.scheduleWrite(conn, dueNanos);
+  }
+
+  /**
+   * Drops the writes scheduled for a connection that got closed.
+   */
+  void unscheduleWrites(TCConnectionImpl conn) {
+    writerComm.unscheduleWrites(conn);
+  }
+
   private void requestReadWriteInterest(TCConnectionImpl conn, SocketChannel sc) {
     readerComm.requestReadInterest(conn, sc);
     writerComm.requestWriteInterest(conn, sc);
@@ -288,6 +417,9 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     private final AtomicLong          bytesRead    = new AtomicLong(0);
     private final AtomicLong          bytesWritten = new AtomicLong(0);
     private final COMM_THREAD_MODE    mode;
+    private final DirectBufferPool    bufferPool;
+    // only touched by this thread
+    private final PriorityQueue<ScheduledWrite> scheduledWrites = new PriorityQueue<ScheduledWrite>();
 
     public CommThread(final COMM_THREAD_MODE mode) {
       name = commThreadName + (mode == COMM_THREAD_MODE.NIO_READER ? "_R" : "_W");
@@ -297,6 +429,7 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       this.selector = createSelector();
       this.selectorTasks = new LinkedBlockingQueue();
       this.mode = mode;
+      this.bufferPool = BUFFER_POOL_MAX_BYTES > 0 ? new DirectBufferPool(name, BUFFER_POOL_MAX_BYTES) : null;
     }
 
     private boolean isReader() {
@@ -381,13 +514,17 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       }
     }
 
-    void unregister(final SelectableChannel channel) {
+    /**
+     * @return the interest ops the channel was registered with
+     */
+    int unregister(final SelectableChannel channel) {
       if (Thread.currentThread() != this) {
         final CountDownLatch latch = new CountDownLatch(1);
+        final int[] ops = new int[1];
         this.addSelectorTask(new Runnable() {
           @Override
           public void run() {
-            CommThread.this.unregister(channel);
+            ops[0] = CommThread.this.unregister(channel);
             latch.countDown();
           }
         });
@@ -396,16 +533,71 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
         } catch (InterruptedException e) {
           throw new RuntimeException(e);
         }
+        return ops[0];
       } else {
+        int ops = 0;
         SelectionKey key = null;
         key = channel.keyFor(this.selector);
         if (key != null) {
+          if (key.isValid()) {
+            ops = key.interestOps();
+          }
           key.cancel();
           key.attach(null);
         }
+        return ops;
       }
     }
 
+    /**
+     * Like {@link #unregister(SelectableChannel)}, but gives up if this thread has not got to it within timeoutMillis.
+     * Must not be called from this thread.
+     *
+     * @return the interest ops the channel was registered with, -1 if the channel was left registered
+     */
+    int unregister(final SelectableChannel channel, final long timeoutMillis) {
+      Assert.eval(Thread.currentThread() != this);
+      final AtomicInteger state = new AtomicInteger(TASK_QUEUED);
+      final CountDownLatch latch = new CountDownLatch(1);
+      final int[] ops = new int[1];
+      this.addSelectorTask(new Runnable() {
+        @Override
+        public void run() {
+          if (state.compareAndSet(TASK_QUEUED, TASK_STARTED)) {
+            ops[0] = CommThread.this.unregister(channel);
+            latch.countDown();
+          }
+        }
+      });
+      boolean interrupted = false;
+      try {
+        while (true) {
+          try {
+            if (latch.await(timeoutMillis, TimeUnit.MILLISECONDS)) { return ops[0]; }
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+          // once the task has started it is done right away, so keep waiting for it then
+          if (state.compareAndSet(TASK_QUEUED, TASK_CANCELLED)) { return -1; }
+        }
+      } finally {
+        Util.selfInterruptIfNeeded(interrupted);
+      }
+    }
+
+    /**
+     * Moves the interest a connection that is no longer managed here got registered with on this thread's selector to
+     * the given comm thread.
+     */
+    void handBack(final TCConnectionImpl connection, final SelectableChannel channel, final CommThread owner) {
+      addSelectorTask(new Runnable() {
+        @Override
+        public void run() {
+          owner.addInterest(connection, channel, CommThread.this.unregister(channel));
+        }
+      });
+    }
+
     void stopListener(final ServerSocketChannel ssc, final Runnable callback) {
       if (Thread.currentThread() != this) {
         Runnable task = new Runnable() {
@@ -563,7 +755,7 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       while (true) {
         final int numKeys;
         try {
-          numKeys = localSelector.select();
+          numKeys = select(localSelector);
         } catch (IOException ioe) {
           if (NIOWorkarounds.linuxSelectWorkaround(ioe)) {
             logger.warn("working around Sun bug 4504001");
@@ -613,6 +805,7 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
           }
         }
         Util.selfInterruptIfNeeded(isInterrupted);
+        runDueWrites();
 
         final Set selectedKeys = localSelector.selectedKeys();
         if ((0 == numKeys) && (0 == selectedKeys.size())) {
@@ -683,6 +876,59 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       } // while (true)
     }
 
+    /**
+     * Doesn't block past the point where the next scheduled write is due, rounded up to the next millisecond so that a
+     * write due in less than that does not make the thread spin. The selector is only polled once a write is due.
+     */
+    private int select(Selector localSelector) throws IOException {
+      final ScheduledWrite next = this.scheduledWrites.peek();
+      if (next == null) { return localSelector.select(); }
+      final long nanos = next.dueNanos - System.nanoTime();
+      if (nanos <= 0) { return localSelector.selectNow(); }
+      return localSelector.select(TimeUnit.NANOSECONDS.toMillis(nanos + TimeUnit.MILLISECONDS.toNanos(1) - 1));
+    }
+
+    void scheduleWrite(final TCConnectionImpl conn, final long dueNanos) {
+      if (Thread.currentThread() == this) {
+        this.scheduledWrites.add(new ScheduledWrite(conn, dueNanos));
+      } else {
+        addSelectorTask(new Runnable() {
+          @Override
+          public void run() {
+            scheduleWrite(conn, dueNanos);
+          }
+        });
+      }
+    }
+
+    void unscheduleWrites(final TCConnectionImpl conn) {
+      if (Thread.currentThread() == this) {
+        for (Iterator<ScheduledWrite> i = this.scheduledWrites.iterator(); i.hasNext();) {
+          if (i.next().conn == conn) {
+            i.remove();
+          }
+        }
+      } else {
+        addSelectorTask(new Runnable() {
+          @Override
+          public void run() {
+            unscheduleWrites(conn);
+          }
+        });
+      }
+    }
+
+    private void runDueWrites() {
+      final long now = System.nanoTime();
+      while (!this.scheduledWrites.isEmpty() && this.scheduledWrites.peek().dueNanos - now <= 0) {
+        try {
+          this.scheduledWrites.poll().conn.flushHeldBackWrites();
+        } catch (Exception e) {
+          logger.error("error running scheduled write", e);
+        }
+      }
+    }
+
     private void doAccept(final SelectionKey key) {
       SocketChannel sc = null;
 
@@ -742,6 +988,14 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       return this.bytesWritten.get();
     }
 
+    DirectBufferPool getBufferPool() {
+      return this.bufferPool;
+    }
+
+    BufferPoolStats getBufferPoolStats() {
+      return this.bufferPool != null ? this.bufferPool.getStats() : BufferPoolStats.NONE;
+    }
+
     private void handleRequest(final InterestRequest req) {
       // ignore the request if we are stopped/stopping
       if (isStopRequested()) { return; }
@@ -767,6 +1021,16 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     private void modifyInterest(InterestRequest request) {
       Assert.eval(Thread.currentThread() == this);
 
+      if (request.attachment instanceof TCConnectionImpl) {
+        final CoreNIOServices owner = ((TCConnectionImpl) request.attachment).getCommWorker();
+        if (owner != CoreNIOServices.this) {
+          // the connection was moved to another worker comm after this request was made
+          final CommThread current = isReader() ? owner.readerComm : owner.writerComm;
+          current.handleRequest(request.redirect(current));
+          return;
+        }
+      }
+
       Selector localSelector = null;
       localSelector = selector;
 
@@ -781,6 +1045,9 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
             return;
           }
           existingOps = key.interestOps();
+        } else if (request.remove) {
+          // not registered, so there is nothing to remove
+          return;
         } else {
           existingOps = 0;
         }
@@ -794,7 +1061,7 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
         } else if (request.set) {
           request.channel.register(localSelector, request.interestOps, request.attachment);
         } else if (request.remove) {
-          request.channel.register(localSelector, existingOps ^ request.interestOps, request.attachment);
+          request.channel.register(localSelector, existingOps & ~request.interestOps, request.attachment);
         } else {
           throw new TCInternalError();
         }
@@ -835,6 +1102,28 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       Assert.eval(isReader());
       handleRequest(InterestRequest.createRemoveInterestRequest(channel, conn, SelectionKey.OP_READ, this));
     }
+
+    private void addInterest(TCConnectionImpl conn, SelectableChannel channel, int interestOps) {
+      if (interestOps != 0) {
+        handleRequest(InterestRequest.createAddInterestRequest(channel, conn, interestOps, this));
+      }
+    }
+  }
+
+  private static final class ScheduledWrite implements Comparable<ScheduledWrite> {
+    final TCConnectionImpl conn;
+    final long             dueNanos;
+
+    ScheduledWrite(TCConnectionImpl conn, long dueNanos) {
+      this.conn = conn;
+      this.dueNanos = dueNanos;
+    }
+
+    @Override
+    public int compareTo(ScheduledWrite other) {
+      long diff = this.dueNanos - other.dueNanos;
+      return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+    }
   }
 
   private static class InterestRequest {
@@ -879,6 +1168,10 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       return commNIOServiceThread;
     }
 
+    InterestRequest redirect(CommThread nioServiceThread) {
+      return new InterestRequest(channel, attachment, interestOps, set, add, remove, nioServiceThread);
+    }
+
     @Override
     public String toString() {
       StringBuffer buf = new StringBuffer();
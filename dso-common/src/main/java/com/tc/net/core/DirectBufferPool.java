@@ -0,0 +1,219 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.core;
+
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Direct buffers in power of two size classes, kept by each comm thread for the socket buffers of the connections it
+ * services. A connection borrows a buffer only while it holds data and gives it back once the data has been consumed,
+ * so idle connections pin no buffer memory and busy ones reuse the same few direct buffers instead of having the JDK
+ * copy heap buffers into temporary direct ones on every socket call. Scattering reads and gathering writes into and out
+ * of heap message buffers are staged through a buffer borrowed for just that socket call.
+ * <p>
+ * A buffer goes back to the pool it was taken from, whichever thread releases it. Up to the configured number of bytes
+ * are kept pooled, anything above that is left to the garbage collector. Requests larger than the largest size class
+ * are served with heap buffers that are never pooled.
+ * <p>
+ * When debug logging is enabled for this class every buffer handed out is tracked. Buffers that become unreachable
+ * without having been released, and buffers released twice, are logged with the stack that acquired them.
+ */
+final class DirectBufferPool {
+  private static final TCLogger                logger      = TCLogging.getLogger(DirectBufferPool.class);
+
+  // 4K
+  private static final int                     MIN_SHIFT   = 12;
+  // 1M
+  private static final int                     MAX_SHIFT   = 20;
+  // the largest buffer that is pooled
+  static final int                             MAX_SIZE    = 1 << MAX_SHIFT;
+
+  private final String                         name;
+  private final long                           maxPooledBytes;
+  private final Queue<ByteBuffer>[]            freeLists;
+  private final AtomicLong                     pooledBytes = new AtomicLong();
+  private final AtomicLong                     hits        = new AtomicLong();
+  private final AtomicLong                     misses      = new AtomicLong();
+  private final LeakDetector                   leakDetector;
+
+  @SuppressWarnings("unchecked")
+  DirectBufferPool(String name, long maxPooledBytes) {
+    this.name = name;
+    this.maxPooledBytes = maxPooledBytes;
+    this.freeLists = new Queue[MAX_SHIFT - MIN_SHIFT + 1];
+    for (int i = 0; i < freeLists.length; i++) {
+      freeLists[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+    }
+    this.leakDetector = logger.isDebugEnabled() ? new LeakDetector() : null;
+  }
+
+  /**
+   * @return the pool of the comm thread calling, null if the caller is not a comm thread or pooling is disabled
+   */
+  static DirectBufferPool forCurrentThread() {
+    Thread current = Thread.currentThread();
+    if (current instanceof CoreNIOServices.CommThread) { return ((CoreNIOServices.CommThread) current).getBufferPool(); }
+    return null;
+  }
+
+  /**
+   * @return a cleared buffer with room for at least size bytes
+   */
+  ByteBuffer acquire(int size) {
+    int sizeClass = sizeClassFor(size);
+    if (sizeClass < 0) {
+      misses.incrementAndGet();
+      return ByteBuffer.allocate(size);
+    }
+
+    ByteBuffer buffer = freeLists[sizeClass].poll();
+    if (buffer != null) {
+      pooledBytes.addAndGet(-buffer.capacity());
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+      buffer = ByteBuffer.allocateDirect(1 << (MIN_SHIFT + sizeClass));
+    }
+
+    if (leakDetector != null) {
+      leakDetector.acquired(buffer);
+    }
+    return buffer;
+  }
+
+  /**
+   * Gives back a buffer taken from this pool. The caller must not touch it afterwards.
+   */
+  void release(ByteBuffer buffer) {
+    if (!buffer.isDirect()) { return; }
+    if (leakDetector != null && !leakDetector.released(buffer)) { return; }
+
+    int capacity = buffer.capacity();
+    if (pooledBytes.addAndGet(capacity) > maxPooledBytes) {
+      pooledBytes.addAndGet(-capacity);
+      return;
+    }
+    buffer.clear();
+    freeLists[sizeClassFor(capacity)].offer(buffer);
+  }
+
+  BufferPoolStats getStats() {
+    return new BufferPoolStats(hits.get(), misses.get(), pooledBytes.get());
+  }
+
+  /**
+   * @return index of the smallest size class holding size bytes, -1 if size is larger than the largest class
+   */
+  static int sizeClassFor(int size) {
+    if (size <= 1 << MIN_SHIFT) { return 0; }
+    int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+    return shift > MAX_SHIFT ? -1 : shift - MIN_SHIFT;
+  }
+
+  @Override
+  public String toString() {
+    return name + " buffer pool " + getStats();
+  }
+
+  private static final class Allocation extends WeakReference<ByteBuffer> {
+    private final int       identity;
+    private final int       capacity;
+    private final Throwable acquiredAt;
+    private Allocation      next;
+
+    Allocation(ByteBuffer buffer, ReferenceQueue<ByteBuffer> queue, Allocation next) {
+      super(buffer, queue);
+      this.identity = System.identityHashCode(buffer);
+      this.capacity = buffer.capacity();
+      this.acquiredAt = new Throwable("acquired by " + Thread.currentThread().getName());
+      this.next = next;
+    }
+  }
+
+  /**
+   * Outstanding buffers by identity hash code. The buffers are only weakly referenced so that a buffer dropped without
+   * being released still gets collected and shows up in the reference queue.
+   */
+  private final class LeakDetector {
+    private final ReferenceQueue<ByteBuffer> collected   = new ReferenceQueue<ByteBuffer>();
+    private final Map<Integer, Allocation>   outstanding = new HashMap<Integer, Allocation>();
+
+    synchronized void acquired(ByteBuffer buffer) {
+      reportLeaks();
+      Integer key = System.identityHashCode(buffer);
+      outstanding.put(key, new Allocation(buffer, collected, outstanding.get(key)));
+    }
+
+    synchronized boolean released(ByteBuffer buffer) {
+      Allocation allocation = remove(System.identityHashCode(buffer), buffer);
+      if (allocation == null) {
+        logger.error("Buffer of " + buffer.capacity() + " bytes released to " + name + " is not outstanding",
+                     new Throwable());
+        return false;
+      }
+      allocation.clear();
+      return true;
+    }
+
+    private void reportLeaks() {
+      Reference<? extends ByteBuffer> ref;
+      while ((ref = collected.poll()) != null) {
+        Allocation leaked = (Allocation) ref;
+        unlink(leaked.identity, leaked);
+        logger.error("Buffer of " + leaked.capacity + " bytes from " + name + " was never released, it was "
+                     + leaked.acquiredAt.getMessage(), leaked.acquiredAt);
+      }
+    }
+
+    private Allocation remove(Integer key, ByteBuffer buffer) {
+      for (Allocation a = outstanding.get(key); a != null; a = a.next) {
+        if (a.get() == buffer) {
+          unlink(key, a);
+          return a;
+        }
+      }
+      return null;
+    }
+
+    private void unlink(Integer key, Allocation allocation) {
+      Allocation prev = null;
+      for (Allocation a = outstanding.get(key); a != null; prev = a, a = a.next) {
+        if (a == allocation) {
+          if (prev != null) {
+            prev.next = a.next;
+          } else if (a.next != null) {
+            outstanding.put(key, a.next);
+          } else {
+            outstanding.remove(key);
+          }
+          return;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,43 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link BufferManager} that can move data between the channel and the callers buffers directly, with gathering
+ * writes and scattering reads, instead of copying it through buffers of its own.
+ */
+public interface GatheringBufferManager extends BufferManager {
+
+  /**
+   * Writes the given buffers to the channel in one gathering write. Data still held in the write buffer goes out
+   * first and nothing else is written until all of it is gone.
+   * 
+   * @return the number of bytes written to the channel
+   */
+  long sendFromBuffers(ByteBuffer[] srcs, int offset, int length) throws IOException;
+
+  /**
+   * Reads from the channel into the given buffers in one scattering read, after handing over what is still held in
+   * the read buffer.
+   * 
+   * @return the number of bytes put into the given buffers
+   */
+  long recvToBuffers(ByteBuffer[] dsts, int offset, int length) throws IOException;
+}
@@ -55,6 +55,11 @@ class TCCommImpl implements TCComm {
     return null;
   }
 
+  protected long getLoadForWorkerComm(int workerCommId) {
+    if (workerCommMgr != null) { return workerCommMgr.getLoadForWorkerComm(workerCommId); }
+    return 0;
+  }
+
   protected long getTotalbytesReadByWorkerComm(int workerCommId) {
     if (workerCommMgr != null) { return workerCommMgr.getTotalBytesReadByWorkerComm(workerCommId); }
     return 0;
@@ -65,6 +70,14 @@ class TCCommImpl implements TCComm {
     return 0;
   }
 
+  BufferPoolStats getBufferPoolStats() {
+    BufferPoolStats stats = commThread.getBufferPoolStats();
+    if (workerCommMgr != null) {
+      stats = stats.add(workerCommMgr.getBufferPoolStats());
+    }
+    return stats;
+  }
+
   @Override
   public boolean isStarted() {
     return started;
@@ -52,6 +52,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
@@ -99,6 +100,7 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
   private final SocketParams                 socketParams;
   private final AtomicLong                   totalRead                   = new AtomicLong(0);
   private final AtomicLong                   totalWrite                  = new AtomicLong(0);
+  private final AtomicLong                   ioEvents                    = new AtomicLong(0);
   private final ArrayList<WriteContext>      writeContexts               = new ArrayList<WriteContext>();
   private final Object                       pipeSocketWriteInterestLock = new Object();
   private boolean                            hasPipeSocketWriteInterest  = false;
@@ -115,6 +117,17 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
       .getProperties()
       .getBoolean(TCPropertiesConsts.TC_MESSAGE_PACKUP_ENABLED,
           true);
+  private static final boolean               GATHERING_IO                = TCPropertiesImpl
+      .getProperties()
+      .getBoolean(TCPropertiesConsts.TC_MESSAGE_GATHERING_IO_ENABLED,
+          true);
+  private static final long                  COALESCING_MAX_DELAY_MICROS = TCPropertiesImpl
+      .getProperties()
+      .getLong(TCPropertiesConsts.TC_MESSAGE_COALESCING_MAX_DELAY_MICROS,
+          0);
+  private static final int                   MIN_BATCH_BYTES             = 16 * 1024;
+  private static final int                   MAX_GATHERED_BUFFERS        = 128;
+  private static final int                   MAX_SCATTERED_READS         = 8;
   private final Object                       readerLock                  = new Object();
   private final Object                       writerLock                  = new Object();
 
@@ -124,6 +137,18 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
 
   // having this variable at instance level helps reducing memory pressure at VM;
   private final ArrayList<TCNetworkMessage>  messagesToBatch             = new ArrayList<TCNetworkMessage>();
+  private final WriteCoalescer               writeCoalescer              = new WriteCoalescer(
+                                                                             COALESCING_MAX_DELAY_MICROS,
+                                                                             MIN_BATCH_BYTES,
+                                                                             MSG_GROUPING_MAX_SIZE_BYTES);
+  // guarded by writeMessages
+  private long                               queuedBytes                 = 0;
+  private long                               oldestQueuedAt              = 0;
+  // set while the write coalescer holds messages back with write interest removed, guarded by writeMessages
+  private boolean                            writeHeldBack               = false;
+  // only used under the writerLock and readerLock respectively
+  private final ByteBuffer[]                 gatherBuffers               = new ByteBuffer[MAX_GATHERED_BUFFERS];
+  private ByteBuffer[]                       scatterBuffers              = new ByteBuffer[8];
 
   // for creating unconnected client connections
   TCConnectionImpl(final TCConnectionEventListener listener, final TCProtocolAdaptor adaptor,
@@ -174,6 +199,10 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     this.commWorker = worker;
   }
 
+  CoreNIOServices getCommWorker() {
+    return this.commWorker;
+  }
+
   private void closeImpl(final Runnable callback) {
     Assert.assertTrue(this.closed.isSet());
 
@@ -187,6 +216,7 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     this.transportEstablished.set(false);
     try {
       if (this.channel != null) {
+        this.commWorker.unscheduleWrites(this);
         this.commWorker.cleanupChannel(this.channel, callback);
       } else {
         callback.run();
@@ -194,7 +224,18 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     } finally {
       synchronized (this.writeMessages) {
         this.writeMessages.clear();
+        this.queuedBytes = 0;
+      }
+      if (logger.isDebugEnabled()) {
+        logger.debug("Closed connection " + this + " with write " + this.writeCoalescer);
+      }
+    }
+    try {
+      if (this.bufferManager != null) {
+        this.bufferManager.close();
       }
+    } catch (IOException ioe) {
+      logger.warn("error closing buffer manager", ioe);
     }
     try {
       if (pipeSocket != null) {
@@ -303,12 +344,16 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
 
   @Override
   public int doRead() throws IOException {
+    this.ioEvents.incrementAndGet();
     synchronized (readerLock) {
       return doReadInternal();
     }
   }
 
   private int doReadInternal() throws IOException {
+    final GatheringBufferManager gatheringBufferManager = getGatheringBufferManager();
+    if (gatheringBufferManager != null) { return doScatteringRead(gatheringBufferManager); }
+
     try {
       bufferManager.recvToBuffer();
     } catch (SSLException ssle) {
@@ -346,13 +391,26 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
 
   @Override
   public int doWrite() throws IOException {
+    this.ioEvents.incrementAndGet();
     synchronized (writerLock) {
       return doWriteInternal();
     }
   }
 
   private int doWriteInternal() throws IOException {
+    final GatheringBufferManager gatheringBufferManager = getGatheringBufferManager();
     int written;
+    if (gatheringBufferManager != null) {
+      try {
+        written = doGatheringWrite(gatheringBufferManager);
+      } catch (IOException ioe) {
+        closeWriteOnException(ioe);
+        return 0;
+      }
+      this.totalWrite.addAndGet(written);
+      return written;
+    }
+
     try {
       written = doWriteToBuffer();
     } catch (IOException ioe) {
@@ -404,10 +462,26 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
   private void buildWriteContextsFromMessages() {
     TCNetworkMessage messagesToWrite[];
     synchronized (this.writeMessages) {
-      if (this.closed.isSet()) { return; }
+      if (this.closed.isSet() || this.writeMessages.isEmpty()) { return; }
+      final long now = System.nanoTime();
+      if (MSG_GROUPING_ENABLED && this.writeCoalescer.holdBack(now, this.queuedBytes, this.oldestQueuedAt)) {
+        // there is no point being selected for write in the meantime, the comm thread asks for it again once the
+        // oldest message is due or putMessage() once enough messages came in
+        this.commWorker.removeWriteInterest(this, this.channel);
+        if (!this.writeHeldBack) {
+          this.writeHeldBack = true;
+          this.commWorker.scheduleWrite(this, this.writeCoalescer.flushDeadline(this.oldestQueuedAt));
+        }
+        return;
+      }
+      this.writeHeldBack = false;
+      this.writeCoalescer.dequeued(now - this.oldestQueuedAt);
       messagesToWrite = this.writeMessages.toArray(new TCNetworkMessage[this.writeMessages.size()]);
       this.writeMessages.clear();
+      this.queuedBytes = 0;
     }
+    // messages written straight from their own buffers don't need to be packed up
+    final boolean packUp = MESSSAGE_PACKUP && getGatheringBufferManager() == null;
 
     int batchSize = 0;
     int batchMsgCount = 0;
@@ -418,20 +492,21 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
       // we don't want to group already constructed Transport Handshake WireProtocolMessages
       if (msg instanceof WireProtocolMessage) {
         final TCNetworkMessage ms = finalizeWireProtocolMessage((WireProtocolMessage) msg, 1);
-        this.writeContexts.add(new WriteContext(ms));
+        this.writeContexts.add(new WriteContext(ms, packUp));
         continue;
       }
 
       // GenericNetwork messages are used for testing
       if (WireProtocolHeader.PROTOCOL_UNKNOWN == WireProtocolHeader.getProtocolForMessageClass(msg)) {
-        this.writeContexts.add(new WriteContext(msg));
+        this.writeContexts.add(new WriteContext(msg, packUp));
         continue;
       }
 
       if (MSG_GROUPING_ENABLED) {
         if (!canBatch(msg, batchSize, batchMsgCount)) {
           if (batchMsgCount > 0) {
-            this.writeContexts.add(new WriteContext(buildWireProtocolMessageGroup(this.messagesToBatch)));
+            this.writeCoalescer.batched(batchMsgCount);
+            this.writeContexts.add(new WriteContext(buildWireProtocolMessageGroup(this.messagesToBatch), packUp));
             batchSize = 0;
             batchMsgCount = 0;
             this.messagesToBatch.clear();
@@ -443,22 +518,36 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
         batchMsgCount++;
         this.messagesToBatch.add(msg);
       } else {
-        this.writeContexts.add(new WriteContext(buildWireProtocolMessage(msg)));
+        this.writeCoalescer.batched(1);
+        this.writeContexts.add(new WriteContext(buildWireProtocolMessage(msg), packUp));
       }
       msg = null;
     }
 
     if (MSG_GROUPING_ENABLED && batchMsgCount > 0) {
+      this.writeCoalescer.batched(batchMsgCount);
       final TCNetworkMessage ms = buildWireProtocolMessageGroup(this.messagesToBatch);
-      this.writeContexts.add(new WriteContext(ms));
+      this.writeContexts.add(new WriteContext(ms, packUp));
     }
 
     messagesToWrite = null;
     this.messagesToBatch.clear();
   }
 
+  /**
+   * Called by the comm thread when messages held back by the write coalescer are due
+   */
+  void flushHeldBackWrites() {
+    synchronized (this.writeMessages) {
+      if (!this.writeHeldBack) { return; }
+      this.writeHeldBack = false;
+      if (this.closed.isSet() || this.writeMessages.isEmpty()) { return; }
+    }
+    this.commWorker.requestWriteInterest(this, this.channel);
+  }
+
   private boolean canBatch(final TCNetworkMessage newMessage, final int currentBatchSize, final int currentBatchMsgCount) {
-    if ((currentBatchSize + getRealMessgeSize(newMessage.getTotalLength())) <= MSG_GROUPING_MAX_SIZE_BYTES
+    if ((currentBatchSize + getRealMessgeSize(newMessage.getTotalLength())) <= this.writeCoalescer.getBatchBytes()
         && (currentBatchMsgCount + 1 <= WireProtocolHeader.MAX_MESSAGE_COUNT)) { return true; }
     return false;
   }
@@ -555,14 +644,137 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
       }
     }
 
+    if (totalBytesWritten > 0) {
+      this.writeCoalescer.written(System.nanoTime(), totalBytesWritten, this.writeContexts.isEmpty());
+    }
+    removeWriteInterestIfDone();
+    return totalBytesWritten;
+  }
+
+  private void removeWriteInterestIfDone() {
     synchronized (this.writeMessages) {
-      if (this.closed.isSet()) { return totalBytesWritten; }
+      if (this.closed.isSet()) { return; }
 
       if (this.writeMessages.isEmpty() && this.writeContexts.isEmpty()) {
         this.commWorker.removeWriteInterest(this, this.channel);
       }
     }
-    return totalBytesWritten;
+  }
+
+  /**
+   * @return the buffer manager if message data can be handed to it directly, null if it has to be copied through it
+   */
+  private GatheringBufferManager getGatheringBufferManager() {
+    final BufferManager manager = this.bufferManager;
+    if (GATHERING_IO && this.pipeSocket == null && manager instanceof GatheringBufferManager) {
+      return (GatheringBufferManager) manager;
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Writes the buffers of the queued messages straight to the channel, as many of them at once as fit into one
+   * gathering write.
+   */
+  private int doGatheringWrite(final GatheringBufferManager manager) throws IOException {
+    final boolean debug = logger.isDebugEnabled();
+    long totalBytesWritten = 0;
+
+    if (this.writeContexts.size() <= 0) {
+      buildWriteContextsFromMessages();
+    }
+    while (this.writeContexts.size() > 0) {
+      int count = 0;
+      for (int i = 0, n = this.writeContexts.size(); i < n && count < this.gatherBuffers.length; i++) {
+        count = this.writeContexts.get(i).gatherRemaining(this.gatherBuffers, count);
+      }
+      long toWrite = 0;
+      for (int i = 0; i < count; i++) {
+        toWrite += this.gatherBuffers[i].remaining();
+      }
+
+      final long bytesWritten;
+      try {
+        bytesWritten = manager.sendFromBuffers(this.gatherBuffers, 0, count);
+      } finally {
+        Arrays.fill(this.gatherBuffers, 0, count, null);
+      }
+      if (debug) {
+        logger.debug("Wrote " + bytesWritten + " bytes from " + count + " buffers on connection "
+                     + this.channel.toString());
+      }
+      totalBytesWritten += bytesWritten;
+
+      while (this.writeContexts.size() > 0) {
+        final WriteContext context = this.writeContexts.get(0);
+        context.skipWritten();
+        if (!context.done()) {
+          break;
+        }
+        context.writeComplete();
+        this.writeContexts.remove(0);
+      }
+
+      if (bytesWritten < toWrite) {
+        // the socket doesn't take more for now, wait to be selected for write again
+        break;
+      }
+    }
+
+    if (totalBytesWritten > 0) {
+      this.writeCoalescer.written(System.nanoTime(), totalBytesWritten, this.writeContexts.isEmpty());
+    }
+    removeWriteInterestIfDone();
+    return (int) totalBytesWritten;
+  }
+
+  /**
+   * Reads straight from the channel into the buffers of the protocol adaptor.
+   */
+  private int doScatteringRead(final GatheringBufferManager manager) throws IOException {
+    final boolean debug = logger.isDebugEnabled();
+    int totalBytesRead = 0;
+
+    for (int i = 0; i < MAX_SCATTERED_READS; i++) {
+      final TCByteBuffer[] readBuffers = getReadBuffers();
+      if (this.scatterBuffers.length < readBuffers.length) {
+        this.scatterBuffers = new ByteBuffer[readBuffers.length];
+      }
+      long toRead = 0;
+      for (int j = 0; j < readBuffers.length; j++) {
+        this.scatterBuffers[j] = extractNioBuffer(readBuffers[j]);
+        toRead += this.scatterBuffers[j].remaining();
+      }
+
+      long bytesRead;
+      try {
+        bytesRead = manager.recvToBuffers(this.scatterBuffers, 0, readBuffers.length);
+      } catch (IOException ioe) {
+        closeReadOnException(ioe);
+        break;
+      } finally {
+        Arrays.fill(this.scatterBuffers, 0, readBuffers.length, null);
+      }
+      if (bytesRead == 0) {
+        break;
+      }
+
+      if (debug) {
+        logger.debug("Read " + bytesRead + " bytes into " + readBuffers.length + " buffers on connection "
+                     + this.channel.toString());
+      }
+      totalBytesRead += bytesRead;
+      addNetworkData(readBuffers, (int) bytesRead);
+
+      if (bytesRead < toRead) {
+        // nothing more to read for now
+        break;
+      }
+    }
+
+    this.totalRead.addAndGet(totalBytesRead);
+    return totalBytesRead;
   }
 
   static private ByteBuffer extractNioBuffer(final TCByteBuffer buffer) {
@@ -581,7 +793,7 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     }
 
     // TODO: outgoing queue should not be unbounded size!
-    final boolean newData;
+    boolean newData;
     final int msgCount;
 
     synchronized (this.writeMessages) {
@@ -589,6 +801,15 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
       this.writeMessages.addLast(message);
       msgCount = this.writeMessages.size();
       newData = (msgCount == 1);
+      if (newData) {
+        this.oldestQueuedAt = System.nanoTime();
+      }
+      this.queuedBytes += bytesToWrite;
+      if (this.writeHeldBack && this.queuedBytes >= this.writeCoalescer.getBatchBytes()) {
+        // enough came in to make up a batch, no need to wait for the deadline
+        this.writeHeldBack = false;
+        newData = true;
+      }
     }
 
     if (debug) {
@@ -964,12 +1185,18 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     private final TCNetworkMessage message;
     private int                    index = 0;
     private final TCByteBuffer[]   entireMessageData;
+    private final boolean          packedUp;
 
     WriteContext(final TCNetworkMessage message) {
+      this(message, MESSSAGE_PACKUP);
+    }
+
+    WriteContext(final TCNetworkMessage message, final boolean packUp) {
       // either WireProtocolMessage or WireProtocolMessageGroup
       this.message = message;
+      this.packedUp = packUp;
 
-      if (MESSSAGE_PACKUP) {
+      if (packUp) {
         this.entireMessageData = getPackedUpMessage(message.getEntireMessageData());
       } else {
         this.entireMessageData = getClonedMessage(message.getEntireMessageData());
@@ -986,7 +1213,7 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     }
 
     void incrementIndexAndCleanOld() {
-      if (MESSSAGE_PACKUP) {
+      if (packedUp) {
         // we created these new messages. lets recycle it.
         entireMessageData[index].recycle();
       }
@@ -998,6 +1225,30 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
       this.message.wasSent();
     }
 
+    /**
+     * Adds the nio buffers of the data not yet written to the given array, from position count on and as long as there
+     * is room.
+     * 
+     * @return the number of buffers in the array
+     */
+    int gatherRemaining(final ByteBuffer[] buffers, int count) {
+      for (int i = index, n = entireMessageData.length; i < n && count < buffers.length; i++) {
+        if (entireMessageData[i].hasRemaining()) {
+          buffers[count++] = entireMessageData[i].getNioBuffer();
+        }
+      }
+      return count;
+    }
+
+    /**
+     * Moves past the buffers that were written completely
+     */
+    void skipWritten() {
+      while (index < entireMessageData.length && !entireMessageData[index].hasRemaining()) {
+        incrementIndexAndCleanOld();
+      }
+    }
+
     private static TCByteBuffer[] getClonedMessage(final TCByteBuffer[] sourceMessageByteBuffers) {
       final TCByteBuffer[] msgData = sourceMessageByteBuffers;
       TCByteBuffer[] clonedMessageData = new TCByteBuffer[msgData.length];
@@ -1059,6 +1310,34 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     }
   }
 
+  /**
+   * @return the number of message groups written with 1, 2-3, 4-7 ... messages in them
+   */
+  long[] getWriteBatchSizeDistribution() {
+    return this.writeCoalescer.getBatchSizeDistribution();
+  }
+
+  /**
+   * @return bytes read and written so far
+   */
+  long getBytesMoved() {
+    return this.totalRead.get() + this.totalWrite.get();
+  }
+
+  /**
+   * @return number of times a comm thread was woken up to read or write this connection
+   */
+  long getIOEvents() {
+    return this.ioEvents.get();
+  }
+
+  /**
+   * Hands this connection over to the given worker comm, see {@link CoreNIOServices#migrateConnection}
+   */
+  boolean migrateTo(final CoreNIOServices worker) {
+    return this.commWorker.migrateConnection(this, this.channel, worker);
+  }
+
   @Override
   public void addWeight(final int addWeightBy) {
     this.commWorker.addWeight(this, addWeightBy, this.channel);
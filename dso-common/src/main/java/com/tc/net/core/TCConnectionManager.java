@@ -91,6 +91,11 @@ public interface TCConnectionManager {
    */
   public TCListener[] getAllListeners();
 
+  /**
+   * Get the hit and miss counts of the socket buffer pools of all comm threads of this manager
+   */
+  public BufferPoolStats getBufferPoolStats();
+
   /**
    * Get the associated comm implementation cotext -- used for testing only
    */
@@ -232,6 +232,11 @@ public class TCConnectionManagerImpl implements TCConnectionManager {
     }
   }
 
+  @Override
+  public BufferPoolStats getBufferPoolStats() {
+    return this.comm.getBufferPoolStats();
+  }
+
   @Override
   public TCComm getTcComm() {
     return this.comm;
@@ -20,12 +20,15 @@ import com.tc.logging.LossyTCLogger;
 import com.tc.logging.LossyTCLogger.LossyTCLoggerType;
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLogging;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.Assert;
 import com.tc.util.concurrent.SetOnceFlag;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Timer;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -39,6 +42,8 @@ public class TCWorkerCommManager {
                                                                          false);
 
   private static final String     WORKER_NAME_PREFIX = "TCWorkerComm # ";
+  private static final long       REBALANCE_INTERVAL = TCPropertiesImpl.getProperties()
+                                                         .getLong(TCPropertiesConsts.NET_CORE_REBALANCE_INTERVAL, 30000);
 
   private final int               totalWorkerComm;
   private final CoreNIOServices[] workerCommThreads;
@@ -46,10 +51,13 @@ public class TCWorkerCommManager {
   private final SetOnceFlag       stopped            = new SetOnceFlag();
 
   private final AtomicInteger     nextWorkerCommId   = new AtomicInteger();
+  private final String            name;
+  private Timer                   balancerTimer;
 
   TCWorkerCommManager(String name, int workerCommCount, SocketParams socketParams) {
     if (workerCommCount <= 0) { throw new IllegalArgumentException("invalid worker count: " + workerCommCount); }
     logger.info("Creating " + workerCommCount + " worker comm threads for " + name);
+    this.name = name;
     this.totalWorkerComm = workerCommCount;
     this.workerCommThreads = new CoreNIOServices[workerCommCount];
     for (int i = 0; i < this.workerCommThreads.length; i++) {
@@ -98,6 +106,11 @@ public class TCWorkerCommManager {
       for (CoreNIOServices workerCommThread : this.workerCommThreads) {
         workerCommThread.start();
       }
+      if (REBALANCE_INTERVAL > 0 && this.totalWorkerComm > 1) {
+        this.balancerTimer = new Timer(name + " WorkerComm Balancer", true);
+        this.balancerTimer.schedule(new WorkerCommBalancer(this.workerCommThreads), REBALANCE_INTERVAL,
+                                    REBALANCE_INTERVAL);
+      }
     } else {
       throw new IllegalStateException("already started");
     }
@@ -107,12 +120,23 @@ public class TCWorkerCommManager {
     if (!this.started.isSet()) { return; }
 
     if (this.stopped.attemptSet()) {
+      if (this.balancerTimer != null) {
+        this.balancerTimer.cancel();
+      }
       for (int i = 0; i < this.totalWorkerComm; i++) {
         this.workerCommThreads[i].requestStop();
       }
     }
   }
 
+  public BufferPoolStats getBufferPoolStats() {
+    BufferPoolStats stats = BufferPoolStats.NONE;
+    for (CoreNIOServices workerCommThread : this.workerCommThreads) {
+      stats = stats.add(workerCommThread.getBufferPoolStats());
+    }
+    return stats;
+  }
+
   protected CoreNIOServices getWorkerComm(int workerCommId) {
     return this.workerCommThreads[workerCommId];
   }
@@ -121,6 +145,10 @@ public class TCWorkerCommManager {
     return this.workerCommThreads[workerCommId].getWeight();
   }
 
+  protected long getLoadForWorkerComm(int workerCommId) {
+    return this.workerCommThreads[workerCommId].getLoad();
+  }
+
   protected long getTotalBytesReadByWorkerComm(int workerCommId) {
     return this.workerCommThreads[workerCommId].getTotalBytesRead();
   }
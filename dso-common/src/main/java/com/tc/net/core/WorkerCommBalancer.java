@@ -0,0 +1,194 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.core;
+
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TimerTask;
+
+/**
+ * Moves connections between the worker comms of a {@link TCWorkerCommManager} when their load drifts apart. New
+ * connections are placed by weight, which says nothing about how busy they will get, so over time a few busy clients
+ * can end up sharing one pair of selector threads while others sit idle.
+ * <p>
+ * Every run adds up, per worker comm, the bytes each connection moved and the selector events it caused since the
+ * previous run. If the busiest worker comm carries more than {@link #IMBALANCE} times the average, and at least
+ * {@link #MIN_GAP_BYTES} more than the least busy one, the connection whose move brings the two closest together is
+ * migrated to the least busy one. One connection moves per run at most, and a moved connection stays put for a few
+ * runs so that it does not bounce between threads.
+ */
+final class WorkerCommBalancer extends TimerTask {
+  private static final TCLogger                logger           = TCLogging.getLogger(WorkerCommBalancer.class);
+
+  // a selector event costs about as much as moving this many bytes
+  static final long                            EVENT_COST_BYTES = 1024;
+  static final double                          IMBALANCE        = 1.25;
+  // differences below this are not worth moving a connection for
+  static final long                            MIN_GAP_BYTES    = 1024 * 1024;
+  // runs a moved connection is left alone for
+  private static final int                     SETTLE_RUNS      = 5;
+
+  private final CoreNIOServices[]              workerComms;
+  private final Map<TCConnectionImpl, Sample>  samples          = new HashMap<TCConnectionImpl, Sample>();
+  private long                                 runs;
+
+  WorkerCommBalancer(CoreNIOServices[] workerComms) {
+    this.workerComms = workerComms;
+  }
+
+  @Override
+  public void run() {
+    try {
+      rebalance();
+    } catch (Throwable t) {
+      // an exception would cancel the timer
+      logger.error("Error balancing worker comms", t);
+    }
+  }
+
+  void rebalance() {
+    runs++;
+    final long[] loads = new long[workerComms.length];
+    final List<List<TCConnectionImpl>> connections = new ArrayList<List<TCConnectionImpl>>(workerComms.length);
+    final List<long[]> connectionLoads = new ArrayList<long[]>(workerComms.length);
+
+    for (int i = 0; i < workerComms.length; i++) {
+      List<TCConnectionImpl> managed = workerComms[i].getManagedConnections();
+      long[] managedLoads = new long[managed.size()];
+      for (int j = 0; j < managedLoads.length; j++) {
+        managedLoads[j] = sample(managed.get(j));
+        loads[i] += managedLoads[j];
+      }
+      connections.add(managed);
+      connectionLoads.add(managedLoads);
+      workerComms[i].setLoad(loads[i]);
+    }
+
+    for (Iterator<Sample> i = samples.values().iterator(); i.hasNext();) {
+      if (i.next().seenInRun != runs) {
+        // closed
+        i.remove();
+      }
+    }
+
+    int hottest = indexOfMax(loads);
+    int coldest = indexOfMin(loads);
+    if (!isImbalanced(loads, hottest, coldest)) { return; }
+
+    long[] candidates = connectionLoads.get(hottest).clone();
+    List<TCConnectionImpl> hot = connections.get(hottest);
+    for (int j = 0; j < candidates.length; j++) {
+      if (runs - samples.get(hot.get(j)).movedInRun < SETTLE_RUNS) {
+        candidates[j] = -1;
+      }
+    }
+
+    int pick = pickConnection(candidates, loads[hottest], loads[coldest]);
+    if (pick < 0) { return; }
+
+    TCConnectionImpl connection = hot.get(pick);
+    logger.info("Moving " + connection + " with load " + candidates[pick] + " from " + workerComms[hottest] + " to "
+                + workerComms[coldest]);
+    if (connection.migrateTo(workerComms[coldest])) {
+      samples.get(connection).movedInRun = runs;
+    }
+  }
+
+  /**
+   * @return the load of the connection since the previous run
+   */
+  private long sample(TCConnectionImpl connection) {
+    long bytes = connection.getBytesMoved();
+    long events = connection.getIOEvents();
+    Sample sample = samples.get(connection);
+    long load = 0;
+    if (sample == null) {
+      sample = new Sample();
+      sample.movedInRun = Long.MIN_VALUE / 2;
+      samples.put(connection, sample);
+    } else {
+      load = (bytes - sample.bytes) + (events - sample.events) * EVENT_COST_BYTES;
+    }
+    sample.bytes = bytes;
+    sample.events = events;
+    sample.seenInRun = runs;
+    return load;
+  }
+
+  static boolean isImbalanced(long[] loads, int hottest, int coldest) {
+    if (loads[hottest] - loads[coldest] < MIN_GAP_BYTES) { return false; }
+    long total = 0;
+    for (long load : loads) {
+      total += load;
+    }
+    return loads[hottest] * loads.length > total * IMBALANCE;
+  }
+
+  /**
+   * @param candidates : loads of the connections on the busiest worker comm, negative for those that must not move
+   * @return index of the connection whose move leaves the smallest difference between the two worker comms, -1 if no
+   *         move makes it smaller than it is
+   */
+  static int pickConnection(long[] candidates, long hottestLoad, long coldestLoad) {
+    int pick = -1;
+    long smallestGap = hottestLoad - coldestLoad;
+    for (int i = 0; i < candidates.length; i++) {
+      if (candidates[i] <= 0) {
+        continue;
+      }
+      long gap = Math.abs((hottestLoad - candidates[i]) - (coldestLoad + candidates[i]));
+      if (gap < smallestGap) {
+        smallestGap = gap;
+        pick = i;
+      }
+    }
+    return pick;
+  }
+
+  static int indexOfMax(long[] values) {
+    int index = 0;
+    for (int i = 1; i < values.length; i++) {
+      if (values[i] > values[index]) {
+        index = i;
+      }
+    }
+    return index;
+  }
+
+  static int indexOfMin(long[] values) {
+    int index = 0;
+    for (int i = 1; i < values.length; i++) {
+      if (values[i] < values[index]) {
+        index = i;
+      }
+    }
+    return index;
+  }
+
+  private static final class Sample {
+    private long bytes;
+    private long events;
+    private long seenInRun;
+    private long movedInRun;
+  }
+}
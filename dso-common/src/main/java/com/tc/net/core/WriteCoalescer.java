@@ -0,0 +1,155 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Decides for a connection how much of its queued messages go into one wire protocol message group and whether a
+ * small group is held back for a moment to give more messages the chance to join it.
+ * <p>
+ * On an idle connection messages are written as soon as they are queued. Once the connection is busy, because the
+ * last write did not get everything out or ended less than the maximum delay ago, messages are held back until they
+ * add up to the target batch size or the oldest of them waited for the maximum delay. The target batch size is what
+ * the connection moves in the time a message spends between being queued and written, at the throughput observed so
+ * far, so batches grow with the load and shrink back when it goes away.
+ * <p>
+ * Everything but the batch size distribution is only touched by the comm thread writing the connection.
+ */
+final class WriteCoalescer {
+
+  private static final int     SIZE_BUCKETS = 16;
+  // weight of a new sample in the moving averages
+  private static final double  ALPHA        = 0.125;
+
+  private final long           maxDelayNanos;
+  private final int            minBatchBytes;
+  private final int            maxBatchBytes;
+  private final AtomicLongArray batchSizes  = new AtomicLongArray(SIZE_BUCKETS);
+
+  private long                 lastWriteEnd;
+  private boolean              backlogged;
+  private double               bytesPerNano;
+  private double               queueNanos;
+  private int                  targetBatchBytes;
+
+  /**
+   * @param maxDelayMicros : longest a message is held back on a busy connection, 0 to never hold messages back
+   * @param minBatchBytes : smallest batch size large backlogs are split into
+   * @param maxBatchBytes : largest batch size
+   */
+  WriteCoalescer(long maxDelayMicros, int minBatchBytes, int maxBatchBytes) {
+    this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+    this.minBatchBytes = Math.min(minBatchBytes, maxBatchBytes);
+    this.maxBatchBytes = maxBatchBytes;
+    this.targetBatchBytes = this.minBatchBytes;
+  }
+
+  /**
+   * @param queuedBytes : total length of the messages waiting to be written
+   * @param oldestQueuedAt : System.nanoTime() of when the oldest of them was queued
+   * @return true if the messages should wait for more to join them
+   */
+  boolean holdBack(long now, long queuedBytes, long oldestQueuedAt) {
+    if (maxDelayNanos <= 0) { return false; }
+    boolean busy = backlogged || (lastWriteEnd != 0 && now - lastWriteEnd < maxDelayNanos);
+    return busy && queuedBytes < targetBatchBytes && now - oldestQueuedAt < maxDelayNanos;
+  }
+
+  /**
+   * @return System.nanoTime() by which messages held back since the given time have to be written
+   */
+  long flushDeadline(long oldestQueuedAt) {
+    return oldestQueuedAt + maxDelayNanos;
+  }
+
+  /**
+   * @return the size up to which queued messages are grouped into one wire protocol message
+   */
+  int getBatchBytes() {
+    return Math.max(minBatchBytes, targetBatchBytes);
+  }
+
+  /**
+   * @param waitedNanos : how long the oldest of the messages that are about to be grouped waited in the queue
+   */
+  void dequeued(long waitedNanos) {
+    queueNanos = average(queueNanos, waitedNanos);
+  }
+
+  /**
+   * Counts a wire protocol message group of the given number of messages
+   */
+  void batched(int messages) {
+    batchSizes.incrementAndGet(Math.min(SIZE_BUCKETS - 1, 31 - Integer.numberOfLeadingZeros(messages)));
+  }
+
+  /**
+   * @param drained : false if the socket did not take everything that was ready to be written
+   */
+  void written(long now, long bytes, boolean drained) {
+    if (backlogged && lastWriteEnd != 0 && now > lastWriteEnd) {
+      // while backlogged the socket sent the previous write in the meantime
+      bytesPerNano = average(bytesPerNano, (double) bytes / (now - lastWriteEnd));
+    }
+    lastWriteEnd = now;
+    backlogged = !drained;
+    double delay = Math.min(queueNanos, maxDelayNanos > 0 ? maxDelayNanos : queueNanos);
+    targetBatchBytes = (int) Math.max(minBatchBytes, Math.min(maxBatchBytes, bytesPerNano * delay));
+  }
+
+  /**
+   * @return the number of message groups written with 1, 2-3, 4-7 ... messages in them
+   */
+  long[] getBatchSizeDistribution() {
+    long[] distribution = new long[SIZE_BUCKETS];
+    for (int i = 0; i < SIZE_BUCKETS; i++) {
+      distribution[i] = batchSizes.get(i);
+    }
+    return distribution;
+  }
+
+  private static double average(double average, double sample) {
+    return average == 0 ? sample : average + ALPHA * (sample - average);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder buf = new StringBuilder("batch sizes [");
+    long[] distribution = getBatchSizeDistribution();
+    boolean first = true;
+    for (int i = 0; i < distribution.length; i++) {
+      if (distribution[i] == 0) {
+        continue;
+      }
+      if (!first) {
+        buf.append(", ");
+      }
+      first = false;
+      int low = 1 << i;
+      buf.append(low);
+      if (i == distribution.length - 1) {
+        buf.append('+');
+      } else if (low > 1) {
+        buf.append('-').append((low << 1) - 1);
+      }
+      buf.append(": ").append(distribution[i]);
+    }
+    return buf.append("], target batch ").append(getBatchBytes()).append(" bytes").toString();
+  }
+}
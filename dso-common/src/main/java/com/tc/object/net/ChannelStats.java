@@ -40,5 +40,7 @@ public interface ChannelStats {
 
   public void notifyTransactionAckedFrom(NodeID nodeID);
 
+  public void notifyTransactionsAckedFrom(NodeID nodeID, int numTxns);
+
   public void notifyServerMapRequest(ServerMapRequestType type, MessageChannel channel, int numRequests);
 }
@@ -0,0 +1,143 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.core;
+
+import com.tc.test.TCTestCase;
+
+import java.io.EOFException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+public class ClearTextBufferManagerTest extends TCTestCase {
+
+  private ServerSocketChannel server;
+  private SocketChannel       sender;
+  private SocketChannel       receiver;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+    sender = SocketChannel.open(server.socket().getLocalSocketAddress());
+    receiver = server.accept();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    sender.close();
+    receiver.close();
+    server.close();
+    super.tearDown();
+  }
+
+  public void testGatheringWriteAndScatteringRead() throws Exception {
+    ClearTextBufferManager out = new ClearTextBufferManager(sender);
+    ClearTextBufferManager in = new ClearTextBufferManager(receiver);
+
+    ByteBuffer[] srcs = new ByteBuffer[] { fill(ByteBuffer.allocate(100), 0), fill(ByteBuffer.allocateDirect(50), 100),
+        fill(ByteBuffer.allocate(1), 150) };
+    assertEquals(151, out.sendFromBuffers(srcs, 0, srcs.length));
+    for (ByteBuffer src : srcs) {
+      assertFalse(src.hasRemaining());
+    }
+
+    ByteBuffer[] dsts = new ByteBuffer[] { ByteBuffer.allocate(60), ByteBuffer.allocate(91) };
+    long read = 0;
+    while (read < 151) {
+      read += in.recvToBuffers(dsts, 0, dsts.length);
+    }
+    assertEquals(151, read);
+    verify(dsts[0], 0);
+    verify(dsts[1], 60);
+  }
+
+  public void testHeapBuffersAreStagedThroughThePool() throws Exception {
+    ClearTextBufferManager out = new ClearTextBufferManager(sender);
+    ClearTextBufferManager in = new ClearTextBufferManager(receiver);
+    DirectBufferPool pool = new DirectBufferPool("test", 1024 * 1024);
+
+    ByteBuffer[] srcs = new ByteBuffer[] { fill(ByteBuffer.allocate(100), 0), fill(ByteBuffer.allocate(51), 100) };
+    assertEquals(151, out.sendThroughPool(pool, srcs, 0, srcs.length));
+    for (ByteBuffer src : srcs) {
+      assertFalse(src.hasRemaining());
+    }
+
+    ByteBuffer[] dsts = new ByteBuffer[] { ByteBuffer.allocate(60), ByteBuffer.allocate(91) };
+    long read = 0;
+    while (read < 151) {
+      read += in.recvThroughPool(pool, dsts, 0, dsts.length);
+    }
+    verify(dsts[0], 0);
+    verify(dsts[1], 60);
+    // every socket call borrowed the same buffer
+    assertEquals(1, pool.getStats().getMisses());
+    assertEquals(4096, pool.getStats().getPooledBytes());
+  }
+
+  public void testBufferedDataGoesFirst() throws Exception {
+    ClearTextBufferManager out = new ClearTextBufferManager(sender);
+    ClearTextBufferManager in = new ClearTextBufferManager(receiver);
+
+    // leave some data in the write buffer of the sender
+    out.forwardToWriteBuffer(fill(ByteBuffer.allocate(10), 0));
+    assertTrue(out.remainingToSend());
+    ByteBuffer src = fill(ByteBuffer.allocate(20), 10);
+    assertEquals(30, out.sendFromBuffers(new ByteBuffer[] { src }, 0, 1));
+    assertFalse(out.remainingToSend());
+
+    // and some data in the read buffer of the receiver
+    while (in.recvToBuffer() == 0) {
+      Thread.sleep(10);
+    }
+    ByteBuffer[] dsts = new ByteBuffer[] { ByteBuffer.allocate(5), ByteBuffer.allocate(25) };
+    long read = 0;
+    while (read < 30) {
+      read += in.recvToBuffers(dsts, 0, dsts.length);
+    }
+    verify(dsts[0], 0);
+    verify(dsts[1], 5);
+
+    sender.close();
+    try {
+      while (true) {
+        in.recvToBuffers(new ByteBuffer[] { ByteBuffer.allocate(1) }, 0, 1);
+        Thread.sleep(10);
+      }
+    } catch (EOFException e) {
+      // expected
+    }
+  }
+
+  private static ByteBuffer fill(ByteBuffer buffer, int start) {
+    for (int i = start; buffer.hasRemaining(); i++) {
+      buffer.put((byte) i);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static void verify(ByteBuffer buffer, int start) {
+    assertFalse(buffer.hasRemaining());
+    buffer.flip();
+    for (int i = start; buffer.hasRemaining(); i++) {
+      assertEquals((byte) i, buffer.get());
+    }
+  }
+}
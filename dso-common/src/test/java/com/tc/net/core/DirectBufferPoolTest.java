@@ -0,0 +1,88 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.core;
+
+import com.tc.test.TCTestCase;
+
+import java.nio.ByteBuffer;
+
+public class DirectBufferPoolTest extends TCTestCase {
+
+  public void testSizeClasses() {
+    assertEquals(0, DirectBufferPool.sizeClassFor(1));
+    assertEquals(0, DirectBufferPool.sizeClassFor(4096));
+    assertEquals(1, DirectBufferPool.sizeClassFor(4097));
+    assertEquals(2, DirectBufferPool.sizeClassFor(16 * 1024));
+    assertEquals(8, DirectBufferPool.sizeClassFor(1024 * 1024));
+    assertEquals(-1, DirectBufferPool.sizeClassFor(1024 * 1024 + 1));
+  }
+
+  public void testReleasedBuffersAreReused() {
+    DirectBufferPool pool = new DirectBufferPool("test", 1024 * 1024);
+    ByteBuffer buffer = pool.acquire(10000);
+    assertTrue(buffer.isDirect());
+    assertEquals(16 * 1024, buffer.capacity());
+    assertEquals(1, pool.getStats().getMisses());
+
+    buffer.putLong(42);
+    pool.release(buffer);
+    assertEquals(16 * 1024, pool.getStats().getPooledBytes());
+
+    ByteBuffer again = pool.acquire(16 * 1024);
+    assertSame(buffer, again);
+    assertEquals(0, again.position());
+    assertEquals(again.capacity(), again.limit());
+    assertEquals(1, pool.getStats().getHits());
+    assertEquals(0, pool.getStats().getPooledBytes());
+
+    // a different size class does not get it
+    pool.release(again);
+    assertNotSame(again, pool.acquire(4096));
+    assertEquals(2, pool.getStats().getMisses());
+  }
+
+  public void testPooledBytesAreCapped() {
+    DirectBufferPool pool = new DirectBufferPool("test", 8192);
+    ByteBuffer first = pool.acquire(4096);
+    ByteBuffer second = pool.acquire(4096);
+    ByteBuffer third = pool.acquire(4096);
+    pool.release(first);
+    pool.release(second);
+    pool.release(third);
+    assertEquals(8192, pool.getStats().getPooledBytes());
+
+    assertSame(first, pool.acquire(4096));
+    assertSame(second, pool.acquire(4096));
+    assertNotSame(third, pool.acquire(4096));
+  }
+
+  public void testOversizedBuffersAreNotPooled() {
+    DirectBufferPool pool = new DirectBufferPool("test", 8 * 1024 * 1024);
+    ByteBuffer buffer = pool.acquire(2 * 1024 * 1024);
+    assertFalse(buffer.isDirect());
+    pool.release(buffer);
+    assertEquals(0, pool.getStats().getPooledBytes());
+    assertEquals(1, pool.getStats().getMisses());
+  }
+
+  public void testStatsAdd() {
+    BufferPoolStats stats = new BufferPoolStats(1, 2, 3).add(new BufferPoolStats(10, 20, 30));
+    assertEquals(11, stats.getHits());
+    assertEquals(22, stats.getMisses());
+    assertEquals(33, stats.getPooledBytes());
+  }
+}
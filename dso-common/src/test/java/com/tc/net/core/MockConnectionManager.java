@@ -130,6 +130,11 @@ public class MockConnectionManager implements TCConnectionManager {
     
   }
 
+  @Override
+  public BufferPoolStats getBufferPoolStats() {
+    throw new ImplementMe();
+  }
+
   @Override
   public TCComm getTcComm() {
     throw new ImplementMe();
@@ -0,0 +1,70 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.core;
+
+import com.tc.test.TCTestCase;
+
+public class WorkerCommBalancerTest extends TCTestCase {
+
+  private static final long MB = 1024 * 1024;
+
+  public void testEvenLoadIsLeftAlone() {
+    long[] loads = { 10 * MB, 11 * MB, 9 * MB };
+    assertFalse(WorkerCommBalancer.isImbalanced(loads, 1, 2));
+  }
+
+  public void testSmallDifferencesAreLeftAlone() {
+    long[] loads = { 1000, 0, 0 };
+    assertFalse(WorkerCommBalancer.isImbalanced(loads, 0, 1));
+  }
+
+  public void testHotWorkerCommIsImbalanced() {
+    long[] loads = { 30 * MB, 5 * MB, 5 * MB };
+    assertEquals(0, WorkerCommBalancer.indexOfMax(loads));
+    assertEquals(1, WorkerCommBalancer.indexOfMin(loads));
+    assertTrue(WorkerCommBalancer.isImbalanced(loads, 0, 1));
+  }
+
+  public void testPicksConnectionThatEvensOutBest() {
+    // moving 12 leaves 18 vs 17, moving 20 leaves 10 vs 25
+    long[] candidates = { 20 * MB, 12 * MB, 1 * MB };
+    assertEquals(1, WorkerCommBalancer.pickConnection(candidates, 30 * MB, 5 * MB));
+  }
+
+  public void testSingleHotConnectionIsNotMoved() {
+    // moving the only busy connection just moves the problem
+    long[] candidates = { 30 * MB };
+    assertEquals(-1, WorkerCommBalancer.pickConnection(candidates, 30 * MB, 0));
+  }
+
+  public void testSettlingConnectionsAreSkipped() {
+    long[] candidates = { -1, 2 * MB };
+    assertEquals(1, WorkerCommBalancer.pickConnection(candidates, 30 * MB, 5 * MB));
+    candidates[1] = -1;
+    assertEquals(-1, WorkerCommBalancer.pickConnection(candidates, 30 * MB, 5 * MB));
+  }
+
+  public void testOnlyStartedWorkerCommsAreRunning() {
+    CoreNIOServices workerComm = new CoreNIOServices("balancer test", null, new SocketParams());
+    // connections are not moved to or from worker comms that are not running
+    assertFalse(workerComm.isRunning());
+    workerComm.start();
+    assertTrue(workerComm.isRunning());
+    workerComm.requestStop();
+    assertFalse(workerComm.isRunning());
+  }
+}
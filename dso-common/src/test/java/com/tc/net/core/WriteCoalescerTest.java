@@ -0,0 +1,105 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.core;
+
+import com.tc.test.TCTestCase;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+public class WriteCoalescerTest extends TCTestCase {
+
+  private static final long MICROS = TimeUnit.MICROSECONDS.toNanos(1);
+
+  public void testIdleConnectionWritesRightAway() {
+    WriteCoalescer coalescer = new WriteCoalescer(50, 1024, 1024 * 1024);
+    assertFalse(coalescer.holdBack(1000 * MICROS, 10, 1000 * MICROS));
+
+    coalescer.written(1000 * MICROS, 10, true);
+    // idle for longer than the delay
+    assertFalse(coalescer.holdBack(1100 * MICROS, 10, 1090 * MICROS));
+  }
+
+  public void testBusyConnectionHoldsBackSmallBatches() {
+    WriteCoalescer coalescer = new WriteCoalescer(50, 1024, 1024 * 1024);
+    coalescer.written(1000 * MICROS, 10, true);
+    assertTrue(coalescer.holdBack(1010 * MICROS, 10, 1005 * MICROS));
+    // waited long enough
+    assertFalse(coalescer.holdBack(1060 * MICROS, 10, 1005 * MICROS));
+    // large enough
+    assertFalse(coalescer.holdBack(1010 * MICROS, 1024, 1005 * MICROS));
+
+    coalescer.written(1000 * MICROS, 10, false);
+    // backlogged connections are busy no matter when they last wrote
+    assertTrue(coalescer.holdBack(5000 * MICROS, 10, 4990 * MICROS));
+  }
+
+  public void testHeldBackMessagesAreNotHeldPastTheDeadline() {
+    WriteCoalescer coalescer = new WriteCoalescer(50, 1024, 1024 * 1024);
+    coalescer.written(1000 * MICROS, 10, false);
+    long deadline = coalescer.flushDeadline(1005 * MICROS);
+    assertEquals(1055 * MICROS, deadline);
+    assertTrue(coalescer.holdBack(deadline - 1, 10, 1005 * MICROS));
+    assertFalse(coalescer.holdBack(deadline, 10, 1005 * MICROS));
+  }
+
+  public void testNoDelay() {
+    WriteCoalescer coalescer = new WriteCoalescer(0, 1024, 1024 * 1024);
+    coalescer.written(1000 * MICROS, 10, false);
+    assertFalse(coalescer.holdBack(1001 * MICROS, 10, 1000 * MICROS));
+  }
+
+  public void testBatchSizeFollowsThroughput() {
+    WriteCoalescer coalescer = new WriteCoalescer(50, 1024, 1024 * 1024);
+    assertEquals(1024, coalescer.getBatchBytes());
+
+    // 1 byte/ns while backlogged with messages waiting 40us
+    long now = 1000 * MICROS;
+    coalescer.dequeued(40 * MICROS);
+    coalescer.written(now, 100000, false);
+    for (int i = 0; i < 50; i++) {
+      now += 100 * MICROS;
+      coalescer.dequeued(40 * MICROS);
+      coalescer.written(now, 100 * MICROS, false);
+    }
+    assertEquals(40 * MICROS, coalescer.getBatchBytes(), 0.01 * 40 * MICROS);
+
+    // but never above the maximum
+    for (int i = 0; i < 50; i++) {
+      now += 1 * MICROS;
+      coalescer.dequeued(1000 * MICROS);
+      coalescer.written(now, 1000 * MICROS, false);
+    }
+    assertEquals(1024 * 1024, coalescer.getBatchBytes());
+  }
+
+  public void testBatchSizeDistribution() {
+    WriteCoalescer coalescer = new WriteCoalescer(50, 1024, 1024 * 1024);
+    coalescer.batched(1);
+    coalescer.batched(3);
+    coalescer.batched(4);
+    coalescer.batched(7);
+    coalescer.batched(100000);
+    long[] expected = new long[16];
+    expected[0] = 1;
+    expected[1] = 1;
+    expected[2] = 2;
+    expected[15] = 1;
+    assertTrue(Arrays.equals(expected, coalescer.getBatchSizeDistribution()));
+    assertEquals("batch sizes [1: 1, 2-3: 1, 4-7: 2, 32768+: 1], target batch 1024 bytes", coalescer.toString());
+  }
+}
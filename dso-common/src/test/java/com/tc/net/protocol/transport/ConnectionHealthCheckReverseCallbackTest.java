@@ -20,6 +20,7 @@ import com.tc.logging.LogLevelImpl;
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLogging;
 import com.tc.net.TCSocketAddress;
+import com.tc.net.core.BufferPoolStats;
 import com.tc.net.core.ConnectionAddressProvider;
 import com.tc.net.core.ConnectionInfo;
 import com.tc.net.core.TCComm;
@@ -216,6 +217,11 @@ public class ConnectionHealthCheckReverseCallbackTest extends TCTestCase {
       return delegate.getAllListeners();
     }
 
+    @Override
+    public BufferPoolStats getBufferPoolStats() {
+      return delegate.getBufferPoolStats();
+    }
+
     @Override
     public TCComm getTcComm() {
       return delegate.getTcComm();
@@ -134,4 +134,9 @@ public interface L1ServerMapLocalCacheStore<K, V> {
 
   public boolean isPinned();
 
+  /**
+   * Whether entries can overflow from the local heap to the local offheap
+   */
+  public boolean isOverflowToOffHeap();
+
 }
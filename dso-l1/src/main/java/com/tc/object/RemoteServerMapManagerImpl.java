@@ -46,6 +46,7 @@ import com.tc.util.Util;
 import com.tc.util.concurrent.TaskRunner;
 import com.tc.util.concurrent.Timer;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -53,9 +54,23 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
-
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Requests are tracked in a concurrent table and each request context is completed on its own, waking only the thread
+ * waiting for it, so application threads missing in their local caches and the thread handling responses do not
+ * contend on the manager. The manager's monitor only guards the changes of state on pause, rejoin and shutdown, which
+ * requesting threads merely read unless they have to wait for the manager to be running again.
+ */
 public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
 
   // TODO::Make its own property
@@ -65,7 +80,19 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
   private static final long                                              BATCH_LOOKUP_TIME_PERIOD                  = TCPropertiesImpl
                                                                                                                        .getProperties()
                                                                                                                        .getInt(TCPropertiesConsts.L1_SERVERMAPMANAGER_REMOTE_BATCH_LOOKUP_TIME_PERIOD);
-  private static final long                                              RESULT_WAIT_MAXTIME_MILLIS                = 30 * 1000;
+  private static final boolean                                           COALESCE_ENABLED                          = TCPropertiesImpl
+                                                                                                                       .getProperties()
+                                                                                                                       .getBoolean(TCPropertiesConsts.L1_SERVERMAPMANAGER_REMOTE_COALESCE_ENABLED,
+                                                                                                                                   false);
+  private static final long                                              COALESCE_WINDOW_NANOS                     = TimeUnit.MICROSECONDS
+                                                                                                                       .toNanos(TCPropertiesImpl
+                                                                                                                           .getProperties()
+                                                                                                                           .getLong(TCPropertiesConsts.L1_SERVERMAPMANAGER_REMOTE_COALESCE_WINDOW_MICROS,
+                                                                                                                                    50));
+  // rounds a thread sends for others before leaving the rest to the batching task
+  static final int                                                       MAX_COALESCE_ROUNDS                       = 2;
+  private static final long                                              RESULT_WAIT_MAXTIME_NANOS                 = TimeUnit.SECONDS
+                                                                                                                       .toNanos(30);
 
   private static final String                                            SIZE_KEY                                  = "SIZE_KEY";
   private static final String                                            ALL_KEYS                                  = "ALL-KEYS";
@@ -75,19 +102,23 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
   private final TCLogger                                                 logger;
   private final SessionManager                                           sessionManager;
   private final RemoteObjectManager                                      remoteObjectManager;
-  private final Map<ServerMapRequestID, AbstractServerMapRequestContext> outstandingRequests                       = new HashMap<ServerMapRequestID, AbstractServerMapRequestContext>();
+  private final ConcurrentMap<ServerMapRequestID, AbstractServerMapRequestContext> outstandingRequests             = new ConcurrentHashMap<ServerMapRequestID, AbstractServerMapRequestContext>();
+  private final Queue<AbstractServerMapRequestContext>                   pendingRequests                           = new ConcurrentLinkedQueue<AbstractServerMapRequestContext>();
   private final TaskRunner                                               taskRunner;
   private final AbortableOperationManager                                abortableOperationManager;
 
   private volatile State                                                 state                                     = State.RUNNING;
-  private long                                                           requestIDCounter                          = 0;
-  private boolean                                                        pendingSendTaskScheduled                  = false;
+  private final AtomicLong                                               requestIDCounter                          = new AtomicLong();
+  private final AtomicBoolean                                            pendingSendTaskScheduled                  = new AtomicBoolean();
+  private final AtomicBoolean                                            coalescing                                = new AtomicBoolean();
 
   // private final Sink ttiTTLEvitionSink;
   private final L1ServerMapLocalCacheManager                             globalLocalCacheManager;
   private ReInvalidateHandler                                            reInvalidateHandler;
 
   private final Timer                                                    requestsTimer;
+  private final boolean                                                  coalesceEnabled;
+  private final long                                                     coalesceWindowNanos;
 
   private enum State {
     PAUSED, RUNNING, REJOIN_IN_PROGRESS, STARTING, STOPPED
@@ -98,6 +129,15 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
                                     L1ServerMapLocalCacheManager globalLocalCacheManager,
                                     final AbortableOperationManager abortableOperationManager,
                                     final TaskRunner taskRunner) {
+    this(groupID, logger, remoteObjectManager, smmFactory, sessionManager, globalLocalCacheManager,
+         abortableOperationManager, taskRunner, COALESCE_ENABLED, COALESCE_WINDOW_NANOS);
+  }
+
+  RemoteServerMapManagerImpl(final GroupID groupID, final TCLogger logger, final RemoteObjectManager remoteObjectManager,
+                             final ServerMapMessageFactory smmFactory, final SessionManager sessionManager,
+                             L1ServerMapLocalCacheManager globalLocalCacheManager,
+                             final AbortableOperationManager abortableOperationManager, final TaskRunner taskRunner,
+                             final boolean coalesceEnabled, final long coalesceWindowNanos) {
     this.groupID = groupID;
     this.logger = logger;
     this.smmFactory = smmFactory;
@@ -108,13 +148,16 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
     this.abortableOperationManager = abortableOperationManager;
     this.taskRunner = taskRunner;
     this.requestsTimer = taskRunner.newTimer("RemoteServerMapManager Request Scheduler");
+    this.coalesceEnabled = coalesceEnabled;
+    this.coalesceWindowNanos = coalesceWindowNanos;
   }
 
   @Override
   public synchronized void cleanup() {
     checkAndSetstate();
     outstandingRequests.clear();
-    pendingSendTaskScheduled = false;
+    pendingRequests.clear();
+    pendingSendTaskScheduled.set(false);
     globalLocalCacheManager.cleanup();
     reInvalidateHandler.shutdown();
     reInvalidateHandler = new ReInvalidateHandler(globalLocalCacheManager, taskRunner);
@@ -125,6 +168,7 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
     state = State.REJOIN_IN_PROGRESS;
     globalLocalCacheManager.rejoinInProgress(true);
     notifyAll();
+    wakeAllWaiters();
   }
 
   private void throwExceptionIfNecessary(boolean throwExp) {
@@ -144,27 +188,26 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
    * @throws AbortedOperationException
    */
   @Override
-  public synchronized Object getMappingForKey(final ObjectID oid, final Object portableKey)
+  public Object getMappingForKey(final ObjectID oid, final Object portableKey)
       throws AbortedOperationException {
     assertSameGroupID(oid);
     waitUntilRunningAbortable();
 
     final AbstractServerMapRequestContext context = createLookupValueRequestContext(oid,
                                                                                     Collections.singleton(portableKey));
-    context.makeLookupRequest();
     sendRequest(context);
     Map<Object, Object> result = waitForResult(context);
     return result.get(portableKey);
   }
 
   @Override
-  public synchronized void getMappingForAllKeys(final Map<ObjectID, Set<Object>> mapIdToKeysMap, Map<Object, Object> rv)
+  public void getMappingForAllKeys(final Map<ObjectID, Set<Object>> mapIdToKeysMap, Map<Object, Object> rv)
       throws AbortedOperationException {
     Set<AbstractServerMapRequestContext> contextsToWaitFor = sendRequestForAllKeys(mapIdToKeysMap);
     waitForResults(contextsToWaitFor, rv);
   }
 
-  protected synchronized Set<AbstractServerMapRequestContext> sendRequestForAllKeys(final Map<ObjectID, Set<Object>> mapIdToKeysMap)
+  protected Set<AbstractServerMapRequestContext> sendRequestForAllKeys(final Map<ObjectID, Set<Object>> mapIdToKeysMap)
       throws AbortedOperationException {
     Set<AbstractServerMapRequestContext> contextsToWaitFor = new HashSet<AbstractServerMapRequestContext>();
     waitUntilRunningAbortable();
@@ -173,21 +216,27 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
       Set<Object> keys = entry.getValue();
       assertSameGroupID(mapId);
       final AbstractServerMapRequestContext context = createLookupValueRequestContext(mapId, keys);
-      context.makeLookupRequest();
       contextsToWaitFor.add(context);
-      sendRequest(context);
+      if (coalesceEnabled) {
+        // the maps of one bulk get go out in a single message
+        queueCoalescedRequest(context);
+      } else {
+        sendRequest(context);
+      }
+    }
+    if (coalesceEnabled) {
+      sendCoalescedRequests();
     }
     return contextsToWaitFor;
   }
 
   @Override
-  public synchronized Set getAllKeys(ObjectID mapID) throws AbortedOperationException {
+  public Set getAllKeys(ObjectID mapID) throws AbortedOperationException {
     assertSameGroupID(mapID);
     waitUntilRunningAbortable();
 
     final AbstractServerMapRequestContext context = createGetAllKeysRequestContext(mapID);
-    context.makeLookupRequest();
-    sendRequestNow(context);
+    sendRequestNowIfRunning(context);
     Map<Object, Object> result = waitForResult(context);
     Assert.assertTrue(result.containsKey(ALL_KEYS));
     return (Set) result.get(ALL_KEYS);
@@ -200,22 +249,21 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
   }
 
   @Override
-  public synchronized long getAllSize(final ObjectID[] mapIDs) throws AbortedOperationException {
+  public long getAllSize(final ObjectID[] mapIDs) throws AbortedOperationException {
     for (ObjectID mapId : mapIDs) {
       assertSameGroupID(mapId);
     }
     waitUntilRunningAbortable();
 
     final AbstractServerMapRequestContext context = createGetAllSizeRequestContext(mapIDs);
-    context.makeLookupRequest();
-    sendRequestNow(context);
+    sendRequestNowIfRunning(context);
     Map<Object, Object> result = waitForResult(context);
     Assert.assertTrue(result.containsKey(SIZE_KEY));
     return (Long) result.get(SIZE_KEY);
   }
 
   /**
-   * Waits in quantums of {@link #RESULT_WAIT_MAXTIME_MILLIS} until result corresponding to context is available from
+   * Waits in quantums of {@link #RESULT_WAIT_MAXTIME_NANOS} until result corresponding to context is available from
    * the server.
    */
   private Map<Object, Object> waitForResult(final AbstractServerMapRequestContext context)
@@ -225,11 +273,12 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
       while (true) {
         if (isStopped()) { throw new TCNotRunningException(); }
         if (isRejoinInProgress()) { throw new PlatformRejoinException(); }
-        try {
-          wait(RESULT_WAIT_MAXTIME_MILLIS);
-        } catch (final InterruptedException e) {
-          checkIfAbortedAndRemoveContexts(context);
-          isInterrupted = true;
+        if (!context.isDone()) {
+          LockSupport.parkNanos(this, RESULT_WAIT_MAXTIME_NANOS);
+          if (Thread.interrupted()) {
+            checkIfAbortedAndRemoveContexts(context);
+            isInterrupted = true;
+          }
         }
         if (context.isMissing()) {
           removeRequestContext(context);
@@ -247,19 +296,18 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
   }
 
   /**
-   * Waits in quantums of {@link #RESULT_WAIT_MAXTIME_MILLIS} until results corresponding to contextsToWaitFor are
+   * Waits in quantums of {@link #RESULT_WAIT_MAXTIME_NANOS} until results corresponding to contextsToWaitFor are
    * available from the server.
    */
-  protected synchronized void waitForResults(Set<AbstractServerMapRequestContext> contextsToWaitFor,
-                                             Map<Object, Object> rv) throws AbortedOperationException {
+  protected void waitForResults(Set<AbstractServerMapRequestContext> contextsToWaitFor, Map<Object, Object> rv)
+      throws AbortedOperationException {
     boolean isInterrupted = false;
     try {
       while (!allRequestsDone(contextsToWaitFor, rv)) {
         if (isStopped()) { throw new TCNotRunningException(); }
         if (isRejoinInProgress()) { throw new PlatformRejoinException(); }
-        try {
-          wait(RESULT_WAIT_MAXTIME_MILLIS);
-        } catch (final InterruptedException e) {
+        LockSupport.parkNanos(this, RESULT_WAIT_MAXTIME_NANOS);
+        if (Thread.interrupted()) {
           checkIfAbortedAndRemoveContexts(contextsToWaitFor);
           isInterrupted = true;
         }
@@ -294,18 +342,64 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
     if (size % 5000 == 4999) {
       this.logger.warn("Too many pending requests in the system : objectLookup states size : " + size);
     }
-    if (size <= MAX_OUTSTANDING_REQUESTS_SENT_IMMEDIATELY) {
-      sendRequestNow(context);
+    if (coalesceEnabled && context.getRequestType() == ServerMapRequestType.GET_VALUE_FOR_KEY) {
+      queueCoalescedRequest(context);
+      sendCoalescedRequests();
+    } else if (size <= MAX_OUTSTANDING_REQUESTS_SENT_IMMEDIATELY) {
+      sendRequestNowIfRunning(context);
     } else {
       scheduleRequestForLater(context);
     }
   }
 
+  /**
+   * The request is queued before the send task is looked at, and the task clears its flag before it drains the queue,
+   * so a request is either drained by a task already scheduled or schedules a new one.
+   */
   private void scheduleRequestForLater(final AbstractServerMapRequestContext context) {
     context.makePending();
-    if (!pendingSendTaskScheduled) {
+    pendingRequests.add(context);
+    if (pendingSendTaskScheduled.compareAndSet(false, true)) {
       requestsTimer.schedule(new SendPendingRequestsTask(), BATCH_LOOKUP_TIME_PERIOD, TimeUnit.MILLISECONDS);
-      pendingSendTaskScheduled = true;
+    }
+  }
+
+  private void queueCoalescedRequest(final AbstractServerMapRequestContext context) {
+    context.makePending();
+    pendingRequests.add(context);
+  }
+
+  /**
+   * Merges gets missing concurrently, on any of the maps of this group, into one request message. The request is
+   * queued with the batched ones and the first thread to find nobody sending becomes the sender: it waits for the
+   * coalescing window for others to join, then sends everything queued. Threads arriving while a message
+   * is being sent leave their requests for the sender, which goes round again, and after a few rounds hands what is
+   * left to the batching task so that it is not kept from its own result for long.
+   */
+  private void sendCoalescedRequests() {
+    if (this.state != State.RUNNING) {
+      // sent with the other outstanding requests on unpause
+      return;
+    }
+    int rounds = 0;
+    while (coalescing.compareAndSet(false, true)) {
+      try {
+        if (coalesceWindowNanos > 0) {
+          LockSupport.parkNanos(this, coalesceWindowNanos);
+        }
+        sendPendingBatch();
+      } finally {
+        coalescing.set(false);
+      }
+      // requests queued while this thread held the flag are noticed here, since they were queued before the flag
+      // was found taken
+      if (pendingRequests.isEmpty()) { return; }
+      if (++rounds == MAX_COALESCE_ROUNDS) {
+        if (pendingSendTaskScheduled.compareAndSet(false, true)) {
+          requestsTimer.schedule(new SendPendingRequestsTask(), BATCH_LOOKUP_TIME_PERIOD, TimeUnit.MILLISECONDS);
+        }
+        return;
+      }
     }
   }
 
@@ -326,9 +420,13 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
   /**
    * Only GET_VALUE_FOR_KEY requests are batched, its a little ugly to assume that here. Needs some refactoring.
    */
-  public synchronized void sendPendingRequests() {
+  public void sendPendingRequests() {
     waitUntilRunning();
-    this.pendingSendTaskScheduled = false;
+    this.pendingSendTaskScheduled.set(false);
+    sendPendingBatch();
+  }
+
+  private void sendPendingBatch() {
     final ServerMapRequestMessage msg = this.smmFactory
         .newServerMapRequestMessage(this.groupID, ServerMapRequestType.GET_VALUE_FOR_KEY);
     initializeMessageWithPendingRequests(msg);
@@ -337,20 +435,44 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
     }
   }
 
+  /**
+   * Drains the queued requests grouped by map, so that the gets on one map go into the message together
+   */
   private void initializeMessageWithPendingRequests(final ServerMapRequestMessage msg) {
-    for (final AbstractServerMapRequestContext context : this.outstandingRequests.values()) {
-      if (context.isPending()) {
-        if (context.getRequestType() != ServerMapRequestType.GET_VALUE_FOR_KEY) {
-          // Only GET_VALUE_FOR_KEY Requests are batched here
-          throw new AssertionError(context.getRequestType()
-                                   + " requests are not batched so it should never be pending : " + context);
+    final Map<ObjectID, Collection<AbstractServerMapRequestContext>> byMap = new HashMap<ObjectID, Collection<AbstractServerMapRequestContext>>();
+    AbstractServerMapRequestContext context;
+    while ((context = this.pendingRequests.poll()) != null) {
+      if (context.getRequestType() != ServerMapRequestType.GET_VALUE_FOR_KEY) {
+        // Only GET_VALUE_FOR_KEY Requests are batched here
+        throw new AssertionError(context.getRequestType() + " requests are not batched so it should never be pending : "
+                                 + context);
+      }
+      // a request resent on unpause or abandoned by its thread is no longer pending
+      if (context.makeUnPending() && this.outstandingRequests.get(context.getRequestID()) == context) {
+        Collection<AbstractServerMapRequestContext> contexts = byMap.get(context.getMapID());
+        if (contexts == null) {
+          contexts = new ArrayList<AbstractServerMapRequestContext>();
+          byMap.put(context.getMapID(), contexts);
         }
-        context.makeUnPending();
-        context.initializeMessage(msg);
+        contexts.add(context);
+      }
+    }
+    for (final Collection<AbstractServerMapRequestContext> contexts : byMap.values()) {
+      for (final AbstractServerMapRequestContext c : contexts) {
+        c.initializeMessage(msg);
       }
     }
   }
 
+  /**
+   * A request made while the manager is not running is sent with the other outstanding requests when it is unpaused
+   */
+  private void sendRequestNowIfRunning(final AbstractServerMapRequestContext context) {
+    if (this.state == State.RUNNING) {
+      sendRequestNow(context);
+    }
+  }
+
   private void sendRequestNow(final AbstractServerMapRequestContext context) {
     final ServerMapRequestMessage msg = this.smmFactory.newServerMapRequestMessage(this.groupID,
                                                                                    context.getRequestType());
@@ -369,13 +491,16 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
   synchronized void requestOutstanding() {
     logger.info("Sending outstanding servermap requests, num msgs: " + outstandingRequests.size());
     for (final AbstractServerMapRequestContext context : this.outstandingRequests.values()) {
+      context.makeUnPending();
       sendRequestNow(context);
     }
   }
 
+  /**
+   * The context may already be gone if the manager was cleaned up for a rejoin meanwhile
+   */
   private void removeRequestContext(final AbstractServerMapRequestContext context) {
-    final Object old = this.outstandingRequests.remove(context.getRequestID());
-    if (old != context) { throw new AssertionError("Removed wrong context. context = " + context + " old = " + old); }
+    this.outstandingRequests.remove(context.getRequestID(), context);
   }
 
   private AbstractServerMapRequestContext createLookupValueRequestContext(final ObjectID oid,
@@ -400,7 +525,7 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
   }
 
   @Override
-  public synchronized void addResponseForKeyValueMapping(final SessionID sessionID, final ObjectID mapID,
+  public void addResponseForKeyValueMapping(final SessionID sessionID, final ObjectID mapID,
                                                          final Collection<ServerMapGetValueResponse> responses,
                                                          final NodeID nodeID) {
     waitUntilRunning();
@@ -410,18 +535,17 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
       return;
     }
     for (final ServerMapGetValueResponse r : responses) {
-      setResultForRequest(sessionID, mapID, r.getRequestID(), r.getValues(), nodeID);
+      // the objects have to be there before the requesting thread is woken to look them up
       addResponseToObjectManager(r.getValues());
-      if (getRequestContext(r.getRequestID()) == null) {
+      if (!setResultForRequest(sessionID, mapID, r.getRequestID(), r.getValues(), nodeID)) {
         // Request was aborted, so we need to clean up.
         cleanupObjectManagerOnAbort(r.getValues());
       }
     }
-    notifyAll();
   }
 
   @Override
-  public synchronized void addResponseForGetAllSize(final SessionID sessionID, final GroupID gID,
+  public void addResponseForGetAllSize(final SessionID sessionID, final GroupID gID,
                                                     final ServerMapRequestID requestID, final Long size,
                                                     final NodeID nodeID) {
     waitUntilRunning();
@@ -433,11 +557,10 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
     Map<Object, Object> sizeMap = new HashMap<Object, Object>();
     sizeMap.put(SIZE_KEY, size);
     setResultForRequest(sessionID, ObjectID.NULL_ID, requestID, sizeMap, nodeID);
-    notifyAll();
   }
 
   @Override
-  public synchronized void addResponseForGetAllKeys(final SessionID sessionID, final ObjectID mapID,
+  public void addResponseForGetAllKeys(final SessionID sessionID, final ObjectID mapID,
                                                     final ServerMapRequestID requestID, final Set keys,
                                                     final NodeID nodeID) {
     waitUntilRunning();
@@ -449,11 +572,10 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
     Map<Object, Object> allKeysMap = new HashMap<Object, Object>();
     allKeysMap.put(ALL_KEYS, keys);
     setResultForRequest(sessionID, mapID, requestID, allKeysMap, nodeID);
-    notifyAll();
   }
 
   @Override
-  public synchronized void objectNotFoundFor(final SessionID sessionID, final ObjectID mapID,
+  public void objectNotFoundFor(final SessionID sessionID, final ObjectID mapID,
                                              final ServerMapRequestID requestID, final NodeID nodeID) {
     waitUntilRunning();
     if (!this.sessionManager.isCurrentSession(nodeID, sessionID)) {
@@ -462,15 +584,20 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
       return;
     }
     final AbstractServerMapRequestContext context = this.outstandingRequests.get(requestID);
-    context.makeMissingObject();
-    notifyAll();
+    if (context != null) {
+      context.makeMissingObject();
+    }
   }
 
-  private void setResultForRequest(final SessionID sessionID, final ObjectID mapID, final ServerMapRequestID requestID,
-                                   final Map<Object, Object> rv, final NodeID nodeID) {
+  /**
+   * @return false if no thread will take the result, because the request is gone or was abandoned
+   */
+  private boolean setResultForRequest(final SessionID sessionID, final ObjectID mapID,
+                                      final ServerMapRequestID requestID, final Map<Object, Object> rv,
+                                      final NodeID nodeID) {
     final AbstractServerMapRequestContext context = getRequestContext(requestID);
     if (context != null) {
-      context.setResult(mapID, rv);
+      return context.setResult(mapID, rv);
     } else {
       if (logger.isDebugEnabled()) {
         this.logger.debug("Server Map Request Context is null for " + mapID + " request ID : " + requestID
@@ -478,6 +605,7 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
                        + rv);
       }
     }
+    return false;
   }
 
   private void addResponseToObjectManager(final Map<Object, Object> rv) {
@@ -510,6 +638,13 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
    * To be used by methods which are called by the App thread.
    */
   private void waitUntilRunningAbortable() throws AbortedOperationException {
+    if (this.state == State.RUNNING) { return; }
+    synchronized (this) {
+      waitUntilRunningAbortableSlow();
+    }
+  }
+
+  private void waitUntilRunningAbortableSlow() throws AbortedOperationException {
     boolean isInterrupted = false;
     try {
       while (this.state != State.RUNNING) {
@@ -531,6 +666,13 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
    * To be used by methods which are directly called by the Stage thread.
    */
   private void waitUntilRunning() {
+    if (this.state == State.RUNNING) { return; }
+    synchronized (this) {
+      waitUntilRunningSlow();
+    }
+  }
+
+  private void waitUntilRunningSlow() {
     boolean isInterrupted = false;
     try {
       while (this.state != State.RUNNING) {
@@ -556,12 +698,22 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
   private void checkIfAbortedAndRemoveContexts(AbstractServerMapRequestContext context)
       throws AbortedOperationException {
     if (isAborted()) {
-      removeRequestContext(context);
-      cleanupObjectManagerOnAbort(context.getResult());
+      abandon(context);
       AbortedOperationUtil.throwExceptionIfAborted(abortableOperationManager);
     }
   }
 
+  /**
+   * Whichever of this and the response thread loses the race on the context cleans the response out of the object
+   * manager.
+   */
+  private void abandon(AbstractServerMapRequestContext context) {
+    removeRequestContext(context);
+    if (!context.abandon()) {
+      cleanupObjectManagerOnAbort(context.getResult());
+    }
+  }
+
   /**
    * Checks whether the interrupt was due to aborting the operation. Also removes the context from
    * {@link #outstandingRequests}
@@ -572,7 +724,7 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
       throws AbortedOperationException {
     if (isAborted()) {
       for (AbstractServerMapRequestContext context : contextsToWaitFor) {
-        removeRequestContext(context);
+        abandon(context);
       }
       AbortedOperationUtil.throwExceptionIfAborted(abortableOperationManager);
     }
@@ -588,6 +740,7 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
     assertNotPaused("Attempt to pause while PAUSED");
     this.state = State.PAUSED;
     notifyAll();
+    wakeAllWaiters();
   }
 
   @Override
@@ -617,6 +770,16 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
         requestsTimer.cancel();
         notifyAll();
       }
+    wakeAllWaiters();
+  }
+
+  /**
+   * Wakes the threads waiting for results so that they notice the change of state
+   */
+  private void wakeAllWaiters() {
+    for (final AbstractServerMapRequestContext context : this.outstandingRequests.values()) {
+      context.wakeWaiter();
+    }
   }
 
   private boolean isStopped() {
@@ -642,18 +805,30 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
   }
 
   private ServerMapRequestID getNextRequestID() {
-    return new ServerMapRequestID(this.requestIDCounter++);
+    return new ServerMapRequestID(this.requestIDCounter.getAndIncrement());
   }
 
-  protected static abstract class AbstractServerMapRequestContext extends LookupStateTransitionAdaptor {
+  /**
+   * The future of one request. It is completed by the thread handling the response, which then wakes the thread that
+   * made the request and is waiting for it.
+   */
+  protected static abstract class AbstractServerMapRequestContext {
 
     // protected final static TCLogger logger = TCLogging.getLogger(AbstractServerMapRequestContext.class);
 
-    protected final ObjectID             oid;
-    protected final GroupID              groupID;
-    protected final ServerMapRequestID   requestID;
-    protected final ServerMapRequestType requestType;
-    protected Map<Object, Object>        result;
+    private static final int               WAITING   = 0;
+    private static final int               ANSWERED  = 1;
+    private static final int               ABANDONED = 2;
+
+    protected final ObjectID               oid;
+    protected final GroupID                groupID;
+    protected final ServerMapRequestID     requestID;
+    protected final ServerMapRequestType   requestType;
+    protected volatile Map<Object, Object> result;
+    private volatile boolean               missing;
+    private final AtomicBoolean            pending   = new AtomicBoolean();
+    private final AtomicInteger            state     = new AtomicInteger(WAITING);
+    private final Thread                   waiter;
 
     public AbstractServerMapRequestContext(final ServerMapRequestType requestType, final ServerMapRequestID requestID,
                                            final ObjectID mapID, final GroupID groupID) {
@@ -662,6 +837,7 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
       this.requestID = requestID;
       this.oid = mapID;
       this.groupID = groupID;
+      this.waiter = Thread.currentThread();
     }
 
     public ServerMapRequestID getRequestID() {
@@ -672,17 +848,59 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
       return this.requestType;
     }
 
-    public void setResult(final ObjectID mapID, final Map<Object, Object> rv) {
+    /**
+     * @return false if the requesting thread abandoned the request, and will not take the result
+     */
+    public boolean setResult(final ObjectID mapID, final Map<Object, Object> rv) {
       if (!this.oid.equals(mapID)) { throw new AssertionError("Wrong request to response : this map id : " + this.oid
                                                               + " response is for : " + mapID + " type : "
                                                               + getRequestType()); }
+      // set before the state, so that a requester failing to abandon always finds the result to clean up
       this.result = rv;
+      if (!this.state.compareAndSet(WAITING, ANSWERED) && this.state.get() == ABANDONED) { return false; }
+      wakeWaiter();
+      return true;
+    }
+
+    /**
+     * @return false if a result was already set, in which case the requesting thread has to clean it up
+     */
+    boolean abandon() {
+      return this.state.compareAndSet(WAITING, ABANDONED) || this.state.get() == ABANDONED;
     }
 
     public Map<Object, Object> getResult() {
       return this.result;
     }
 
+    public void makeMissingObject() {
+      this.missing = true;
+      wakeWaiter();
+    }
+
+    public boolean isMissing() {
+      return this.missing;
+    }
+
+    boolean isDone() {
+      return this.missing || this.result != null;
+    }
+
+    void makePending() {
+      this.pending.set(true);
+    }
+
+    /**
+     * @return true if the request was pending, in which case this caller is the one to send it
+     */
+    boolean makeUnPending() {
+      return this.pending.compareAndSet(true, false);
+    }
+
+    void wakeWaiter() {
+      LockSupport.unpark(this.waiter);
+    }
+
     @Override
     public int hashCode() {
       return this.requestID.hashCode();
@@ -783,7 +1001,7 @@ public class RemoteServerMapManagerImpl implements RemoteServerMapManager {
   }
 
   @Override
-  public synchronized PrettyPrinter prettyPrint(PrettyPrinter out) {
+  public PrettyPrinter prettyPrint(PrettyPrinter out) {
     out.print(this.getClass().getName()).print("Group Id: ").print(groupID).flush();
     out.indent().print("outstandingRequests count: ").print(Integer.valueOf(this.outstandingRequests.size())).flush();
     for (Entry<ServerMapRequestID, AbstractServerMapRequestContext> entry : outstandingRequests.entrySet()) {
@@ -32,6 +32,7 @@ import com.tc.text.PrettyPrinter;
 import com.tc.util.AbortedOperationUtil;
 import com.tc.util.FindbugsSuppressWarnings;
 import com.tc.util.Util;
+import com.tc.util.concurrent.HashedWheelTimer;
 import com.tc.util.concurrent.TaskRunner;
 import com.tc.util.concurrent.Timer;
 import com.tc.util.runtime.ThreadIDManager;
@@ -49,6 +50,9 @@ import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class ClientLockManagerImpl implements ClientLockManager, ClientLockManagerTestMethods, PrettyPrintable {
+  private static final long                       LEASE_TIMER_TICK_MILLIS     = 5;
+  private static final int                        LEASE_TIMER_TICKS_PER_WHEEL = 256;
+
   private static final WaitListener               NULL_LISTENER       = new WaitListener() {
                                                                         @Override
                                                                         public void handleWaitEvent() {
@@ -87,7 +91,12 @@ public class ClientLockManagerImpl implements ClientLockManager, ClientLockManag
     this.locks = new ConcurrentHashMap<LockID, ClientLock>(config.getStripedCount());
     final long gcPeriod = Math.max(config.getTimeoutInterval(), 100);
     this.gcTimer = taskRunner.newTimer("ClientLockManager LockGC");
-    this.lockLeaseTimer = taskRunner.newTimer("ClientLockManager Lock Lease Timer");
+    // greedy leases are short and come and go with every recall, keep them off the shared pool's scheduling queue
+    final HashedWheelTimer leaseTimer = new HashedWheelTimer("ClientLockManager Lock Lease Timer",
+                                                             LEASE_TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS,
+                                                             LEASE_TIMER_TICKS_PER_WHEEL);
+    leaseTimer.start();
+    this.lockLeaseTimer = leaseTimer;
     this.gcTimer.scheduleWithFixedDelay(new LockGcTimerTask(), gcPeriod, gcPeriod, TimeUnit.MILLISECONDS);
   }
 
@@ -0,0 +1,214 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.object.servermap.localcache.impl;
+
+import com.tc.object.ObjectID;
+
+/**
+ * Value ObjectID -&gt; key index of a local cache, used to find the entry to invalidate for an ObjectID. It is kept next
+ * to the local store instead of in it, so that the store only holds real entries. The ids are kept as primitive longs
+ * in open addressing tables, split in segments that are locked independently. A segment halves its table when it
+ * drops below an eighth full, so that the index shrinks back with the cache after invalidations and evictions.
+ * <p>
+ * The index holds the keys strongly, it is only used for stores that keep all their entries on heap, where the keys
+ * are held by the store anyway.
+ */
+class ObjectIDKeyIndex {
+
+  private static final int SEGMENTS         = 64;
+  private static final int SEGMENT_SHIFT    = 64 - 6;
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final Segment[]  segments;
+
+  ObjectIDKeyIndex() {
+    this.segments = new Segment[SEGMENTS];
+    for (int i = 0; i < SEGMENTS; i++) {
+      this.segments[i] = new Segment();
+    }
+  }
+
+  /**
+   * @return the key previously mapped to the id, if any
+   */
+  Object put(ObjectID id, Object key) {
+    if (key == null) { throw new NullPointerException("null key for " + id); }
+    long hash = hash(id.toLong());
+    return segmentFor(hash).put(id.toLong(), (int) hash, key);
+  }
+
+  Object get(ObjectID id) {
+    long hash = hash(id.toLong());
+    return segmentFor(hash).get(id.toLong(), (int) hash);
+  }
+
+  Object remove(ObjectID id) {
+    long hash = hash(id.toLong());
+    return segmentFor(hash).remove(id.toLong(), (int) hash);
+  }
+
+  int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  /**
+   * @return the number of slots of all segments
+   */
+  int capacity() {
+    int capacity = 0;
+    for (Segment segment : segments) {
+      capacity += segment.capacity();
+    }
+    return capacity;
+  }
+
+  void clear() {
+    for (Segment segment : segments) {
+      segment.clear();
+    }
+  }
+
+  private Segment segmentFor(long hash) {
+    return segments[(int) (hash >>> SEGMENT_SHIFT)];
+  }
+
+  private static long hash(long id) {
+    // ObjectIDs are mostly sequential, spread them over the segments and slots
+    id ^= id >>> 33;
+    id *= 0xff51afd7ed558ccdL;
+    id ^= id >>> 33;
+    id *= 0xc4ceb9fe1a85ec53L;
+    id ^= id >>> 33;
+    return id;
+  }
+
+  private static final class Segment {
+    // a slot is free when its key is null, so that every id value can be stored
+    private long[]   ids  = new long[INITIAL_CAPACITY];
+    private Object[] keys = new Object[INITIAL_CAPACITY];
+    private int      size;
+
+    synchronized Object put(long id, int hash, Object key) {
+      int mask = keys.length - 1;
+      int slot = hash & mask;
+      while (keys[slot] != null) {
+        if (ids[slot] == id) {
+          Object old = keys[slot];
+          keys[slot] = key;
+          return old;
+        }
+        slot = (slot + 1) & mask;
+      }
+      ids[slot] = id;
+      keys[slot] = key;
+      if (++size > (keys.length >> 1) + (keys.length >> 2)) {
+        resize(keys.length << 1);
+      }
+      return null;
+    }
+
+    synchronized Object get(long id, int hash) {
+      int mask = keys.length - 1;
+      int slot = hash & mask;
+      Object key;
+      while ((key = keys[slot]) != null) {
+        if (ids[slot] == id) { return key; }
+        slot = (slot + 1) & mask;
+      }
+      return null;
+    }
+
+    synchronized Object remove(long id, int hash) {
+      int mask = keys.length - 1;
+      int slot = hash & mask;
+      while (keys[slot] != null) {
+        if (ids[slot] == id) {
+          Object old = keys[slot];
+          deleteSlot(slot, mask);
+          if (--size < (keys.length >> 3) && keys.length > INITIAL_CAPACITY) {
+            resize(keys.length >> 1);
+          }
+          return old;
+        }
+        slot = (slot + 1) & mask;
+      }
+      return null;
+    }
+
+    synchronized int size() {
+      return size;
+    }
+
+    synchronized int capacity() {
+      return keys.length;
+    }
+
+    synchronized void clear() {
+      ids = new long[INITIAL_CAPACITY];
+      keys = new Object[INITIAL_CAPACITY];
+      size = 0;
+    }
+
+    /**
+     * Shifts the entries following the freed slot back, so that no lookup stops early at it.
+     */
+    private void deleteSlot(int free, int mask) {
+      int slot = free;
+      while (true) {
+        slot = (slot + 1) & mask;
+        if (keys[slot] == null) {
+          break;
+        }
+        int home = (int) hash(ids[slot]) & mask;
+        // move the entry only if its home slot is not in (free, slot]
+        if (free <= slot ? (home <= free || home > slot) : (home <= free && home > slot)) {
+          ids[free] = ids[slot];
+          keys[free] = keys[slot];
+          free = slot;
+        }
+      }
+      keys[free] = null;
+    }
+
+    private void resize(int capacity) {
+      long[] oldIds = ids;
+      Object[] oldKeys = keys;
+      ids = new long[capacity];
+      keys = new Object[capacity];
+      int mask = capacity - 1;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != null) {
+          int slot = (int) hash(oldIds[i]) & mask;
+          while (keys[slot] != null) {
+            slot = (slot + 1) & mask;
+          }
+          ids[slot] = oldIds[i];
+          keys[slot] = oldKeys[i];
+        }
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ObjectIDKeyIndex [size=" + size() + "]";
+  }
+}
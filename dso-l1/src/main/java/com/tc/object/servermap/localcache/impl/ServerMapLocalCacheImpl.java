@@ -56,27 +56,31 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * Eventual Mapping
  * <ul>
  * <li>key -&gt; (value, valueoid) (local ehcache)</li>
- * <li>valueoid -&gt; key (local ehcache)</li>
+ * <li>valueoid -&gt; key (In memory) valueOidToKey</li>
  * </ul>
  * <br>
  * Strong Mapping (if value is not literal)
  * <ul>
  * <li>key -&gt; (value, lockid) (local ehcache)</li>
- * <li>valueoid -&gt; key (local ehcache)</li>
- * <li>lockid -&gt; List&lt;valueoid&gt; (In memory) lockIDMappings</li>
+ * <li>valueoid -&gt; key (In memory) valueOidToKey</li>
  * </ul>
  * <br>
  * Strong Mapping (if value is literal)
  * <ul>
  * <li>key -&gt; (value, lockid) (local ehcache)</li>
- * <li>lockid -&gt; List&lt;key&gt; (In memory)</li>
  * </ul>
  * <br>
  * Bulk load
  * <ul>
  * <li>key -&gt; (value, valueoid)</li>
- * <li>valueoid -&gt; key</li>
+ * <li>valueoid -&gt; key (In memory) valueOidToKey</li>
  * </ul>
+ * Keys being mutated by a transaction in progress live in pendingTransactionEntries instead of the local ehcache until
+ * the transaction completes.
+ * <p>
+ * When the local store can overflow off heap the valueoid -&gt; key mappings are kept in the local ehcache (or in
+ * pendingTransactionEntries for mutate operations) instead of valueOidToKey, so that they are sized and evicted with
+ * the entries they belong to rather than holding every key on heap.
  */
 public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
 
@@ -101,6 +105,8 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
   private final Map<ObjectID, Object>                oidsForWhichTxnAreInProgress     = new ConcurrentHashMap<ObjectID, Object>();
 
   private final ConcurrentHashMap                    pendingTransactionEntries;
+  // null when the mappings are kept in the local store
+  private final ObjectIDKeyIndex                     valueOidToKey;
   private final ConcurrentHashMap                    keyToListeners;
 
   private final ReentrantReadWriteLock[]             locks;
@@ -121,6 +127,7 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
     this.localCacheEnabled = islocalCacheEnbaled;
     this.removeCallback = removeCallback;
     this.localStore = localStore;
+    this.valueOidToKey = localStore.isOverflowToOffHeap() ? null : new ObjectIDKeyIndex();
     this.pendingTransactionEntries = new ConcurrentHashMap(CONCURRENCY, 0.75f, CONCURRENCY);
     this.keyToListeners = new ConcurrentHashMap(CONCURRENCY, 0.75f, CONCURRENCY);
     this.locks = new ReentrantReadWriteLock[CONCURRENCY];
@@ -158,8 +165,9 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
     debug("XXX addToCache - key: " + key + " value: " + localCacheValue + ", mapOperationType: " + mapOperation);
 
     try {
-      putMetaMapping(localCacheValue, key, mapOperation);
+      // the old value's meta mapping is cleaned up first, it may be for the same value oid
       putKeyValueMapping(key, localCacheValue, mapOperation);
+      putMetaMapping(localCacheValue, key, mapOperation);
 
       if (mapOperation.isMutateOperation() && !localCacheValue.isValueNull() && !localCacheValue.isLiteral()) {
         oidsForWhichTxnAreInProgress.put(localCacheValue.getValueObjectId(), NULL_VALUE);
@@ -174,7 +182,7 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
       if (old != null) {
         // This is here to handle the case where we have an existing entry in the local cache to replace. For example,
         // two consecutive puts.
-        handleKeyValueMappingRemoved(key, (AbstractLocalCacheStoreValue) old, true);
+        handleKeyValueMappingRemoved(key, (AbstractLocalCacheStoreValue) old);
       }
       remoteRemoveObjectIfPossible(localCacheValue);
     } finally {
@@ -201,14 +209,15 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
   }
 
   private void putMetaMapping(final AbstractLocalCacheStoreValue localCacheValue, final Object key,
-                              MapOperationType mapOperation) {
+                              MapOperationType mapOperation) throws LocalCacheStoreFullException {
     if (localCacheValue.getValueObject() == null) { return; }
 
     ObjectID valueObjectID = localCacheValue.getValueObjectId();
     if (!valueObjectID.equals(ObjectID.NULL_ID)) {
       // this is for non literal keys
-      // literal keys need to put lock id mapping
-      if (mapOperation.isMutateOperation()) {
+      if (valueOidToKey != null) {
+        valueOidToKey.put(valueObjectID, key);
+      } else if (mapOperation.isMutateOperation()) {
         // put a pinned entry for mutate ops, unpinned on txn complete
         this.pendingTransactionEntries.put(valueObjectID, key);
       } else {
@@ -217,14 +226,18 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
     }
   }
 
-  private LockID removeMetaMapping(Object key, AbstractLocalCacheStoreValue localCacheValue,
-                                   final boolean isRemoveFromInternalStore) {
+  private Object removeObjectIDMapping(ObjectID valueObjectID) {
+    if (valueOidToKey != null) { return valueOidToKey.remove(valueObjectID); }
+    return remove(valueObjectID);
+  }
+
+  private LockID removeMetaMapping(Object key, AbstractLocalCacheStoreValue localCacheValue) {
     if (localCacheValue == null || localCacheValue.isValueNull()) { return null; }
 
     if (!localCacheValue.isLiteral()) {
-      debug("XXX removeMetaMapping key:" + key + " old " + localCacheValue + " " + isRemoveFromInternalStore);
+      debug("XXX removeMetaMapping key:" + key + " old " + localCacheValue);
       // removing value oid mapping
-      remove(localCacheValue.getValueObjectId(), isRemoveFromInternalStore);
+      removeObjectIDMapping(localCacheValue.getValueObjectId());
     }
     return null;
   }
@@ -262,6 +275,9 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
   @Override
   public void cleanLocalState() {
     this.pendingTransactionEntries.clear();
+    if (this.valueOidToKey != null) {
+      this.valueOidToKey.clear();
+    }
     this.localStore.cleanLocalState();
     this.oidsForWhichTxnAreInProgress.clear();
   }
@@ -285,7 +301,7 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
         Object value = remove(key, removeFromInternalStore);
         if (value instanceof AbstractLocalCacheStoreValue) {
           AbstractLocalCacheStoreValue localValue = (AbstractLocalCacheStoreValue) value;
-          LockID lockID = handleKeyValueMappingRemoved(key, localValue, removeFromInternalStore);
+          LockID lockID = handleKeyValueMappingRemoved(key, localValue);
           if (lockID != null) {
             lockIDs.add(lockID);
           }
@@ -317,7 +333,12 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
 
   @Override
   public int size() {
-    return this.localStore.size() + (this.pendingTransactionEntries.size() / 2);
+    return this.localStore.size() + pendingEntriesCount();
+  }
+
+  private int pendingEntriesCount() {
+    // pending entries come with their valueoid -> key mapping when those are kept in the stores
+    return valueOidToKey == null ? pendingTransactionEntries.size() / 2 : pendingTransactionEntries.size();
   }
 
   @Override
@@ -364,7 +385,7 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
     debug("XXX removeFromInternalStore key:" + key + " " + oldValue);
     if (oldValue instanceof AbstractLocalCacheStoreValue) {
       AbstractLocalCacheStoreValue localValue = (AbstractLocalCacheStoreValue) oldValue;
-      handleKeyValueMappingRemoved(key, localValue, true);
+      handleKeyValueMappingRemoved(key, localValue);
     }
   }
 
@@ -379,7 +400,7 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
 
     if (removed) {
       debug("XXX removeFromPendingTransactionEntries key:" + key + " " + removed);
-      handleKeyValueMappingRemoved(key, value, false);
+      handleKeyValueMappingRemoved(key, value);
     }
     return removed;
   }
@@ -398,12 +419,15 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
     ReentrantReadWriteLock lock = getLock(key);
     lock.writeLock().lock();
     try {
-      handleKeyValueMappingRemoved(key, value, true);
+      handleKeyValueMappingRemoved(key, value);
     } finally {
       lock.writeLock().unlock();
     }
   }
 
+  /**
+   * An evicted valueoid -&gt; key mapping takes its entry with it, or the entry could no longer be invalidated.
+   */
   private void objectIDMappingEvicted(ObjectID oid, Object key) {
     ReentrantReadWriteLock lock = getLock(key);
     lock.writeLock().lock();
@@ -411,7 +435,7 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
       AbstractLocalCacheStoreValue value = (AbstractLocalCacheStoreValue) localStore.get(key);
       if (value != null && value.getValueObjectId().equals(oid)) {
         AbstractLocalCacheStoreValue removed = (AbstractLocalCacheStoreValue) localStore.remove(key);
-        handleKeyValueMappingRemoved(key, removed, true);
+        handleKeyValueMappingRemoved(key, removed);
       }
     } finally {
       lock.writeLock().unlock();
@@ -430,9 +454,8 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
     }
   }
 
-  private LockID handleKeyValueMappingRemoved(Object key, AbstractLocalCacheStoreValue value,
-                                              boolean removeFromInternalStore) {
-    LockID lockID = removeMetaMapping(key, value, removeFromInternalStore);
+  private LockID handleKeyValueMappingRemoved(Object key, AbstractLocalCacheStoreValue value) {
+    LockID lockID = removeMetaMapping(key, value);
     unpinLockIfNecessary(value);
     remoteRemoveObjectIfPossible(value);
     return lockID;
@@ -446,6 +469,8 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
 
   @Override
   public Object getMappingUnlocked(final Object keyOrId) {
+    if (valueOidToKey != null && keyOrId instanceof ObjectID) { return valueOidToKey.get((ObjectID) keyOrId); }
+
     Object rv = pendingTransactionEntries.get(keyOrId);
     if (rv != null) { return rv; }
 
@@ -507,7 +532,7 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
     ReentrantReadWriteLock lock = getLock(key);
     lock.writeLock().lock();
     try {
-      key = remove(objectId);
+      key = removeObjectIDMapping(objectId);
       if (key != null) {
         AbstractLocalCacheStoreValue value = (AbstractLocalCacheStoreValue) remove(key);
         unpinLockIfNecessary(value);
@@ -584,7 +609,7 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
         Object valueFetched = pendingTransactionEntries.get(key);
         if (value.equals(valueFetched)) {
           // remove meta mappings, but don't remove lockIdMappings
-          removeMetaMapping(key, value, false);
+          removeMetaMapping(key, value);
           addToCache(key, value, MapOperationType.GET);
           pendingTransactionEntries.remove(key, value);
           unpinLockIfNecessary(value);
@@ -624,7 +649,7 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
 
   @Override
   public int onHeapSize() {
-    int totalInMemoryCount = this.localStore.onHeapSize() + pendingTransactionEntries.size() / 2;
+    int totalInMemoryCount = this.localStore.onHeapSize() + pendingEntriesCount();
     return totalInMemoryCount < 0 ? Integer.MAX_VALUE : totalInMemoryCount;
   }
 
@@ -652,10 +677,10 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
     if (mapOperation.isMutateOperation()) {
       AbstractLocalCacheStoreValue old = (AbstractLocalCacheStoreValue) this.pendingTransactionEntries.put(key, value);
       if (old != null) {
-        cleanupOldMetaMapping(key, old, false);
+        cleanupOldMetaMapping(key, old);
       } else {
         old = (AbstractLocalCacheStoreValue) this.localStore.remove(key);
-        cleanupOldMetaMapping(key, old, true);
+        cleanupOldMetaMapping(key, old);
       }
     } else {
       AbstractLocalCacheStoreValue old = (AbstractLocalCacheStoreValue) this.localStore.put(key, value);
@@ -663,19 +688,18 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
       if (serializeEntry instanceof LocalCacheAddCallBack) {
         ((LocalCacheAddCallBack) serializeEntry).addedToLocalCache();
       }
-      cleanupOldMetaMapping(key, old, true);
+      cleanupOldMetaMapping(key, old);
     }
     pinLockIfNecessary(value);
   }
 
-  private void cleanupOldMetaMapping(Object key, AbstractLocalCacheStoreValue old,
-                                     boolean isRemoveFromInternalStore) {
+  private void cleanupOldMetaMapping(Object key, AbstractLocalCacheStoreValue old) {
     if (old == null || old.isValueNull() || old.isLiteral()) {
       // we don't put any meta mapping for REMOVE when value == null
       // when literal is present then lockid-> key will be present which we don want to remove
       return;
     }
-    handleKeyValueMappingRemoved(key, old, isRemoveFromInternalStore);
+    handleKeyValueMappingRemoved(key, old);
   }
 
   private Object remove(Object key) {
@@ -743,7 +767,7 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
       Object valueFetched = pendingTransactionEntries.get(key);
       if (value.equals(valueFetched)) {
         // remove meta mappings, but don't remove lockIdMappings
-        removeMetaMapping(key, value, false);
+        removeMetaMapping(key, value);
         if (pendingTransactionEntries.remove(key, value)) {
           unpinLockIfNecessary(value);
         }
@@ -759,7 +783,17 @@ public final class ServerMapLocalCacheImpl implements ServerMapLocalCache {
   public void handleObjectIDsToValidate(ObjectIDSet validations) {
     grabAllLocks();
     try {
-      validations.removeAll(pendingTransactionEntries.keySet());
+      if (valueOidToKey == null) {
+        // the pending valueoid -> key mappings are keyed by the ids themselves
+        validations.removeAll(pendingTransactionEntries.keySet());
+        return;
+      }
+      for (Object value : pendingTransactionEntries.values()) {
+        ObjectID valueObjectID = ((AbstractLocalCacheStoreValue) value).getValueObjectId();
+        if (!ObjectID.NULL_ID.equals(valueObjectID)) {
+          validations.remove(valueObjectID);
+        }
+      }
     } finally {
       releaseAllLocks();
     }
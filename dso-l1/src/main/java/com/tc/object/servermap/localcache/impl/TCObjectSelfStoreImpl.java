@@ -34,17 +34,30 @@ import com.tc.object.servermap.localcache.ServerMapLocalCache;
 import com.tc.util.BitSetObjectIDSet;
 import com.tc.util.ObjectIDSet;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Changes for an ObjectID are serialized on one of {@link #OID_LOCK_STRIPES} monitors picked by the id, so that the
+ * check-then-act steps below stay atomic without a store wide lock. The ids in the store are kept in bitsets striped
+ * the same way, each behind its own read write lock that is only held while a bitset is read or changed. Lookups only
+ * take those read locks, so they never wait on an id monitor.
+ * <p>
+ * The client object manager calls into the store holding its own monitor, and the removal callback takes that same
+ * monitor. Removals that notify the callback therefore take the callback monitor before the id monitor, so both
+ * always go in that order.
+ */
 public class TCObjectSelfStoreImpl implements TCObjectSelfStore {
+  private static final int                                                       OID_LOCK_STRIPES      = 128;
+
   private final TCObjectSelfStoreObjectIDSet                                     tcObjectSelfStoreOids = new TCObjectSelfStoreObjectIDSet();
-  private final ReentrantReadWriteLock                                           tcObjectStoreLock     = new ReentrantReadWriteLock();
+  private final Object[]                                                         oidLocks              = new Object[OID_LOCK_STRIPES];
   private volatile TCObjectSelfCallback                                          tcObjectSelfRemovedFromStoreCallback;
-  private final Map<ObjectID, TCObjectSelf>                                      tcObjectSelfTempCache = new HashMap<ObjectID, TCObjectSelf>();
+  private final ConcurrentMap<ObjectID, TCObjectSelf>                            tcObjectSelfTempCache = new ConcurrentHashMap<ObjectID, TCObjectSelf>();
+  private final AtomicInteger                                                    waiters               = new AtomicInteger();
 
   private final ConcurrentHashMap<ServerMapLocalCache, PinnedEntryFaultCallback> localCaches;
 
@@ -56,19 +69,29 @@ public class TCObjectSelfStoreImpl implements TCObjectSelfStore {
 
   public TCObjectSelfStoreImpl(ConcurrentHashMap<ServerMapLocalCache, PinnedEntryFaultCallback> localCaches) {
     this.localCaches = localCaches;
+    for (int i = 0; i < OID_LOCK_STRIPES; i++) {
+      oidLocks[i] = new Object();
+    }
+  }
+
+  private Object lockFor(ObjectID oid) {
+    return oidLocks[stripeFor(oid)];
+  }
+
+  private static int stripeFor(ObjectID oid) {
+    // all the ids of a BitSetObjectIDSet range (64 ids) go to the same stripe
+    long range = oid.toLong() >> 6;
+    int h = (int) (range ^ (range >>> 32));
+    h ^= (h >>> 16);
+    return (h ^ (h >>> 7)) & (OID_LOCK_STRIPES - 1);
   }
 
   @Override
   public void cleanup() {
     synchronized (tcObjectSelfRemovedFromStoreCallback) {
+      tcObjectSelfStoreOids.clear();
+      tcObjectSelfTempCache.clear();
       tcObjectSelfRemovedFromStoreCallback.notifyAll();
-      tcObjectStoreLock.writeLock().lock();
-      try {
-        tcObjectSelfStoreOids.clear();
-        tcObjectSelfTempCache.clear();
-      } finally {
-        tcObjectStoreLock.writeLock().unlock();
-      }
     }
   }
 
@@ -79,15 +102,8 @@ public class TCObjectSelfStoreImpl implements TCObjectSelfStore {
 
   @Override
   public void removeObjectById(ObjectID oid) {
-    synchronized (tcObjectSelfRemovedFromStoreCallback) {
-      tcObjectStoreLock.writeLock().lock();
-      try {
-        throwExceptionIfNecessary();
-        if (!tcObjectSelfStoreOids.contains(oid)) { return; }
-      } finally {
-        tcObjectStoreLock.writeLock().unlock();
-      }
-    }
+    throwExceptionIfNecessary();
+    if (!tcObjectSelfStoreOids.contains(oid)) { return; }
 
     for (ServerMapLocalCache cache : localCaches.keySet()) {
       cache.removeEntriesForObjectId(oid);
@@ -102,45 +118,40 @@ public class TCObjectSelfStoreImpl implements TCObjectSelfStore {
     try {
       while (true) {
         Object rv = null;
-        tcObjectStoreLock.readLock().lock();
-        try {
-          throwExceptionIfNecessary();
-          TCObjectSelf self = tcObjectSelfTempCache.get(oid);
-          if (self != null) { return self; }
+        throwExceptionIfNecessary();
+        TCObjectSelf self = tcObjectSelfTempCache.get(oid);
+        if (self != null) { return self; }
 
-          if (!tcObjectSelfStoreOids.contains(oid)) {
-            if (logger.isDebugEnabled()) {
-              logger.debug("XXX GetById failed at TCObjectSelfStoreIDs, ObjectID=" + oid);
-            }
-            return null;
+        if (!tcObjectSelfStoreOids.contains(oid)) {
+          if (logger.isDebugEnabled()) {
+            logger.debug("XXX GetById failed at TCObjectSelfStoreIDs, ObjectID=" + oid);
           }
+          return null;
+        }
 
-          for (ServerMapLocalCache localCache : this.localCaches.keySet()) {
-            Object key = localCache.getMappingUnlocked(oid);
-            if (key == null) {
-              continue;
-            }
-
-            AbstractLocalCacheStoreValue localCacheStoreValue = (AbstractLocalCacheStoreValue) localCache
-                .getMappingUnlocked(key);
-            rv = localCacheStoreValue == null ? null : localCacheStoreValue.getValueObject();
-            initTCObjectSelfIfRequired(rv);
-
-            if (rv == null && logger.isDebugEnabled()) {
-              logger.debug("XXX GetById failed when localCacheStoreValue was null for eventual, ObjectID=" + oid);
-            }
-            break;
+        for (ServerMapLocalCache localCache : this.localCaches.keySet()) {
+          Object key = localCache.getMappingUnlocked(oid);
+          if (key == null) {
+            continue;
           }
 
-          if (logger.isDebugEnabled()) {
-            logger.debug("XXX GetById failed when it couldn't find in any stores, ObjectID=" + oid);
+          AbstractLocalCacheStoreValue localCacheStoreValue = (AbstractLocalCacheStoreValue) localCache
+              .getMappingUnlocked(key);
+          rv = localCacheStoreValue == null ? null : localCacheStoreValue.getValueObject();
+          initTCObjectSelfIfRequired(rv);
+
+          if (rv == null && logger.isDebugEnabled()) {
+            logger.debug("XXX GetById failed when localCacheStoreValue was null for eventual, ObjectID=" + oid);
           }
-        } finally {
-          tcObjectStoreLock.readLock().unlock();
+          break;
         }
 
         if (rv != null) { return rv; }
 
+        if (logger.isDebugEnabled()) {
+          logger.debug("XXX GetById failed when it couldn't find in any stores, ObjectID=" + oid);
+        }
+
         long currTime = System.currentTimeMillis();
         if ((currTime - timePrev) > (15 * 1000)) {
           timePrev = currTime;
@@ -164,16 +175,30 @@ public class TCObjectSelfStoreImpl implements TCObjectSelfStore {
 
   private void waitUntilNotified() throws InterruptedException {
     throwExceptionIfNecessary();
+    waiters.incrementAndGet();
     try {
       // since i know I am going to wait, let me wait on client lock manager instead of this condition
       synchronized (tcObjectSelfRemovedFromStoreCallback) {
         tcObjectSelfRemovedFromStoreCallback.wait(1000);
       }
     } finally {
+      waiters.decrementAndGet();
       throwExceptionIfNecessary();
     }
   }
 
+  /**
+   * Removals wake up the lookups waiting for the object. The wait is bounded, so a lookup that starts waiting just
+   * after the notification only retries a bit later.
+   */
+  private void notifyWaiters() {
+    if (waiters.get() > 0) {
+      synchronized (tcObjectSelfRemovedFromStoreCallback) {
+        tcObjectSelfRemovedFromStoreCallback.notifyAll();
+      }
+    }
+  }
+
   private void initTCObjectSelfIfRequired(Object rv) {
     if (rv instanceof TCObjectSelf) {
       initializeTCObjectSelfIfRequired((TCObjectSelf) rv);
@@ -190,41 +215,32 @@ public class TCObjectSelfStoreImpl implements TCObjectSelfStore {
 
   @Override
   public void addTCObjectSelfTemp(TCObjectSelf tcObjectSelf) {
-    tcObjectStoreLock.writeLock().lock();
-    try {
-      throwExceptionIfNecessary();
-      if (logger.isDebugEnabled()) {
-        logger.debug("XXX Adding TCObjectSelf temp cache " + tcObjectSelf.getObjectID());
-      }
-      this.tcObjectSelfTempCache.put(tcObjectSelf.getObjectID(), tcObjectSelf);
-    } finally {
-      tcObjectStoreLock.writeLock().unlock();
+    throwExceptionIfNecessary();
+    if (logger.isDebugEnabled()) {
+      logger.debug("XXX Adding TCObjectSelf temp cache " + tcObjectSelf.getObjectID());
     }
+    this.tcObjectSelfTempCache.put(tcObjectSelf.getObjectID(), tcObjectSelf);
   }
 
   @Override
   public boolean addTCObjectSelf(L1ServerMapLocalCacheStore store, AbstractLocalCacheStoreValue localStoreValue,
                                  Object tcoself, final boolean isNew) {
-    synchronized (tcObjectSelfRemovedFromStoreCallback) {
-      tcObjectStoreLock.writeLock().lock();
-      try {
+    throwExceptionIfNecessary();
+    if (tcoself instanceof TCObject) {
+      // no need of instanceof check if tcoself is declared as TCObject only... skipping for tests.. refactor later
+      ObjectID oid = ((TCObject) tcoself).getObjectID();
+      synchronized (lockFor(oid)) {
         throwExceptionIfNecessary();
-        if (tcoself instanceof TCObject) {
-          // no need of instanceof check if tcoself is declared as TCObject only... skipping for tests.. refactor later
-          ObjectID oid = ((TCObject) tcoself).getObjectID();
-          if (isNew || existOnlyInTempCache(oid)) {
-            if (logger.isDebugEnabled()) {
-              logger.debug("XXX Adding TCObjectSelfStore " + oid);
-            }
-            tcObjectSelfStoreOids.add(localStoreValue.isEventualConsistentValue(), oid);
-            removeTCObjectSelfTemp((TCObjectSelf) tcoself, false);
-            return true;
-          } else {
-            return false;
+        if (isNew || existOnlyInTempCache(oid)) {
+          if (logger.isDebugEnabled()) {
+            logger.debug("XXX Adding TCObjectSelfStore " + oid);
           }
+          tcObjectSelfStoreOids.add(localStoreValue.isEventualConsistentValue(), oid);
+          removeTCObjectSelfTemp((TCObjectSelf) tcoself, false);
+          return true;
+        } else {
+          return false;
         }
-      } finally {
-        tcObjectStoreLock.writeLock().unlock();
       }
     }
 
@@ -238,129 +254,118 @@ public class TCObjectSelfStoreImpl implements TCObjectSelfStore {
   @Override
   public void removeTCObjectSelfTemp(TCObjectSelf objectSelf, boolean notifyServer) {
     if (objectSelf == null) { return; }
-    synchronized (tcObjectSelfRemovedFromStoreCallback) {
-      tcObjectStoreLock.writeLock().lock();
-      try {
-        throwExceptionIfNecessary();
-        Object removedValue = tcObjectSelfTempCache.remove(objectSelf.getObjectID());
-        if (removedValue != null) {
-          if (notifyServer) {
-            if (logger.isDebugEnabled()) {
-              logger.debug("XXX Removing TCObjectSelf from temp cache, ObjectID=" + objectSelf.getObjectID());
-            }
-            tcObjectSelfRemovedFromStoreCallback.removedTCObjectSelfFromStore(objectSelf);
+    if (notifyServer) {
+      synchronized (tcObjectSelfRemovedFromStoreCallback) {
+        removeTCObjectSelfTempLocked(objectSelf, true);
+      }
+    } else {
+      removeTCObjectSelfTempLocked(objectSelf, false);
+    }
+  }
+
+  private void removeTCObjectSelfTempLocked(TCObjectSelf objectSelf, boolean notifyServer) {
+    synchronized (lockFor(objectSelf.getObjectID())) {
+      throwExceptionIfNecessary();
+      Object removedValue = tcObjectSelfTempCache.remove(objectSelf.getObjectID());
+      if (removedValue != null) {
+        if (notifyServer) {
+          if (logger.isDebugEnabled()) {
+            logger.debug("XXX Removing TCObjectSelf from temp cache, ObjectID=" + objectSelf.getObjectID());
           }
+          tcObjectSelfRemovedFromStoreCallback.removedTCObjectSelfFromStore(objectSelf);
         }
-      } finally {
-        tcObjectStoreLock.writeLock().unlock();
       }
     }
-
   }
 
   @Override
   public void removeTCObjectSelf(AbstractLocalCacheStoreValue localStoreValue) {
+    throwExceptionIfNecessary();
+    if (!(localStoreValue.getValueObject() instanceof TCObjectSelf)) { return; }
+    TCObjectSelf self = (TCObjectSelf) localStoreValue.getValueObject();
+    ObjectID valueOid = self.getObjectID();
+    if (ObjectID.NULL_ID.equals(valueOid)) {
+      logRemoveFailed(valueOid);
+      return;
+    }
+
     synchronized (tcObjectSelfRemovedFromStoreCallback) {
-      tcObjectStoreLock.writeLock().lock();
-      try {
+      synchronized (lockFor(valueOid)) {
         throwExceptionIfNecessary();
-        if (!(localStoreValue.getValueObject() instanceof TCObjectSelf)) { return; }
-        TCObjectSelf self = (TCObjectSelf) localStoreValue.getValueObject();
-        ObjectID valueOid = self.getObjectID();
-
-        if (ObjectID.NULL_ID.equals(valueOid) || !tcObjectSelfStoreOids.contains(valueOid)) {
-          if (logger.isDebugEnabled()) {
-            logger.debug("XXX Removing from TCObjectSelfStore failed " + valueOid
-                         + " , TCObjectSelfStoreOids contains it " + tcObjectSelfStoreOids.contains(valueOid));
-          }
+        if (!tcObjectSelfStoreOids.contains(valueOid)) {
+          logRemoveFailed(valueOid);
           return;
         }
 
         tcObjectSelfRemovedFromStoreCallback.removedTCObjectSelfFromStore(self);
         tcObjectSelfStoreOids.remove(localStoreValue.isEventualConsistentValue(), valueOid);
-      } finally {
-        tcObjectStoreLock.writeLock().unlock();
       }
-      this.tcObjectSelfRemovedFromStoreCallback.notifyAll();
     }
+    notifyWaiters();
   }
 
   @Override
   public void removeTCObjectSelf(TCObjectSelf self) {
+    throwExceptionIfNecessary();
+    ObjectID valueOid = self.getObjectID();
+    if (ObjectID.NULL_ID.equals(valueOid)) {
+      logRemoveFailed(valueOid);
+      return;
+    }
+
     synchronized (tcObjectSelfRemovedFromStoreCallback) {
-      tcObjectStoreLock.writeLock().lock();
-      try {
+      synchronized (lockFor(valueOid)) {
         throwExceptionIfNecessary();
-        ObjectID valueOid = self.getObjectID();
-
-        if (ObjectID.NULL_ID.equals(valueOid) || !tcObjectSelfStoreOids.contains(valueOid)) {
-          if (logger.isDebugEnabled()) {
-            logger.debug("XXX Removing from TCObjectSelfStore failed " + valueOid
-                         + " , TCObjectSelfStoreOids contains it " + tcObjectSelfStoreOids.contains(valueOid));
-          }
+        if (!tcObjectSelfStoreOids.contains(valueOid)) {
+          logRemoveFailed(valueOid);
           return;
         }
 
         tcObjectSelfRemovedFromStoreCallback.removedTCObjectSelfFromStore(self);
         tcObjectSelfStoreOids.remove(valueOid);
-      } finally {
-        tcObjectStoreLock.writeLock().unlock();
       }
-      this.tcObjectSelfRemovedFromStoreCallback.notifyAll();
+    }
+    notifyWaiters();
+  }
+
+  private void logRemoveFailed(ObjectID valueOid) {
+    if (logger.isDebugEnabled()) {
+      logger.debug("XXX Removing from TCObjectSelfStore failed " + valueOid + " , TCObjectSelfStoreOids contains it "
+                   + tcObjectSelfStoreOids.contains(valueOid));
     }
   }
 
   @Override
   public ObjectIDSet getObjectIDsToValidate(NodeID remoteNode) {
-    tcObjectStoreLock.writeLock().lock();
-    try {
-      throwExceptionIfNecessary();
-      ObjectIDSet validations = new BitSetObjectIDSet();
-      tcObjectSelfStoreOids.addAllObjectIDsToValidate(validations, remoteNode);
-      int grpID = ((GroupID) remoteNode).toInt();
-      for (ObjectID id : tcObjectSelfTempCache.keySet()) {
-        if (id.getGroupID() == grpID) {
-          validations.add(id);
-        }
+    throwExceptionIfNecessary();
+    ObjectIDSet validations = new BitSetObjectIDSet();
+    tcObjectSelfStoreOids.addAllObjectIDsToValidate(validations, remoteNode);
+    int grpID = ((GroupID) remoteNode).toInt();
+    for (ObjectID id : tcObjectSelfTempCache.keySet()) {
+      if (id.getGroupID() == grpID) {
+        validations.add(id);
       }
-      return validations;
-    } finally {
-      tcObjectStoreLock.writeLock().unlock();
     }
+    return validations;
   }
 
   @Override
   public int size() {
-    tcObjectStoreLock.readLock().lock();
-    try {
-      throwExceptionIfNecessary();
-      return tcObjectSelfStoreOids.size();
-    } finally {
-      tcObjectStoreLock.readLock().unlock();
-    }
+    throwExceptionIfNecessary();
+    return tcObjectSelfStoreOids.size();
   }
 
   @Override
   public void addAllObjectIDs(Set oids) {
-    tcObjectStoreLock.readLock().lock();
-    try {
-      throwExceptionIfNecessary();
-      tcObjectSelfStoreOids.addAll(oids);
-      oids.addAll(tcObjectSelfTempCache.keySet());
-    } finally {
-      tcObjectStoreLock.readLock().unlock();
-    }
+    throwExceptionIfNecessary();
+    tcObjectSelfStoreOids.addAll(oids);
+    oids.addAll(tcObjectSelfTempCache.keySet());
   }
 
   @Override
   public boolean contains(ObjectID objectID) {
-    tcObjectStoreLock.readLock().lock();
-    try {
-      throwExceptionIfNecessary();
-      return this.tcObjectSelfTempCache.containsKey(objectID) || this.tcObjectSelfStoreOids.contains(objectID);
-    } finally {
-      tcObjectStoreLock.readLock().unlock();
-    }
+    throwExceptionIfNecessary();
+    return this.tcObjectSelfTempCache.containsKey(objectID) || this.tcObjectSelfStoreOids.contains(objectID);
   }
 
   @Override
@@ -378,57 +383,124 @@ public class TCObjectSelfStoreImpl implements TCObjectSelfStore {
     this.isShutdown = true;
   }
 
+  /**
+   * ObjectIDs in the store, split in eventual and non eventual ids. Each stripe has its own read write lock, held only
+   * for the bitset operation itself.
+   */
   private static class TCObjectSelfStoreObjectIDSet {
-    private final ObjectIDSet nonEventualIds = new BitSetObjectIDSet();
-    private final ObjectIDSet eventualIds    = new BitSetObjectIDSet();
+    private final ObjectIDSet[]            nonEventualIds = new ObjectIDSet[OID_LOCK_STRIPES];
+    private final ObjectIDSet[]            eventualIds    = new ObjectIDSet[OID_LOCK_STRIPES];
+    private final ReentrantReadWriteLock[] stripeLocks    = new ReentrantReadWriteLock[OID_LOCK_STRIPES];
+
+    TCObjectSelfStoreObjectIDSet() {
+      for (int i = 0; i < OID_LOCK_STRIPES; i++) {
+        nonEventualIds[i] = new BitSetObjectIDSet();
+        eventualIds[i] = new BitSetObjectIDSet();
+        stripeLocks[i] = new ReentrantReadWriteLock();
+      }
+    }
 
     public void clear() {
-      nonEventualIds.clear();
-      eventualIds.clear();
+      for (int i = 0; i < OID_LOCK_STRIPES; i++) {
+        stripeLocks[i].writeLock().lock();
+        try {
+          nonEventualIds[i].clear();
+          eventualIds[i].clear();
+        } finally {
+          stripeLocks[i].writeLock().unlock();
+        }
+      }
     }
 
     public void add(boolean isEventual, ObjectID id) {
-      if (isEventual) {
-        eventualIds.add(id);
-      } else {
-        nonEventualIds.add(id);
+      int stripe = stripeFor(id);
+      stripeLocks[stripe].writeLock().lock();
+      try {
+        if (isEventual) {
+          eventualIds[stripe].add(id);
+        } else {
+          nonEventualIds[stripe].add(id);
+        }
+      } finally {
+        stripeLocks[stripe].writeLock().unlock();
       }
     }
 
     public void remove(ObjectID id) {
-      if (!eventualIds.remove(id)) {
-        nonEventualIds.remove(id);
+      int stripe = stripeFor(id);
+      stripeLocks[stripe].writeLock().lock();
+      try {
+        if (!eventualIds[stripe].remove(id)) {
+          nonEventualIds[stripe].remove(id);
+        }
+      } finally {
+        stripeLocks[stripe].writeLock().unlock();
       }
     }
 
     public void remove(boolean isEventual, ObjectID id) {
-      if (isEventual) {
-        eventualIds.remove(id);
-      } else {
-        nonEventualIds.remove(id);
+      int stripe = stripeFor(id);
+      stripeLocks[stripe].writeLock().lock();
+      try {
+        if (isEventual) {
+          eventualIds[stripe].remove(id);
+        } else {
+          nonEventualIds[stripe].remove(id);
+        }
+      } finally {
+        stripeLocks[stripe].writeLock().unlock();
       }
     }
 
     public int size() {
-      return eventualIds.size() + nonEventualIds.size();
+      int size = 0;
+      for (int i = 0; i < OID_LOCK_STRIPES; i++) {
+        stripeLocks[i].readLock().lock();
+        try {
+          size += eventualIds[i].size() + nonEventualIds[i].size();
+        } finally {
+          stripeLocks[i].readLock().unlock();
+        }
+      }
+      return size;
     }
 
     public boolean contains(ObjectID id) {
-      return eventualIds.contains(id) || nonEventualIds.contains(id);
+      int stripe = stripeFor(id);
+      stripeLocks[stripe].readLock().lock();
+      try {
+        return eventualIds[stripe].contains(id) || nonEventualIds[stripe].contains(id);
+      } finally {
+        stripeLocks[stripe].readLock().unlock();
+      }
     }
 
     public void addAllObjectIDsToValidate(ObjectIDSet validations, NodeID remoteNode) {
       int grpID = ((GroupID) remoteNode).toInt();
-      for (ObjectID id : eventualIds) {
-        if (id.getGroupID() == grpID) {
-          validations.add(id);
+      for (int i = 0; i < OID_LOCK_STRIPES; i++) {
+        stripeLocks[i].readLock().lock();
+        try {
+          for (ObjectID id : eventualIds[i]) {
+            if (id.getGroupID() == grpID) {
+              validations.add(id);
+            }
+          }
+        } finally {
+          stripeLocks[i].readLock().unlock();
         }
       }
     }
 
     public void addAll(Set oids) {
-      oids.addAll(eventualIds);
-      oids.addAll(nonEventualIds);
+      for (int i = 0; i < OID_LOCK_STRIPES; i++) {
+        stripeLocks[i].readLock().lock();
+        try {
+          oids.addAll(eventualIds[i]);
+          oids.addAll(nonEventualIds[i]);
+        } finally {
+          stripeLocks[i].readLock().unlock();
+        }
+      }
     }
   }
 
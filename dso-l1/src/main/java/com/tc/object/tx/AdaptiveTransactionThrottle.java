@@ -0,0 +1,134 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.object.tx;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Paces a client's transactions by how fast the server acknowledges its batches. The time from sending a batch to its
+ * acknowledgement grows with the server's stage queues and apply latency, so a latency well above the lowest seen
+ * recently means the client is sending faster than the server applies. The number of batches allowed in flight is
+ * adjusted like a congestion window: it grows by one per round trip while the latency stays low, and is halved, at most
+ * once per round trip, when the latency rises or the server's resource manager asks clients to throttle.
+ * <p>
+ * The number of batches writers may queue locally follows the window, so that writers wait for the batches ahead of
+ * them to be sent instead of sleeping for fixed times.
+ */
+final class AdaptiveTransactionThrottle {
+  private static final int  ACKS_PER_EPOCH = 1024;
+
+  private final int         maxWindow;
+  private final int         maxPendingBatches;
+  private final double      latencyTolerance;
+  private final Queue<Long> sendTimes      = new ArrayDeque<Long>();
+
+  private double            window;
+  private long              smoothedLatency;
+  private long              epochMinLatency;
+  private long              previousEpochMinLatency;
+  private int               epochAcks;
+  private long              lastDecrease;
+  private boolean           serverThrottled;
+
+  /**
+   * @param latencyTolerance how far above the lowest recent latency, as a fraction of it, the smoothed latency may
+   *        rise before the window is halved
+   */
+  AdaptiveTransactionThrottle(int maxWindow, int maxPendingBatches, double latencyTolerance) {
+    if (maxWindow < 1) { throw new IllegalArgumentException("maxWindow must be positive: " + maxWindow); }
+    if (latencyTolerance <= 0) { throw new IllegalArgumentException("latencyTolerance must be positive: "
+                                                                    + latencyTolerance); }
+    this.maxWindow = maxWindow;
+    this.maxPendingBatches = Math.max(1, maxPendingBatches);
+    this.latencyTolerance = latencyTolerance;
+    reset();
+  }
+
+  synchronized void reset() {
+    sendTimes.clear();
+    window = maxWindow;
+    smoothedLatency = 0;
+    epochMinLatency = Long.MAX_VALUE;
+    previousEpochMinLatency = Long.MAX_VALUE;
+    epochAcks = 0;
+    lastDecrease = 0;
+  }
+
+  synchronized void batchSent(long nowNanos) {
+    sendTimes.add(Long.valueOf(nowNanos));
+  }
+
+  /**
+   * The server acknowledges every batch but does not say which, so acknowledgements are matched to sends in order.
+   */
+  synchronized void batchAcknowledged(long nowNanos) {
+    Long sent = sendTimes.poll();
+    if (sent == null) { return; }
+    long latency = Math.max(1, nowNanos - sent.longValue());
+
+    if (++epochAcks == ACKS_PER_EPOCH) {
+      // forget old minimums so that a server which has become slower for good does not look congested forever
+      previousEpochMinLatency = epochMinLatency;
+      epochMinLatency = Long.MAX_VALUE;
+      epochAcks = 0;
+    }
+    epochMinLatency = Math.min(epochMinLatency, latency);
+    smoothedLatency = smoothedLatency == 0 ? latency : smoothedLatency - (smoothedLatency >> 3) + (latency >> 3);
+
+    long baseLatency = Math.min(epochMinLatency, previousEpochMinLatency);
+    if (serverThrottled || smoothedLatency > baseLatency * (1 + latencyTolerance)) {
+      decrease(nowNanos);
+    } else {
+      window = Math.min(maxWindow, window + 1 / window);
+    }
+  }
+
+  synchronized void setServerThrottled(boolean throttled) {
+    serverThrottled = throttled;
+    if (throttled) {
+      window = 1;
+    }
+  }
+
+  /**
+   * @return the number of batches that may be awaiting acknowledgement
+   */
+  synchronized int getWindow() {
+    return serverThrottled ? 1 : (int) window;
+  }
+
+  /**
+   * @return the number of batches writers may queue before they have to wait
+   */
+  synchronized int getPendingBatchLimit() {
+    return Math.max(1, (int) (maxPendingBatches * (serverThrottled ? 1 : window) / maxWindow));
+  }
+
+  private void decrease(long nowNanos) {
+    if (lastDecrease == 0 || nowNanos - lastDecrease >= smoothedLatency) {
+      window = Math.max(1, window / 2);
+      lastDecrease = nowNanos;
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "AdaptiveTransactionThrottle [window=" + window + ", smoothedLatency=" + smoothedLatency
+           + ", serverThrottled=" + serverThrottled + ", inFlight=" + sendTimes.size() + "]";
+  }
+}
@@ -79,6 +79,12 @@ public class RemoteTransactionManagerImpl implements RemoteTransactionManager {
   private static final long                              COMPLETED_ACK_FLUSH_TIMEOUT = TCPropertiesImpl
                                                                                          .getProperties()
                                                                                          .getLong(TCPropertiesConsts.L1_TRANSACTIONMANAGER_COMPLETED_ACK_FLUSH_TIMEOUT);
+  private static final boolean                           ADAPTIVE_THROTTLE_ENABLED   = TCPropertiesImpl
+                                                                                         .getProperties()
+                                                                                         .getBoolean(TCPropertiesConsts.L1_TRANSACTIONMANAGER_THROTTLE_ADAPTIVE_ENABLED);
+  private static final int                               ADAPTIVE_LATENCY_TOLERANCE  = TCPropertiesImpl
+                                                                                         .getProperties()
+                                                                                         .getInt(TCPropertiesConsts.L1_TRANSACTIONMANAGER_THROTTLE_ADAPTIVE_LATENCY_TOLERANCE);
 
   private static final State                             RUNNING                     = new State("RUNNING");
   private static final State                             PAUSED                      = new State("PAUSED");
@@ -105,6 +111,7 @@ public class RemoteTransactionManagerImpl implements RemoteTransactionManager {
 
   private volatile boolean                               isShutdown                  = false;
   private volatile boolean                               isThrottled                 = false;
+  private final AdaptiveTransactionThrottle              adaptiveThrottle;
   private final AbortableOperationManager                abortableOperationManager;
 
   private final Timer                                    flusherTimer;
@@ -134,6 +141,7 @@ public class RemoteTransactionManagerImpl implements RemoteTransactionManager {
     this.abortableOperationManager = abortableOperationManager;
     this.flusherTimer = flusherTimer;
     this.remoteTxManagerRunnable = remoteTxManagerRunnable;
+    this.adaptiveThrottle = null;
   }
 
   public RemoteTransactionManagerImpl(final GroupID groupID, final TCLogger logger,
@@ -152,6 +160,11 @@ public class RemoteTransactionManagerImpl implements RemoteTransactionManager {
     this.status = RUNNING;
     this.ackOnExitTimeout = ackOnExitTimeoutMs;
     this.lockAccounting = new LockAccounting(abortableOperationManager, this);
+    this.adaptiveThrottle = ADAPTIVE_THROTTLE_ENABLED ? new AdaptiveTransactionThrottle(
+                                                                                        MAX_OUTSTANDING_BATCHES,
+                                                                                        MAX_PENDING_BATCHES,
+                                                                                        ADAPTIVE_LATENCY_TOLERANCE / 100.0)
+        : null;
     this.sequencer = new TransactionSequencer(groupID, transactionIDGenerator, batchFactory, this.lockAccounting,
                                               transactionSizeCounter, transactionsPerBatchCounter,
                                               abortableOperationManager, this);
@@ -613,6 +626,13 @@ public class RemoteTransactionManagerImpl implements RemoteTransactionManager {
     return this.status == REJOIN_IN_PROGRESS;
   }
 
+  /**
+   * @return the throttle pacing transactions by the server's acknowledgements, or null if throttling is not adaptive
+   */
+  AdaptiveTransactionThrottle getAdaptiveThrottle() {
+    return this.adaptiveThrottle;
+  }
+
   // XXX:: Currently server always sends NULL BatchID
   @Override
   public void receivedBatchAcknowledgement(final TxnBatchID txnBatchID, final NodeID remoteNode) {
@@ -811,6 +831,9 @@ class BatchManager extends Semaphore {
       reset();
       incompleteBatches.clear();
       sendList.clear();
+      if (adaptiveThrottle != null) {
+        adaptiveThrottle.reset();
+      }
       this.notify();
     }
 
@@ -877,6 +900,9 @@ class BatchManager extends Semaphore {
                   }
                 }
                 next.send();
+                if (adaptiveThrottle != null) {
+                  adaptiveThrottle.batchSent(System.nanoTime());
+                }
               } else if (setEmpty(sendList.isEmpty()) && stopping) {
                 return;
               } else if ( sendBatches(false) && sendList.isEmpty() ) {
@@ -973,6 +999,10 @@ class BatchManager extends Semaphore {
 
     private void resendList(List<TxnBatchID> toSend) {
       lastsid = null;
+      if (adaptiveThrottle != null) {
+        // the batches sent before the disconnect will not be acknowledged
+        adaptiveThrottle.reset();
+      }
       for (TxnBatchID id : toSend) {
         final ClientTransactionBatch batch = incompleteBatches.get(id);
         if (batch == null) { throw new AssertionError("Unknown batch: " + id); }
@@ -1014,6 +1044,19 @@ class BatchManager extends Semaphore {
       if ( !tryAcquire(400, TimeUnit.MILLISECONDS) ) {
         return false;
     }
+      if ( adaptiveThrottle != null ) {
+        // withhold permits until only the throttle's window of batches can be outstanding
+        int target = MAX_OUTSTANDING_BATCHES - Math.min(MAX_OUTSTANDING_BATCHES, adaptiveThrottle.getWindow());
+        if ( restriction < target ) {
+          restriction += 1;
+          return false;
+        }
+        while ( restriction > target ) {
+          release();
+          restriction -= 1;
+        }
+        return true;
+      }
       if ( incompleteBatches.size() > getAverageBatchSize() * (MAX_OUTSTANDING_BATCHES) ) {
         if ( MAX_OUTSTANDING_BATCHES - restriction > 1 ) {
           if ( logger.isDebugEnabled() ) {
@@ -1030,6 +1073,9 @@ class BatchManager extends Semaphore {
     }
 
     private void batchAcknowledged() {
+      if (adaptiveThrottle != null) {
+        adaptiveThrottle.batchAcknowledged(System.nanoTime());
+      }
       release();
     }
 
@@ -1126,6 +1172,9 @@ class BatchManager extends Semaphore {
   @Override
   public void throttleProcessing(boolean yes) {
     this.isThrottled = yes;
+    if (adaptiveThrottle != null) {
+      adaptiveThrottle.setServerThrottled(yes);
+    }
   }
 
 }
@@ -44,6 +44,7 @@ public class TransactionSequencer implements ClearableCallback {
   private static final int                                  MAX_PENDING_BATCHES;
   private static final long                                 MAX_SLEEP_TIME_BEFORE_HALT;
   private static final int                                  MIN_AVG_TRANSACTION_SIZE = 500;
+  private static final long                                 ADAPTIVE_MAX_WAIT_MILLIS = 100;
 
   static {
     // Set the values from the properties here.
@@ -78,6 +79,7 @@ public class TransactionSequencer implements ClearableCallback {
   private final TransactionIDGenerator                      transactionIDGenerator;
   private final AbortableOperationManager                   abortableOperationManager;
   private final RemoteTransactionManagerImpl                remoteTxnMgrImpl;
+  private final AdaptiveTransactionThrottle                 adaptiveThrottle;
 
   public TransactionSequencer(GroupID groupID, TransactionIDGenerator transactionIDGenerator,
                               TransactionBatchFactory batchFactory, LockAccounting lockAccounting,
@@ -100,6 +102,7 @@ public class TransactionSequencer implements ClearableCallback {
     this.transactionsPerBatchCounter = transactionsPerBatchCounter;
     this.abortableOperationManager = abortableOperationManager;
     this.remoteTxnMgrImpl = remoteTxnMgrImpl;
+    this.adaptiveThrottle = remoteTxnMgrImpl.getAdaptiveThrottle();
   }
 
   @Override
@@ -143,6 +146,13 @@ public class TransactionSequencer implements ClearableCallback {
   }
 
   public boolean throttleIfNecesary() throws AbortedOperationException {
+    if (this.adaptiveThrottle != null) {
+      if (this.pendingBatches.size() >= this.adaptiveThrottle.getPendingBatchLimit()) {
+        waitForPendingBatches();
+        return true;
+      }
+      return false;
+    }
     int diff = this.pendingBatches.size() - this.slowDownStartsAt;
     if (diff >= 0) {
         waitIfNecessary();
@@ -248,6 +258,30 @@ public class TransactionSequencer implements ClearableCallback {
     }
   }
   
+  /**
+   * Waits until the pending batches are below the adaptive throttle's limit. Writers are woken as batches are taken to
+   * be sent and only wait out the timeout to notice a rejoin or a change of the limit.
+   */
+  private synchronized void waitForPendingBatches() throws AbortedOperationException {
+    boolean isInterrupted = false;
+    try {
+      while (this.pendingBatches.size() >= this.adaptiveThrottle.getPendingBatchLimit()) {
+        if (remoteTxnMgrImpl.isRejoinInProgress()) { throw new PlatformRejoinException(); }
+        try {
+          waiters++;
+          wait(ADAPTIVE_MAX_WAIT_MILLIS);
+        } catch (InterruptedException e) {
+          AbortedOperationUtil.throwExceptionIfAborted(abortableOperationManager);
+          isInterrupted = true;
+        } finally {
+          waiters--;
+        }
+      }
+    } finally {
+      Util.selfInterruptIfNeeded(isInterrupted);
+    }
+  }
+
   private void log_stats() {
     int size = this.pendingBatches.size();
     if (size == MAX_PENDING_BATCHES) {
@@ -0,0 +1,447 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.tc.abortable.AbortableOperationManager;
+import com.tc.abortable.AbortedOperationException;
+import com.tc.exception.PlatformRejoinException;
+import com.tc.exception.TCNotRunningException;
+import com.tc.logging.NullTCLogger;
+import com.tc.net.GroupID;
+import com.tc.object.dna.api.DNA;
+import com.tc.object.msg.ClientHandshakeMessage;
+import com.tc.object.msg.GetValueServerMapRequestMessage;
+import com.tc.object.msg.ServerMapMessageFactory;
+import com.tc.object.servermap.localcache.L1ServerMapLocalCacheManager;
+import com.tc.object.session.SessionID;
+import com.tc.object.session.SessionManager;
+import com.tc.util.concurrent.TaskRunner;
+import com.tc.util.concurrent.Timer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+public class RemoteServerMapManagerImplTest {
+
+  private static final GroupID   GROUP   = new GroupID(0);
+  private static final SessionID SESSION = new SessionID(1);
+  // l1.servermapmanager.remote.maxRequestSentImmediately
+  private static final int       SENT_IMMEDIATELY = 4;
+
+  private GetValueServerMapRequestMessage message;
+  private ServerMapMessageFactory         factory;
+  private SessionManager                  sessionManager;
+  private TaskRunner                      taskRunner;
+  private Timer                           requestsTimer;
+  private AbortableOperationManager       abortableOperationManager;
+  private RemoteObjectManager             remoteObjectManager;
+  private RemoteServerMapManagerImpl      manager;
+  private Thread                          getter;
+  private final Set<ServerMapRequestID>   answered = new HashSet<ServerMapRequestID>();
+
+  @Before
+  public void setUp() throws Exception {
+    message = mock(GetValueServerMapRequestMessage.class);
+    when(message.getRequestCount()).thenReturn(1);
+    factory = mock(ServerMapMessageFactory.class);
+    when(factory.newServerMapRequestMessage(any(), any())).thenReturn(message);
+    sessionManager = mock(SessionManager.class);
+    when(sessionManager.isCurrentSession(any(), any())).thenReturn(true);
+    requestsTimer = mock(Timer.class);
+    taskRunner = mock(TaskRunner.class);
+    when(taskRunner.newTimer(anyString())).thenReturn(mock(Timer.class));
+    when(taskRunner.newTimer("RemoteServerMapManager Request Scheduler")).thenReturn(requestsTimer);
+    abortableOperationManager = mock(AbortableOperationManager.class);
+    remoteObjectManager = mock(RemoteObjectManager.class);
+    manager = createManager(false, 0);
+  }
+
+  private RemoteServerMapManagerImpl createManager(boolean coalesce, long coalesceWindowMillis) {
+    return new RemoteServerMapManagerImpl(GROUP, new NullTCLogger(), remoteObjectManager, factory,
+                                          sessionManager, mock(L1ServerMapLocalCacheManager.class),
+                                          abortableOperationManager, taskRunner, coalesce,
+                                          TimeUnit.MILLISECONDS.toNanos(coalesceWindowMillis));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    manager.shutdown(false);
+  }
+
+  @Test
+  public void testResponseCompletesRequestAndWakesWaiter() throws Exception {
+    Future<Object> value = start(new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        return manager.getMappingForKey(new ObjectID(1), "key1");
+      }
+    });
+    awaitWaiting();
+    assertFalse(value.isDone());
+    respondToAll(1);
+    assertEquals("value1", value.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testWaiterKeepsWaitingWhenWokenWithoutResult() throws Exception {
+    Future<Object> value = start(new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        return manager.getMappingForKey(new ObjectID(1), "key1");
+      }
+    });
+    for (int i = 0; i < 3; i++) {
+      awaitWaiting();
+      // what the waiter sees when its wait times out
+      LockSupport.unpark(getter);
+      Thread.sleep(50);
+    }
+    awaitWaiting();
+    assertFalse(value.isDone());
+    respondToAll(1);
+    assertEquals("value1", value.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testRequestsOverTheLimitAreSentByTheBatchingTask() throws Exception {
+    Future<Map<Object, Object>> values = getAll(6);
+    awaitWaiting();
+    sentRequests(SENT_IMMEDIATELY);
+    // one task for all the requests left over
+    scheduledTask(1).run();
+    respondToAll(6);
+    assertEquals(6, values.get(10, TimeUnit.SECONDS).size());
+  }
+
+  @Test
+  public void testOutstandingRequestsAreResentOnUnpause() throws Exception {
+    Future<Map<Object, Object>> values = getAll(6);
+    awaitWaiting();
+    sentRequests(SENT_IMMEDIATELY);
+
+    manager.pause(GROUP, 1);
+    manager.unpause(GROUP, 0);
+    sentRequests(SENT_IMMEDIATELY + 6);
+    // the batching task finds the requests already sent
+    scheduledTask(1).run();
+    sentRequests(SENT_IMMEDIATELY + 6);
+
+    respondToAll(SENT_IMMEDIATELY + 6);
+    assertEquals(6, values.get(10, TimeUnit.SECONDS).size());
+  }
+
+  @Test
+  public void testCleanupFailsWaitersAndResetsBatching() throws Exception {
+    Future<Map<Object, Object>> values = getAll(6);
+    awaitWaiting();
+    scheduledTask(1);
+
+    manager.pause(GROUP, 1);
+    manager.cleanup();
+    assertFailsWith(values, PlatformRejoinException.class);
+
+    manager.initializeHandshake(GROUP, GROUP, mock(ClientHandshakeMessage.class));
+    manager.unpause(GROUP, 0);
+    values = getAll(6);
+    awaitWaiting();
+    // the task scheduled before the cleanup never ran, a new one has to be scheduled
+    scheduledTask(2).run();
+    respondToAll(SENT_IMMEDIATELY + 6);
+    assertEquals(6, values.get(10, TimeUnit.SECONDS).size());
+  }
+
+  @Test
+  public void testShutdownFailsWaiters() throws Exception {
+    Future<Map<Object, Object>> values = getAll(1);
+    awaitWaiting();
+    manager.shutdown(false);
+    assertFailsWith(values, TCNotRunningException.class);
+  }
+
+  @Test
+  public void testAbortedRequestIsDropped() throws Exception {
+    Future<Object> value = start(new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        return manager.getMappingForKey(new ObjectID(1), "key1");
+      }
+    });
+    awaitWaiting();
+    when(abortableOperationManager.isAborted()).thenReturn(true);
+    getter.interrupt();
+    assertFailsWith(value, AbortedOperationException.class);
+    // a late response finds nothing to complete
+    respondToAll(1);
+  }
+
+  @Test
+  public void testAnsweredRequestKeepsItsObjects() throws Exception {
+    Future<Object> value = start(new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        return manager.getMappingForKey(new ObjectID(1), "key1");
+      }
+    });
+    awaitWaiting();
+    DNA dna = mock(DNA.class);
+    CompoundResponse response = compoundResponse(dna);
+    respondWith(response);
+    assertEquals(response, value.get(10, TimeUnit.SECONDS));
+    verify(remoteObjectManager).addObject(dna);
+    verify(remoteObjectManager, never()).cleanOutObject(any(DNA.class));
+  }
+
+  @Test
+  public void testLateResponseToAbortedRequestIsCleanedOut() throws Exception {
+    Future<Object> value = start(new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        return manager.getMappingForKey(new ObjectID(1), "key1");
+      }
+    });
+    awaitWaiting();
+    when(abortableOperationManager.isAborted()).thenReturn(true);
+    getter.interrupt();
+    assertFailsWith(value, AbortedOperationException.class);
+
+    DNA dna = mock(DNA.class);
+    respondWith(compoundResponse(dna));
+    verify(remoteObjectManager).cleanOutObject(dna);
+  }
+
+  @Test
+  public void testConcurrentGetsAreCoalescedIntoOneMessage() throws Exception {
+    manager = createManager(true, 2000);
+    List<Future<Object>> values = new ArrayList<Future<Object>>();
+    values.add(getAsync(1, 1));
+    awaitWaiting();
+    // the first thread holds the window open
+    verify(message, never()).send();
+    for (int key = 2; key <= 5; key++) {
+      values.add(getAsync(1, key));
+      awaitWaiting();
+    }
+
+    verify(message, timeout(10000)).send();
+    sentRequests(5);
+    respondToAll(5);
+    for (Future<Object> value : values) {
+      assertNotNull(value.get(10, TimeUnit.SECONDS));
+    }
+    verify(message, times(1)).send();
+    verify(factory, times(1)).newServerMapRequestMessage(any(), any());
+  }
+
+  @Test
+  public void testBulkGetGoesOutInOneMessage() throws Exception {
+    manager = createManager(true, 0);
+    Future<Map<Object, Object>> values = getAll(6);
+    awaitWaiting();
+    sentRequests(6);
+    verify(message, times(1)).send();
+    respondToAll(6);
+    assertEquals(6, values.get(10, TimeUnit.SECONDS).size());
+  }
+
+  @Test
+  public void testCoalescingStopsAfterMaxRounds() throws Exception {
+    manager = createManager(true, 0);
+    final List<Future<Object>> values = Collections.synchronizedList(new ArrayList<Future<Object>>());
+    // every message the coalescing thread sends has another get arrive while it is still the sender
+    final AtomicInteger sends = new AtomicInteger();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        if (sends.incrementAndGet() <= RemoteServerMapManagerImpl.MAX_COALESCE_ROUNDS) {
+          values.add(getAsync(1, sends.get() + 1));
+          awaitWaiting();
+        }
+        return null;
+      }
+    }).when(message).send();
+
+    values.add(0, getAsync(1, 1));
+    // what is left after the last round goes to the batching task
+    Runnable task = scheduledTask(1);
+    assertEquals(RemoteServerMapManagerImpl.MAX_COALESCE_ROUNDS, sends.get());
+    sentRequests(RemoteServerMapManagerImpl.MAX_COALESCE_ROUNDS);
+    task.run();
+    sentRequests(RemoteServerMapManagerImpl.MAX_COALESCE_ROUNDS + 1);
+
+    respondToAll(RemoteServerMapManagerImpl.MAX_COALESCE_ROUNDS + 1);
+    for (Future<Object> value : values) {
+      assertNotNull(value.get(10, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testGetsAreSentOnTheirOwnWithoutCoalescing() throws Exception {
+    List<Future<Object>> values = new ArrayList<Future<Object>>();
+    for (int key = 1; key <= 3; key++) {
+      values.add(getAsync(1, key));
+      awaitWaiting();
+    }
+    sentRequests(3);
+    verify(message, times(3)).send();
+    verify(factory, times(3)).newServerMapRequestMessage(any(), any());
+    respondToAll(3);
+    for (Future<Object> value : values) {
+      assertNotNull(value.get(10, TimeUnit.SECONDS));
+    }
+  }
+
+  private Future<Object> getAsync(final long map, final int key) {
+    return start(new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        return manager.getMappingForKey(new ObjectID(map), "key" + key);
+      }
+    });
+  }
+
+  private Future<Map<Object, Object>> getAll(int maps) {
+    final Map<ObjectID, Set<Object>> keys = new HashMap<ObjectID, Set<Object>>();
+    for (int i = 1; i <= maps; i++) {
+      keys.put(new ObjectID(i), Collections.<Object> singleton("key" + i));
+    }
+    return start(new Callable<Map<Object, Object>>() {
+      @Override
+      public Map<Object, Object> call() throws Exception {
+        Map<Object, Object> rv = new HashMap<Object, Object>();
+        manager.getMappingForAllKeys(keys, rv);
+        return rv;
+      }
+    });
+  }
+
+  private <T> Future<T> start(Callable<T> callable) {
+    FutureTask<T> task = new FutureTask<T>(callable);
+    getter = new Thread(task, "server map getter");
+    getter.setDaemon(true);
+    getter.start();
+    return task;
+  }
+
+  /**
+   * Waits for the getter to be parked waiting for its results
+   */
+  private void awaitWaiting() throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (LockSupport.getBlocker(getter) != manager) {
+      assertTrue("getter never started waiting", System.nanoTime() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  private Runnable scheduledTask(int scheduled) {
+    ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+    verify(requestsTimer, timeout(10000).times(scheduled)).schedule(task.capture(), anyLong(), any(TimeUnit.class));
+    return task.getValue();
+  }
+
+  private List<ServerMapRequestID> sentRequests(int requests) {
+    ArgumentCaptor<ServerMapRequestID> ids = ArgumentCaptor.forClass(ServerMapRequestID.class);
+    verify(message, timeout(10000).times(requests)).addGetValueRequestTo(ids.capture(), any(ObjectID.class),
+                                                                         anySet());
+    return ids.getAllValues();
+  }
+
+  /**
+   * Answers every request added to a message so far, once, with "value&lt;n&gt;" for each "key&lt;n&gt;" it asked for
+   */
+  private void respondToAll(int requests) {
+    ArgumentCaptor<ServerMapRequestID> ids = ArgumentCaptor.forClass(ServerMapRequestID.class);
+    ArgumentCaptor<ObjectID> maps = ArgumentCaptor.forClass(ObjectID.class);
+    ArgumentCaptor<Set> keys = ArgumentCaptor.forClass(Set.class);
+    verify(message, timeout(10000).times(requests)).addGetValueRequestTo(ids.capture(), maps.capture(),
+                                                                         keys.capture());
+    for (int i = 0; i < requests; i++) {
+      ServerMapRequestID id = ids.getAllValues().get(i);
+      if (!answered.add(id)) {
+        continue;
+      }
+      ServerMapGetValueResponse response = new ServerMapGetValueResponse(id);
+      for (Object key : keys.getAllValues().get(i)) {
+        response.put(key, ((String) key).replace("key", "value"));
+      }
+      manager.addResponseForKeyValueMapping(SESSION, maps.getAllValues().get(i), Collections.singleton(response),
+                                            GROUP);
+    }
+  }
+
+  private static CompoundResponse compoundResponse(DNA dna) {
+    CompoundResponse response = mock(CompoundResponse.class);
+    when(response.getData()).thenReturn(dna);
+    return response;
+  }
+
+  /**
+   * Answers the one request sent so far with the given value
+   */
+  private void respondWith(Object value) {
+    ArgumentCaptor<ServerMapRequestID> id = ArgumentCaptor.forClass(ServerMapRequestID.class);
+    verify(message, timeout(10000)).addGetValueRequestTo(id.capture(), any(ObjectID.class), anySet());
+    ServerMapGetValueResponse response = new ServerMapGetValueResponse(id.getValue());
+    response.put("key1", value);
+    manager.addResponseForKeyValueMapping(SESSION, new ObjectID(1), Collections.singleton(response), GROUP);
+  }
+
+  private static void assertFailsWith(Future<?> future, Class<? extends Throwable> expected) throws Exception {
+    try {
+      future.get(10, TimeUnit.SECONDS);
+      fail("expected " + expected.getSimpleName());
+    } catch (ExecutionException e) {
+      assertTrue(String.valueOf(e.getCause()), expected.isInstance(e.getCause()));
+    }
+  }
+}
@@ -31,13 +31,23 @@ public class L1ServerMapLocalCacheStoreHashMap<K, V> implements L1ServerMapLocal
   private final List<L1ServerMapLocalCacheStoreListener<K, V>> listeners    = new CopyOnWriteArrayList<L1ServerMapLocalCacheStoreListener<K, V>>();
   private final HashMap<K, V>                                  backingCache = new HashMap<K, V>();
   private final int                                            maxElementsInMemory;
+  private final boolean                                        overflowToOffHeap;
 
   public L1ServerMapLocalCacheStoreHashMap() {
     this(0);
   }
 
   public L1ServerMapLocalCacheStoreHashMap(int maxElementsInMemory) {
-    this.maxElementsInMemory = maxElementsInMemory * 2;
+    this(maxElementsInMemory, false);
+  }
+
+  /**
+   * A store that overflows to offheap also holds the meta mapping of each entry, like the toolkit one it halves its
+   * sizes to account for it.
+   */
+  public L1ServerMapLocalCacheStoreHashMap(int maxElementsInMemory, boolean overflowToOffHeap) {
+    this.maxElementsInMemory = overflowToOffHeap ? maxElementsInMemory * 2 : maxElementsInMemory;
+    this.overflowToOffHeap = overflowToOffHeap;
   }
 
   @Override
@@ -110,7 +120,7 @@ public class L1ServerMapLocalCacheStoreHashMap<K, V> implements L1ServerMapLocal
 
   @Override
   public synchronized int size() {
-    return backingCache.size() / 2;
+    return overflowToOffHeap ? backingCache.size() / 2 : backingCache.size();
   }
 
   // TODO: Remove it using an iterator
@@ -131,7 +141,7 @@ public class L1ServerMapLocalCacheStoreHashMap<K, V> implements L1ServerMapLocal
 
   @Override
   public int getMaxElementsInMemory() {
-    return maxElementsInMemory / 2;
+    return overflowToOffHeap ? maxElementsInMemory / 2 : maxElementsInMemory;
   }
 
   @Override
@@ -157,7 +167,7 @@ public class L1ServerMapLocalCacheStoreHashMap<K, V> implements L1ServerMapLocal
 
   @Override
   public int onHeapSize() {
-    return backingCache.size() / 2;
+    return overflowToOffHeap ? backingCache.size() / 2 : backingCache.size();
   }
 
   @Override
@@ -195,6 +205,11 @@ public class L1ServerMapLocalCacheStoreHashMap<K, V> implements L1ServerMapLocal
     //
   }
 
+  @Override
+  public boolean isOverflowToOffHeap() {
+    return overflowToOffHeap;
+  }
+
   @Override
   public boolean isPinned() {
     return false;
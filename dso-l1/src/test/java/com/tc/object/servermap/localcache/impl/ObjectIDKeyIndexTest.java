@@ -0,0 +1,102 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.object.servermap.localcache.impl;
+
+import com.tc.object.ObjectID;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class ObjectIDKeyIndexTest extends TestCase {
+
+  public void testBasic() {
+    ObjectIDKeyIndex index = new ObjectIDKeyIndex();
+    assertNull(index.put(new ObjectID(1), "key1"));
+    assertNull(index.put(ObjectID.NULL_ID, "nullKey"));
+    assertEquals("key1", index.put(new ObjectID(1), "key1b"));
+    assertEquals(2, index.size());
+
+    assertEquals("key1b", index.get(new ObjectID(1)));
+    assertEquals("nullKey", index.get(ObjectID.NULL_ID));
+    assertNull(index.get(new ObjectID(2)));
+
+    assertEquals("key1b", index.remove(new ObjectID(1)));
+    assertNull(index.remove(new ObjectID(1)));
+    assertEquals(1, index.size());
+
+    index.clear();
+    assertEquals(0, index.size());
+    assertNull(index.get(ObjectID.NULL_ID));
+  }
+
+  public void testAgainstHashMap() {
+    long seed = System.currentTimeMillis();
+    System.err.println("Seed : " + seed);
+    Random r = new Random(seed);
+    ObjectIDKeyIndex index = new ObjectIDKeyIndex();
+    Map<ObjectID, Object> expected = new HashMap<ObjectID, Object>();
+
+    // a small id range so that the tables grow, collide and shift back on removes
+    for (int i = 0; i < 200000; i++) {
+      ObjectID id = new ObjectID(r.nextInt(5000));
+      switch (r.nextInt(3)) {
+        case 0:
+          String key = "key" + i;
+          assertEquals(expected.put(id, key), index.put(id, key));
+          break;
+        case 1:
+          assertEquals(expected.remove(id), index.remove(id));
+          break;
+        default:
+          assertEquals(expected.get(id), index.get(id));
+      }
+    }
+    assertEquals(expected.size(), index.size());
+    for (Map.Entry<ObjectID, Object> e : expected.entrySet()) {
+      assertEquals(e.getValue(), index.get(e.getKey()));
+    }
+  }
+
+  public void testShrinksAfterRemoves() {
+    ObjectIDKeyIndex index = new ObjectIDKeyIndex();
+    int empty = index.capacity();
+    for (int i = 0; i < 100000; i++) {
+      index.put(new ObjectID(i), "key" + i);
+    }
+    assertTrue(index.capacity() >= 100000);
+
+    for (int i = 0; i < 100000; i++) {
+      if (i % 100 != 0) {
+        assertEquals("key" + i, index.remove(new ObjectID(i)));
+      }
+    }
+    assertEquals(1000, index.size());
+    assertTrue(index.capacity() < 100000 / 8);
+    for (int i = 0; i < 100000; i += 100) {
+      assertEquals("key" + i, index.get(new ObjectID(i)));
+    }
+
+    for (int i = 0; i < 100000; i += 100) {
+      index.remove(new ObjectID(i));
+    }
+    assertEquals(empty, index.capacity());
+  }
+
+}
@@ -61,6 +61,7 @@ import com.tc.object.tx.TransactionID;
 import com.tc.object.tx.TxnType;
 import com.tc.platform.PlatformService;
 import com.tc.stats.Stats;
+import com.tc.util.BitSetObjectIDSet;
 import com.tc.util.ObjectIDSet;
 import com.tc.util.SequenceID;
 import com.tc.util.concurrent.ThreadUtil;
@@ -92,6 +93,7 @@ public class ServerMapLocalCacheImplTest extends TestCase {
   private MockTCObjectSelfCallback         mockTCObjectSelfCallback;
   private final Map<LockID, Long>          lockIDandAwardIDMapping = new HashMap();
   private PlatformService                  ps;
+  private boolean                          overflowToOffHeap;
 
   @Override
   protected void setUp() throws Exception {
@@ -120,7 +122,7 @@ public class ServerMapLocalCacheImplTest extends TestCase {
         return args[1].equals(lockIDandAwardIDMapping.get(args[0]));
       }
     });
-    localCacheStore = new L1ServerMapLocalCacheStoreHashMap(maxElementsInMemory);
+    localCacheStore = new L1ServerMapLocalCacheStoreHashMap(maxElementsInMemory, overflowToOffHeap);
     cache = (ServerMapLocalCacheImpl) globalLocalCacheManager
         .getOrCreateLocalCache(mapID, com, ps, true, localCacheStore, Mockito.mock(PinnedEntryFaultCallback.class));
   }
@@ -266,11 +268,11 @@ public class ServerMapLocalCacheImplTest extends TestCase {
     // put eventual then put strong
     MockModesAdd.addEventualValueToCache(cache, this.globalLocalCacheManager, key, eventualEntry, mapID,
                                          MapOperationType.PUT);
-    assertNotNull("oid->list<key> does not exist", cache.getInternalStore().get(eventualEntry.getObjectID()));
+    assertNotNull("oid->list<key> does not exist", cache.getMappingUnlocked(eventualEntry.getObjectID()));
     MockModesAdd.addStrongValueToCache(cache, this.globalLocalCacheManager, key, lockOid, strongEntry, mapID,
                                        MapOperationType.PUT);
-    assertNotNull("oid->value does not exist", cache.getInternalStore().get(strongEntry.getObjectID()));
-    assertNull("oid->list<key> still exist", cache.getInternalStore().get(eventualEntry.getObjectID()));
+    assertNotNull("oid->value does not exist", cache.getMappingUnlocked(strongEntry.getObjectID()));
+    assertNull("oid->list<key> still exist", cache.getMappingUnlocked(eventualEntry.getObjectID()));
   }
 
   public void testAddEventualValueToCache() throws Exception {
@@ -290,7 +292,7 @@ public class ServerMapLocalCacheImplTest extends TestCase {
     }
 
     for (int i = 0; i < 50; i++) {
-      String keyGot = (String) localCacheStore.get(new ObjectID(i));
+      String keyGot = (String) cache.getMappingUnlocked(new ObjectID(i));
       Assert.assertEquals("key" + i, keyGot);
     }
 
@@ -319,7 +321,7 @@ public class ServerMapLocalCacheImplTest extends TestCase {
     for (int i = 0; i < 25; i++) {
       AbstractLocalCacheStoreValue value = cache.getLocalValue("key" + i);
       Assert.assertNull(value);
-      Assert.assertNull(localCacheStore.get(new ObjectID(i)));
+      Assert.assertNull(cache.getMappingUnlocked(new ObjectID(i)));
     }
 
     for (int i = 25; i < 50; i++) {
@@ -328,7 +330,7 @@ public class ServerMapLocalCacheImplTest extends TestCase {
     }
 
     for (int i = 25; i < 50; i++) {
-      String keyGot = (String) localCacheStore.get(new ObjectID(i));
+      String keyGot = (String) cache.getMappingUnlocked(new ObjectID(i));
       Assert.assertEquals("key" + i, keyGot);
     }
 
@@ -344,7 +346,7 @@ public class ServerMapLocalCacheImplTest extends TestCase {
                                          createMockSerializedEntry("value1", 1), mapID, MapOperationType.GET);
     AbstractLocalCacheStoreValue value = cache.getLocalValue("key1");
     assertEventualValue("value1", new ObjectID(1), value);
-    String keyGot = (String) localCacheStore.get(new ObjectID(1));
+    String keyGot = (String) cache.getMappingUnlocked(new ObjectID(1));
     Assert.assertEquals("key1", keyGot);
 
     // REMOVE
@@ -354,7 +356,7 @@ public class ServerMapLocalCacheImplTest extends TestCase {
     value = cache.getLocalValue("key1");
     Assert.assertEquals(null, value.getValueObject());
     Assert.assertEquals(ObjectID.NULL_ID, value.asEventualValue().getMetaId());
-    Assert.assertNull(localCacheStore.get(new ObjectID(1)));
+    Assert.assertNull(cache.getMappingUnlocked(new ObjectID(1)));
 
     barier.await();
     barier.await();
@@ -362,7 +364,7 @@ public class ServerMapLocalCacheImplTest extends TestCase {
 
     value = cache.getLocalValue("key1");
     Assert.assertNull(value);
-    Assert.assertNull(localCacheStore.get(new ObjectID(1)));
+    Assert.assertNull(cache.getMappingUnlocked(new ObjectID(1)));
   }
 
   public void testAddIncoherentValueToCache() throws Exception {
@@ -397,13 +399,13 @@ public class ServerMapLocalCacheImplTest extends TestCase {
     for (int i = 0; i < 25; i++) {
       AbstractLocalCacheStoreValue value = cache.getLocalValue("key" + i);
       Assert.assertNull(value);
-      Assert.assertNull(localCacheStore.get(new ObjectID(i)));
+      Assert.assertNull(cache.getMappingUnlocked(new ObjectID(i)));
     }
 
     for (int i = 25; i < 50; i++) {
       AbstractLocalCacheStoreValue value = cache.getLocalValue("key" + i);
       assertEventualValue("value" + i, new ObjectID(i), value);
-      String keyGot = (String) localCacheStore.get(new ObjectID(i));
+      String keyGot = (String) cache.getMappingUnlocked(new ObjectID(i));
       Assert.assertEquals("key" + i, keyGot);
     }
   }
@@ -426,13 +428,13 @@ public class ServerMapLocalCacheImplTest extends TestCase {
     for (int i = 0; i < 25; i++) {
       AbstractLocalCacheStoreValue value = cache.getLocalValue("key" + i);
       Assert.assertNull(value);
-      Assert.assertNull(localCacheStore.get(new ObjectID(i)));
+      Assert.assertNull(cache.getMappingUnlocked(new ObjectID(i)));
     }
 
     for (int i = 25; i < 50; i++) {
       AbstractLocalCacheStoreValue value = cache.getLocalValue("key" + i);
       assertEventualValue("value" + i, new ObjectID(i), value);
-      String keyGot = (String) localCacheStore.get(new ObjectID(i));
+      String keyGot = (String) cache.getMappingUnlocked(new ObjectID(i));
       Assert.assertEquals("key" + i, keyGot);
     }
   }
@@ -470,6 +472,57 @@ public class ServerMapLocalCacheImplTest extends TestCase {
     Assert.assertEquals(50, cache.size());
   }
 
+  public void testObjectIDMappingsAreKeptInOffHeapStores() throws Exception {
+    overflowToOffHeap = true;
+    setLocalCache(null, false, 100);
+    for (int i = 0; i < 50; i++) {
+      MockModesAdd.addEventualValueToCache(cache, globalLocalCacheManager, "key" + i,
+                                           createMockSerializedEntry("value" + i, i), mapID, MapOperationType.PUT);
+    }
+    Assert.assertEquals(50, cache.size());
+    Assert.assertEquals(50, cache.getKeys().size());
+
+    for (int i = 0; i < 50; i++) {
+      Assert.assertEquals("key" + i, localCacheStore.get(new ObjectID(i)));
+      Assert.assertEquals("key" + i, cache.getMappingUnlocked(new ObjectID(i)));
+    }
+
+    for (int i = 0; i < 25; i++) {
+      Assert.assertTrue(cache.removeEntriesForObjectId(new ObjectID(i)));
+      Assert.assertNull(cache.getLocalValue("key" + i));
+      Assert.assertNull(localCacheStore.get(new ObjectID(i)));
+    }
+
+    // an evicted meta mapping takes its entry with it
+    localCacheStore.remove(new ObjectID(25));
+    cache.entryEvicted(new ObjectID(25), "key25");
+    Assert.assertNull(cache.getLocalValue("key25"));
+
+    for (int i = 26; i < 50; i++) {
+      assertEventualValue("value" + i, new ObjectID(i), cache.getLocalValue("key" + i));
+    }
+    Assert.assertEquals(24, cache.size());
+  }
+
+  public void testPendingObjectIDsAreNotValidatedInOffHeapStores() throws Exception {
+    overflowToOffHeap = true;
+    CyclicBarrier barrier = new CyclicBarrier(2);
+    setLocalCache(barrier, false, 100);
+    // the transaction stays pending until the barrier is passed
+    MockModesAdd.addEventualValueToCache(cache, globalLocalCacheManager, "key1", createMockSerializedEntry("value1", 1),
+                                         mapID, MapOperationType.PUT);
+
+    ObjectIDSet validations = new BitSetObjectIDSet();
+    validations.add(new ObjectID(1));
+    validations.add(new ObjectID(2));
+    cache.handleObjectIDsToValidate(validations);
+    Assert.assertFalse(validations.contains(new ObjectID(1)));
+    Assert.assertTrue(validations.contains(new ObjectID(2)));
+
+    barrier.await();
+    barrier.await();
+  }
+
   public void testClearAllLocalCache() throws Exception {
     Assert.assertEquals(0, cache.size());
     int n = 1;
@@ -483,7 +536,7 @@ public class ServerMapLocalCacheImplTest extends TestCase {
     for (int i = 0; i < n; i++) {
       AbstractLocalCacheStoreValue value = cache.getLocalValue("key" + i);
       Assert.assertNull(value);
-      Object object = localCacheStore.get(new ObjectID(i));
+      Object object = cache.getMappingUnlocked(new ObjectID(i));
       Assert.assertNull("Not null - " + object, object);
     }
   }
@@ -506,13 +559,13 @@ public class ServerMapLocalCacheImplTest extends TestCase {
     for (int i = 0; i < 25; i++) {
       AbstractLocalCacheStoreValue value = cache.getLocalValue("key" + i);
       Assert.assertNull(value);
-      Assert.assertNull(localCacheStore.get(new ObjectID(i)));
+      Assert.assertNull(cache.getMappingUnlocked(new ObjectID(i)));
     }
 
     for (int i = 25; i < 50; i++) {
       AbstractLocalCacheStoreValue value = cache.getLocalValue("key" + i);
       assertEventualValue("value" + i, new ObjectID(i), value);
-      String keyGot = (String) localCacheStore.get(new ObjectID(i));
+      String keyGot = (String) cache.getMappingUnlocked(new ObjectID(i));
       Assert.assertEquals("key" + i, keyGot);
     }
   }
@@ -534,11 +587,11 @@ public class ServerMapLocalCacheImplTest extends TestCase {
       AbstractLocalCacheStoreValue value = cache.getLocalValue("key" + i);
       if (value != null) {
         assertEventualValue("value" + i, new ObjectID(i), value);
-        String keyGot = (String) localCacheStore.get(new ObjectID(i));
+        String keyGot = (String) cache.getMappingUnlocked(new ObjectID(i));
         Assert.assertEquals("key" + i, keyGot);
         notEvicted++;
       } else {
-        Object object = localCacheStore.get(new ObjectID(i));
+        Object object = cache.getMappingUnlocked(new ObjectID(i));
         Assert.assertNull("Not null - " + object, object);
         evicted++;
       }
@@ -566,7 +619,7 @@ public class ServerMapLocalCacheImplTest extends TestCase {
 
       value = cache.getLocalValue("key" + eventualId);
       assertEventualValue("value" + eventualId, new ObjectID(eventualId), value);
-      String keyGot = (String) localCacheStore.get(new ObjectID(eventualId));
+      String keyGot = (String) cache.getMappingUnlocked(new ObjectID(eventualId));
       Assert.assertEquals("key" + eventualId, keyGot);
     }
 
@@ -660,7 +713,7 @@ public class ServerMapLocalCacheImplTest extends TestCase {
 
       value = cache.getLocalValue("key" + eventualId);
       assertEventualValue("value" + eventualId, new ObjectID(eventualId), value);
-      String keyGot = (String) localCacheStore.get(new ObjectID(eventualId));
+      String keyGot = (String) cache.getMappingUnlocked(new ObjectID(eventualId));
       Assert.assertEquals("key" + eventualId, keyGot);
     }
 
@@ -676,7 +729,7 @@ public class ServerMapLocalCacheImplTest extends TestCase {
 
       value = cache.getLocalValue("key" + eventualId);
       Assert.assertNull(value);
-      Assert.assertNull(localCacheStore.get(new ObjectID(eventualId)));
+      Assert.assertNull(cache.getMappingUnlocked(new ObjectID(eventualId)));
     }
 
     Assert.assertEquals(0, cache.size());
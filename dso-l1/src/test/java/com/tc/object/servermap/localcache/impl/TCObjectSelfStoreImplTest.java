@@ -18,8 +18,10 @@ package com.tc.object.servermap.localcache.impl;
 
 import org.mockito.Mockito;
 
+import com.tc.net.GroupID;
 import com.tc.object.ObjectID;
 import com.tc.object.TCClass;
+import com.tc.object.TCObjectSelf;
 import com.tc.object.TCObjectSelfCallback;
 import com.tc.object.TCObjectSelfImpl;
 import com.tc.object.TCObjectSelfStore;
@@ -28,9 +30,14 @@ import com.tc.object.servermap.localcache.L1ServerMapLocalCacheStore;
 import com.tc.object.servermap.localcache.PinnedEntryFaultCallback;
 import com.tc.object.servermap.localcache.ServerMapLocalCache;
 import com.tc.test.TCTestCase;
+import com.tc.util.ObjectIDSet;
 import com.tc.util.concurrent.ThreadUtil;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class TCObjectSelfStoreImplTest extends TCTestCase {
   // test for CRQ-263, getObjectByID method stucks in a tight loop on interrupted exception
@@ -59,4 +66,151 @@ public class TCObjectSelfStoreImplTest extends TCTestCase {
     store.removeTCObjectSelf(tcObjectSelfImpl);
     objectLookupThread.join();
   }
+
+  public void testConcurrentAddAndRemove() throws Exception {
+    ConcurrentHashMap<ServerMapLocalCache, PinnedEntryFaultCallback> dummyCacheMap = new ConcurrentHashMap<ServerMapLocalCache, PinnedEntryFaultCallback>();
+    final TCObjectSelfStore store = new TCObjectSelfStoreImpl(dummyCacheMap);
+    final TCObjectSelfCallback selfCallback = Mockito.mock(TCObjectSelfCallback.class);
+    store.initializeTCObjectSelfStore(selfCallback);
+    final AbstractLocalCacheStoreValue value = Mockito.mock(AbstractLocalCacheStoreValue.class);
+    final L1ServerMapLocalCacheStore localStore = Mockito.mock(L1ServerMapLocalCacheStore.class);
+
+    final int threads = 8;
+    final int perThread = 1000;
+    final CyclicBarrier barrier = new CyclicBarrier(threads);
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+    Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      final int base = t * perThread;
+      workers[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            barrier.await();
+            for (int i = base; i < base + perThread; i++) {
+              TCObjectSelfImpl self = new TCObjectSelfImpl();
+              self.initializeTCObject(new ObjectID(i), Mockito.mock(TCClass.class), true);
+              store.addTCObjectSelfTemp(self);
+              assertTrue(store.contains(new ObjectID(i)));
+              assertTrue(store.addTCObjectSelf(localStore, value, self, false));
+              if (i % 2 == 0) {
+                store.removeTCObjectSelf(self);
+              }
+            }
+          } catch (Throwable th) {
+            error.set(th);
+          }
+        }
+      };
+      workers[t].start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    if (error.get() != null) { throw new AssertionError(error.get()); }
+
+    assertEquals(threads * perThread / 2, store.size());
+    for (int i = 0; i < threads * perThread; i++) {
+      assertEquals(i % 2 != 0, store.contains(new ObjectID(i)));
+    }
+  }
+
+  public void testObjectIDsAcrossStripes() throws Exception {
+    ConcurrentHashMap<ServerMapLocalCache, PinnedEntryFaultCallback> dummyCacheMap = new ConcurrentHashMap<ServerMapLocalCache, PinnedEntryFaultCallback>();
+    TCObjectSelfStore store = new TCObjectSelfStoreImpl(dummyCacheMap);
+    store.initializeTCObjectSelfStore(Mockito.mock(TCObjectSelfCallback.class));
+    AbstractLocalCacheStoreValue eventual = Mockito.mock(AbstractLocalCacheStoreValue.class);
+    Mockito.when(eventual.isEventualConsistentValue()).thenReturn(true);
+    AbstractLocalCacheStoreValue strong = Mockito.mock(AbstractLocalCacheStoreValue.class);
+    L1ServerMapLocalCacheStore localStore = Mockito.mock(L1ServerMapLocalCacheStore.class);
+
+    // enough ids to span every stripe, every third one eventual
+    int count = 64 * 1000;
+    for (int i = 0; i < count; i++) {
+      TCObjectSelfImpl self = new TCObjectSelfImpl();
+      self.initializeTCObject(new ObjectID(i), Mockito.mock(TCClass.class), true);
+      assertTrue(store.addTCObjectSelf(localStore, i % 3 == 0 ? eventual : strong, self, true));
+    }
+    assertEquals(count, store.size());
+
+    Set<ObjectID> all = new HashSet<ObjectID>();
+    store.addAllObjectIDs(all);
+    assertEquals(count, all.size());
+
+    ObjectIDSet validations = store.getObjectIDsToValidate(new GroupID(0));
+    assertEquals((count + 2) / 3, validations.size());
+    for (ObjectID id : validations) {
+      assertEquals(0, id.toLong() % 3);
+    }
+
+    store.cleanup();
+    assertEquals(0, store.size());
+    assertFalse(store.contains(new ObjectID(1)));
+  }
+
+  public void testLookupsUnderTheCallbackMonitorDoNotDeadlockWithRemovals() throws Exception {
+    ConcurrentHashMap<ServerMapLocalCache, PinnedEntryFaultCallback> dummyCacheMap = new ConcurrentHashMap<ServerMapLocalCache, PinnedEntryFaultCallback>();
+    final TCObjectSelfStore store = new TCObjectSelfStoreImpl(dummyCacheMap);
+    // like the client object manager, the callback takes its own monitor and looks into the store
+    final TCObjectSelfCallback callback = new TCObjectSelfCallback() {
+      @Override
+      public synchronized void removedTCObjectSelfFromStore(TCObjectSelf tcoObjectSelf) {
+        store.contains(tcoObjectSelf.getObjectID());
+      }
+
+      @Override
+      public void initializeTCClazzIfRequired(TCObjectSelf tcoObjectSelf) {
+        //
+      }
+    };
+    store.initializeTCObjectSelfStore(callback);
+    final AbstractLocalCacheStoreValue value = Mockito.mock(AbstractLocalCacheStoreValue.class);
+    final L1ServerMapLocalCacheStore localStore = Mockito.mock(L1ServerMapLocalCacheStore.class);
+    final int ids = 64;
+    final int rounds = 2000;
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+    Thread remover = new Thread() {
+      @Override
+      public void run() {
+        try {
+          for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < ids; i++) {
+              TCObjectSelfImpl self = new TCObjectSelfImpl();
+              self.initializeTCObject(new ObjectID(i), Mockito.mock(TCClass.class), true);
+              store.addTCObjectSelf(localStore, value, self, true);
+              store.removeTCObjectSelf(self);
+            }
+          }
+        } catch (Throwable th) {
+          error.set(th);
+        }
+      }
+    };
+    Thread lookup = new Thread() {
+      @Override
+      public void run() {
+        try {
+          for (int r = 0; r < rounds; r++) {
+            synchronized (callback) {
+              for (int i = 0; i < ids; i++) {
+                store.contains(new ObjectID(i));
+              }
+              store.addAllObjectIDs(new HashSet<ObjectID>());
+            }
+          }
+        } catch (Throwable th) {
+          error.set(th);
+        }
+      }
+    };
+    remover.start();
+    lookup.start();
+    remover.join(60 * 1000);
+    lookup.join(60 * 1000);
+    assertFalse("remover deadlocked", remover.isAlive());
+    assertFalse("lookup deadlocked", lookup.isAlive());
+    if (error.get() != null) { throw new AssertionError(error.get()); }
+    assertEquals(0, store.size());
+  }
 }
@@ -0,0 +1,87 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.object.tx;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class AdaptiveTransactionThrottleTest extends TestCase {
+
+  private static final long           FAST = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final long           SLOW = TimeUnit.MILLISECONDS.toNanos(10);
+
+  private AdaptiveTransactionThrottle throttle;
+  private long                        now;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    throttle = new AdaptiveTransactionThrottle(8, 88, 1.0);
+    now = 1000;
+  }
+
+  public void testStartsWideOpen() {
+    assertEquals(8, throttle.getWindow());
+    assertEquals(88, throttle.getPendingBatchLimit());
+  }
+
+  public void testHalvesOnRisingLatencyAndRecovers() {
+    acknowledge(20, FAST);
+    assertEquals(8, throttle.getWindow());
+
+    acknowledge(50, SLOW);
+    int congested = throttle.getWindow();
+    assertTrue(String.valueOf(congested), congested < 8);
+    assertTrue(throttle.getPendingBatchLimit() < 88);
+
+    acknowledge(200, FAST);
+    assertEquals(8, throttle.getWindow());
+    assertEquals(88, throttle.getPendingBatchLimit());
+  }
+
+  public void testServerThrottleClosesWindow() {
+    throttle.setServerThrottled(true);
+    assertEquals(1, throttle.getWindow());
+    assertEquals(11, throttle.getPendingBatchLimit());
+
+    acknowledge(20, FAST);
+    assertEquals(1, throttle.getWindow());
+
+    throttle.setServerThrottled(false);
+    acknowledge(100, FAST);
+    assertEquals(8, throttle.getWindow());
+  }
+
+  public void testUnmatchedAcknowledgementsAreIgnored() {
+    throttle.batchAcknowledged(now);
+    assertEquals(8, throttle.getWindow());
+
+    throttle.batchSent(now);
+    throttle.reset();
+    throttle.batchAcknowledged(now + SLOW);
+    assertEquals(8, throttle.getWindow());
+  }
+
+  private void acknowledge(int count, long latency) {
+    for (int i = 0; i < count; i++) {
+      throttle.batchSent(now);
+      now += latency;
+      throttle.batchAcknowledged(now);
+    }
+  }
+}
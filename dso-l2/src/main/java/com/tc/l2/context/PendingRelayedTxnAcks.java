@@ -0,0 +1,70 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.l2.context;
+
+import com.tc.async.api.EventContext;
+import com.tc.l2.msg.ServerRelayedTxnAckMessage;
+import com.tc.net.NodeID;
+import com.tc.net.groups.MessageID;
+import com.tc.object.tx.ServerTransactionID;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects the acks for relayed commit transactions on the passive until the send stage gets to them, so that the acks
+ * for all the batches that arrived in the meantime go to the active in one message. Only one instance is queued in the
+ * send stage at a time.
+ */
+public class PendingRelayedTxnAcks implements EventContext {
+
+  private final Map<NodeID, Set<ServerTransactionID>> pendingAcks = new LinkedHashMap<NodeID, Set<ServerTransactionID>>();
+  private final Map<NodeID, MessageID>                lastMessage = new LinkedHashMap<NodeID, MessageID>();
+
+  /**
+   * @return true if the caller has to queue this context in the send stage to get the acks sent
+   */
+  public synchronized boolean add(NodeID activeNode, MessageID relayedMessageID, Set<ServerTransactionID> serverTxnIDs) {
+    boolean wasEmpty = pendingAcks.isEmpty();
+    Set<ServerTransactionID> acks = pendingAcks.get(activeNode);
+    if (acks == null) {
+      acks = new LinkedHashSet<ServerTransactionID>();
+      pendingAcks.put(activeNode, acks);
+    }
+    acks.addAll(serverTxnIDs);
+    lastMessage.put(activeNode, relayedMessageID);
+    return wasEmpty;
+  }
+
+  /**
+   * @return one ack message for each node that has pending acks, in response to the latest relayed message from it
+   */
+  public synchronized List<ServerRelayedTxnAckMessage> drain() {
+    List<ServerRelayedTxnAckMessage> msgs = new ArrayList<ServerRelayedTxnAckMessage>(pendingAcks.size());
+    for (Map.Entry<NodeID, Set<ServerTransactionID>> e : pendingAcks.entrySet()) {
+      msgs.add(new ServerRelayedTxnAckMessage(e.getKey(), lastMessage.get(e.getKey()), e.getValue()));
+    }
+    pendingAcks.clear();
+    lastMessage.clear();
+    return msgs;
+  }
+
+}
@@ -16,19 +16,33 @@
  */
 package com.tc.l2.context;
 
-import com.tc.async.api.EventContext;
+import com.tc.async.api.MultiThreadedEventContext;
 import com.tc.net.NodeID;
 
-public class SyncObjectsRequest implements EventContext {
+public class SyncObjectsRequest implements MultiThreadedEventContext {
 
   private final NodeID nodeID;
+  private final int    worker;
 
   public SyncObjectsRequest(NodeID nodeID) {
+    this(nodeID, 0);
+  }
+
+  /**
+   * @param worker spreads the requests for one passive over the threads of the sync request stage
+   */
+  public SyncObjectsRequest(NodeID nodeID, int worker) {
     this.nodeID = nodeID;
+    this.worker = worker;
   }
   
   public NodeID getNodeID() {
     return nodeID;
   }
 
+  @Override
+  public Object getKey() {
+    return worker;
+  }
+
 }
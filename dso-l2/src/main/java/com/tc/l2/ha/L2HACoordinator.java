@@ -52,6 +52,7 @@ import com.tc.l2.objectserver.L2ObjectStateManager;
 import com.tc.l2.objectserver.L2ObjectSyncAckManager;
 import com.tc.l2.objectserver.L2ObjectSyncAckManagerImpl;
 import com.tc.l2.objectserver.L2PassiveSyncStateManager;
+import com.tc.l2.objectserver.RelayedTransactionWindow;
 import com.tc.l2.objectserver.ReplicatedObjectManager;
 import com.tc.l2.objectserver.ReplicatedObjectManagerImpl;
 import com.tc.l2.objectserver.ReplicatedTransactionManager;
@@ -113,6 +114,7 @@ public class L2HACoordinator implements L2Coordinator, GroupEventsListener, Sequ
   private SequenceGenerator                                 sequenceGenerator;
 
   private final SequenceGenerator                           indexSequenceGenerator;
+  private final RelayedTransactionWindow                    relayWindow;
   private final L2ConfigurationSetupManager                 configSetupManager;
   private final CopyOnWriteArrayList<StateChangeListener>   listeners        = new CopyOnWriteArrayList<StateChangeListener>();
   private final CopyOnWriteArrayList<PassiveServerListener> passiveListeners = new CopyOnWriteArrayList<PassiveServerListener>();
@@ -146,6 +148,8 @@ public class L2HACoordinator implements L2Coordinator, GroupEventsListener, Sequ
     this.indexSequenceGenerator = indexSequenceGenerator;
     this.l2ObjectStateManager = l2ObjectStateManager;
     this.sbpResolver = sbpResolver;
+    this.relayWindow = new RelayedTransactionWindow(TCPropertiesImpl.getProperties()
+        .getInt(TCPropertiesConsts.L2_NHA_RELAY_WINDOW, 0));
     // this.clusterStatePersistor = clusterStatePersistor;
 
     init(stageManager, clusterStatePersistor, l2ObjectStateManager, l2IndexStateManager, objectManager,
@@ -194,10 +198,12 @@ public class L2HACoordinator implements L2Coordinator, GroupEventsListener, Sequ
                              MAX_STAGE_SIZE).getSink();
 
     final L2ObjectSyncAckManager objectSyncAckManager = new L2ObjectSyncAckManagerImpl(transactionManager, groupManager);
+    final int OBJECT_SYNC_WORKERS = Math.max(1, TCPropertiesImpl.getProperties()
+        .getInt(TCPropertiesConsts.L2_OBJECTMANAGER_PASSIVE_SYNC_WORKERS, 1));
     final Sink objectsSyncRequestSink = stageManager.createStage(ServerConfigurationContext.OBJECTS_SYNC_REQUEST_STAGE,
                                                                  new L2ObjectSyncRequestHandler(this.sequenceGenerator,
-                                                                                                objectStateManager), 1,
-                                                                 MAX_STAGE_SIZE).getSink();
+                                                                                                objectStateManager),
+                                                                 OBJECT_SYNC_WORKERS, MAX_STAGE_SIZE).getSink();
     final Sink objectsSyncSink = stageManager.createStage(ServerConfigurationContext.OBJECTS_SYNC_STAGE,
                                                           new L2ObjectSyncHandler(serverTransactionFactory,
                                                                                   objectSyncAckManager, this.server
@@ -206,11 +212,12 @@ public class L2HACoordinator implements L2Coordinator, GroupEventsListener, Sequ
 
     Sink transactionRelaySink = stageManager.createStage(ServerConfigurationContext.TRANSACTION_RELAY_STAGE,
                                                          new TransactionRelayHandler(objectStateManager,
-                                                                                     this.sequenceGenerator, gtxm), 1,
+                                                                                     this.sequenceGenerator, gtxm,
+                                                                                     this.relayWindow), 1,
                                                          MAX_STAGE_SIZE).getSink();
     final Sink ackProcessingSink = stageManager
         .createStage(ServerConfigurationContext.SERVER_TRANSACTION_ACK_PROCESSING_STAGE,
-                     new ServerTransactionAckHandler(), 1, MAX_STAGE_SIZE).getSink();
+                     new ServerTransactionAckHandler(this.relayWindow), 1, MAX_STAGE_SIZE).getSink();
     final Sink stateMessageSink = stageManager.createStage(ServerConfigurationContext.L2_STATE_MESSAGE_HANDLER_STAGE,
                                                            new L2StateMessageHandler(), 1, MAX_STAGE_SIZE).getSink();
     final Sink gcResultSink = stageManager.createStage(ServerConfigurationContext.GC_RESULT_PROCESSING_STAGE,
@@ -423,6 +430,7 @@ public class L2HACoordinator implements L2Coordinator, GroupEventsListener, Sequ
     }
     this.sequenceGenerator.clearSequenceFor(nodeID);
     this.indexSequenceGenerator.clearSequenceFor(nodeID);
+    this.relayWindow.remove(nodeID);
   }
 
   @Override
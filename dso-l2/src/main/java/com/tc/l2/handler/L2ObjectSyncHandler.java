@@ -20,12 +20,12 @@ import com.tc.async.api.AbstractEventHandler;
 import com.tc.async.api.ConfigurationContext;
 import com.tc.async.api.EventContext;
 import com.tc.async.api.Sink;
+import com.tc.l2.context.PendingRelayedTxnAcks;
 import com.tc.l2.ha.L2HAZapNodeRequestProcessor;
 import com.tc.l2.msg.ObjectSyncCompleteAckMessage;
 import com.tc.l2.msg.ObjectSyncCompleteMessage;
 import com.tc.l2.msg.ObjectSyncMessage;
 import com.tc.l2.msg.RelayedCommitTransactionMessage;
-import com.tc.l2.msg.ServerRelayedTxnAckMessage;
 import com.tc.l2.objectserver.L2ObjectSyncAckManager;
 import com.tc.l2.objectserver.ReplicatedTransactionManager;
 import com.tc.l2.objectserver.ServerTransactionFactory;
@@ -66,6 +66,7 @@ public class L2ObjectSyncHandler extends AbstractEventHandler {
   private final L2ObjectSyncAckManager   objectSyncAckManager;
 
   private final TaskRunner               taskRunner;
+  private final PendingRelayedTxnAcks    pendingAcks         = new PendingRelayedTxnAcks();
   private Timer                          lwmUpdateTimer;
 
   public L2ObjectSyncHandler(final ServerTransactionFactory factory,
@@ -83,7 +84,7 @@ public class L2ObjectSyncHandler extends AbstractEventHandler {
       doSyncObjectsResponse(syncMsg);
     } else if (context instanceof RelayedCommitTransactionMessage) {
       final RelayedCommitTransactionMessage commitMessage = (RelayedCommitTransactionMessage) context;
-      final Set serverTxnIDs = processCommitTransactionMessage(commitMessage);
+      final Set<ServerTransactionID> serverTxnIDs = processCommitTransactionMessage(commitMessage);
       processTransactionLowWaterMark(commitMessage.getLowGlobalTransactionIDWatermark());
       ackRelayedTransactions(commitMessage, serverTxnIDs);
     } else if (context instanceof ObjectSyncCompleteMessage) {
@@ -138,12 +139,15 @@ public class L2ObjectSyncHandler extends AbstractEventHandler {
     startLWMUpdaterIfNecessary();
   }
 
-  private void ackRelayedTransactions(final RelayedCommitTransactionMessage messageFrom, final Set serverTxnIDs) {
-    final ServerRelayedTxnAckMessage msg = new ServerRelayedTxnAckMessage(messageFrom, serverTxnIDs);
-    this.sendSink.add(msg);
+  private void ackRelayedTransactions(final RelayedCommitTransactionMessage messageFrom,
+                                      final Set<ServerTransactionID> serverTxnIDs) {
+    // Acks are merged until the send stage picks them up, the active treats them as cumulative
+    if (this.pendingAcks.add(messageFrom.messageFrom(), messageFrom.getMessageID(), serverTxnIDs)) {
+      this.sendSink.add(this.pendingAcks);
+    }
   }
 
-  private Set processCommitTransactionMessage(final RelayedCommitTransactionMessage commitMessage) {
+  private Set<ServerTransactionID> processCommitTransactionMessage(final RelayedCommitTransactionMessage commitMessage) {
     try {
       final TransactionBatchReader reader = this.batchReaderFactory.newTransactionBatchReader(commitMessage);
       ServerTransaction txn;
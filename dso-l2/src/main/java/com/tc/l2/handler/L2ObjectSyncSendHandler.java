@@ -21,10 +21,12 @@ import com.tc.async.api.ConfigurationContext;
 import com.tc.async.api.EventContext;
 import com.tc.l2.api.L2Coordinator;
 import com.tc.l2.context.ManagedObjectSyncContext;
+import com.tc.l2.context.PendingRelayedTxnAcks;
 import com.tc.l2.ha.L2HAZapNodeRequestProcessor;
 import com.tc.l2.msg.ObjectSyncMessage;
 import com.tc.l2.msg.ServerTxnAckMessage;
 import com.tc.l2.objectserver.L2ObjectStateManager;
+import com.tc.l2.objectserver.ObjectSyncProgress;
 import com.tc.l2.objectserver.ReplicatedTransactionManager;
 import com.tc.l2.objectserver.ServerTransactionFactory;
 import com.tc.logging.TCLogger;
@@ -79,6 +81,10 @@ public class L2ObjectSyncSendHandler extends AbstractEventHandler {
           this.objectStateManager.syncMore(mosc.getNodeID());
         }
       }
+    } else if (context instanceof PendingRelayedTxnAcks) {
+      for (final ServerTxnAckMessage txnMsg : ((PendingRelayedTxnAcks) context).drain()) {
+        sendAcks(txnMsg);
+      }
     } else if (context instanceof ServerTxnAckMessage) {
       final ServerTxnAckMessage txnMsg = (ServerTxnAckMessage) context;
       sendAcks(txnMsg);
@@ -170,8 +176,8 @@ public class L2ObjectSyncSendHandler extends AbstractEventHandler {
       final ObjectSyncMessage msg = mosc.createObjectSyncMessage(sid);
       this.serverTxnMgr.objectsSynched(mosc.getNodeID(), sid);
       this.groupManager.sendTo(mosc.getNodeID(), msg);
-      this.syncLogger.logSynced(mosc);
       this.objectStateManager.close(mosc);
+      this.syncLogger.logSynced(mosc, this.objectStateManager.getSyncProgress(mosc.getNodeID()));
       return true;
     } catch (final GroupException e) {
       this.serverTxnMgr.acknowledgement(sid.getSourceID(), sid.getClientTransactionID(), mosc.getNodeID());
@@ -194,16 +200,23 @@ public class L2ObjectSyncSendHandler extends AbstractEventHandler {
 
   private static class SyncLogger {
 
-    public void logSynced(final ManagedObjectSyncContext mosc) {
-      final int last = mosc.getTotalObjectsSynced();
-      final int current = last + mosc.getSynchedOids().size();
-      final int totalObjectsToSync = mosc.getTotalObjectsToSync();
+    /**
+     * Logs whenever a batch takes the sync past another percent. The progress is read after the batch is closed, as
+     * the totals in the context are those of when it was taken, before the batches of the other workers went out.
+     */
+    public void logSynced(final ManagedObjectSyncContext mosc, final ObjectSyncProgress progress) {
+      if (progress == null) { return; }
+      final int current = progress.getObjectsSynced();
+      final int last = current - mosc.getSynchedOids().size() - mosc.getDeletedOids().size();
+      final int totalObjectsToSync = progress.getTotalObjectsToSync();
       final int lastPercent = (int) ((last * 100L) / totalObjectsToSync);
       final int currentPercent = (int) ((current * 100L) / totalObjectsToSync);
 
       if (currentPercent > lastPercent) {
-        logger.info("Sent " + current + " (" + currentPercent + "%) objects out of " + mosc.getTotalObjectsToSync()
-                    + " to " + mosc.getNodeID()
+        final long eta = progress.getEstimatedMillisRemaining();
+        logger.info("Sent " + current + " (" + currentPercent + "%) objects out of " + totalObjectsToSync + " to "
+                    + mosc.getNodeID() + " at " + progress.getObjectsPerSecond() + " objects/sec"
+                    + (eta < 0 ? "" : ", about " + (eta / 1000) + " secs remaining")
                     + (mosc.getRootsMap().size() == 0 ? "" : " roots = " + mosc.getRootsMap().size()));
       }
     }
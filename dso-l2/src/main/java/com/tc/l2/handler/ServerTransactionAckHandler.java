@@ -22,6 +22,7 @@ import com.tc.async.api.EventContext;
 import com.tc.l2.msg.ServerSyncTxnAckMessage;
 import com.tc.l2.msg.ServerTxnAckMessage;
 import com.tc.l2.objectserver.L2ObjectStateManager;
+import com.tc.l2.objectserver.RelayedTransactionWindow;
 import com.tc.net.NodeID;
 import com.tc.object.tx.ServerTransactionID;
 import com.tc.objectserver.core.api.ServerConfigurationContext;
@@ -32,8 +33,14 @@ import java.util.Set;
 
 public class ServerTransactionAckHandler extends AbstractEventHandler {
 
-  private ServerTransactionManager transactionManager;
-  private L2ObjectStateManager     l2ObjectStateManager;
+  private final RelayedTransactionWindow relayWindow;
+
+  private ServerTransactionManager       transactionManager;
+  private L2ObjectStateManager           l2ObjectStateManager;
+
+  public ServerTransactionAckHandler(RelayedTransactionWindow relayWindow) {
+    this.relayWindow = relayWindow;
+  }
 
   @Override
   public void handleEvent(EventContext context) {
@@ -47,6 +54,8 @@ public class ServerTransactionAckHandler extends AbstractEventHandler {
 
     if (msg instanceof ServerSyncTxnAckMessage) {
       this.l2ObjectStateManager.ackSync(msg.messageFrom());
+    } else {
+      this.relayWindow.acknowledged(waitee, ackedTxns);
     }
   }
 
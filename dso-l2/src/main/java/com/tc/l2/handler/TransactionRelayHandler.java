@@ -24,6 +24,7 @@ import com.tc.l2.msg.RelayedCommitTransactionMessage;
 import com.tc.l2.msg.RelayedCommitTransactionMessageFactory;
 import com.tc.l2.objectserver.L2ObjectState;
 import com.tc.l2.objectserver.L2ObjectStateManager;
+import com.tc.l2.objectserver.RelayedTransactionWindow;
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLogging;
 import com.tc.net.NodeID;
@@ -44,6 +45,7 @@ public class TransactionRelayHandler extends AbstractEventHandler {
 
   private final L2ObjectStateManager           l2ObjectStateMgr;
   private final SequenceGenerator              sequenceGenerator;
+  private final RelayedTransactionWindow       relayWindow;
 
   private GroupManager                         groupManager;
 
@@ -52,9 +54,10 @@ public class TransactionRelayHandler extends AbstractEventHandler {
   private final ServerGlobalTransactionManager gtxm;
 
   public TransactionRelayHandler(final L2ObjectStateManager objectStateManager, final SequenceGenerator generator,
-                                 final ServerGlobalTransactionManager gtxm) {
+                                 final ServerGlobalTransactionManager gtxm, final RelayedTransactionWindow relayWindow) {
     this.l2ObjectStateMgr = objectStateManager;
     this.sequenceGenerator = generator;
+    this.relayWindow = relayWindow;
     this.gtxm = gtxm;
   }
 
@@ -73,12 +76,15 @@ public class TransactionRelayHandler extends AbstractEventHandler {
 
   private void sendCommitTransactionMessage(final NodeID nodeID, final TransactionBatchContext tbc,
                                             final GlobalTransactionID lowWaterMark) {
+    this.relayWindow.acquire(nodeID);
     addWaitForNotification(nodeID, tbc);
     try {
+      final long sequence = this.sequenceGenerator.getNextSequence(nodeID);
       final RelayedCommitTransactionMessage msg = RelayedCommitTransactionMessageFactory
           .createRelayedCommitTransactionMessage(tbc.getSourceNodeID(), tbc.getBackingBuffers(), tbc.getTransactions(),
-                                                 this.sequenceGenerator.getNextSequence(nodeID), lowWaterMark, tbc
-                                                     .getSerializer());
+                                                 sequence, lowWaterMark, tbc.getSerializer());
+      // registered before sending so that the ack can never arrive ahead of it
+      this.relayWindow.relayed(nodeID, sequence, tbc.getTransactionIDs());
       this.groupManager.sendTo(nodeID, msg);
     } catch (final Exception e) {
       reconsileWaitForNotification(nodeID, tbc);
@@ -48,4 +48,9 @@ public interface L2ObjectStateManager {
 
   public void ackSync(NodeID nodeID);
 
+  /**
+   * @return how far the object sync to the passive has got, or null if it is not known to this manager
+   */
+  public ObjectSyncProgress getSyncProgress(NodeID nodeID);
+
 }
\ No newline at end of file
@@ -35,9 +35,13 @@ import com.tc.util.concurrent.ThrottledTaskExecutor;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class L2ObjectStateManagerImpl implements L2ObjectStateManager {
 
@@ -49,6 +53,7 @@ public class L2ObjectStateManagerImpl implements L2ObjectStateManager {
   private final ServerTransactionManager transactionManager;
   private final CopyOnWriteSequentialMap<NodeID, SyncExecutorContext> syncExecutorContextMap = new CopyOnWriteSequentialMap<NodeID, SyncExecutorContext>();
   private final int                      syncMaxPendingMsgs;
+  private final int                      syncWorkers;
   private long                           currentSessionId       = 0;
 
   public L2ObjectStateManagerImpl(final ObjectManager objectManager, final ServerTransactionManager transactionManager) {
@@ -62,6 +67,8 @@ public class L2ObjectStateManagerImpl implements L2ObjectStateManager {
                   + ")");
     }
     this.syncMaxPendingMsgs = (maxSyncPendingMsgs <= 0) ? Integer.MAX_VALUE : maxSyncPendingMsgs;
+    this.syncWorkers = Math.max(1, TCPropertiesImpl.getProperties()
+        .getInt(TCPropertiesConsts.L2_OBJECTMANAGER_PASSIVE_SYNC_WORKERS, 1));
   }
 
   @Override
@@ -161,11 +168,18 @@ public class L2ObjectStateManagerImpl implements L2ObjectStateManager {
     syncPassive(throttledTaskExecutor, syncRunnable);
   }
 
+  /**
+   * Sync starts with a single request so that the roots go over first. Once that is sent, the other workers join in,
+   * each with its own chain of requests, all of them throttled on the acks from the passive.
+   */
   @Override
   public void syncMore(NodeID nodeID) {
     SyncExecutorContext passiveSync = this.syncExecutorContextMap.get(nodeID);
     if (passiveSync != null) {
       syncPassive(passiveSync.getExecutor(), passiveSync.getRunnable());
+      while (passiveSync.startAnotherWorker(this.syncWorkers)) {
+        syncPassive(passiveSync.getExecutor(), passiveSync.getRunnable());
+      }
     } else {
       logger.warn("syncMore: Passive Sync Context missing for " + nodeID);
     }
@@ -185,6 +199,12 @@ public class L2ObjectStateManagerImpl implements L2ObjectStateManager {
     }
   }
 
+  @Override
+  public ObjectSyncProgress getSyncProgress(NodeID nodeID) {
+    final L2ObjectStateImpl l2State = this.nodes.get(nodeID);
+    return l2State == null ? null : l2State.getSyncProgress();
+  }
+
   @Override
   public String toString() {
     StringBuilder strBuilder = new StringBuilder();
@@ -196,12 +216,21 @@ public class L2ObjectStateManagerImpl implements L2ObjectStateManager {
   private static class SyncExecutorContext {
     private final ThrottledTaskExecutor executor;
     private final Runnable              runnable;
+    private final AtomicInteger         workers = new AtomicInteger(1);
 
     public SyncExecutorContext(ThrottledTaskExecutor executor, Runnable runnable) {
       this.executor = executor;
       this.runnable = runnable;
     }
 
+    public boolean startAnotherWorker(int maxWorkers) {
+      while (true) {
+        final int current = this.workers.get();
+        if (current >= maxWorkers) { return false; }
+        if (this.workers.compareAndSet(current, current + 1)) { return true; }
+      }
+    }
+
     public ThrottledTaskExecutor getExecutor() {
       return executor;
     }
@@ -227,10 +256,12 @@ public class L2ObjectStateManagerImpl implements L2ObjectStateManager {
 
     private volatile State           state          = START;
 
-    private ManagedObjectSyncContext syncingContext = null;
+    // contexts being dehydrated or sent, one for each worker at most
+    private final Set<ManagedObjectSyncContext> syncingContexts = new HashSet<ManagedObjectSyncContext>();
 
     private int                      totalObjectsToSync;
     private int                      totalObjectsSynced;
+    private long                     syncStartNanos;
     private final long               sessionId;
 
     public L2ObjectStateImpl(final NodeID nodeID, final long currentSessionId) {
@@ -238,19 +269,19 @@ public class L2ObjectStateManagerImpl implements L2ObjectStateManager {
       this.sessionId = currentSessionId;
     }
 
-    private void close(final ManagedObjectSyncContext mosc) {
+    private synchronized void close(final ManagedObjectSyncContext mosc) {
       if (this.sessionId != mosc.getSessionId()) {
         logger.warn("An old request for object sync for " + this.nodeID + " is being ignored");
         return;
       }
-      if (mosc != this.syncingContext) { throw new AssertionError("expected: " + this.syncingContext + " actual: "
-                                                                  + mosc); }
-      this.syncingContext = null;
+      if (!this.syncingContexts.remove(mosc)) { throw new AssertionError("expected one of: " + this.syncingContexts
+                                                                         + " actual: " + mosc); }
       // NotSynchedOids are picked up first as its a stored set and thus prefetching that happened is not a waste.
       missingOids.addAll(mosc.getNotSynchedOids());
       totalObjectsSynced += mosc.getSynchedOids().size();
       totalObjectsSynced += mosc.getDeletedOids().size();
-      if (this.missingOids.isEmpty()) {
+      // the last worker to close its context completes the sync
+      if (this.missingOids.isEmpty() && this.syncingContexts.isEmpty()) {
         this.state = IN_SYNC_PENDING_NOTIFY;
         L2ObjectStateManagerImpl.this.transactionManager
             .callBackOnTxnsInSystemCompletion(new TxnsInSystemCompletionListener() {
@@ -262,16 +293,23 @@ public class L2ObjectStateManagerImpl implements L2ObjectStateManager {
       }
     }
 
-    private ManagedObjectSyncContext getSomeObjectsToSyncContext(final int count) {
-      Assert.assertTrue(this.state == SYNC_STARTED);
-      Assert.assertNull(this.syncingContext);
+    /**
+     * Each context takes the next lowest missing ObjectIDs, so the workers dehydrate disjoint ranges.
+     * 
+     * @return null if the other workers already hold all the objects left to sync
+     */
+    private synchronized ManagedObjectSyncContext getSomeObjectsToSyncContext(final int count) {
+      if (this.syncingContexts.isEmpty()) {
+        Assert.assertTrue(this.state == SYNC_STARTED);
+      } else if (this.state != SYNC_STARTED || this.missingOids.isEmpty()) { return null; }
       if (isRootsMissing()) { return getMissingRootsSynccontext(); }
       final ObjectIDSet oids = new BitSetObjectIDSet();
       addSomeMissingObjectIDsTo(oids, count);
-      this.syncingContext = new ManagedObjectSyncContext(this.nodeID, oids, !this.missingOids.isEmpty(),
-                                                         this.totalObjectsToSync, this.totalObjectsSynced,
-                                                         this.sessionId);
-      return this.syncingContext;
+      final ManagedObjectSyncContext mosc = new ManagedObjectSyncContext(this.nodeID, oids, !this.missingOids.isEmpty(),
+                                                                         this.totalObjectsToSync,
+                                                                         this.totalObjectsSynced, this.sessionId);
+      this.syncingContexts.add(mosc);
+      return mosc;
     }
 
     private void addSomeMissingObjectIDsTo(final ObjectIDSet oids, int count) {
@@ -294,18 +332,25 @@ public class L2ObjectStateManagerImpl implements L2ObjectStateManager {
         // Get some objects anyways
         addSomeMissingObjectIDsTo(oids, this.missingRoots.size());
       }
-      this.syncingContext = new ManagedObjectSyncContext(this.nodeID, new HashMap<String, ObjectID>(this.missingRoots), oids,
+      final ManagedObjectSyncContext mosc = new ManagedObjectSyncContext(this.nodeID, new HashMap<String, ObjectID>(this.missingRoots), oids,
                                                          !this.missingOids.isEmpty(), this.totalObjectsToSync,
                                                          this.totalObjectsSynced, this.sessionId);
       this.missingRoots.clear();
-      return this.syncingContext;
+      this.syncingContexts.add(mosc);
+      return mosc;
+    }
+
+    private synchronized ObjectSyncProgress getSyncProgress() {
+      final long elapsed = this.syncStartNanos == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+                                                                                        - this.syncStartNanos);
+      return new ObjectSyncProgress(this.nodeID, this.totalObjectsToSync, this.totalObjectsSynced, elapsed);
     }
 
     private boolean isRootsMissing() {
       return !this.missingRoots.isEmpty();
     }
 
-    private int computeDiff() {
+    private synchronized int computeDiff() {
       this.missingOids = L2ObjectStateManagerImpl.this.objectManager.getAllObjectIDs();
       this.missingRoots = L2ObjectStateManagerImpl.this.objectManager.getRootNamesToIDsMap();
       final int objectCount = this.missingOids.size();
@@ -316,6 +361,7 @@ public class L2ObjectStateManagerImpl implements L2ObjectStateManager {
       if (missingCount == 0) {
         this.state = IN_SYNC;
       } else {
+        this.syncStartNanos = System.nanoTime();
         this.state = SYNC_STARTED;
       }
       return missingCount;
@@ -35,4 +35,10 @@ public interface L2PassiveSyncStateManager extends StateSyncManager {
 
   public boolean addL2(NodeID nodeID, State l2State);
 
+  /**
+   * @return the throughput and estimated time remaining of the object sync to the passive, or null if the passive is
+   *         not known
+   */
+  public ObjectSyncProgress getObjectSyncProgress(NodeID nodeID);
+
 }
\ No newline at end of file
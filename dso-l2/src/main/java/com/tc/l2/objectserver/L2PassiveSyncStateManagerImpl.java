@@ -56,6 +56,11 @@ public class L2PassiveSyncStateManagerImpl implements L2PassiveSyncStateManager
     this.indexStateManager.removeL2(nodeID);
   }
 
+  @Override
+  public ObjectSyncProgress getObjectSyncProgress(NodeID nodeID) {
+    return this.objectStateManager.getSyncProgress(nodeID);
+  }
+
   @Override
   public void objectSyncComplete() {
     this.stateSyncManager.objectSyncComplete();
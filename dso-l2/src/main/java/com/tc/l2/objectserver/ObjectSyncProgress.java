@@ -0,0 +1,81 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.l2.objectserver;
+
+import com.tc.net.NodeID;
+
+/**
+ * A snapshot of how far the objects of this server have been synced to a passive, with the rate they went at so far
+ * and the time the rest should take at that rate.
+ */
+public class ObjectSyncProgress {
+
+  private final NodeID nodeID;
+  private final int    totalObjectsToSync;
+  private final int    objectsSynced;
+  private final long   elapsedMillis;
+
+  public ObjectSyncProgress(final NodeID nodeID, final int totalObjectsToSync, final int objectsSynced,
+                            final long elapsedMillis) {
+    this.nodeID = nodeID;
+    this.totalObjectsToSync = totalObjectsToSync;
+    this.objectsSynced = objectsSynced;
+    this.elapsedMillis = elapsedMillis;
+  }
+
+  public NodeID getNodeID() {
+    return this.nodeID;
+  }
+
+  public int getTotalObjectsToSync() {
+    return this.totalObjectsToSync;
+  }
+
+  public int getObjectsSynced() {
+    return this.objectsSynced;
+  }
+
+  public long getElapsedMillis() {
+    return this.elapsedMillis;
+  }
+
+  public int getPercentSynced() {
+    return this.totalObjectsToSync == 0 ? 100 : (int) ((this.objectsSynced * 100L) / this.totalObjectsToSync);
+  }
+
+  public long getObjectsPerSecond() {
+    return this.elapsedMillis == 0 ? 0 : (this.objectsSynced * 1000L) / this.elapsedMillis;
+  }
+
+  /**
+   * @return the estimated time in milliseconds to sync the remaining objects, or -1 if nothing was synced yet to
+   *         estimate it from
+   */
+  public long getEstimatedMillisRemaining() {
+    if (this.objectsSynced == 0) { return -1; }
+    final long remaining = Math.max(0, this.totalObjectsToSync - this.objectsSynced);
+    return (remaining * this.elapsedMillis) / this.objectsSynced;
+  }
+
+  @Override
+  public String toString() {
+    final long eta = getEstimatedMillisRemaining();
+    return "ObjectSyncProgress [ " + this.nodeID + " : " + this.objectsSynced + " of " + this.totalObjectsToSync
+           + " objects (" + getPercentSynced() + "%) at " + getObjectsPerSecond() + " objects/sec, eta = "
+           + (eta < 0 ? "unknown" : (eta / 1000) + " secs") + " ]";
+  }
+}
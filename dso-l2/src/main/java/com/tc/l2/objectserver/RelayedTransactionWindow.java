@@ -0,0 +1,131 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.l2.objectserver;
+
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+import com.tc.net.NodeID;
+import com.tc.object.tx.ServerTransactionID;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounds the number of relayed commit transaction batches that are in flight to each passive. The relay stage calls
+ * {@link #acquire(NodeID)} before sending a batch and {@link #relayed(NodeID, long, Collection)} once it is given a
+ * sequence, so that it keeps relaying without waiting for the acks of earlier batches until the window is full.
+ * <p>
+ * Passives apply relayed batches in sequence order and ack whole batches in that order, so an ack that covers a
+ * transaction of a batch is taken as an ack for that batch and every batch relayed before it.
+ */
+public class RelayedTransactionWindow {
+
+  private static final TCLogger           logger          = TCLogging.getLogger(RelayedTransactionWindow.class);
+  private static final long               WAIT_LOG_MILLIS = 10000;
+
+  private final int                       windowSize;
+  private final Map<NodeID, Deque<Batch>> inFlight        = new HashMap<NodeID, Deque<Batch>>();
+
+  /**
+   * @param windowSize max batches in flight to each passive, 0 or less for no limit
+   */
+  public RelayedTransactionWindow(int windowSize) {
+    this.windowSize = windowSize;
+  }
+
+  /**
+   * Waits until there is room in the window of the passive. Returns without waiting if the passive is removed in the
+   * meantime, the relay will fail or be ignored for it anyway.
+   */
+  public synchronized void acquire(NodeID nodeID) {
+    if (windowSize <= 0) { return; }
+    boolean interrupted = false;
+    long waitStart = System.currentTimeMillis();
+    Deque<Batch> batches;
+    while ((batches = inFlight.get(nodeID)) != null && batches.size() >= windowSize) {
+      try {
+        wait(WAIT_LOG_MILLIS);
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+      long waited = System.currentTimeMillis() - waitStart;
+      if (waited >= WAIT_LOG_MILLIS && inFlight.get(nodeID) == batches && batches.size() >= windowSize) {
+        logger.warn("Waited " + waited + " ms for acks from " + nodeID + " : " + batches.size()
+                    + " relayed batches in flight, oldest sequence " + batches.peekFirst().sequence);
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public synchronized void relayed(NodeID nodeID, long sequence, Collection<ServerTransactionID> txnIDs) {
+    if (windowSize <= 0 || txnIDs.isEmpty()) { return; }
+    Deque<Batch> batches = inFlight.get(nodeID);
+    if (batches == null) {
+      batches = new ArrayDeque<Batch>();
+      inFlight.put(nodeID, batches);
+    }
+    batches.addLast(new Batch(sequence, txnIDs.iterator().next()));
+  }
+
+  /**
+   * Releases every batch up to and including the latest one with a transaction in the acked set.
+   */
+  public synchronized void acknowledged(NodeID nodeID, Set ackedTxnIDs) {
+    Deque<Batch> batches = inFlight.get(nodeID);
+    if (batches == null || batches.isEmpty()) { return; }
+    int covered = 0;
+    int i = 0;
+    for (Batch b : batches) {
+      i++;
+      if (ackedTxnIDs.contains(b.txnID)) {
+        covered = i;
+      }
+    }
+    if (covered == 0) { return; }
+    for (int j = 0; j < covered; j++) {
+      batches.removeFirst();
+    }
+    notifyAll();
+  }
+
+  public synchronized void remove(NodeID nodeID) {
+    if (inFlight.remove(nodeID) != null) {
+      notifyAll();
+    }
+  }
+
+  public synchronized int getInFlightCount(NodeID nodeID) {
+    Deque<Batch> batches = inFlight.get(nodeID);
+    return batches == null ? 0 : batches.size();
+  }
+
+  private static final class Batch {
+    private final long                sequence;
+    private final ServerTransactionID txnID;
+
+    Batch(long sequence, ServerTransactionID txnID) {
+      this.sequence = sequence;
+      this.txnID = txnID;
+    }
+  }
+}
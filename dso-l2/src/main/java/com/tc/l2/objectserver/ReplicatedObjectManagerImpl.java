@@ -63,6 +63,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ReplicatedObjectManagerImpl implements ReplicatedObjectManager, GroupMessageListener,
     L2ObjectStateListener, L2IndexStateListener {
@@ -314,10 +315,11 @@ public class ReplicatedObjectManagerImpl implements ReplicatedObjectManager, Gro
       this.passiveSyncStateManager.objectSyncComplete(nodeID);
       moveNodeToPassiveStandByIfPossible(nodeID);
     } else {
+      final AtomicInteger nextWorker = new AtomicInteger();
       final Runnable syncRunnable = new Runnable() {
         @Override
         public void run() {
-          objectsSyncRequestSink.add(new SyncObjectsRequest(nodeID));
+          objectsSyncRequestSink.add(new SyncObjectsRequest(nodeID, nextWorker.getAndIncrement()));
         }
       };
       this.l2ObjectStateManager.initiateSync(nodeID, syncRunnable);
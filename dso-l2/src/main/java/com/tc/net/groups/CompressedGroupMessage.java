@@ -0,0 +1,147 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.groups;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.bytes.TCByteBufferFactory;
+import com.tc.io.TCByteBufferInput;
+import com.tc.io.TCByteBufferOutput;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Carries another group message deflated, see {@link GroupMessageCompressor}, or only serialized when it was not worth
+ * deflating, so that the sender does not serialize it a second time. The same message, without a payload, is how an
+ * L2 announces to a new member that it accepts compressed messages.
+ */
+public class CompressedGroupMessage extends AbstractGroupMessage {
+
+  public static final int  ACCEPTS_COMPRESSION = 0;
+  public static final int  COMPRESSED          = 1;
+  public static final int  SERIALIZED          = 2;
+
+  private static final int COPY_CHUNK_SIZE     = 8 * 1024;
+
+  private int              uncompressedLength;
+  private byte[]           compressed;
+  private int              compressedLength;
+  private TCByteBuffer[]   serialized;
+
+  // To make serialization happy
+  public CompressedGroupMessage() {
+    super(-1);
+  }
+
+  private CompressedGroupMessage(final int type) {
+    super(type);
+  }
+
+  public static CompressedGroupMessage createAcceptsCompressionMessage() {
+    return new CompressedGroupMessage(ACCEPTS_COMPRESSION);
+  }
+
+  static CompressedGroupMessage createCompressedMessage(final int uncompressedLength, final byte[] compressed,
+                                                        final int compressedLength) {
+    final CompressedGroupMessage msg = new CompressedGroupMessage(COMPRESSED);
+    msg.uncompressedLength = uncompressedLength;
+    msg.compressed = compressed;
+    msg.compressedLength = compressedLength;
+    return msg;
+  }
+
+  static CompressedGroupMessage createSerializedMessage(final int length, final TCByteBuffer[] serialized) {
+    final CompressedGroupMessage msg = new CompressedGroupMessage(SERIALIZED);
+    msg.uncompressedLength = length;
+    msg.serialized = serialized;
+    return msg;
+  }
+
+  @Override
+  protected void basicDeserializeFrom(final TCByteBufferInput in) throws IOException {
+    if (getType() == COMPRESSED) {
+      this.uncompressedLength = in.readInt();
+      this.compressedLength = in.readInt();
+      this.compressed = new byte[this.compressedLength];
+      in.readFully(this.compressed);
+    } else if (getType() == SERIALIZED) {
+      this.uncompressedLength = in.readInt();
+      final byte[] bytes = new byte[this.uncompressedLength];
+      in.readFully(bytes);
+      this.serialized = new TCByteBuffer[] { TCByteBufferFactory.wrap(bytes) };
+    }
+  }
+
+  @Override
+  protected void basicSerializeTo(final TCByteBufferOutput out) {
+    if (getType() == COMPRESSED) {
+      out.writeInt(this.uncompressedLength);
+      out.writeInt(this.compressedLength);
+      out.write(this.compressed, 0, this.compressedLength);
+    } else if (getType() == SERIALIZED) {
+      out.writeInt(this.uncompressedLength);
+      for (final TCByteBuffer buffer : this.serialized) {
+        write(out, buffer.getNioBuffer());
+      }
+    }
+  }
+
+  /**
+   * Writes the remaining bytes of the buffer without moving its position, the message may be sent to several members
+   */
+  private static void write(final TCByteBufferOutput out, final ByteBuffer buffer) {
+    if (buffer.hasArray()) {
+      out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+      return;
+    }
+    final ByteBuffer copy = buffer.duplicate();
+    final byte[] chunk = new byte[Math.min(copy.remaining(), COPY_CHUNK_SIZE)];
+    while (copy.hasRemaining()) {
+      final int length = Math.min(copy.remaining(), chunk.length);
+      copy.get(chunk, 0, length);
+      out.write(chunk, 0, length);
+    }
+  }
+
+  int getUncompressedLength() {
+    return this.uncompressedLength;
+  }
+
+  byte[] getCompressed() {
+    return this.compressed;
+  }
+
+  int getCompressedLength() {
+    return this.compressedLength;
+  }
+
+  TCByteBuffer[] getSerialized() {
+    return this.serialized;
+  }
+
+  @Override
+  public String toString() {
+    switch (getType()) {
+      case ACCEPTS_COMPRESSION:
+        return "CompressedGroupMessage [ accepts compression ]";
+      case SERIALIZED:
+        return "CompressedGroupMessage [ " + this.uncompressedLength + " bytes serialized ]";
+      default:
+        return "CompressedGroupMessage [ " + this.compressedLength + " bytes of " + this.uncompressedLength + " ]";
+    }
+  }
+}
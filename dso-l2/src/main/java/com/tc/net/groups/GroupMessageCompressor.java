@@ -0,0 +1,295 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.groups;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.bytes.TCByteBufferFactory;
+import com.tc.io.TCByteBufferInputStream;
+import com.tc.io.TCByteBufferOutputStream;
+import com.tc.properties.TCProperties;
+import com.tc.properties.TCPropertiesConsts;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflates the large group messages, the object sync and relayed transaction messages by default, for the members that
+ * announced they accept it. Messages of other types go as they are. Messages smaller than the configured size, or that
+ * hardly shrink, go in the serialized form that was already made for them. A message sent to several members is
+ * compressed once.
+ * <p>
+ * Each thread keeps its own deflater and inflater, those hold native memory which is costly to allocate per message.
+ */
+public class GroupMessageCompressor {
+
+  // not worth the receiver's time to inflate if it saves less than this
+  private static final double                MAX_COMPRESSED_RATIO  = 0.9;
+  private static final int                   CHUNK_SIZE            = 64 * 1024;
+  private static final int                   MIN_OUTPUT_SIZE       = 1024;
+
+  private static final ThreadLocal<Deflater> DEFLATER              = new ThreadLocal<Deflater>() {
+                                                                     @Override
+                                                                     protected Deflater initialValue() {
+                                                                       return new Deflater(Deflater.BEST_SPEED);
+                                                                     }
+                                                                   };
+  private static final ThreadLocal<Inflater> INFLATER              = new ThreadLocal<Inflater>() {
+                                                                     @Override
+                                                                     protected Inflater initialValue() {
+                                                                       return new Inflater();
+                                                                     }
+                                                                   };
+
+  private final boolean                      enabled;
+  private final Set<String>                  messageTypes;
+  private final int                          minSize;
+
+  private final AtomicLong                   messagesCompressed    = new AtomicLong();
+  private final AtomicLong                   messagesSkipped       = new AtomicLong();
+  private final AtomicLong                   bytesBeforeCompressed = new AtomicLong();
+  private final AtomicLong                   bytesAfterCompressed  = new AtomicLong();
+  private final AtomicLong                   compressNanos         = new AtomicLong();
+  private final AtomicLong                   messagesInflated      = new AtomicLong();
+  private final AtomicLong                   inflateNanos          = new AtomicLong();
+
+  public GroupMessageCompressor(final TCProperties properties) {
+    this(properties.getBoolean(TCPropertiesConsts.L2_NHA_TCGROUPCOMM_COMPRESSION_ENABLED, false),
+         parseMessageTypes(properties.getProperty(TCPropertiesConsts.L2_NHA_TCGROUPCOMM_COMPRESSION_MESSAGE_TYPES, true)),
+         properties.getInt(TCPropertiesConsts.L2_NHA_TCGROUPCOMM_COMPRESSION_MIN_SIZE, 4096));
+  }
+
+  public GroupMessageCompressor(final boolean enabled, final Set<String> messageTypes, final int minSize) {
+    this.enabled = enabled;
+    this.messageTypes = messageTypes;
+    this.minSize = minSize;
+  }
+
+  private static Set<String> parseMessageTypes(final String types) {
+    if (types == null || types.trim().length() == 0) { return Collections.emptySet(); }
+    final Set<String> rv = new HashSet<String>();
+    for (final String type : types.split(",")) {
+      if (type.trim().length() > 0) {
+        rv.add(type.trim());
+      }
+    }
+    return rv;
+  }
+
+  public boolean isEnabled() {
+    return this.enabled;
+  }
+
+  boolean isCompressible(final GroupMessage msg) {
+    return this.enabled && this.messageTypes.contains(msg.getClass().getSimpleName());
+  }
+
+  /**
+   * @return the message to send to the members accepting compression, which is msg itself if it is not of a type to
+   *         compress, or its serialized form if it is not worth compressing
+   */
+  public GroupMessage compress(final GroupMessage msg) {
+    if (!isCompressible(msg)) { return msg; }
+    final long start = System.nanoTime();
+    try {
+      final TCByteBufferOutputStream out = new TCByteBufferOutputStream();
+      out.writeString(msg.getClass().getName());
+      msg.serializeTo(out);
+      final int uncompressedLength = out.getBytesWritten();
+      final TCByteBuffer[] serialized = out.toArray();
+      if (uncompressedLength < this.minSize) {
+        this.messagesSkipped.incrementAndGet();
+        return CompressedGroupMessage.createSerializedMessage(uncompressedLength, serialized);
+      }
+
+      // anything larger is not worth sending compressed
+      final DeflatedOutput compressed = new DeflatedOutput((int) (uncompressedLength * MAX_COMPRESSED_RATIO));
+      if (!deflate(serialized, compressed)) {
+        this.messagesSkipped.incrementAndGet();
+        return CompressedGroupMessage.createSerializedMessage(uncompressedLength, serialized);
+      }
+      this.messagesCompressed.incrementAndGet();
+      this.bytesBeforeCompressed.addAndGet(uncompressedLength);
+      this.bytesAfterCompressed.addAndGet(compressed.length);
+      return CompressedGroupMessage.createCompressedMessage(uncompressedLength, compressed.bytes, compressed.length);
+    } finally {
+      this.compressNanos.addAndGet(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Deflates the buffers straight from their backing arrays with this thread's deflater
+   * 
+   * @return false if the output went past its maximum size
+   */
+  private static boolean deflate(final TCByteBuffer[] serialized, final DeflatedOutput compressed) {
+    final Deflater deflater = DEFLATER.get();
+    deflater.reset();
+    byte[] chunk = null;
+    for (final TCByteBuffer buffer : serialized) {
+      final ByteBuffer nio = buffer.getNioBuffer();
+      if (nio.hasArray()) {
+        deflater.setInput(nio.array(), nio.arrayOffset() + nio.position(), nio.remaining());
+        if (!compressed.deflate(deflater)) { return false; }
+      } else {
+        final ByteBuffer copy = nio.duplicate();
+        if (chunk == null) {
+          chunk = new byte[CHUNK_SIZE];
+        }
+        while (copy.hasRemaining()) {
+          final int read = Math.min(copy.remaining(), chunk.length);
+          copy.get(chunk, 0, read);
+          deflater.setInput(chunk, 0, read);
+          if (!compressed.deflate(deflater)) { return false; }
+        }
+      }
+    }
+    return compressed.finish(deflater);
+  }
+
+  /**
+   * Rebuilds the message that was compressed or only serialized. Inflating is always supported so that a member can
+   * receive compressed messages even when it does not compress its own.
+   */
+  public GroupMessage inflate(final CompressedGroupMessage msg) throws IOException {
+    if (msg.getType() == CompressedGroupMessage.SERIALIZED) {
+      return deserialize(new TCByteBufferInputStream(msg.getSerialized()));
+    }
+
+    final long start = System.nanoTime();
+    try {
+      final byte[] uncompressed = new byte[msg.getUncompressedLength()];
+      final Inflater inflater = INFLATER.get();
+      inflater.reset();
+      inflater.setInput(msg.getCompressed(), 0, msg.getCompressedLength());
+      int offset = 0;
+      while (offset < uncompressed.length) {
+        final int read;
+        try {
+          read = inflater.inflate(uncompressed, offset, uncompressed.length - offset);
+        } catch (final DataFormatException e) {
+          throw new IOException("Corrupt compressed group message", e);
+        }
+        if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IOException("Compressed group message ended after " + offset + " of " + uncompressed.length
+                                + " bytes");
+        }
+        offset += read;
+      }
+
+      final GroupMessage inner = deserialize(new TCByteBufferInputStream(TCByteBufferFactory.wrap(uncompressed)));
+      this.messagesInflated.incrementAndGet();
+      return inner;
+    } finally {
+      this.inflateNanos.addAndGet(System.nanoTime() - start);
+    }
+  }
+
+  private static GroupMessage deserialize(final TCByteBufferInputStream serialized) throws IOException {
+    final GroupMessage msg = newMessage(serialized.readString());
+    msg.deserializeFrom(serialized);
+    return msg;
+  }
+
+  private static GroupMessage newMessage(final String className) throws IOException {
+    try {
+      final Constructor<?> constructor = Class.forName(className).getDeclaredConstructor();
+      constructor.setAccessible(true);
+      return (GroupMessage) constructor.newInstance();
+    } catch (final Exception e) {
+      throw new IOException("Unable to create group message " + className + " : " + e);
+    }
+  }
+
+  /**
+   * Grows up to a maximum size, a message that compresses well does not hold on to an array of its uncompressed size
+   */
+  private static final class DeflatedOutput {
+    private final int max;
+    private byte[]    bytes;
+    private int       length;
+
+    DeflatedOutput(final int max) {
+      this.max = max;
+      this.bytes = new byte[Math.min(max, Math.max(MIN_OUTPUT_SIZE, max / 4))];
+    }
+
+    /**
+     * @return false if the output went past its maximum size
+     */
+    boolean deflate(final Deflater deflater) {
+      while (!deflater.needsInput()) {
+        if (!deflateSome(deflater)) { return false; }
+      }
+      return true;
+    }
+
+    /**
+     * @return false if the output went past its maximum size
+     */
+    boolean finish(final Deflater deflater) {
+      deflater.finish();
+      while (!deflater.finished()) {
+        if (!deflateSome(deflater)) { return false; }
+      }
+      return true;
+    }
+
+    private boolean deflateSome(final Deflater deflater) {
+      if (this.length == this.bytes.length) {
+        if (this.length == this.max) { return false; }
+        this.bytes = Arrays.copyOf(this.bytes, Math.min(this.max, this.bytes.length * 2));
+      }
+      this.length += deflater.deflate(this.bytes, this.length, this.bytes.length - this.length);
+      return true;
+    }
+  }
+
+  public long getMessagesCompressed() {
+    return this.messagesCompressed.get();
+  }
+
+  public long getBytesSaved() {
+    return this.bytesBeforeCompressed.get() - this.bytesAfterCompressed.get();
+  }
+
+  public long getCompressMillis() {
+    return this.compressNanos.get() / 1000000;
+  }
+
+  public long getInflateMillis() {
+    return this.inflateNanos.get() / 1000000;
+  }
+
+  @Override
+  public String toString() {
+    final long before = this.bytesBeforeCompressed.get();
+    final long after = this.bytesAfterCompressed.get();
+    return "GroupMessageCompressor [ enabled = " + this.enabled + " types = " + this.messageTypes + " compressed = "
+           + this.messagesCompressed + " skipped = " + this.messagesSkipped + " bytes = " + before + " -> " + after
+           + " saved = " + (before - after) + " compress ms = " + getCompressMillis() + " inflated = "
+           + this.messagesInflated + " inflate ms = " + getInflateMillis() + " ]";
+  }
+}
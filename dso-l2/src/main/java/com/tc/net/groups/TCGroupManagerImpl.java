@@ -140,6 +140,9 @@ public class TCGroupManagerImpl implements GroupManager, ChannelManagerEventList
   private final boolean                                     isUseOOOLayer;
   private final AtomicBoolean                               alreadyJoined               = new AtomicBoolean(false);
   private final WeightGeneratorFactory                      weightGeneratorFactory      = new WeightGeneratorFactory();
+  private final GroupMessageCompressor                      compressor                  = new GroupMessageCompressor(
+                                                                                                                     TCPropertiesImpl
+                                                                                                                         .getProperties());
 
   private CommunicationsManager                             communicationsManager;
   private NetworkListener                                   groupListener;
@@ -525,6 +528,7 @@ public class TCGroupManagerImpl implements GroupManager, ChannelManagerEventList
   @Override
   public void sendAll(GroupMessage msg, Set nodeIDs) {
     final boolean debug = msg instanceof L2StateMessage;
+    GroupMessage compressed = null;
     for (TCGroupMember m : members.values()) {
       if (!nodeIDs.contains(m.getPeerNodeID())) {
         if (debug) {
@@ -536,13 +540,38 @@ public class TCGroupManagerImpl implements GroupManager, ChannelManagerEventList
         if (debug) {
           debugInfo("Sending msg to " + m.getPeerNodeID() + ", " + msg + ", channel: " + m.getChannel());
         }
-        m.sendIgnoreNotReady(msg);
+        if (m.acceptsCompression()) {
+          // compressed once for all the members accepting it
+          if (compressed == null) {
+            compressed = compressor.compress(msg);
+          }
+          m.sendIgnoreNotReady(compressed);
+        } else {
+          m.sendIgnoreNotReady(msg);
+        }
       } else {
         logger.warn("Ignored sending msg to a not ready member=" + m + ", msg=" + msg);
       }
     }
   }
 
+  private GroupMessage compressFor(TCGroupMember member, GroupMessage msg) {
+    return member.acceptsCompression() ? compressor.compress(msg) : msg;
+  }
+
+  /*
+   * Tell a new member that it may send compressed messages to this node
+   */
+  private void announceCompression(TCGroupMember member) {
+    if (compressor.isEnabled()) {
+      member.sendIgnoreNotReady(CompressedGroupMessage.createAcceptsCompressionMessage());
+    }
+  }
+
+  public GroupMessageCompressor getCompressor() {
+    return compressor;
+  }
+
   @Override
   public void sendTo(NodeID node, GroupMessage msg) throws GroupException {
     TCGroupMember member = getMember(node);
@@ -550,7 +579,7 @@ public class TCGroupManagerImpl implements GroupManager, ChannelManagerEventList
       if (msg instanceof L2StateMessage) {
         debugInfo("Sending msg to " + node + ", msg: " + msg + ", channel: " + member.getChannel());
       }
-      member.send(msg);
+      member.send(compressFor(member, msg));
     } else {
       throw new GroupException("Send to " + ((member == null) ? "non-exist" : "not ready") + " member of " + node);
     }
@@ -741,6 +770,20 @@ public class TCGroupManagerImpl implements GroupManager, ChannelManagerEventList
       }
     }
 
+    if (message instanceof CompressedGroupMessage) {
+      CompressedGroupMessage compressed = (CompressedGroupMessage) message;
+      if (compressed.getType() == CompressedGroupMessage.ACCEPTS_COMPRESSION) {
+        debugInfo("Member accepts compressed messages: " + m);
+        m.setAcceptsCompression(true);
+        return;
+      }
+      try {
+        message = compressor.inflate(compressed);
+      } catch (IOException e) {
+        throw new TCRuntimeException("Unable to inflate " + compressed + " from " + m, e);
+      }
+    }
+
     ServerID from = m.getPeerNodeID();
     MessageID requestID = message.inResponseTo();
 
@@ -843,7 +886,8 @@ public class TCGroupManagerImpl implements GroupManager, ChannelManagerEventList
     }
     strBuffer.append("}\n\t");
 
-    strBuffer.append("zappedSet: {").append(this.zappedSet).append(" ").append("} ]");
+    strBuffer.append("zappedSet: {").append(this.zappedSet).append(" ").append("}\n\t");
+    strBuffer.append(this.compressor).append(" ]");
     out.indent().print(strBuffer.toString()).flush();
     return out;
   }
@@ -878,7 +922,7 @@ public class TCGroupManagerImpl implements GroupManager, ChannelManagerEventList
       if (member.isReady()) {
         Assert.assertNotNull(member.getPeerNodeID());
         waitFor.add(member.getPeerNodeID());
-        member.send(msg);
+        member.send(manager.compressFor(member, msg));
       } else {
         throw new GroupException("Send to a not ready member " + member);
       }
@@ -890,6 +934,7 @@ public class TCGroupManagerImpl implements GroupManager, ChannelManagerEventList
 
     public synchronized void sendAll(GroupMessage msg, Set nodeIDs) {
       final boolean debug = msg instanceof L2StateMessage;
+      GroupMessage compressed = null;
       for (TCGroupMember m : manager.getMembers()) {
         if (!nodeIDs.contains(m.getPeerNodeID())) {
           if (debug) {
@@ -903,7 +948,14 @@ public class TCGroupManagerImpl implements GroupManager, ChannelManagerEventList
           if (debug) {
             debugInfo("Sending msg to " + m.getPeerNodeID() + ", msg: " + msg + ", channel: " + m.getChannel());
           }
-          m.sendIgnoreNotReady(msg);
+          if (m.acceptsCompression()) {
+            if (compressed == null) {
+              compressed = manager.compressor.compress(msg);
+            }
+            m.sendIgnoreNotReady(compressed);
+          } else {
+            m.sendIgnoreNotReady(msg);
+          }
         } else {
           logger.warn("SendAllAndWait to a not ready member " + m);
         }
@@ -1338,6 +1390,7 @@ public class TCGroupManagerImpl implements GroupManager, ChannelManagerEventList
       @Override
       public void enter() {
         cancelTimerTask();
+        manager.announceCompression(member);
         manager.fireNodeEvent(member, true);
         member.setJoinedEventFired(true);
 
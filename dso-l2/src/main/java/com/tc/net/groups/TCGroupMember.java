@@ -52,4 +52,8 @@ public interface TCGroupMember {
   public void abortMemberAdding();
 
   public void notifyMemberAdded();
+
+  public boolean acceptsCompression();
+
+  public void setAcceptsCompression(boolean accepts);
 }
\ No newline at end of file
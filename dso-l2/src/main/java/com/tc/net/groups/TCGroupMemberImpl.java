@@ -42,6 +42,8 @@ public class TCGroupMemberImpl implements TCGroupMember, ChannelEventListener {
   private final AtomicBoolean   ready        = new AtomicBoolean(false);
   private final AtomicBoolean   joined       = new AtomicBoolean(false);
   private volatile boolean      memberAdding = false;
+  // set when the peer announces it can inflate compressed group messages
+  private volatile boolean      acceptsCompression = false;
 
   public TCGroupMemberImpl(ServerID localNodeID, ServerID peerNodeID, MessageChannel channel) {
     this.channel = channel;
@@ -154,6 +156,16 @@ public class TCGroupMemberImpl implements TCGroupMember, ChannelEventListener {
     return (localNodeID.compareTo(peerNodeID) > 0);
   }
 
+  @Override
+  public boolean acceptsCompression() {
+    return acceptsCompression;
+  }
+
+  @Override
+  public void setAcceptsCompression(boolean accepts) {
+    acceptsCompression = accepts;
+  }
+
   @Override
   public synchronized void memberAddingInProcess() {
     memberAdding = true;
@@ -148,6 +148,11 @@ public interface ObjectManager extends ManagedObjectProvider, ObjectManagerMBean
 
   public int getCheckedOutCount();
 
+  /**
+   * @return true if a lookup is waiting for the object with the given id to be released
+   */
+  public boolean isLookupBlockedOn(ObjectID id);
+
   public Set getRootIDs();
 
   public ObjectIDSet getAllObjectIDs();
@@ -162,4 +167,13 @@ public interface ObjectManager extends ManagedObjectProvider, ObjectManagerMBean
    */
   public ManagedObject getObjectByIDReadOnly(ObjectID id);
 
+  /**
+   * Returns the cached instance of an object without checking it out. The object may be changed by others at any time,
+   * so it must only be read, and only through something like {@link OptimisticallyReadable}.
+   *
+   * @param id ObjectID of the object
+   * @return ManagedObject if it is cached and not new or being deleted; null otherwise
+   */
+  public ManagedObject getObjectByIDIfCached(ObjectID id);
+
 }
@@ -0,0 +1,41 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.api;
+
+/**
+ * A managed object state that can be read without checking its object out. A write stays pending from the first change
+ * applied under a read-write checkout until that checkout is released, which is after the changes are committed.
+ * Readers take a stamp, read, then validate the stamp, much like a sequence lock, and fall back to a checkout if it
+ * fails.
+ */
+public interface OptimisticallyReadable {
+
+  /**
+   * @return a stamp to validate after reading, which never validates if a write is pending
+   */
+  public long readStamp();
+
+  /**
+   * @return true if no write was pending or started since the stamp was taken
+   */
+  public boolean validate(long stamp);
+
+  /**
+   * Called by the object manager when a read-write checkout of the object is released.
+   */
+  public void writeReleased();
+}
@@ -26,4 +26,9 @@ public interface ChangeCollector extends ManagedObjectChangeListener {
   public final ChangeCollector NULL_CHANGE_COLLECTOR = new NullChangeCollector();
 
   public Set<ObjectID> addNewReferencesTo(Set<ObjectID> set);
+
+  /**
+   * Adds the new references collected since the last drain to the set and forgets them.
+   */
+  public Set<ObjectID> drainNewReferencesTo(Set<ObjectID> set);
 }
\ No newline at end of file
@@ -90,4 +90,14 @@ public class FullGCHook extends AbstractGCHook {
 
     return rescueIds;
   }
+
+  @Override
+  public ObjectIDSet drainRescueIDs(boolean includeClientReferences) {
+    ObjectIDSet rescueIds = new BitSetObjectIDSet();
+    if (includeClientReferences) {
+      this.stateManager.addAllReferencedIdsTo(rescueIds);
+    }
+    this.collector.drainNewReferencesTo(rescueIds);
+    return rescueIds;
+  }
 }
\ No newline at end of file
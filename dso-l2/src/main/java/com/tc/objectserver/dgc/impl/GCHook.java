@@ -48,4 +48,10 @@ public interface GCHook {
 
   public ObjectIDSet getRescueIDs();
 
+  /**
+   * Like {@link #getRescueIDs()} but only returns the references changed since the previous drain, and the ids
+   * referenced by clients only if asked to.
+   */
+  public ObjectIDSet drainRescueIDs(boolean includeClientReferences);
+
 }
\ No newline at end of file
@@ -35,15 +35,44 @@ import java.util.Set;
 
 final class MarkAndSweepGCAlgorithm {
 
+  private static final int                     MAX_PRECLEAN_ROUNDS = 8;
+  // rescues from fewer ids than this are done in the calling thread, spreading all the candidates over the marker
+  // threads would cost more than following the few references
+  private static final int                     MIN_PARALLEL_RESCUE = 1024;
+
+  /**
+   * The candidates of a rescue are exactly the candidate garbage, so every candidate referenced is visited
+   */
+  private static final Filter                  VISIT_ALL           = new Filter() {
+                                                                     @Override
+                                                                     public boolean shouldVisit(ObjectID referencedObject) {
+                                                                       return true;
+                                                                     }
+                                                                   };
+
   private final GCHook                         gcHook;
   private final long                           gcIteration;
   private final GarbageCollector               collector;
   private final GarbageCollectionInfoPublisher gcPublisher;
   private final LifeCycleState                 gcState;
-  private final String                         uuid = UUID.getUUID().toString();
+  private final String                         uuid                = UUID.getUUID().toString();
+  private final ParallelMarker                 marker;
+  private final int                            precleanThreshold;
 
   public MarkAndSweepGCAlgorithm(GarbageCollector collector, GCHook gcHook, GarbageCollectionInfoPublisher gcPublisher,
                                  LifeCycleState gcState, long gcIteration) {
+    this(collector, gcHook, gcPublisher, gcState, gcIteration, 0, 0);
+  }
+
+  /**
+   * @param markThreads marks with that many threads and rescues the changes made while marking before pausing, 0 to
+   *        mark in the calling thread and rescue all changes twice
+   * @param precleanThreshold keep rescuing changes before pausing while a round finds more than that many
+   */
+  public MarkAndSweepGCAlgorithm(GarbageCollector collector, GCHook gcHook, GarbageCollectionInfoPublisher gcPublisher,
+                                 LifeCycleState gcState, long gcIteration, int markThreads, int precleanThreshold) {
+    this.marker = markThreads > 0 ? new ParallelMarker(gcHook, markThreads) : null;
+    this.precleanThreshold = precleanThreshold;
     this.collector = collector;
     this.gcHook = gcHook;
     this.gcPublisher = gcPublisher;
@@ -71,14 +100,16 @@ final class MarkAndSweepGCAlgorithm {
 
     if (gcState.isStopRequested()) { return; }
 
-    ObjectIDSet gcResults = collect(gcHook.getCollectCycleFilter(candidateIDs), rootIDs, candidateIDs, gcState);
+    Filter filter = gcHook.getCollectCycleFilter(candidateIDs);
+    ObjectIDSet gcResults = marker == null ? collect(filter, rootIDs, candidateIDs, gcState) : marker
+        .mark(filter, rootIDs, candidateIDs, gcState);
     gcInfo.setPreRescueCount(gcResults.size());
     gcPublisher.fireGCMarkResultsEvent(gcInfo);
 
     if (gcState.isStopRequested()) { return; }
 
     long startRescue1 = System.currentTimeMillis();
-    gcResults = rescue(gcResults);
+    gcResults = marker == null ? rescue(gcResults) : rescueConcurrently(gcResults);
     long rescue1Time = System.currentTimeMillis() - startRescue1;
     gcInfo.setRescue1Time(rescue1Time);
     gcInfo.setRescue1Count(gcResults.size());
@@ -108,7 +139,8 @@ final class MarkAndSweepGCAlgorithm {
     gcInfo.setCandidateGarbageCount(gcResults.size());
     gcPublisher.fireGCRescue2StartEvent(gcInfo);
     long startRescue2 = System.currentTimeMillis();
-    ObjectIDSet toDelete = ObjectIDSet.unmodifiableObjectIDSet(rescue(new BitSetObjectIDSet(gcResults)));
+    ObjectIDSet toDelete = ObjectIDSet.unmodifiableObjectIDSet(marker == null ? rescue(new BitSetObjectIDSet(gcResults))
+        : rescue(new BitSetObjectIDSet(gcResults), gcHook.drainRescueIDs(true)));
     long rescue2Time = System.currentTimeMillis() - startRescue2;
     gcInfo.setRescue2Time(rescue2Time);
 
@@ -188,13 +220,37 @@ final class MarkAndSweepGCAlgorithm {
   }
 
   private ObjectIDSet rescue(final ObjectIDSet gcResults) {
-    Set<ObjectID> rescueIds = gcHook.getRescueIDs();
+    return rescue(gcResults, gcHook.getRescueIDs());
+  }
+
+  private ObjectIDSet rescue(final ObjectIDSet gcResults, final Set<ObjectID> rescueIds) {
     rescueIds.retainAll(gcResults);
+    if (rescueIds.isEmpty()) { return gcResults; }
 
+    if (marker != null && rescueIds.size() >= MIN_PARALLEL_RESCUE) {
+      return marker.mark(VISIT_ALL, rescueIds, gcResults, gcState);
+    }
     Filter rescueFilter = new SelectiveFilter(gcResults);
     return collect(rescueFilter, rescueIds, gcResults, gcState);
   }
 
+  /**
+   * Rescues from the client references and the references changed so far, then keeps rescuing the references changed
+   * in the meantime as long as there are many of them, leaving the paused rescue only the last few changes to follow.
+   */
+  private ObjectIDSet rescueConcurrently(ObjectIDSet gcResults) {
+    gcResults = rescue(gcResults, gcHook.drainRescueIDs(true));
+    for (int round = 0; round < MAX_PRECLEAN_ROUNDS && !gcResults.isEmpty() && !gcState.isStopRequested(); round++) {
+      ObjectIDSet changed = gcHook.drainRescueIDs(false);
+      int changes = changed.size();
+      gcResults = rescue(gcResults, changed);
+      if (changes <= precleanThreshold) {
+        break;
+      }
+    }
+    return gcResults;
+  }
+
   private void logstart_collect(Collection rootIds, Set managedObjectIds) {
     if (MarkAndSweepGarbageCollector.logger.isDebugEnabled()) MarkAndSweepGarbageCollector.logger
         .debug("collect(): rootIds=" + rootIds.size() + ", managedObjectIds=" + managedObjectIds.size());
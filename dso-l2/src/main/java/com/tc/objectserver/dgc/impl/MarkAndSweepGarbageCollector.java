@@ -27,6 +27,9 @@ import com.tc.objectserver.dgc.api.GarbageCollectionInfoPublisher;
 import com.tc.objectserver.dgc.api.GarbageCollectorEventListener;
 import com.tc.objectserver.impl.ObjectManagerConfig;
 import com.tc.objectserver.l1.api.ClientStateManager;
+import com.tc.properties.TCProperties;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.ObjectIDSet;
 import com.tc.util.concurrent.LifeCycleState;
 import com.tc.util.sequence.DGCSequenceProvider;
@@ -45,6 +48,8 @@ public class MarkAndSweepGarbageCollector extends AbstractGarbageCollector {
   private final ClientStateManager             stateManager;
   private final ObjectManager                  objectManager;
   private final DGCSequenceProvider            dgcSequenceProvider;
+  private final int                            concurrentMarkThreads;
+  private final int                            precleanThreshold;
 
   private volatile ChangeCollector             referenceCollector         = ChangeCollector.NULL_CHANGE_COLLECTOR;
   protected volatile boolean                   started                    = false;
@@ -58,6 +63,10 @@ public class MarkAndSweepGarbageCollector extends AbstractGarbageCollector {
     this.stateManager = stateManager;
     this.gcPublisher = gcPublisher;
     this.dgcSequenceProvider = dgcSequenceProvider;
+    TCProperties props = TCPropertiesImpl.getProperties();
+    this.concurrentMarkThreads = props.getBoolean(TCPropertiesConsts.L2_OBJECTMANAGER_DGC_CONCURRENT_MARK_ENABLED) ? Math
+        .max(1, props.getInt(TCPropertiesConsts.L2_OBJECTMANAGER_DGC_CONCURRENT_MARK_THREADS)) : 0;
+    this.precleanThreshold = props.getInt(TCPropertiesConsts.L2_OBJECTMANAGER_DGC_CONCURRENT_MARK_PRECLEAN_THRESHOLD);
     addListener(new GCLoggerEventPublisher(new GCLogger(logger, objectManagerConfig.verboseGC())));
   }
 
@@ -73,7 +82,9 @@ public class MarkAndSweepGarbageCollector extends AbstractGarbageCollector {
         break;
     }
     final MarkAndSweepGCAlgorithm gcAlgo = new MarkAndSweepGCAlgorithm(this, hook, this.gcPublisher, this.gcState,
-                                                                       this.dgcSequenceProvider.getNextId());
+                                                                       this.dgcSequenceProvider.getNextId(),
+                                                                       this.concurrentMarkThreads,
+                                                                       this.precleanThreshold);
     gcAlgo.doGC();
   }
 
@@ -107,6 +118,10 @@ public class MarkAndSweepGarbageCollector extends AbstractGarbageCollector {
     this.referenceCollector.addNewReferencesTo(rescueIds);
   }
 
+  public void drainNewReferencesTo(final Set rescueIds) {
+    this.referenceCollector.drainNewReferencesTo(rescueIds);
+  }
+
   /**
    * Used for Tests.
    */
@@ -30,4 +30,9 @@ public final class NullChangeCollector implements ChangeCollector {
   public Set addNewReferencesTo(Set set) {
     return set;
   }
+
+  @Override
+  public Set drainNewReferencesTo(Set set) {
+    return set;
+  }
 }
\ No newline at end of file
@@ -0,0 +1,197 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.dgc.impl;
+
+import com.tc.exception.TCRuntimeException;
+import com.tc.object.ObjectID;
+import com.tc.objectserver.core.api.Filter;
+import com.tc.util.BitSetObjectIDSet;
+import com.tc.util.ObjectIDSet;
+import com.tc.util.TCCollections;
+import com.tc.util.concurrent.LifeCycleState;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Marks the objects reachable from a set of roots with several threads. The candidate ObjectIDs are split into
+ * partitions of ObjectID ranges, each owned by one marker thread which alone reads and removes its candidates, so the
+ * candidate sets need no locking. A reference into another partition is handed to the thread owning it through a
+ * queue. The marking is over once no object is left to visit and no reference is left in any queue.
+ * <p>
+ * The filter is only asked about candidates and must not depend on the candidate set passed in, which is emptied into
+ * the partitions while marking and refilled with the unmarked candidates at the end.
+ */
+final class ParallelMarker {
+  private static final int    RANGE_SHIFT = 10;
+  private static final long   IDLE_NANOS  = TimeUnit.MICROSECONDS.toNanos(100);
+
+  private final GCHook        gcHook;
+  private final int           threads;
+
+  ParallelMarker(GCHook gcHook, int threads) {
+    if (threads <= 0) throw new IllegalArgumentException("threads must be positive: " + threads);
+    this.gcHook = gcHook;
+    this.threads = threads;
+  }
+
+  /**
+   * @return the candidates not reachable from the roots, the same set that was passed in
+   */
+  ObjectIDSet mark(Filter filter, Collection rootIds, ObjectIDSet candidateIDs, LifeCycleState lifeCycleState) {
+    final Partition[] partitions = new Partition[threads];
+    for (int i = 0; i < threads; i++) {
+      partitions[i] = new Partition(i, partitions, filter, lifeCycleState);
+    }
+    for (Iterator<ObjectID> i = candidateIDs.iterator(); i.hasNext();) {
+      ObjectID id = i.next();
+      i.remove();
+      partitions[ownerOf(id)].candidates.add(id);
+    }
+    for (Iterator i = rootIds.iterator(); i.hasNext();) {
+      ObjectID rootId = (ObjectID) i.next();
+      Partition owner = partitions[ownerOf(rootId)];
+      owner.candidates.remove(rootId);
+      owner.visitLater(rootId);
+    }
+
+    Thread[] markers = new Thread[threads];
+    for (int i = 0; i < threads; i++) {
+      markers[i] = new Thread(partitions[i], "DGC-Marker-" + i);
+      markers[i].setDaemon(true);
+      markers[i].start();
+    }
+    boolean interrupted = false;
+    for (Thread marker : markers) {
+      while (marker.isAlive()) {
+        try {
+          marker.join();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    Throwable failure = partitions[0].shared.failure.get();
+    if (failure != null) { throw new TCRuntimeException("DGC marking failed", failure); }
+    if (lifeCycleState.isStopRequested()) { return TCCollections.EMPTY_OBJECT_ID_SET; }
+
+    for (Partition partition : partitions) {
+      candidateIDs.addAll(partition.candidates);
+    }
+    return candidateIDs;
+  }
+
+  private int ownerOf(ObjectID id) {
+    return (int) ((id.toLong() >>> RANGE_SHIFT) % threads);
+  }
+
+  /**
+   * State shared by the marker threads of one marking
+   */
+  private static final class Shared {
+    /**
+     * Objects waiting to be visited plus references waiting in queues, counted before they are handed on and
+     * discounted once they are handled
+     */
+    private final AtomicLong                 outstanding = new AtomicLong();
+    private final AtomicReference<Throwable> failure     = new AtomicReference<Throwable>();
+  }
+
+  private final class Partition implements Runnable {
+    private final int                   index;
+    private final Partition[]           all;
+    private final Filter                filter;
+    private final LifeCycleState        lifeCycleState;
+    private final Shared                shared;
+    private final Set<ObjectID>         candidates = new BitSetObjectIDSet();
+    private final Queue<ObjectID>       toVisit    = new ArrayDeque<ObjectID>();
+    private final Queue<ObjectID>       inbox      = new ConcurrentLinkedQueue<ObjectID>();
+
+    Partition(int index, Partition[] all, Filter filter, LifeCycleState lifeCycleState) {
+      this.index = index;
+      this.all = all;
+      this.filter = filter;
+      this.lifeCycleState = lifeCycleState;
+      this.shared = index == 0 ? new Shared() : all[0].shared;
+    }
+
+    void visitLater(ObjectID id) {
+      shared.outstanding.incrementAndGet();
+      toVisit.add(id);
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (!lifeCycleState.isStopRequested() && shared.failure.get() == null) {
+          ObjectID ref;
+          while ((ref = inbox.poll()) != null) {
+            accept(ref);
+            shared.outstanding.decrementAndGet();
+          }
+          ObjectID id = toVisit.poll();
+          if (id != null) {
+            visit(id);
+            shared.outstanding.decrementAndGet();
+          } else if (shared.outstanding.get() == 0) {
+            return;
+          } else {
+            LockSupport.parkNanos(IDLE_NANOS);
+          }
+        }
+      } catch (Throwable t) {
+        shared.failure.compareAndSet(null, t);
+      }
+    }
+
+    private void visit(ObjectID id) {
+      for (final ObjectID mid : gcHook.getObjectReferencesFrom(id)) {
+        if (mid == null) {
+          // see CDV-765
+          MarkAndSweepGarbageCollector.logger.error("null value returned from getObjectReferences() on " + id);
+          continue;
+        }
+        if (mid.isNull()) continue;
+        int owner = ownerOf(mid);
+        if (owner == index) {
+          accept(mid);
+        } else {
+          shared.outstanding.incrementAndGet();
+          all[owner].inbox.add(mid);
+        }
+      }
+    }
+
+    private void accept(ObjectID ref) {
+      if (candidates.remove(ref) && filter.shouldVisit(ref)) {
+        visitLater(ref);
+      }
+    }
+  }
+}
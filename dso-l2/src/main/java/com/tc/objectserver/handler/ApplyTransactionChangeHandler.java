@@ -18,8 +18,10 @@ package com.tc.objectserver.handler;
 
 import com.tc.async.api.AbstractEventHandler;
 import com.tc.async.api.ConfigurationContext;
+import com.tc.async.api.DeferredFlushEventHandler;
 import com.tc.async.api.EventContext;
 import com.tc.async.api.Sink;
+import com.tc.async.api.ThreadAffinityEventHandler;
 import com.tc.net.ClientID;
 import com.tc.object.ObjectID;
 import com.tc.object.gtx.GlobalTransactionID;
@@ -28,6 +30,7 @@ import com.tc.object.locks.Notify;
 import com.tc.object.tx.ServerTransactionID;
 import com.tc.objectserver.api.GarbageCollectionManager;
 import com.tc.objectserver.api.ObjectInstanceMonitor;
+import com.tc.objectserver.api.ObjectManager;
 import com.tc.objectserver.api.ServerMapEvictionManager;
 import com.tc.objectserver.api.Transaction;
 import com.tc.objectserver.api.TransactionProvider;
@@ -45,6 +48,7 @@ import com.tc.objectserver.managedobject.ApplyTransactionInfo;
 import com.tc.objectserver.tx.ServerTransaction;
 import com.tc.objectserver.tx.ServerTransactionManager;
 import com.tc.objectserver.tx.TransactionalObjectManager;
+import com.tc.properties.TCPropertiesConsts;
 import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.concurrent.TaskRunner;
 import com.tc.util.concurrent.Timer;
@@ -59,11 +63,23 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * Applies all the changes in a transaction then releases the objects and passes the changes off to be broadcast to the
- * interested client sessions
+ * interested client sessions. When handed a batch of transactions all of them are applied under one persistence
+ * transaction which is committed once at the end of the batch.
+ * <p>
+ * With group commit enabled a commit that is due is held back for up to
+ * <code>l2.transactionmanager.groupCommit.maxLatencyMillis</code> so the transactions of the following batches share
+ * the same persistence transaction, until the group holds <code>maxTransactions</code> transactions or
+ * <code>maxChanges</code> changes. Objects are released and the transactions acknowledged only once the whole group
+ * is committed. A held back group is committed early when a lookup is waiting for one of its objects, so object
+ * requests never wait out the group commit latency.
+ * <p>
+ * The pending commit is kept per apply thread, and transaction groupings are placed on the apply lane of a thread, so
+ * this stage never uses work stealing.
  * 
  * @author steve
  */
-public class ApplyTransactionChangeHandler extends AbstractEventHandler {
+public class ApplyTransactionChangeHandler extends AbstractEventHandler implements DeferredFlushEventHandler,
+    ThreadAffinityEventHandler {
 
   private static final int                 LWM_UPDATE_INTERVAL = TCPropertiesImpl.getProperties()
                                                                    .getInt("lwm.update.intervalInMillis", 10000);
@@ -74,6 +90,7 @@ public class ApplyTransactionChangeHandler extends AbstractEventHandler {
   private final ServerMapEvictionManager   serverEvictions;
   private final ObjectInstanceMonitor      instanceMonitor;
   private TransactionalObjectManager       txnObjectMgr;
+  private ObjectManager                    objectManager;
 
   private volatile GlobalTransactionID     lowWaterMark        = GlobalTransactionID.NULL_ID;
   private final TransactionProvider        persistenceTransactionProvider;
@@ -83,11 +100,31 @@ public class ApplyTransactionChangeHandler extends AbstractEventHandler {
   private final ServerEventBuffer          eventBuffer;
   private final ClientChannelMonitor       clientChannelMonitor;
 
+  private final long                       groupCommitMaxLatencyNanos;
+  private final int                        groupCommitMaxTransactions;
+  private final int                        groupCommitMaxChanges;
+
   public ApplyTransactionChangeHandler(final ObjectInstanceMonitor instanceMonitor,
                                        final GlobalTransactionManager gtxm, final ServerMapEvictionManager evictions,
                                        final TransactionProvider persistenceTransactionProvider,
                                        final TaskRunner taskRunner, final ServerEventBuffer eventBuffer,
                                        final ClientChannelMonitor clientChannelMonitor) {
+    this(instanceMonitor, gtxm, evictions, persistenceTransactionProvider, taskRunner, eventBuffer,
+         clientChannelMonitor,
+         TCPropertiesImpl.getProperties().getLong(TCPropertiesConsts.L2_TRANSACTIONMANAGER_GROUP_COMMIT_MAX_LATENCY),
+         TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.L2_TRANSACTIONMANAGER_GROUP_COMMIT_MAX_TXNS),
+         TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.L2_TRANSACTIONMANAGER_GROUP_COMMIT_MAX_CHANGES));
+  }
+
+  ApplyTransactionChangeHandler(final ObjectInstanceMonitor instanceMonitor, final GlobalTransactionManager gtxm,
+                                final ServerMapEvictionManager evictions,
+                                final TransactionProvider persistenceTransactionProvider, final TaskRunner taskRunner,
+                                final ServerEventBuffer eventBuffer, final ClientChannelMonitor clientChannelMonitor,
+                                final long groupCommitMaxLatencyMillis, final int groupCommitMaxTransactions,
+                                final int groupCommitMaxChanges) {
+    this.groupCommitMaxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, groupCommitMaxLatencyMillis));
+    this.groupCommitMaxTransactions = groupCommitMaxTransactions;
+    this.groupCommitMaxChanges = groupCommitMaxChanges;
     this.instanceMonitor = instanceMonitor;
     this.serverEvictions = evictions;
     this.persistenceTransactionProvider = persistenceTransactionProvider;
@@ -104,12 +141,50 @@ public class ApplyTransactionChangeHandler extends AbstractEventHandler {
 
   @Override
   public void handleEvent(final EventContext context) {
+    if (apply(context)) {
+      commitOrDefer();
+    }
+  }
+
+  @Override
+  public void handleEvents(final Collection contexts) {
+    boolean commitNeeded = false;
+    for (final Object context : contexts) {
+      commitNeeded |= apply((EventContext) context);
+    }
+    if (commitNeeded) {
+      commitOrDefer();
+    }
+  }
+
+  @Override
+  public long getFlushDelay() {
+    final CommitContext cc = localCommitContext.get();
+    if (cc == null || !cc.isCommitRequested()) { return -1; }
+    if (cc.holdsBlockedObjects()) { return 0; }
+    return Math.max(0, TimeUnit.NANOSECONDS.toMillis(groupCommitMaxLatencyNanos - cc.getAge()));
+  }
+
+  @Override
+  public void flush() {
+    final CommitContext cc = localCommitContext.get();
+    if (cc != null && cc.isCommitRequested()) {
+      commit();
+    }
+  }
+
+  /**
+   * @return true if the current persistence transaction should be committed
+   */
+  private boolean apply(final EventContext context) {
 
     begin();
 
     if (context instanceof FlushApplyCommitContext) {
-      commit(((FlushApplyCommitContext) context).getObjectsToRelease(), true);
-      return;
+      // whoever flushes waits for the objects to be released, so this never waits for the group to fill up
+      localCommitContext.get().addObjectsToRelease(((FlushApplyCommitContext) context).getObjectsToRelease());
+      commit();
+      return false;
     }
 
     ApplyTransactionContext atc = (ApplyTransactionContext) context;
@@ -156,7 +231,13 @@ public class ApplyTransactionChangeHandler extends AbstractEventHandler {
       broadcastChangesSink.add(new BroadcastChangeContext(txn, lowWaterMark, notifiedWaiters, applyInfo));
     }
 
-    commit(atc, applyInfo);
+    if (atc.needsApply()) {
+      localCommitContext.get().addApplied(applyInfo.getObjectsToRelease(), txn.getNewRoots(), stxnID,
+                                          txn.getChanges().size());
+    } else {
+      localCommitContext.get().addObjectsToRelease(applyInfo.getObjectsToRelease());
+    }
+    return applyInfo.isCommitNow();
   }
 
   private void begin() {
@@ -165,26 +246,22 @@ public class ApplyTransactionChangeHandler extends AbstractEventHandler {
     }
   }
 
-  private void commit(ApplyTransactionContext atc, ApplyTransactionInfo applyInfo) {
-    if (atc.needsApply()) {
-      commit(applyInfo.getObjectsToRelease(), atc.getTxn().getNewRoots(), atc.getTxn().getServerTransactionID(),
-             applyInfo.isCommitNow());
+  /**
+   * Commits now unless group commit is enabled and the group can still take more transactions, in which case the commit
+   * is left to a later batch or to {@link #flush()}.
+   */
+  private void commitOrDefer() {
+    final CommitContext cc = localCommitContext.get();
+    if (groupCommitMaxLatencyNanos == 0 || cc.isFull()) {
+      commit();
     } else {
-      commit(applyInfo.getObjectsToRelease(), applyInfo.isCommitNow());
+      cc.requestCommit();
     }
   }
 
-  private void commit(Collection<ManagedObject> objectsToRelease, Map<String, ObjectID> moreRoots,
-                      ServerTransactionID stxID, boolean done) {
-    if (localCommitContext.get().commit(objectsToRelease, moreRoots, stxID, done)) {
-      localCommitContext.set(null);
-    }
-  }
-
-  private void commit(Collection<ManagedObject> objectsToRelease, boolean done) {
-    if (localCommitContext.get().commit(objectsToRelease, done)) {
-      localCommitContext.set(null);
-    }
+  private void commit() {
+    localCommitContext.get().commit();
+    localCommitContext.set(null);
   }
 
   @Override
@@ -194,6 +271,7 @@ public class ApplyTransactionChangeHandler extends AbstractEventHandler {
     this.transactionManager = scc.getTransactionManager();
     this.broadcastChangesSink = scc.getStage(ServerConfigurationContext.BROADCAST_CHANGES_STAGE).getSink();
     this.txnObjectMgr = scc.getTransactionalObjectManager();
+    this.objectManager = scc.getObjectManager();
     this.lockManager = scc.getLockManager();
     this.garbageCollectionManager = scc.getGarbageCollectionManager();
   }
@@ -203,23 +281,60 @@ public class ApplyTransactionChangeHandler extends AbstractEventHandler {
     private final Map<String, ObjectID>           newRoots         = new HashMap<String, ObjectID>();
     private final Collection<ServerTransactionID> stxIDs           = new HashSet<ServerTransactionID>();
     private final Collection<ManagedObject>       objectsToRelease = new ArrayList<ManagedObject>();
+    private int                                   changes;
+    private boolean                               commitRequested;
+    private long                                  commitRequestedNanos;
 
-    boolean commit(Collection<ManagedObject> moreObjectsToRelease, boolean done) {
+    void addObjectsToRelease(Collection<ManagedObject> moreObjectsToRelease) {
       objectsToRelease.addAll(moreObjectsToRelease);
-      if (done) {
-        transaction.commit();
-        transactionManager.commit(objectsToRelease, newRoots, stxIDs);
-        return true;
-      } else {
-        return false;
-      }
     }
 
-    boolean commit(Collection<ManagedObject> objectsToReleaseParam, Map<String, ObjectID> moreRoots,
-                   ServerTransactionID stxID, boolean done) {
+    void addApplied(Collection<ManagedObject> objectsToReleaseParam, Map<String, ObjectID> moreRoots,
+                    ServerTransactionID stxID, int changeCount) {
       stxIDs.add(stxID);
+      changes += changeCount;
       newRoots.putAll(moreRoots);
-      return commit(objectsToReleaseParam, done);
+      addObjectsToRelease(objectsToReleaseParam);
+    }
+
+    void requestCommit() {
+      if (!commitRequested) {
+        commitRequested = true;
+        commitRequestedNanos = System.nanoTime();
+      }
+    }
+
+    boolean isCommitRequested() {
+      return commitRequested;
+    }
+
+    /**
+     * @return how long the first commit request of this group has been held back, 0 if none was made yet
+     */
+    long getAge() {
+      return commitRequested ? System.nanoTime() - commitRequestedNanos : 0;
+    }
+
+    /**
+     * @return true if a lookup is waiting for one of the objects this group still has to release
+     */
+    boolean holdsBlockedObjects() {
+      for (final ManagedObject mo : objectsToRelease) {
+        if (objectManager.isLookupBlockedOn(mo.getID())) { return true; }
+      }
+      return false;
+    }
+
+    boolean isFull() {
+      return stxIDs.size() >= groupCommitMaxTransactions || changes >= groupCommitMaxChanges
+             || getAge() >= groupCommitMaxLatencyNanos;
+    }
+
+    void commit() {
+      commitRequested = false;
+      commitRequestedNanos = 0;
+      transaction.commit();
+      transactionManager.commit(objectsToRelease, newRoots, stxIDs);
     }
   }
 }
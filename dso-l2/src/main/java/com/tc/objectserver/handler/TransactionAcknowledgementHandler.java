@@ -17,13 +17,20 @@
 package com.tc.objectserver.handler;
 
 import com.tc.async.api.AbstractEventHandler;
+import com.tc.async.api.BatchEventHandler;
 import com.tc.async.api.ConfigurationContext;
 import com.tc.async.api.EventContext;
+import com.tc.net.NodeID;
 import com.tc.object.msg.AcknowledgeTransactionMessage;
+import com.tc.object.tx.TransactionID;
 import com.tc.objectserver.core.api.ServerConfigurationContext;
 import com.tc.objectserver.tx.ServerTransactionManager;
 
-public class TransactionAcknowledgementHandler extends AbstractEventHandler {
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class TransactionAcknowledgementHandler extends AbstractEventHandler implements BatchEventHandler {
   private ServerTransactionManager transactionManager;
 
   @Override
@@ -32,6 +39,32 @@ public class TransactionAcknowledgementHandler extends AbstractEventHandler {
     transactionManager.acknowledgement(atm.getRequesterID(), atm.getRequestID(), atm.getSourceNodeID());
   }
 
+  /**
+   * Consecutive acks for the same waiter from the same waitee are handed to the transaction manager together. Acks are
+   * still processed in the order they arrived.
+   */
+  @Override
+  public void handleEvents(Collection contexts) {
+    NodeID waiter = null;
+    NodeID waitee = null;
+    List<TransactionID> txnIDs = new ArrayList<TransactionID>();
+    for (Object context : contexts) {
+      AcknowledgeTransactionMessage atm = (AcknowledgeTransactionMessage) context;
+      if (!atm.getRequesterID().equals(waiter) || !atm.getSourceNodeID().equals(waitee)) {
+        if (!txnIDs.isEmpty()) {
+          transactionManager.acknowledgements(waiter, txnIDs, waitee);
+          txnIDs = new ArrayList<TransactionID>();
+        }
+        waiter = atm.getRequesterID();
+        waitee = atm.getSourceNodeID();
+      }
+      txnIDs.add(atm.getRequestID());
+    }
+    if (!txnIDs.isEmpty()) {
+      transactionManager.acknowledgements(waiter, txnIDs, waitee);
+    }
+  }
+
   @Override
   public void initialize(ConfigurationContext context) {
     super.initialize(context);
@@ -39,4 +72,4 @@ public class TransactionAcknowledgementHandler extends AbstractEventHandler {
     this.transactionManager = scc.getTransactionManager();
   }
 
-}
\ No newline at end of file
+}
@@ -137,6 +137,16 @@ public class ChannelStatsImpl implements ChannelStats, DSOChannelManagerEventLis
     }
   }
 
+  @Override
+  public void notifyTransactionsAckedFrom(NodeID nodeID, int numTxns) {
+    try {
+      MessageChannel channel = channelManager.getActiveChannel(nodeID);
+      getCounter(channel, PENDING_TRANSACTIONS).decrement(numTxns);
+    } catch (NoSuchChannelException e) {
+      //
+    }
+  }
+
   @Override
   public void notifyServerMapRequest(final ServerMapRequestType type, final MessageChannel channel,
                                      final int numRequests) {
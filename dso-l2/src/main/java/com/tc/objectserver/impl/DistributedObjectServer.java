@@ -776,7 +776,9 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
     registerForDump(new CallbackDumpAdapter(gtxm));
 
     final TransactionalStagesCoordinatorImpl txnStageCoordinator = new TransactionalStagesCoordinatorImpl(stageManager);
-    this.txnObjectManager = new TransactionalObjectManagerImpl(this.objectManager, gtxm, txnStageCoordinator);
+    final int applyStageThreads = L2Utils.getOptimalApplyStageWorkerThreads(restartable || hybrid);
+    this.txnObjectManager = new TransactionalObjectManagerImpl(this.objectManager, gtxm, txnStageCoordinator,
+                                                               applyStageThreads);
 
     final CallbackDumpAdapter txnObjMgrDumpAdapter = new CallbackDumpAdapter(this.txnObjectManager);
     this.dumpHandler.registerForDump(txnObjMgrDumpAdapter);
@@ -884,7 +886,6 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
                                  .getInt(TCPropertiesConsts.L2_SEDA_EVICTION_PROCESSORSTAGE_SINK_SIZE));
     
     // Lookup stage should never be blocked trying to add to apply stage
-    int applyStageThreads = L2Utils.getOptimalApplyStageWorkerThreads(restartable || hybrid);
     stageManager.createStage(ServerConfigurationContext.APPLY_CHANGES_STAGE,
                              new ApplyTransactionChangeHandler(instanceMonitor, this.transactionManager, this.serverMapEvictor,
                              persistor.getPersistenceTransactionProvider(), taskRunner, serverEventbuffer, clientChannelMonitorImpl),
@@ -1537,6 +1538,10 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
     return new StorageDataStatsImpl(persistor.getMonitoredResources());
   }
 
+  public StageManager getStageManager() {
+    return this.seda.getStageManager();
+  }
+
   public ReconnectConfig getL1ReconnectProperties() {
     return this.l1ReconnectConfig;
   }
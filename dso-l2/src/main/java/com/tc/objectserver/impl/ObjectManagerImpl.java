@@ -25,6 +25,7 @@ import com.tc.objectserver.api.Destroyable;
 import com.tc.objectserver.api.ObjectManager;
 import com.tc.objectserver.api.ObjectManagerLookupResults;
 import com.tc.objectserver.api.ObjectManagerStatsListener;
+import com.tc.objectserver.api.OptimisticallyReadable;
 import com.tc.objectserver.api.ShutdownError;
 import com.tc.objectserver.api.Transaction;
 import com.tc.objectserver.api.TransactionProvider;
@@ -235,6 +236,13 @@ public class ObjectManagerImpl implements ObjectManager, ManagedObjectChangeList
     return lookup(id, MissingObjects.OK, NewObjects.DONT_LOOKUP, AccessLevel.READ);
   }
 
+  @Override
+  public ManagedObject getObjectByIDIfCached(final ObjectID id) {
+    final ManagedObjectReference reference = getReference(id);
+    if (reference == null || reference.isNew() || reference.isRemoveOnRelease()) { return null; }
+    return reference.getObject();
+  }
+
   private boolean markReferenced(final ManagedObjectReference reference) {
     final boolean marked = reference.markReference();
     if (marked) {
@@ -552,6 +560,11 @@ public class ObjectManagerImpl implements ObjectManager, ManagedObjectChangeList
     return this.checkedOutCount.get();
   }
 
+  @Override
+  public boolean isLookupBlockedOn(final ObjectID id) {
+    return this.pending.isBlocked(id);
+  }
+
   @Override
   public Set getRootIDs() {
     return this.objectStore.getRoots();
@@ -609,6 +622,10 @@ public class ObjectManagerImpl implements ObjectManager, ManagedObjectChangeList
   private void basicRelease(final ManagedObject object) {
     final ManagedObjectReference mor = object.getReference();
     updateNewFlag(object);
+    final ManagedObjectState state = object.getManagedObjectState();
+    if (state instanceof OptimisticallyReadable) {
+      ((OptimisticallyReadable) state).writeReleased();
+    }
     removeReferenceIfNecessary(mor);
     unmarkReferenced(mor);
     makeUnBlocked(object.getID());
@@ -993,6 +1010,10 @@ public class ObjectManagerImpl implements ObjectManager, ManagedObjectChangeList
       this.blockedCount.addAndGet(-blockedRequests.size());
     }
 
+    public boolean isBlocked(final ObjectID id) {
+      return this.blockedCount.get() > 0 && this.blocked.containsKey(id);
+    }
+
     public void addPending(final Pending pd) {
       this.pending.add(pd);
     }
@@ -53,6 +53,7 @@ import com.tc.text.PrettyPrinter;
 import com.tc.util.concurrent.TCConcurrentMultiMap;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -68,6 +69,7 @@ public class ServerMapRequestManagerImpl implements ServerMapRequestManager {
   private final ClientStateManager    clientStateManager;
   // private final ChannelStats channelStats;
   private final boolean               enablePrefetch = TCPropertiesImpl.getProperties().getBoolean(TCPropertiesConsts.L2_OBJECTMANAGER_REQUEST_PREFETCH_ENABLED, true);
+  private final boolean               concurrentReads = TCPropertiesImpl.getProperties().getBoolean(TCPropertiesConsts.L2_OBJECTMANAGER_SERVERMAP_CONCURRENT_READS_ENABLED, true);
 
   public ServerMapRequestManagerImpl(final ObjectManager objectManager, final DSOChannelManager channelManager,
                                      final Sink respondToServerTCMapSink,
@@ -111,11 +113,69 @@ public class ServerMapRequestManagerImpl implements ServerMapRequestManager {
   }
 
   private void processRequest(final ClientID clientID, final ServerMapRequestContext requestContext) {
+    if (this.concurrentReads && processWithoutCheckout(clientID, requestContext)) { return; }
     if (this.requestQueue.add(requestContext)) {
       this.objectManager.lookupObjectsFor(clientID, requestContext);
     }
   }
 
+  /**
+   * Answers the request from the cached map without checking it out, so that reads neither queue behind each other nor
+   * behind applies to the same map. Gives up if a write to the map is pending or starts while reading, and the request
+   * then goes through the checkout as before.
+   * 
+   * @return true if the response was sent
+   */
+  private boolean processWithoutCheckout(final ClientID clientID, final ServerMapRequestContext request) {
+    final ObjectID mapID = request.getServerTCMapID();
+    final ManagedObject managedObject = this.objectManager.getObjectByIDIfCached(mapID);
+    if (managedObject == null) { return false; }
+    final ManagedObjectState state = managedObject.getManagedObjectState();
+    if (!(state instanceof ConcurrentDistributedServerMapManagedObjectState)) { return false; }
+    final ConcurrentDistributedServerMapManagedObjectState cdsmState = (ConcurrentDistributedServerMapManagedObjectState) state;
+
+    final long stamp = cdsmState.readStamp();
+    if (!cdsmState.validate(stamp)) { return false; }
+
+    // A read racing with a delete of the map can fail outright, the checkout path then reports the map as missing
+    switch (request.getRequestType()) {
+      case GET_SIZE:
+        final int size;
+        try {
+          size = cdsmState.getSize();
+        } catch (RuntimeException e) {
+          return false;
+        }
+        if (!cdsmState.validate(stamp)) { return false; }
+        sendResponseForGetAllSize(mapID, (ServerMapRequestSizeContext) request, size);
+        return true;
+      case GET_ALL_KEYS:
+        final Set keys;
+        try {
+          keys = cdsmState.getAllKeys();
+        } catch (RuntimeException e) {
+          return false;
+        }
+        if (!cdsmState.validate(stamp)) { return false; }
+        sendResponseForGetAllKeys(mapID, (ServerMapRequestAllKeysContext) request, keys);
+        return true;
+      case GET_VALUE_FOR_KEY:
+        final ServerMapRequestValueContext valueRequest = (ServerMapRequestValueContext) request;
+        final Map<Object, CDSMValue> values;
+        try {
+          values = readValues(valueRequest, cdsmState);
+        } catch (RuntimeException e) {
+          return false;
+        }
+        if (!cdsmState.validate(stamp)) { return false; }
+        stagePrefetch(Collections.singletonMap(clientID,
+                                               gatherResponseForGetValue(clientID, mapID, valueRequest, null, values)));
+        return true;
+      default:
+        return false;
+    }
+  }
+
   @Override
   public void sendResponseFor(final ObjectID mapID, final ManagedObject managedObject) {
     final ManagedObjectState state = managedObject.getManagedObjectState();
@@ -140,14 +200,15 @@ public class ServerMapRequestManagerImpl implements ServerMapRequestManager {
         final ServerMapRequestType requestType = request.getRequestType();
         switch (requestType) {
           case GET_SIZE:
-            sendResponseForGetAllSize(mapID, (ServerMapRequestSizeContext) request, cdsmState);
+            sendResponseForGetAllSize(mapID, (ServerMapRequestSizeContext) request, cdsmState.getSize());
             break;
           case GET_ALL_KEYS:
-            sendResponseForGetAllKeys(mapID, (ServerMapRequestAllKeysContext) request, cdsmState);
+            sendResponseForGetAllKeys(mapID, (ServerMapRequestAllKeysContext) request, cdsmState.getAllKeys());
             break;
           case GET_VALUE_FOR_KEY:
-            ServerMapRequestPrefetchObjectsContext responses = gatherResponseForGetValue(request.getClientID(), mapID, (ServerMapRequestValueContext)request, results.get(request.getClientID()),
-                                                                     cdsmState);
+            final ServerMapRequestValueContext valueRequest = (ServerMapRequestValueContext) request;
+            ServerMapRequestPrefetchObjectsContext responses = gatherResponseForGetValue(request.getClientID(), mapID, valueRequest, results.get(request.getClientID()),
+                                                                     readValues(valueRequest, cdsmState));
             results.put(request.getClientID(), responses);
             break;
           default:
@@ -217,9 +278,20 @@ public class ServerMapRequestManagerImpl implements ServerMapRequestManager {
     }
   }
 
+  private static Map<Object, CDSMValue> readValues(final ServerMapRequestValueContext request,
+                                                   final ConcurrentDistributedServerMapManagedObjectState cdsmState) {
+    final Map<Object, CDSMValue> values = new HashMap<Object, CDSMValue>();
+    for (final ServerMapGetValueRequest r : request.getValueRequests()) {
+      for (Object portableKey : r.getKeys()) {
+        values.put(portableKey, cdsmState.getValueForKey(portableKey));
+      }
+    }
+    return values;
+  }
+
   private ServerMapRequestPrefetchObjectsContext gatherResponseForGetValue(final ClientID clientID, final ObjectID mapID, final ServerMapRequestValueContext request,
                                                 ServerMapRequestPrefetchObjectsContext responses,
-                                                final ConcurrentDistributedServerMapManagedObjectState cdsmState) {
+                                                final Map<Object, CDSMValue> values) {
     if (responses == null ) {
         responses = new ServerMapRequestPrefetchObjectsContext(clientID, mapID, prefetchObjectsSink);
     }
@@ -228,7 +300,7 @@ public class ServerMapRequestManagerImpl implements ServerMapRequestManager {
       ServerMapGetValueResponse response = new ServerMapGetValueResponse(r.getRequestID());
       Set<Object> portableKeys = r.getKeys();
       for (Object portableKey : portableKeys) {
-        CDSMValue wrappedValue = cdsmState.getValueForKey(portableKey);
+        CDSMValue wrappedValue = values.get(portableKey);
         
         if (wrappedValue == null) {
           response.put(portableKey, ObjectID.NULL_ID);
@@ -252,10 +324,9 @@ public class ServerMapRequestManagerImpl implements ServerMapRequestManager {
   }
 
   private void sendResponseForGetAllSize(final ObjectID mapID, final ServerMapRequestSizeContext request,
-                                         final ConcurrentDistributedServerMapManagedObjectState cdsmState) {
+                                         final int size) {
     final ServerMapRequestID requestID = request.getRequestID();
     final ClientID clientID = request.getClientID();
-    final Integer size = cdsmState.getSize();
 
     ServerMapGetAllSizeHelper helper = request.getServerMapGetAllSizeHelper();
     synchronized (helper) {
@@ -274,7 +345,7 @@ public class ServerMapRequestManagerImpl implements ServerMapRequestManager {
   }
 
   private void sendResponseForGetAllKeys(final ObjectID mapID, final ServerMapRequestAllKeysContext request,
-                                         final ConcurrentDistributedServerMapManagedObjectState cdsmState) {
+                                         final Set keys) {
     final ServerMapRequestID requestID = request.getRequestID();
     final ClientID clientID = request.getClientID();
 
@@ -284,7 +355,7 @@ public class ServerMapRequestManagerImpl implements ServerMapRequestManager {
     final GetAllKeysServerMapResponseMessage responseMessage = (GetAllKeysServerMapResponseMessage) channel
         .createMessage(TCMessageType.GET_ALL_KEYS_SERVER_MAP_RESPONSE_MESSAGE);
 
-    responseMessage.initializeGetAllKeysResponse(mapID, requestID, cdsmState.getAllKeys());
+    responseMessage.initializeGetAllKeysResponse(mapID, requestID, keys);
     responseMessage.send();
   }
 
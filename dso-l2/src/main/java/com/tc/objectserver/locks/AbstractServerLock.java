@@ -41,7 +41,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
 
 /**
  * This class extends SinglyLinkedList which stores ServerLockContext. The ServerLockContexts are placed in the order of
@@ -285,7 +285,7 @@ public abstract class AbstractServerLock extends SinglyLinkedList<ServerLockCont
         .getThreadID(), cselc.getState(), cselc.timeout(), helper);
     if (cselc.timeout() > 0) {
       LockTimerContext ltc = new LockTimerContext(lockID, cselc.getThreadID(), (ClientID) cselc.getNodeID(), helper);
-      TimerTask task = helper.getLockTimer().scheduleTimer(helper.getTimerCallback(), cselc.timeout(), ltc);
+      ScheduledFuture<?> task = helper.getLockTimer().scheduleTimer(helper.getTimerCallback(), cselc.timeout(), ltc);
       context.setTimerTask(task);
     }
     return context;
@@ -312,7 +312,7 @@ public abstract class AbstractServerLock extends SinglyLinkedList<ServerLockCont
     WaitServerLockContext waiter = createWaitOrTryPendingServerLockContext(cid, tid, State.WAITER, timeout, helper);
     if (timeout > 0) {
       LockTimerContext ltc = new LockTimerContext(lockID, tid, cid, helper);
-      TimerTask task = helper.getLockTimer().scheduleTimer(helper.getTimerCallback(), timeout, ltc);
+      ScheduledFuture<?> task = helper.getLockTimer().scheduleTimer(helper.getTimerCallback(), timeout, ltc);
       waiter.setTimerTask(task);
     }
     addWaiter(waiter, helper);
@@ -334,7 +334,7 @@ public abstract class AbstractServerLock extends SinglyLinkedList<ServerLockCont
         WaitServerLockContext waitContext = createTryPendingServerLockContext(cid, tid, level, timeout, helper);
         if (timeout > 0) {
           LockTimerContext ltc = new LockTimerContext(lockID, tid, cid, helper);
-          TimerTask task;
+          ScheduledFuture<?> task;
           try {
             task = helper.getLockTimer().scheduleTimer(helper.getTimerCallback(), timeout, ltc);
           } catch (IllegalArgumentException e) {
@@ -410,7 +410,7 @@ public abstract class AbstractServerLock extends SinglyLinkedList<ServerLockCont
           case TRY_PENDING:
             WaitServerLockContext waitContext = (WaitServerLockContext) context;
             if (waitContext.getTimerTask() != null) {
-              waitContext.getTimerTask().cancel();
+              waitContext.getTimerTask().cancel(false);
             }
             break;
           default:
@@ -658,7 +658,7 @@ public abstract class AbstractServerLock extends SinglyLinkedList<ServerLockCont
     if (request.isTryPending() || request.isWaiter()) {
       WaitServerLockContext waitRequest = (WaitServerLockContext) request;
       if (waitRequest.getTimerTask() != null) {
-        waitRequest.getTimerTask().cancel();
+        waitRequest.getTimerTask().cancel(false);
       }
     }
   }
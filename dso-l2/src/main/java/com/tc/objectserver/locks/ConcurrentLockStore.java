@@ -0,0 +1,170 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.locks;
+
+import com.tc.object.locks.LockID;
+import com.tc.util.Assert;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link LockStore} that keeps the locks in a concurrent map and guards every lock on its own, so checking out a lock
+ * never waits for a thread working on an unrelated lock.
+ * <p>
+ * A lock removed while checked out stays mapped, flagged as removed, until it is checked in for the last time. Threads
+ * waiting to check out a removed lock retry once it is gone and get a new lock, the thread that removed it gets a new
+ * lock straight away if it checks the same id out again before checking the old one in.
+ */
+public class ConcurrentLockStore implements LockStore {
+  private final ConcurrentMap<LockID, Entry> locks;
+  private final LockFactory                  lockFactory;
+
+  public ConcurrentLockStore(int concurrencyLevel, LockFactory factory) {
+    if (concurrencyLevel <= 0) throw new IllegalArgumentException();
+    this.locks = new ConcurrentHashMap<LockID, Entry>(16, 0.75f, concurrencyLevel);
+    this.lockFactory = factory;
+  }
+
+  @Override
+  public ServerLock checkOut(LockID lockID) {
+    while (true) {
+      Entry entry = locks.get(lockID);
+      if (entry == null) {
+        Entry created = new Entry(lockID, lockFactory.createLock(lockID));
+        entry = locks.putIfAbsent(lockID, created);
+        if (entry == null) {
+          entry = created;
+        }
+      }
+      entry.lock();
+      if (!entry.removed) { return entry.serverLock; }
+      if (entry.getHoldCount() > 1) {
+        // removed by this thread which still has it checked out, hand out a new lock in its place
+        entry.serverLock = lockFactory.createLock(lockID);
+        entry.removed = false;
+        return entry.serverLock;
+      }
+      // removed by the thread that had it checked out, which also unmapped it when checking it in
+      entry.unlock();
+    }
+  }
+
+  @Override
+  public ServerLock remove(LockID lockID) {
+    Entry entry = locks.get(lockID);
+    Assert.assertTrue(entry != null && entry.isHeldByCurrentThread());
+    entry.removed = true;
+    return entry.serverLock;
+  }
+
+  @Override
+  public void checkIn(ServerLock lock) {
+    Entry entry = locks.get(lock.getLockID());
+    if (entry == null || !entry.isHeldByCurrentThread()) {
+      throw new AssertionError("Server Lock " + lock + " was not checked out by the same thread");
+    }
+    release(entry);
+  }
+
+  private void release(Entry entry) {
+    if (entry.removed && entry.getHoldCount() == 1) {
+      locks.remove(entry.lockID, entry);
+    }
+    entry.unlock();
+  }
+
+  @Override
+  public void clear() {
+    for (Entry entry : locks.values()) {
+      entry.lock();
+      entry.removed = true;
+      release(entry);
+    }
+  }
+
+  @Override
+  public LockIterator iterator() {
+    return new ConcurrentLockIterator();
+  }
+
+  /**
+   * The guard of a single lock. The lock and its removed flag are only read or changed while holding the guard.
+   */
+  private static final class Entry extends ReentrantLock {
+    private final LockID lockID;
+    private ServerLock   serverLock;
+    private boolean      removed;
+
+    Entry(LockID lockID, ServerLock serverLock) {
+      this.lockID = lockID;
+      this.serverLock = serverLock;
+    }
+  }
+
+  private class ConcurrentLockIterator implements LockIterator {
+    private final Iterator<Entry> entries = locks.values().iterator();
+    private Entry                 current;
+    private ServerLock            oldLock;
+
+    @Override
+    public ServerLock getNextLock(ServerLock lock) {
+      validateOldLock(lock);
+      releaseCurrent();
+      while (entries.hasNext()) {
+        Entry entry = entries.next();
+        entry.lock();
+        if (!entry.removed) {
+          current = entry;
+          oldLock = entry.serverLock;
+          return oldLock;
+        }
+        entry.unlock();
+      }
+      return null;
+    }
+
+    @Override
+    public void remove() {
+      Assert.assertNotNull(current);
+      current.removed = true;
+    }
+
+    @Override
+    public void checkIn(ServerLock lock) {
+      Assert.assertEquals(oldLock, lock);
+      releaseCurrent();
+    }
+
+    private void validateOldLock(ServerLock lock) {
+      if (oldLock != null) {
+        Assert.assertSame(oldLock, lock);
+      } else {
+        Assert.assertNull(lock);
+      }
+    }
+
+    private void releaseCurrent() {
+      if (current != null) {
+        release(current);
+        current = null;
+      }
+    }
+  }
+}
@@ -30,6 +30,9 @@ import com.tc.objectserver.locks.ServerLock.NotifyAction;
 import com.tc.objectserver.locks.factory.ServerLockFactoryImpl;
 import com.tc.objectserver.locks.timer.LockTimer.LockTimerContext;
 import com.tc.objectserver.locks.timer.TimerCallback;
+import com.tc.properties.TCProperties;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.text.PrettyPrintable;
 import com.tc.text.PrettyPrinter;
 import com.tc.util.Assert;
@@ -63,11 +66,29 @@ public class LockManagerImpl implements LockManager, PrettyPrintable, LockManage
   }
 
   public LockManagerImpl(Sink lockSink, DSOChannelManager channelManager, LockFactory factory) {
-    this.lockStore = new LockStore(factory);
+    this(lockSink, channelManager, createLockStore(factory));
+  }
+
+  public LockManagerImpl(Sink lockSink, DSOChannelManager channelManager, LockStore lockStore) {
+    this.lockStore = lockStore;
     this.channelManager = channelManager;
     this.lockHelper = new LockHelper(lockSink, lockStore, this);
   }
 
+  private static LockStore createLockStore(LockFactory factory) {
+    TCProperties props = TCPropertiesImpl.getProperties();
+    String type = props.getProperty(TCPropertiesConsts.L2_LOCKMANAGER_LOCKSTORE_TYPE, true);
+    int segments = props.getInt(TCPropertiesConsts.L2_LOCKMANAGER_LOCKSTORE_SEGMENTS, 32);
+    if ("segmented".equalsIgnoreCase(type)) {
+      return new SegmentedLockStore(segments, factory);
+    } else if (type == null || "concurrent".equalsIgnoreCase(type)) {
+      return new ConcurrentLockStore(segments, factory);
+    } else {
+      throw new IllegalArgumentException("Unknown lock store type " + type + " for "
+                                         + TCPropertiesConsts.L2_LOCKMANAGER_LOCKSTORE_TYPE);
+    }
+  }
+
   @Override
   public void lock(LockID lid, ClientID cid, ThreadID tid, ServerLockLevel level) {
     if (!queueIfNecessary(lid, cid, tid, level, RequestType.LOCK)) { return; }
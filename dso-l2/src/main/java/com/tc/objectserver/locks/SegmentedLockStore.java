@@ -0,0 +1,181 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.locks;
+
+import com.tc.object.locks.LockID;
+import com.tc.util.Assert;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link LockStore} that distributes the locks into segments, the location of the lock being decided on the basis of
+ * a hash function. Checking out a lock holds the guard of its whole segment until the lock is checked in, so locks
+ * that hash to the same segment are only ever worked upon one at a time.
+ */
+public class SegmentedLockStore implements LockStore {
+  private static final int                  DEFAULT_SEGMENTS = 32;
+  private final HashMap<LockID, ServerLock> segments[];
+  private final ReentrantLock[]             guards;
+  private final int                         segmentShift;
+  private final int                         segmentMask;
+  private final LockFactory                 lockFactory;
+
+  public SegmentedLockStore(LockFactory factory) {
+    this(DEFAULT_SEGMENTS, factory);
+  }
+
+  public SegmentedLockStore(int numberOfSegments, LockFactory factory) {
+    if (numberOfSegments <= 0) throw new IllegalArgumentException();
+
+    this.lockFactory = factory;
+    // Find power-of-two sizes best matching arguments
+    int sshift = 0;
+    int ssize = 1;
+    while (ssize < numberOfSegments) {
+      ++sshift;
+      ssize <<= 1;
+    }
+    segmentShift = 32 - sshift;
+    segmentMask = ssize - 1;
+    numberOfSegments = ssize;
+
+    segments = new HashMap[numberOfSegments];
+    guards = new ReentrantLock[numberOfSegments];
+
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = new HashMap();
+      guards[i] = new ReentrantLock();
+    }
+  }
+
+  @Override
+  public ServerLock checkOut(LockID lockID) {
+    int index = indexFor(lockID);
+    guards[index].lock();
+    ServerLock lock = segments[index].get(lockID);
+    if (lock == null) {
+      lock = lockFactory.createLock(lockID);
+      segments[index].put(lockID, lock);
+    }
+    return lock;
+  }
+
+  @Override
+  public ServerLock remove(LockID lockID) {
+    int index = indexFor(lockID);
+    Assert.assertTrue(guards[index].isHeldByCurrentThread());
+    ServerLock lock = segments[index].remove(lockID);
+    return lock;
+  }
+
+  @Override
+  public void checkIn(ServerLock lock) {
+    LockID lockID = lock.getLockID();
+    int index = indexFor(lockID);
+    if (!guards[index].isHeldByCurrentThread()) { throw new AssertionError("Server Lock " + lock
+                                                                           + " was not checked out by the same thread"); }
+    guards[index].unlock();
+  }
+
+  private final int indexFor(Object o) {
+    int hash = hash(o);
+    return ((hash >>> segmentShift) & segmentMask);
+  }
+
+  /**
+   * Currently from CHM
+   */
+  private static int hash(Object x) {
+    int h = x.hashCode();
+    h += ~(h << 9);
+    h ^= (h >>> 14);
+    h += (h << 4);
+    h ^= (h >>> 10);
+    return h;
+  }
+
+  @Override
+  public void clear() {
+    for (int i = 0; i < guards.length; i++) {
+      guards[i].lock();
+      try {
+        segments[i].clear();
+      } finally {
+        guards[i].unlock();
+      }
+    }
+  }
+
+  @Override
+  public LockIterator iterator() {
+    return new SegmentLockIterator();
+  }
+
+  private class SegmentLockIterator implements LockIterator {
+    private Iterator<Entry<LockID, ServerLock>> currentIter;
+    private int                                 currentIndex = -1;
+    private ServerLock                          oldLock;
+
+    @Override
+    public ServerLock getNextLock(ServerLock lock) {
+      validateOldLock(lock);
+      while (currentIter == null || !currentIter.hasNext()) {
+        HashMap<LockID, ServerLock> nextSegment = fetchNextSegment();
+        if (nextSegment == null) { return null; }
+        currentIter = nextSegment.entrySet().iterator();
+      }
+      Assert.assertNotNull(currentIter);
+      oldLock = currentIter.next().getValue();
+      return oldLock;
+    }
+
+    @Override
+    public void remove() {
+      Assert.assertNotNull(currentIter);
+      currentIter.remove();
+    }
+
+    @Override
+    public void checkIn(ServerLock lock) {
+      Assert.assertEquals(oldLock, lock);
+      SegmentedLockStore.this.checkIn(lock);
+    }
+
+    private void validateOldLock(ServerLock lock) {
+      if (oldLock != null) {
+        Assert.assertSame(oldLock, lock);
+      } else {
+        Assert.assertNull(lock);
+      }
+
+    }
+
+    private HashMap<LockID, ServerLock> fetchNextSegment() {
+      if (currentIndex >= 0 && currentIndex < segments.length) {
+        guards[currentIndex].unlock();
+      }
+      currentIndex++;
+      if (currentIndex >= segments.length) { return null; }
+
+      guards[currentIndex].lock();
+      return segments[currentIndex];
+    }
+  }
+}
\ No newline at end of file
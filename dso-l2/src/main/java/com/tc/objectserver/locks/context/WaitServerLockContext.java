@@ -19,17 +19,17 @@ package com.tc.objectserver.locks.context;
 import com.tc.net.ClientID;
 import com.tc.object.locks.ThreadID;
 
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
 
 public class WaitServerLockContext extends LinkedServerLockContext {
-  private TimerTask  task;
-  private final long timeout;
+  private ScheduledFuture<?> task;
+  private final long         timeout;
 
   public WaitServerLockContext(ClientID clientID, ThreadID threadID, long timeout) {
     this(clientID, threadID, timeout, null);
   }
 
-  public WaitServerLockContext(ClientID clientID, ThreadID threadID, long timeout, TimerTask task) {
+  public WaitServerLockContext(ClientID clientID, ThreadID threadID, long timeout, ScheduledFuture<?> task) {
     super(clientID, threadID);
     this.timeout = timeout;
     this.task = task;
@@ -39,11 +39,11 @@ public class WaitServerLockContext extends LinkedServerLockContext {
     return timeout;
   }
 
-  public void setTimerTask(TimerTask task) {
+  public void setTimerTask(ScheduledFuture<?> task) {
     this.task = task;
   }
 
-  public TimerTask getTimerTask() {
+  public ScheduledFuture<?> getTimerTask() {
     return task;
   }
 }
@@ -22,81 +22,52 @@ import com.tc.net.ClientID;
 import com.tc.object.locks.LockID;
 import com.tc.object.locks.ThreadID;
 import com.tc.objectserver.locks.LockHelper;
+import com.tc.util.concurrent.HashedWheelTimer;
 
-import java.util.LinkedList;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Times out lock waits and try locks. Timeouts scheduled before {@link #start()} still count from the time they were
+ * scheduled, any that became due in the meantime fire right after the start.
+ */
 public class LockTimer {
-  private static final TCLogger logger    = TCLogging.getLogger(LockTimer.class);
+  private static final TCLogger         logger          = TCLogging.getLogger(LockTimer.class);
+
+  private static final long             TICK_MILLIS     = 10;
+  private static final int              TICKS_PER_WHEEL = 1024;
 
-  private final Timer           timer     = new Timer("DSO Lock Object.wait() timer", true);
-  private boolean               started   = false;
-  private boolean               shutdown  = false;
-  private LinkedList<TaskImpl>  taskQueue = new LinkedList<TaskImpl>();
+  private final HashedWheelTimer        timer           = new HashedWheelTimer("DSO Lock Object.wait() timer",
+                                                                               TICK_MILLIS, TimeUnit.MILLISECONDS,
+                                                                               TICKS_PER_WHEEL);
 
   public LockTimer() {
     super();
   }
 
-  public Timer getTimer() {
-    return timer;
+  public void start() {
+    timer.start();
   }
 
-  public synchronized void start() {
-    started = true;
-    scheduleQueuedTasks();
-    taskQueue = null;
-  }
-
-  private void scheduleQueuedTasks() {
-    for (TaskImpl task : taskQueue) {
-      long timeDelay = task.getScheduleDelay() - (System.currentTimeMillis() - task.scheduledAt());
-      timeDelay = timeDelay < 0 ? 0 : timeDelay;
-      timer.schedule(task, timeDelay);
+  public ScheduledFuture<?> scheduleTimer(TimerCallback callback, long timeInMillis, LockTimerContext callbackObject) {
+    if (timeInMillis < 0 || System.currentTimeMillis() + timeInMillis < 0) {
+      throw new IllegalArgumentException("Illegal timeout: " + timeInMillis);
     }
+    return timer.schedule(new TaskImpl(callback, callbackObject), timeInMillis, TimeUnit.MILLISECONDS);
   }
 
-  public TimerTask scheduleTimer(TimerCallback callback, long timeInMillis, LockTimerContext callbackObject) {
-    final TaskImpl rv = new TaskImpl(callback, timeInMillis, callbackObject);
-
-    synchronized (this) {
-      if (!started) {
-        taskQueue.addLast(rv);
-        return rv;
-      }
-    }
-
-    timer.schedule(rv, timeInMillis);
-    return rv;
-  }
-
-  public synchronized void shutdown() {
-    if (shutdown) return;
-    shutdown = true;
+  public void shutdown() {
     this.timer.cancel();
   }
 
-  private static class TaskImpl extends TimerTask {
+  private static class TaskImpl implements Runnable {
 
     private final TimerCallback    callback;
     private final LockTimerContext callbackObject;
-    private final long             scheduleDelayInMillis;
-    private final long             scheduledAt;
 
-    TaskImpl(TimerCallback callback, long timeInMillis, LockTimerContext callbackObject) {
+    TaskImpl(TimerCallback callback, LockTimerContext callbackObject) {
       this.callback = callback;
       this.callbackObject = callbackObject;
-      this.scheduleDelayInMillis = timeInMillis;
-      this.scheduledAt = System.currentTimeMillis();
-    }
-
-    public long getScheduleDelay() {
-      return scheduleDelayInMillis;
-    }
-
-    public long scheduledAt() {
-      return scheduledAt;
     }
 
     @Override
@@ -107,11 +78,6 @@ public class LockTimer {
         logger.error("Error processing wait timeout for " + callbackObject, e);
       }
     }
-
-    @Override
-    public boolean cancel() {
-      return super.cancel();
-    }
   }
 
   public static class LockTimerContext {
@@ -32,6 +32,7 @@ import com.tc.object.dna.api.PhysicalAction;
 import com.tc.object.dna.impl.UTF8ByteDataHolder;
 import com.tc.objectserver.api.EvictableEntry;
 import com.tc.objectserver.api.EvictableMap;
+import com.tc.objectserver.api.OptimisticallyReadable;
 import com.tc.objectserver.impl.SamplingType;
 import com.tc.objectserver.l1.impl.ClientObjectReferenceSet;
 import com.tc.objectserver.persistence.PersistentObjectFactory;
@@ -54,7 +55,7 @@ import java.util.Random;
 import java.util.Set;
 
 public class ConcurrentDistributedServerMapManagedObjectState extends PartialMapManagedObjectState implements
-    EvictableMap {
+    EvictableMap, OptimisticallyReadable {
 
   private static final CDSMValue NULL_CDSM_VALUE = new CDSMValue(ObjectID.NULL_ID);
 
@@ -96,6 +97,10 @@ public class ConcurrentDistributedServerMapManagedObjectState extends PartialMap
   private boolean               copyOnReadEnabled;
   private final SetMultimap<ServerEventType, ClientID> eventRegistry                  = HashMultimap.create();
 
+  // Odd while a write is pending. Only the thread holding the read-write checkout changes it.
+  private volatile long         writeStamp                     = 0;
+  private volatile boolean      destroyed                      = false;
+
   protected ConcurrentDistributedServerMapManagedObjectState(final ObjectInput in, PersistentObjectFactory factory)
       throws IOException {
     super(in, factory);
@@ -172,6 +177,7 @@ public class ConcurrentDistributedServerMapManagedObjectState extends PartialMap
   @Override
   public void apply(final ObjectID objectID, final DNACursor cursor, final ApplyTransactionInfo applyInfo)
       throws IOException {
+    beginWrite();
     boolean broadcast = false;
     int eventCount = 0;
     while (cursor.next()) {
@@ -640,6 +646,37 @@ public class ConcurrentDistributedServerMapManagedObjectState extends PartialMap
     out.writeBoolean(evictionEnabled);
   }
 
+  private void beginWrite() {
+    final long stamp = this.writeStamp;
+    if ((stamp & 1) == 0) {
+      this.writeStamp = stamp + 1;
+    }
+  }
+
+  @Override
+  public long readStamp() {
+    return this.writeStamp;
+  }
+
+  @Override
+  public boolean validate(final long stamp) {
+    return (stamp & 1) == 0 && !this.destroyed && this.writeStamp == stamp;
+  }
+
+  @Override
+  public void writeReleased() {
+    final long stamp = this.writeStamp;
+    if ((stamp & 1) != 0) {
+      this.writeStamp = stamp + 1;
+    }
+  }
+
+  @Override
+  public void destroy() {
+    this.destroyed = true;
+    super.destroy();
+  }
+
   public CDSMValue getValueForKey(final Object portableKey) {
     return (CDSMValue) this.references.get(portableKey);
   }
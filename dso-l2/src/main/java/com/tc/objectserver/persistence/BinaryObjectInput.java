@@ -0,0 +1,204 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads what {@link BinaryObjectOutput} wrote, straight out of the buffer it is given.
+ */
+final class BinaryObjectInput implements ObjectInput {
+  private final ByteBuffer buffer;
+
+  BinaryObjectInput(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  private void require(int length) throws EOFException {
+    if (buffer.remaining() < length) { throw new EOFException(); }
+  }
+
+  @Override
+  public int read() {
+    return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+  }
+
+  @Override
+  public int read(byte[] b) {
+    return read(b, 0, b.length);
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) {
+    if (len == 0) { return 0; }
+    if (!buffer.hasRemaining()) { return -1; }
+    int n = Math.min(len, buffer.remaining());
+    buffer.get(b, off, n);
+    return n;
+  }
+
+  @Override
+  public void readFully(byte[] b) throws IOException {
+    readFully(b, 0, b.length);
+  }
+
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    require(len);
+    buffer.get(b, off, len);
+  }
+
+  @Override
+  public int skipBytes(int n) {
+    int skipped = Math.max(0, Math.min(n, buffer.remaining()));
+    buffer.position(buffer.position() + skipped);
+    return skipped;
+  }
+
+  @Override
+  public long skip(long n) {
+    return skipBytes((int) Math.min(n, Integer.MAX_VALUE));
+  }
+
+  @Override
+  public boolean readBoolean() throws IOException {
+    return readByte() != 0;
+  }
+
+  @Override
+  public byte readByte() throws IOException {
+    require(1);
+    return buffer.get();
+  }
+
+  @Override
+  public int readUnsignedByte() throws IOException {
+    return readByte() & 0xFF;
+  }
+
+  @Override
+  public short readShort() throws IOException {
+    require(2);
+    return buffer.getShort();
+  }
+
+  @Override
+  public int readUnsignedShort() throws IOException {
+    return readShort() & 0xFFFF;
+  }
+
+  @Override
+  public char readChar() throws IOException {
+    require(2);
+    return buffer.getChar();
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    require(4);
+    return buffer.getInt();
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    require(8);
+    return buffer.getLong();
+  }
+
+  @Override
+  public float readFloat() throws IOException {
+    require(4);
+    return buffer.getFloat();
+  }
+
+  @Override
+  public double readDouble() throws IOException {
+    require(8);
+    return buffer.getDouble();
+  }
+
+  @Override
+  public String readLine() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public String readUTF() throws IOException {
+    int utfLength = readInt();
+    require(utfLength);
+    char[] chars = new char[utfLength];
+    int length = 0;
+    int end = buffer.position() + utfLength;
+    while (buffer.position() < end) {
+      int c = buffer.get() & 0xFF;
+      switch (c >> 4) {
+        case 0: case 1: case 2: case 3: case 4: case 5: case 6: case 7:
+          chars[length++] = (char) c;
+          break;
+        case 12: case 13:
+          if (buffer.position() + 1 > end) { throw new UTFDataFormatException("partial character at end"); }
+          chars[length++] = (char) (((c & 0x1F) << 6) | (buffer.get() & 0x3F));
+          break;
+        case 14:
+          if (buffer.position() + 2 > end) { throw new UTFDataFormatException("partial character at end"); }
+          chars[length++] = (char) (((c & 0x0F) << 12) | ((buffer.get() & 0x3F) << 6) | (buffer.get() & 0x3F));
+          break;
+        default:
+          throw new UTFDataFormatException("malformed input around byte " + (buffer.position() - 1));
+      }
+    }
+    return new String(chars, 0, length);
+  }
+
+  @Override
+  public Object readObject() throws ClassNotFoundException, IOException {
+    byte tag = readByte();
+    switch (tag) {
+      case BinaryObjectOutput.NULL:
+        return null;
+      case BinaryObjectOutput.LITERAL:
+        return LiteralSerializer.INSTANCE.recover(buffer);
+      case BinaryObjectOutput.SERIALIZED:
+        byte[] bytes = new byte[readInt()];
+        readFully(bytes);
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+          return ois.readObject();
+        } finally {
+          ois.close();
+        }
+      default:
+        throw new IOException("Unknown object tag " + tag);
+    }
+  }
+
+  @Override
+  public int available() {
+    return buffer.remaining();
+  }
+
+  @Override
+  public void close() {
+    //
+  }
+}
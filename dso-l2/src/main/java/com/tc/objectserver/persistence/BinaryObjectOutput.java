@@ -0,0 +1,213 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An {@link ObjectOutput} writing straight into a growable byte array, used by {@link ObjectMap} in place of an
+ * {@link ObjectOutputStream} so that stored objects carry no class descriptors or block headers. Primitives are
+ * written big-endian like {@link java.io.DataOutputStream} does. Strings written with {@link #writeUTF(String)} are
+ * prefixed with an int length, so they are not limited to 64K. Objects are written in the {@link LiteralSerializer}
+ * format when it knows their type and with Java serialization otherwise.
+ *
+ * @see BinaryObjectInput
+ */
+final class BinaryObjectOutput implements ObjectOutput {
+  static final byte NULL       = 0;
+  static final byte LITERAL    = 1;
+  static final byte SERIALIZED = 2;
+
+  private byte[]    buffer;
+  private int       count;
+
+  BinaryObjectOutput(int initialCapacity) {
+    this.buffer = new byte[initialCapacity];
+  }
+
+  private void ensureCapacity(int length) {
+    if (count + length > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, count + length));
+    }
+  }
+
+  @Override
+  public void write(int b) {
+    ensureCapacity(1);
+    buffer[count++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b) {
+    write(b, 0, b.length);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    ensureCapacity(len);
+    System.arraycopy(b, off, buffer, count, len);
+    count += len;
+  }
+
+  @Override
+  public void writeBoolean(boolean v) {
+    write(v ? 1 : 0);
+  }
+
+  @Override
+  public void writeByte(int v) {
+    write(v);
+  }
+
+  @Override
+  public void writeShort(int v) {
+    ensureCapacity(2);
+    buffer[count++] = (byte) (v >>> 8);
+    buffer[count++] = (byte) v;
+  }
+
+  @Override
+  public void writeChar(int v) {
+    writeShort(v);
+  }
+
+  @Override
+  public void writeInt(int v) {
+    ensureCapacity(4);
+    buffer[count++] = (byte) (v >>> 24);
+    buffer[count++] = (byte) (v >>> 16);
+    buffer[count++] = (byte) (v >>> 8);
+    buffer[count++] = (byte) v;
+  }
+
+  @Override
+  public void writeLong(long v) {
+    writeInt((int) (v >>> 32));
+    writeInt((int) v);
+  }
+
+  @Override
+  public void writeFloat(float v) {
+    writeInt(Float.floatToIntBits(v));
+  }
+
+  @Override
+  public void writeDouble(double v) {
+    writeLong(Double.doubleToLongBits(v));
+  }
+
+  @Override
+  public void writeBytes(String s) {
+    int length = s.length();
+    ensureCapacity(length);
+    for (int i = 0; i < length; i++) {
+      buffer[count++] = (byte) s.charAt(i);
+    }
+  }
+
+  @Override
+  public void writeChars(String s) {
+    int length = s.length();
+    ensureCapacity(length * 2);
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      buffer[count++] = (byte) (c >>> 8);
+      buffer[count++] = (byte) c;
+    }
+  }
+
+  /**
+   * Writes the string in modified UTF-8, the encoding {@link java.io.DataOutput#writeUTF(String)} uses, after its length
+   * in bytes as an int.
+   */
+  @Override
+  public void writeUTF(String s) {
+    int length = s.length();
+    int utfLength = 0;
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      if (c >= 0x0001 && c <= 0x007F) {
+        utfLength++;
+      } else if (c > 0x07FF) {
+        utfLength += 3;
+      } else {
+        utfLength += 2;
+      }
+    }
+
+    writeInt(utfLength);
+    ensureCapacity(utfLength);
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      if (c >= 0x0001 && c <= 0x007F) {
+        buffer[count++] = (byte) c;
+      } else if (c > 0x07FF) {
+        buffer[count++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+        buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        buffer[count++] = (byte) (0x80 | (c & 0x3F));
+      } else {
+        buffer[count++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
+        buffer[count++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+  }
+
+  @Override
+  public void writeObject(Object obj) throws IOException {
+    if (obj == null) {
+      write(NULL);
+    } else if (LiteralSerializer.INSTANCE.canTransform(obj)) {
+      write(LITERAL);
+      ByteBuffer literal = LiteralSerializer.INSTANCE.transform(obj);
+      write(literal.array(), literal.arrayOffset() + literal.position(), literal.remaining());
+    } else {
+      write(SERIALIZED);
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(bytes);
+      try {
+        oos.writeObject(obj);
+      } finally {
+        oos.close();
+      }
+      writeInt(bytes.size());
+      write(bytes.toByteArray());
+    }
+  }
+
+  @Override
+  public void flush() {
+    //
+  }
+
+  @Override
+  public void close() {
+    //
+  }
+
+  int size() {
+    return count;
+  }
+
+  byte[] toByteArray() {
+    return Arrays.copyOf(buffer, count);
+  }
+}
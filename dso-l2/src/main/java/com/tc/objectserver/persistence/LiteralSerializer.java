@@ -367,6 +367,13 @@ public class LiteralSerializer extends Serializer<Object> {
   }
 
 
+  /**
+   * @return true if {@link #transform(Object)} knows how to serialize the given object
+   */
+  public boolean canTransform(final Object o) {
+    return o != null && classToType.containsKey(o.getClass());
+  }
+
   @Override
   public Object recover(final ByteBuffer buffer) {
     return Type.values()[buffer.duplicate().get()].deserialize(buffer);
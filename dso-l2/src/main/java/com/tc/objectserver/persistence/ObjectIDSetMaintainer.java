@@ -25,13 +25,22 @@ import com.tc.object.ObjectID;
 import com.tc.properties.TCPropertiesConsts;
 import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.BitSetObjectIDSet;
+import com.tc.util.BitSetObjectIDSet.BitSet;
 import com.tc.util.ExpandingBitSetObjectIDSet;
 import com.tc.util.ObjectIDSet;
-import com.tc.util.TCCollections;
 
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
+ * Keeps track of the ids of all objects in the object DB. The ids are split into stripes by bitset range, the same way
+ * {@link com.tc.util.StripedObjectIDSet} does, so that creates and deletes of objects in different stripes do not wait
+ * for each other. A snapshot copies one stripe at a time while holding only that stripe's read lock. The copy is quick
+ * because it copies whole ranges, and writers to the other stripes are not held up at all.
+ * <p>
+ * A snapshot taken while objects are being added or removed contains each of them or not, depending on whether its
+ * stripe was copied before or after the change. It is not a single point in time across stripes.
+ *
  * @author tim
  */
 public class ObjectIDSetMaintainer implements KeyValueStorageMutationListener<Long, byte[]> {
@@ -39,21 +48,39 @@ public class ObjectIDSetMaintainer implements KeyValueStorageMutationListener<Lo
     BITSET_BASED_SET, EXPANDING_BITSET_BASED_SET
   }
 
-  private static final TCLogger logger = TCLogging.getLogger(ObjectIDSetMaintainer.class);
+  private static final TCLogger logger              = TCLogging.getLogger(ObjectIDSetMaintainer.class);
+  private static final int      DEFAULT_CONCURRENCY = 64;
 
-  private final ObjectIDSet evictableObjectIDSet = new BitSetObjectIDSet();
-  private final ObjectIDSet noReferencesObjectIDSet;
-  private final ObjectIDSet referencesObjectIDSet = new BitSetObjectIDSet();
+  private final Stripe[]        stripes;
 
   public ObjectIDSetMaintainer() {
-    noReferencesObjectIDSet = create(TCCollections.EMPTY_OBJECT_ID_SET);
+    this(DEFAULT_CONCURRENCY);
+  }
+
+  ObjectIDSetMaintainer(int concurrency) {
+    stripes = new Stripe[concurrency];
+    for (int i = 0; i < concurrency; i++) {
+      stripes[i] = new Stripe();
+    }
     logger.info("Using ObjectIDSetType " + getObjectIDSetType());
   }
 
-  public synchronized ObjectIDSet objectIDSnapshot() {
-    ObjectIDSet oids = create(noReferencesObjectIDSet);
-    oids.addAll(referencesObjectIDSet);
-    return oids;
+  public ObjectIDSet objectIDSnapshot() {
+    BitSetObjectIDSet oids = new BitSetObjectIDSet();
+    for (Stripe stripe : stripes) {
+      BitSetObjectIDSet noReferences;
+      BitSetObjectIDSet references;
+      stripe.lock.readLock().lock();
+      try {
+        noReferences = new BitSetObjectIDSet(stripe.noReferencesObjectIDSet);
+        references = new BitSetObjectIDSet(stripe.referencesObjectIDSet);
+      } finally {
+        stripe.lock.readLock().unlock();
+      }
+      oids.addAll(noReferences);
+      oids.addAll(references);
+    }
+    return getObjectIDSetType() == ObjectIDSetType.BITSET_BASED_SET ? oids : create(oids);
   }
 
   private static ObjectIDSetType getObjectIDSetType() {
@@ -75,33 +102,76 @@ public class ObjectIDSetMaintainer implements KeyValueStorageMutationListener<Lo
     throw new UnsupportedOperationException("Unsupported ObjectIDSet type " + getObjectIDSetType());
   }
 
-  public synchronized ObjectIDSet evictableObjectIDSetSnapshot() {
-    return new BitSetObjectIDSet(evictableObjectIDSet);
+  public ObjectIDSet evictableObjectIDSetSnapshot() {
+    BitSetObjectIDSet oids = new BitSetObjectIDSet();
+    for (Stripe stripe : stripes) {
+      BitSetObjectIDSet evictable;
+      stripe.lock.readLock().lock();
+      try {
+        evictable = new BitSetObjectIDSet(stripe.evictableObjectIDSet);
+      } finally {
+        stripe.lock.readLock().unlock();
+      }
+      oids.addAll(evictable);
+    }
+    return oids;
   }
 
-  public synchronized boolean hasNoReferences(ObjectID id) {
-    return noReferencesObjectIDSet.contains(id);
+  public boolean hasNoReferences(ObjectID id) {
+    Stripe stripe = stripeFor(id);
+    stripe.lock.readLock().lock();
+    try {
+      return stripe.noReferencesObjectIDSet.contains(id);
+    } finally {
+      stripe.lock.readLock().unlock();
+    }
   }
 
   @Override
-  public synchronized void added(Retriever<? extends Long> key, Retriever<? extends byte[]> value, byte metadata) {
+  public void added(Retriever<? extends Long> key, Retriever<? extends byte[]> value, byte metadata) {
     ObjectID k = new ObjectID(key.retrieve());
-    if (PersistentCollectionsUtil.isEvictableMapType(metadata)) {
-      evictableObjectIDSet.add(k);
-    }
-    if (PersistentCollectionsUtil.isNoReferenceObjectType(metadata)) {
-      noReferencesObjectIDSet.add(k);
-    } else {
-      referencesObjectIDSet.add(k);
+    boolean evictable = PersistentCollectionsUtil.isEvictableMapType(metadata);
+    boolean noReferences = PersistentCollectionsUtil.isNoReferenceObjectType(metadata);
+    Stripe stripe = stripeFor(k);
+    stripe.lock.writeLock().lock();
+    try {
+      if (evictable) {
+        stripe.evictableObjectIDSet.add(k);
+      }
+      if (noReferences) {
+        stripe.noReferencesObjectIDSet.add(k);
+      } else {
+        stripe.referencesObjectIDSet.add(k);
+      }
+    } finally {
+      stripe.lock.writeLock().unlock();
     }
   }
 
   @Override
-  public synchronized void removed(Retriever<? extends Long> key) {
+  public void removed(Retriever<? extends Long> key) {
     ObjectID oid = new ObjectID(key.retrieve());
-    evictableObjectIDSet.remove(oid);
-    if (!noReferencesObjectIDSet.remove(oid)) {
-      referencesObjectIDSet.remove(oid);
+    Stripe stripe = stripeFor(oid);
+    stripe.lock.writeLock().lock();
+    try {
+      stripe.evictableObjectIDSet.remove(oid);
+      if (!stripe.noReferencesObjectIDSet.remove(oid)) {
+        stripe.referencesObjectIDSet.remove(oid);
+      }
+    } finally {
+      stripe.lock.writeLock().unlock();
     }
   }
+
+  private Stripe stripeFor(ObjectID oid) {
+    long range = Math.abs(BitSetObjectIDSet.calculateStart(oid.toLong()) / BitSet.RANGE_SIZE);
+    return stripes[(int) (range % stripes.length)];
+  }
+
+  private static final class Stripe {
+    private final ReentrantReadWriteLock lock                    = new ReentrantReadWriteLock();
+    private final ObjectIDSet            evictableObjectIDSet    = new BitSetObjectIDSet();
+    private final ObjectIDSet            noReferencesObjectIDSet = new BitSetObjectIDSet();
+    private final ObjectIDSet            referencesObjectIDSet   = new BitSetObjectIDSet();
+  }
 }
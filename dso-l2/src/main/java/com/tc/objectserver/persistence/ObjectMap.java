@@ -29,12 +29,10 @@ import com.tc.objectserver.managedobject.ManagedObjectStateSerializer;
 import com.tc.objectserver.managedobject.SerializedClusterObjectState;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
@@ -46,6 +44,11 @@ class ObjectMap implements KeyValueStorage<ObjectID, ManagedObject> {
   private static final String NODE_OBJECT_DB = "node_object_db";
   private static final String LEAF_OBJECT_DB = "leaf_object_db";
 
+  // Leading byte of objects written with BinaryObjectOutput. Objects stored by older versions are plain Java
+  // serialization streams, which always start with 0xACED, so the two can't be confused.
+  private static final byte   BINARY_FORMAT_V1      = 0x01;
+  private static final int    INITIAL_BUFFER_SIZE   = 256;
+
   private final KeyValueStorage<Long, byte[]> nodeObjects;
   private final KeyValueStorage<Long, byte[]> leafObjects;
   private final ManagedObjectSerializer serializer;
@@ -86,21 +89,17 @@ class ObjectMap implements KeyValueStorage<ObjectID, ManagedObject> {
 
   @Override
   public void put(final ObjectID key, final ManagedObject value, byte metadata) {
-    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    BinaryObjectOutput out = new BinaryObjectOutput(INITIAL_BUFFER_SIZE);
+    out.writeByte(BINARY_FORMAT_V1);
     try {
-      ObjectOutput oo = new ObjectOutputStream(byteArrayOutputStream);
-      try {
-        serializer.serializeTo(value, oo);
-      } finally {
-        oo.close();
-      }
+      serializer.serializeTo(value, out);
     } catch (IOException e) {
       throw new AssertionError(e);
     }
     if ( value.getManagedObjectState() instanceof SerializedClusterObjectState  ) {
-        leafObjects.put(key.toLong(), byteArrayOutputStream.toByteArray(), metadata);
+        leafObjects.put(key.toLong(), out.toByteArray(), metadata);
     } else {
-        nodeObjects.put(key.toLong(), byteArrayOutputStream.toByteArray(), metadata);
+        nodeObjects.put(key.toLong(), out.toByteArray(), metadata);
   }
   }
 
@@ -117,8 +116,7 @@ class ObjectMap implements KeyValueStorage<ObjectID, ManagedObject> {
       return null;
     }
     try {
-      ObjectInput oi = new ObjectInputStream(new ByteArrayInputStream(data));
-      return (ManagedObject)serializer.deserializeFrom(oi);
+      return (ManagedObject)serializer.deserializeFrom(openInput(data));
     } catch (ObjectNotFoundException e) {
       // Clean up the backing map if the object winds up missing (see MNK-5031)
       if ( leaf ) {
@@ -132,6 +130,14 @@ class ObjectMap implements KeyValueStorage<ObjectID, ManagedObject> {
     }
   }
 
+  private static ObjectInput openInput(byte[] data) throws IOException {
+    if (data.length > 0 && data[0] == BINARY_FORMAT_V1) {
+      return new BinaryObjectInput(ByteBuffer.wrap(data, 1, data.length - 1));
+    }
+    // Written before the binary format existed
+    return new ObjectInputStream(new ByteArrayInputStream(data));
+  }
+
     @Override
     public boolean remove(final ObjectID key) {
         if ( !leafObjects.remove(key.toLong()) ) {
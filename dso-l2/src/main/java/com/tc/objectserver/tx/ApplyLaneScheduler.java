@@ -0,0 +1,78 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.tx;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Decides which apply stage thread (lane) each {@link TxnObjectGrouping} runs on.
+ * <p>
+ * Transactions that share objects end up in the same grouping, or wait in the {@link ServerTransactionSequencer} until
+ * the grouping holding their objects is released, so every grouping is a connected component of the conflict graph
+ * between in-flight transactions. A grouping keeps its lane while it has transactions queued or applying, which keeps
+ * the order of changes to each object. A new grouping goes to the lane with the fewest transactions outstanding, so
+ * that independent groupings don't queue up behind a busy thread just because a round robin put them there.
+ */
+class ApplyLaneScheduler {
+  private final AtomicIntegerArray outstanding;
+  // Only used from the lookup stage
+  private int                      next;
+
+  ApplyLaneScheduler(int lanes) {
+    if (lanes < 1) { throw new IllegalArgumentException("lanes : " + lanes); }
+    this.outstanding = new AtomicIntegerArray(lanes);
+  }
+
+  int nextLane() {
+    final int lanes = outstanding.length();
+    final int start = next;
+    next = (start + 1) % lanes;
+    // Start at a different lane each time so that ties are spread round robin
+    int best = start;
+    int bestCount = outstanding.get(start);
+    for (int i = 1; i < lanes && bestCount > 0; i++) {
+      final int lane = (start + i) % lanes;
+      final int count = outstanding.get(lane);
+      if (count < bestCount) {
+        best = lane;
+        bestCount = count;
+      }
+    }
+    return best;
+  }
+
+  void scheduled(int lane) {
+    outstanding.incrementAndGet(lane);
+  }
+
+  void completed(int lane) {
+    outstanding.decrementAndGet(lane);
+  }
+
+  int getOutstanding(int lane) {
+    return outstanding.get(lane);
+  }
+
+  int getLaneCount() {
+    return outstanding.length();
+  }
+
+  @Override
+  public String toString() {
+    return "ApplyLaneScheduler [outstanding = " + outstanding + "]";
+  }
+}
@@ -67,6 +67,12 @@ public interface ServerTransactionManager {
    */
   public void acknowledgement(NodeID waiter, TransactionID requestID, NodeID waitee);
 
+  /**
+   * Same as calling {@link #acknowledgement(NodeID, TransactionID, NodeID)} for each of the given transactions, in
+   * order.
+   */
+  public void acknowledgements(NodeID waiter, Collection<TransactionID> requestIDs, NodeID waitee);
+
   /**
    * Apply the changes in the given transaction to the given set of checked out objects.
    * 
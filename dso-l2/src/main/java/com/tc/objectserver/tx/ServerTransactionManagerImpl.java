@@ -350,6 +350,27 @@ public class ServerTransactionManagerImpl implements ServerTransactionManager, S
     }
   }
 
+  @Override
+  public void acknowledgements(final NodeID waiter, final Collection<TransactionID> txnIDs, final NodeID waitee) {
+    if (txnIDs.isEmpty()) { return; }
+
+    // same as acknowledgement() for each of them, but with the channel stats and the account looked up once
+    if (isActive() && waitee.getNodeType() == NodeID.CLIENT_NODE_TYPE) {
+      this.channelStats.notifyTransactionsAckedFrom(waitee, txnIDs.size());
+    }
+
+    final TransactionAccount transactionAccount = getTransactionAccount(waiter);
+    if (transactionAccount == null) {
+      logger.warn("Waiter not found in the states map: " + waiter);
+      return;
+    }
+    for (final TransactionID txnID : txnIDs) {
+      if (transactionAccount.removeWaitee(waitee, txnID)) {
+        acknowledge(waiter, txnID);
+      }
+    }
+  }
+
   @Override
   public void apply(final ServerTransaction txn, final Map objects, final ApplyTransactionInfo applyInfo,
                     final ObjectInstanceMonitor instanceMonitor) {
@@ -70,13 +70,18 @@ public class TransactionalObjectManagerImpl implements TransactionalObjectManage
   private final Queue<LookupContext>                                  processedPendingLookups = new ConcurrentLinkedQueue<LookupContext>();
 
   private final TransactionalStageCoordinator                         txnStageCoordinator;
+  private final ApplyLaneScheduler                                    applyLanes;
 
+  /**
+   * @param applyStageThreads : Number of threads of the apply stage, which must have a queue per thread
+   */
   public TransactionalObjectManagerImpl(ObjectManager objectManager,
                                         ServerGlobalTransactionManager gtxm,
-                                        TransactionalStageCoordinator txnStageCoordinator) {
+                                        TransactionalStageCoordinator txnStageCoordinator, int applyStageThreads) {
     this.objectManager = objectManager;
     this.gtxm = gtxm;
     this.txnStageCoordinator = txnStageCoordinator;
+    this.applyLanes = new ApplyLaneScheduler(applyStageThreads);
   }
 
   // ProcessTransactionHandler Method
@@ -209,12 +214,13 @@ public class TransactionalObjectManagerImpl implements TransactionalObjectManage
       ServerTransactionID txnID = txn.getServerTransactionID();
       Collection<ObjectID> missingObjects;
       if (grouping == null) {
-        grouping = new TxnObjectGrouping(txnID);
+        grouping = new TxnObjectGrouping(txnID, applyLanes.nextLane());
         missingObjects = addObjectsToGrouping(txn.getObjectIDs(), grouping, transactionLookupContext.initiateApply());
       } else {
         missingObjects = addObjectsToGrouping(txn.getNewObjectIDs(), grouping, transactionLookupContext.initiateApply());
       }
       applyPendingTxns.put(txnID, grouping);
+      applyLanes.scheduled(grouping.getApplyLane());
       txnStageCoordinator.addToApplyStage(new ApplyTransactionContext(txn, grouping, needsApply, missingObjects));
       makeUnpending(txn);
 //      log("lookupObjectsForApplyAndAddToSink(): Success: " + txn.getServerTransactionID());
@@ -224,7 +230,7 @@ public class TransactionalObjectManagerImpl implements TransactionalObjectManage
   public String shortDescription() {
     return "TxnObjectManager : checked Out count = " + this.checkedOutObjects.size() + " pending txns = "
            + this.pendingTxnList.size() + " pending object requests = " + this.pendingObjectRequest.size()
-           + " live object checkouts = " + liveObjectGroupings.size();
+           + " live object checkouts = " + liveObjectGroupings.size() + " apply lanes = " + applyLanes;
   }
 
   private Set<ObjectID> addObjectsToGrouping(Collection<ObjectID> oids, TxnObjectGrouping txnObjectGrouping, final boolean initiateApply) {
@@ -300,6 +306,7 @@ public class TransactionalObjectManagerImpl implements TransactionalObjectManage
   public void applyTransactionComplete(final ApplyTransactionInfo applyInfo) {
     TxnObjectGrouping grouping = applyPendingTxns.remove(applyInfo.getServerTransactionID());
     Assert.assertNotNull(grouping);
+    applyLanes.completed(grouping.getApplyLane());
     if (grouping.transactionComplete(applyInfo.getServerTransactionID())) {
       applyInfo.addObjectsToBeReleased(grouping.getObjects());
       for (ManagedObject mo : grouping.getObjects()) {
@@ -38,14 +38,21 @@ public final class TxnObjectGrouping implements PrettyPrintable {
   // This way the object groupings will be round-robinned around about the apply threads.
   private static int nextHash = 0;
 
+  // The hash code is the apply lane, the apply stage routes contexts to threads by the hash code of their key
+
   private int addedTxns = 0;
   private ServerTransactionID txnID;
   private boolean closed;
   private final Set<ServerTransactionID>  txns = new HashSet<ServerTransactionID>();
   private final Map<ObjectID, ManagedObject> objects = new HashMap<ObjectID, ManagedObject>();
-  private final int hashCode = nextHash++;
+  private final int hashCode;
 
   public TxnObjectGrouping(ServerTransactionID stxID) {
+    this(stxID, nextHash++);
+  }
+
+  public TxnObjectGrouping(ServerTransactionID stxID, int applyLane) {
+    this.hashCode = applyLane;
     addServerTransactionID(stxID);
   }
 
@@ -113,6 +120,10 @@ public final class TxnObjectGrouping implements PrettyPrintable {
     return new ArrayList<ManagedObject>(objects.values());
   }
 
+  public int getApplyLane() {
+    return hashCode;
+  }
+
   @Override
   public int hashCode() {
     return hashCode;
@@ -18,6 +18,7 @@ package com.tc.stats;
 
 import org.apache.commons.collections.set.ListOrderedSet;
 
+import com.tc.async.api.StageManager;
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLogging;
 import com.tc.management.RemoteManagement;
@@ -103,11 +104,12 @@ public class DSO extends AbstractNotifyingMBean implements DSOMBean {
   private final IndexManager                           indexManager;
   private final ConnectionPolicy                       connectionPolicy;
   private final RemoteManagement                       remoteManagement;
+  private final StageManager                           stageManager;
 
   public DSO(final ServerManagementContext managementContext, final ServerConfigurationContext configContext,
              final MBeanServer mbeanServer, final GCStatsEventPublisher gcStatsPublisher,
              TerracottaOperatorEventHistoryProvider operatorEventHistoryProvider, OffheapStats offheapStats,
-             StorageDataStats storageStats)
+             StorageDataStats storageStats, StageManager stageManager)
       throws NotCompliantMBeanException {
     super(DSOMBean.class);
     try {
@@ -130,6 +132,7 @@ public class DSO extends AbstractNotifyingMBean implements DSOMBean {
     this.storageStats = storageStats;
     this.connectionPolicy = managementContext.getConnectionPolicy();
     this.remoteManagement = managementContext.getRemoteManagement();
+    this.stageManager = stageManager;
 
     // add various listeners (do this before the setupXXX() methods below so we don't ever miss anything)
     txnMgr.addRootListener(new TransactionManagerListener());
@@ -842,6 +845,11 @@ public class DSO extends AbstractNotifyingMBean implements DSOMBean {
     return storageStats.getStorageStats();
   }
 
+  @Override
+  public Map<String, Map<String, Long>> getStageLatencyStats() {
+    return stageManager.getLatencyStats();
+  }
+
   @Override
   public RemoteManagement getRemoteManagement() {
     return remoteManagement;
@@ -119,6 +119,12 @@ public interface DSOMBean extends DSOStats, OffheapStats, StorageDataStats, DGCM
 
   Map<String, Integer> getUnreadOperatorEventCount();
 
+  /**
+   * @return queue wait and service time percentiles in nanoseconds of the SEDA stages that record them, keyed by stage
+   *         name
+   */
+  Map<String, Map<String, Long>> getStageLatencyStats();
+
   RemoteManagement getRemoteManagement();
 
 }
@@ -0,0 +1,159 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.l2.objectserver;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.l2.context.ManagedObjectSyncContext;
+import com.tc.net.NodeID;
+import com.tc.net.ServerID;
+import com.tc.object.ObjectID;
+import com.tc.objectserver.api.ObjectManager;
+import com.tc.objectserver.tx.ServerTransactionManager;
+import com.tc.objectserver.tx.TxnsInSystemCompletionListener;
+import com.tc.util.BitSetObjectIDSet;
+import com.tc.util.ObjectIDSet;
+import com.tc.util.TCCollections;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class L2ObjectStateManagerImplTest {
+
+  private static final int         OBJECT_COUNT = 10;
+
+  private final NodeID             passive      = new ServerID("passive", new byte[] { 1, 2, 3 });
+  private ServerTransactionManager transactionManager;
+  private L2ObjectStateListener    listener;
+  private L2ObjectStateManagerImpl objectStateManager;
+
+  @Before
+  public void setUp() throws Exception {
+    ObjectManager objectManager = mock(ObjectManager.class);
+    ObjectIDSet oids = new BitSetObjectIDSet();
+    for (int i = 0; i < OBJECT_COUNT; i++) {
+      oids.add(new ObjectID(i));
+    }
+    when(objectManager.getAllObjectIDs()).thenReturn(oids);
+    when(objectManager.getRootNamesToIDsMap()).thenReturn(Collections.emptyMap());
+
+    transactionManager = mock(ServerTransactionManager.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        ((TxnsInSystemCompletionListener) invocation.getArguments()[0]).onCompletion();
+        return null;
+      }
+    }).when(transactionManager).callBackOnResentTxnsInSystemCompletion(any(TxnsInSystemCompletionListener.class));
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        ((Runnable) invocation.getArguments()[0]).run();
+        return null;
+      }
+    }).when(transactionManager).callbackOnLowWaterMarkInSystemCompletion(any(Runnable.class));
+
+    objectStateManager = new L2ObjectStateManagerImpl(objectManager, transactionManager);
+    listener = mock(L2ObjectStateListener.class);
+    objectStateManager.registerForL2ObjectStateChangeEvents(listener);
+    assertTrue(objectStateManager.addL2(passive));
+    verify(listener).missingObjectsFor(passive, OBJECT_COUNT);
+  }
+
+  @Test
+  public void testWorkersSyncDisjointRanges() {
+    ManagedObjectSyncContext first = objectStateManager.getSomeObjectsToSyncContext(passive, 4);
+    ManagedObjectSyncContext second = objectStateManager.getSomeObjectsToSyncContext(passive, 4);
+    ManagedObjectSyncContext third = objectStateManager.getSomeObjectsToSyncContext(passive, 4);
+
+    assertEquals(4, first.getRequestedObjectIDs().size());
+    assertEquals(4, second.getRequestedObjectIDs().size());
+    assertEquals(2, third.getRequestedObjectIDs().size());
+    assertTrue(first.getRequestedObjectIDs().last().toLong() < second.getRequestedObjectIDs().first().toLong());
+    assertTrue(second.getRequestedObjectIDs().last().toLong() < third.getRequestedObjectIDs().first().toLong());
+    assertFalse(third.hasMore());
+    // every object is held by a worker
+    assertNull(objectStateManager.getSomeObjectsToSyncContext(passive, 4));
+
+    synced(third);
+    synced(first);
+    verify(transactionManager, never()).callBackOnTxnsInSystemCompletion(any(TxnsInSystemCompletionListener.class));
+    assertEquals(6, objectStateManager.getSyncProgress(passive).getObjectsSynced());
+
+    synced(second);
+    verify(transactionManager).callBackOnTxnsInSystemCompletion(any(TxnsInSystemCompletionListener.class));
+    assertEquals(100, objectStateManager.getSyncProgress(passive).getPercentSynced());
+  }
+
+  @Test
+  public void testObjectsNotSyncedAreTakenAgain() {
+    ManagedObjectSyncContext first = objectStateManager.getSomeObjectsToSyncContext(passive, 6);
+    ManagedObjectSyncContext second = objectStateManager.getSomeObjectsToSyncContext(passive, 6);
+
+    synced(second);
+    verify(transactionManager, never()).callBackOnTxnsInSystemCompletion(any(TxnsInSystemCompletionListener.class));
+
+    // the first worker only got half of its objects into the message
+    ObjectIDSet synced = new BitSetObjectIDSet();
+    ObjectIDSet notSynced = new BitSetObjectIDSet(first.getRequestedObjectIDs());
+    for (int i = 0; i < 3; i++) {
+      ObjectID oid = notSynced.first();
+      notSynced.remove(oid);
+      synced.add(oid);
+    }
+    first.setDehydratedBytes(synced, notSynced, new TCByteBuffer[0], synced.size(), null,
+                             TCCollections.EMPTY_OBJECT_ID_SET);
+    assertTrue(first.hasMore());
+    objectStateManager.close(first);
+
+    ManagedObjectSyncContext rest = objectStateManager.getSomeObjectsToSyncContext(passive, 6);
+    assertNotNull(rest);
+    assertEquals(notSynced, rest.getRequestedObjectIDs());
+    synced(rest);
+    verify(transactionManager).callBackOnTxnsInSystemCompletion(any(TxnsInSystemCompletionListener.class));
+  }
+
+  @Test
+  public void testProgressEstimate() {
+    ObjectSyncProgress progress = new ObjectSyncProgress(passive, 1000, 250, 5000);
+    assertEquals(25, progress.getPercentSynced());
+    assertEquals(50, progress.getObjectsPerSecond());
+    assertEquals(15000, progress.getEstimatedMillisRemaining());
+    assertEquals(-1, new ObjectSyncProgress(passive, 1000, 0, 5000).getEstimatedMillisRemaining());
+  }
+
+  private void synced(ManagedObjectSyncContext mosc) {
+    mosc.setDehydratedBytes(mosc.getRequestedObjectIDs(), TCCollections.EMPTY_OBJECT_ID_SET, new TCByteBuffer[0],
+                            mosc.getRequestedObjectIDs().size(), null, TCCollections.EMPTY_OBJECT_ID_SET);
+    objectStateManager.close(mosc);
+  }
+}
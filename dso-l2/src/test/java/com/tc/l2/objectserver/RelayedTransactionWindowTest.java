@@ -0,0 +1,127 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.l2.objectserver;
+
+import com.tc.net.ClientID;
+import com.tc.net.NodeID;
+import com.tc.net.ServerID;
+import com.tc.object.tx.ServerTransactionID;
+import com.tc.object.tx.TransactionID;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class RelayedTransactionWindowTest extends TestCase {
+
+  private final NodeID   passive = new ServerID("passive", new byte[] { 1, 2, 3 });
+  private final ClientID client  = new ClientID(1);
+
+  public void testAckReleasesEarlierBatches() throws Exception {
+    RelayedTransactionWindow window = new RelayedTransactionWindow(4);
+    window.relayed(passive, 1, txns(1, 2));
+    window.relayed(passive, 2, txns(3, 4));
+    window.relayed(passive, 3, txns(5, 6));
+    assertEquals(3, window.getInFlightCount(passive));
+
+    // merged ack for the first two batches
+    window.acknowledged(passive, set(txns(1, 2, 3, 4)));
+    assertEquals(1, window.getInFlightCount(passive));
+
+    // an ack for the last batch alone is cumulative too
+    window.relayed(passive, 4, txns(7));
+    window.acknowledged(passive, set(txns(7)));
+    assertEquals(0, window.getInFlightCount(passive));
+  }
+
+  public void testUnknownAcksAreIgnored() throws Exception {
+    RelayedTransactionWindow window = new RelayedTransactionWindow(4);
+    window.relayed(passive, 1, txns(1));
+    window.acknowledged(passive, set(txns(100)));
+    window.acknowledged(new ServerID("other", new byte[] { 4 }), set(txns(1)));
+    assertEquals(1, window.getInFlightCount(passive));
+  }
+
+  public void testAcquireWaitsForAck() throws Exception {
+    final RelayedTransactionWindow window = new RelayedTransactionWindow(2);
+    window.relayed(passive, 1, txns(1));
+    window.relayed(passive, 2, txns(2));
+
+    final CountDownLatch acquired = new CountDownLatch(1);
+    Thread relay = new Thread() {
+      @Override
+      public void run() {
+        window.acquire(passive);
+        acquired.countDown();
+      }
+    };
+    relay.start();
+    assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+
+    window.acknowledged(passive, set(txns(1)));
+    assertTrue(acquired.await(10, TimeUnit.SECONDS));
+    relay.join();
+  }
+
+  public void testRemoveReleasesWaiters() throws Exception {
+    final RelayedTransactionWindow window = new RelayedTransactionWindow(1);
+    window.relayed(passive, 1, txns(1));
+
+    final CountDownLatch acquired = new CountDownLatch(1);
+    Thread relay = new Thread() {
+      @Override
+      public void run() {
+        window.acquire(passive);
+        acquired.countDown();
+      }
+    };
+    relay.start();
+    assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+
+    window.remove(passive);
+    assertTrue(acquired.await(10, TimeUnit.SECONDS));
+    assertEquals(0, window.getInFlightCount(passive));
+    relay.join();
+  }
+
+  public void testNoLimit() throws Exception {
+    RelayedTransactionWindow window = new RelayedTransactionWindow(0);
+    for (int i = 0; i < 100; i++) {
+      window.acquire(passive);
+      window.relayed(passive, i, txns(i));
+    }
+    assertEquals(0, window.getInFlightCount(passive));
+  }
+
+  private List<ServerTransactionID> txns(long... ids) {
+    ServerTransactionID[] stxnIDs = new ServerTransactionID[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      stxnIDs[i] = new ServerTransactionID(client, new TransactionID(ids[i]));
+    }
+    return Arrays.asList(stxnIDs);
+  }
+
+  private Set<ServerTransactionID> set(List<ServerTransactionID> txns) {
+    return Collections.unmodifiableSet(new HashSet<ServerTransactionID>(txns));
+  }
+}
@@ -0,0 +1,132 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.net.groups;
+
+import com.tc.io.TCByteBufferInput;
+import com.tc.io.TCByteBufferInputStream;
+import com.tc.io.TCByteBufferOutput;
+import com.tc.io.TCByteBufferOutputStream;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class GroupMessageCompressorTest extends TestCase {
+
+  private final GroupMessageCompressor compressor = new GroupMessageCompressor(true,
+                                                                               Collections.singleton(PayloadMessage.class
+                                                                                   .getSimpleName()), 1024);
+
+  public void testRoundTrip() throws Exception {
+    StringBuilder payload = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      payload.append("relayed transaction ").append(i % 10).append(' ');
+    }
+    PayloadMessage msg = new PayloadMessage(payload.toString());
+
+    // the deflater and inflater of this thread are used for both
+    for (int i = 1; i <= 2; i++) {
+      CompressedGroupMessage received = throughTheWire(compressor.compress(msg));
+      assertEquals(CompressedGroupMessage.COMPRESSED, received.getType());
+      assertTrue(received.getCompressedLength() < payload.length() / 4);
+
+      GroupMessage inflated = compressor.inflate(received);
+      assertEquals(msg, inflated);
+      assertEquals(msg.getMessageID(), inflated.getMessageID());
+      assertEquals(i, compressor.getMessagesCompressed());
+    }
+    assertTrue(compressor.getBytesSaved() > 0);
+  }
+
+  public void testSmallMessagesAreSentSerialized() throws Exception {
+    PayloadMessage msg = new PayloadMessage("small");
+    CompressedGroupMessage received = throughTheWire(compressor.compress(msg));
+    assertEquals(CompressedGroupMessage.SERIALIZED, received.getType());
+    assertEquals(msg, compressor.inflate(received));
+    assertEquals(0, compressor.getMessagesCompressed());
+  }
+
+  public void testIncompressibleMessagesAreSentSerialized() throws Exception {
+    byte[] bytes = new byte[8192];
+    new Random(42).nextBytes(bytes);
+    char[] chars = new char[bytes.length];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[i] = (char) (bytes[i] & 0xff);
+    }
+    PayloadMessage msg = new PayloadMessage(new String(chars));
+    CompressedGroupMessage received = throughTheWire(compressor.compress(msg));
+    assertEquals(CompressedGroupMessage.SERIALIZED, received.getType());
+    assertEquals(msg, compressor.inflate(received));
+    assertEquals(0, compressor.getMessagesCompressed());
+  }
+
+  public void testOtherTypesAreNotCompressed() {
+    GroupMessageCompressor other = new GroupMessageCompressor(true, Collections.singleton("ObjectSyncMessage"), 0);
+    PayloadMessage msg = new PayloadMessage("other type other type other type other type");
+    assertSame(msg, other.compress(msg));
+
+    GroupMessageCompressor disabled = new GroupMessageCompressor(false, Collections.singleton(PayloadMessage.class
+        .getSimpleName()), 0);
+    assertSame(msg, disabled.compress(msg));
+  }
+
+  private static CompressedGroupMessage throughTheWire(GroupMessage sent) throws IOException {
+    assertTrue(sent instanceof CompressedGroupMessage);
+    TCByteBufferOutputStream out = new TCByteBufferOutputStream();
+    sent.serializeTo(out);
+    CompressedGroupMessage received = new CompressedGroupMessage();
+    received.deserializeFrom(new TCByteBufferInputStream(out.toArray()));
+    return received;
+  }
+
+  private static final class PayloadMessage extends AbstractGroupMessage {
+
+    private String payload;
+
+    // to make serialization sane
+    public PayloadMessage() {
+      super(0);
+    }
+
+    public PayloadMessage(String payload) {
+      super(0);
+      this.payload = payload;
+    }
+
+    @Override
+    protected void basicDeserializeFrom(TCByteBufferInput in) throws IOException {
+      payload = in.readString();
+    }
+
+    @Override
+    protected void basicSerializeTo(TCByteBufferOutput out) {
+      out.writeString(payload);
+    }
+
+    @Override
+    public int hashCode() {
+      return payload.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof PayloadMessage && payload.equals(((PayloadMessage) o).payload);
+    }
+  }
+}
@@ -148,6 +148,11 @@ public class GCTestObjectManager implements ObjectManager {
     return 0;
   }
 
+  @Override
+  public boolean isLookupBlockedOn(ObjectID id) {
+    return false;
+  }
+
   @Override
   public ObjectIDSet getAllObjectIDs() {
     ObjectIDSet oids = new BitSetObjectIDSet(managed.keySet());
@@ -188,6 +193,11 @@ public class GCTestObjectManager implements ObjectManager {
     return mo;
   }
 
+  @Override
+  public ManagedObject getObjectByIDIfCached(ObjectID id) {
+    return null;
+  }
+
   @Override
   public void notifyGCComplete(DGCResultContext dgcResultContext) {
     SortedSet<ObjectID> ids = dgcResultContext.getGarbageIDs();
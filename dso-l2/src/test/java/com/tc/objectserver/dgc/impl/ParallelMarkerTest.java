@@ -0,0 +1,195 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.dgc.impl;
+
+import com.tc.object.ObjectID;
+import com.tc.objectserver.core.api.Filter;
+import com.tc.objectserver.core.impl.GarbageCollectionID;
+import com.tc.objectserver.dgc.api.GarbageCollectionInfo;
+import com.tc.util.BitSetObjectIDSet;
+import com.tc.util.ObjectIDSet;
+import com.tc.util.concurrent.LifeCycleState;
+import com.tc.util.concurrent.NullLifeCycleState;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class ParallelMarkerTest extends TestCase {
+  private static final int                   OBJECTS    = 20000;
+
+  private static final Filter                VISIT_ALL  = new Filter() {
+                                                          @Override
+                                                          public boolean shouldVisit(ObjectID referencedObject) {
+                                                            return true;
+                                                          }
+                                                        };
+
+  private final Map<ObjectID, Set<ObjectID>> references = new HashMap<ObjectID, Set<ObjectID>>();
+  private final Set<ObjectID>                roots      = new HashSet<ObjectID>();
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    Random random = new Random(42);
+    for (int i = 0; i < OBJECTS; i++) {
+      Set<ObjectID> refs = new HashSet<ObjectID>();
+      int count = random.nextInt(3);
+      for (int j = 0; j < count; j++) {
+        refs.add(new ObjectID(random.nextInt(OBJECTS)));
+      }
+      if (random.nextInt(10) == 0) {
+        refs.add(ObjectID.NULL_ID);
+      }
+      references.put(new ObjectID(i), refs);
+    }
+    for (int i = 0; i < 20; i++) {
+      roots.add(new ObjectID(random.nextInt(OBJECTS)));
+    }
+  }
+
+  public void testMatchesSerialMark() {
+    ObjectIDSet expected = allObjects();
+    expected.removeAll(reachableFromRoots());
+    assertFalse(expected.isEmpty());
+
+    for (int threads = 1; threads <= 8; threads *= 2) {
+      ParallelMarker marker = new ParallelMarker(new GraphGCHook(), threads);
+      ObjectIDSet garbage = marker.mark(VISIT_ALL, roots, allObjects(), new NullLifeCycleState());
+      assertEquals("threads " + threads, expected, garbage);
+    }
+  }
+
+  public void testStopReturnsNoGarbage() {
+    ParallelMarker marker = new ParallelMarker(new GraphGCHook(), 4);
+    LifeCycleState stopped = new NullLifeCycleState() {
+      @Override
+      public boolean isStopRequested() {
+        return true;
+      }
+    };
+    assertTrue(marker.mark(VISIT_ALL, roots, allObjects(), stopped).isEmpty());
+  }
+
+  public void testFailureIsRethrown() {
+    ParallelMarker marker = new ParallelMarker(new GraphGCHook() {
+      @Override
+      public Set<ObjectID> getObjectReferencesFrom(ObjectID id) {
+        throw new IllegalStateException("lookup failed");
+      }
+    }, 4);
+    try {
+      marker.mark(VISIT_ALL, roots, allObjects(), new NullLifeCycleState());
+      fail();
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  private ObjectIDSet allObjects() {
+    ObjectIDSet all = new BitSetObjectIDSet();
+    all.addAll(references.keySet());
+    return all;
+  }
+
+  private Set<ObjectID> reachableFromRoots() {
+    Set<ObjectID> reachable = new HashSet<ObjectID>(roots);
+    Queue<ObjectID> toVisit = new ArrayDeque<ObjectID>(roots);
+    ObjectID id;
+    while ((id = toVisit.poll()) != null) {
+      for (ObjectID ref : references.get(id)) {
+        if (!ref.isNull() && reachable.add(ref)) {
+          toVisit.add(ref);
+        }
+      }
+    }
+    return reachable;
+  }
+
+  private class GraphGCHook implements GCHook {
+
+    @Override
+    public ObjectIDSet getGCCandidates() {
+      return allObjects();
+    }
+
+    @Override
+    public ObjectIDSet getRootObjectIDs(ObjectIDSet candidateIDs) {
+      ObjectIDSet rootIds = new BitSetObjectIDSet();
+      rootIds.addAll(roots);
+      return rootIds;
+    }
+
+    @Override
+    public int getLiveObjectCount() {
+      return references.size();
+    }
+
+    @Override
+    public GarbageCollectionInfo createGCInfo(GarbageCollectionID id) {
+      return null;
+    }
+
+    @Override
+    public String getDescription() {
+      return "Graph";
+    }
+
+    @Override
+    public void startMonitoringReferenceChanges() {
+      //
+    }
+
+    @Override
+    public void stopMonitoringReferenceChanges() {
+      //
+    }
+
+    @Override
+    public Filter getCollectCycleFilter(Set candidateIDs) {
+      return VISIT_ALL;
+    }
+
+    @Override
+    public void waitUntilReadyToGC() {
+      //
+    }
+
+    @Override
+    public Set<ObjectID> getObjectReferencesFrom(ObjectID id) {
+      Set<ObjectID> refs = references.get(id);
+      return refs == null ? Collections.<ObjectID> emptySet() : refs;
+    }
+
+    @Override
+    public ObjectIDSet getRescueIDs() {
+      return new BitSetObjectIDSet();
+    }
+
+    @Override
+    public ObjectIDSet drainRescueIDs(boolean includeClientReferences) {
+      return new BitSetObjectIDSet();
+    }
+  }
+}
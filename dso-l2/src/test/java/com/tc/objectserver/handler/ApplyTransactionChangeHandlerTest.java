@@ -20,17 +20,22 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import com.tc.async.api.EventContext;
 import com.tc.async.api.Sink;
 import com.tc.async.api.Stage;
 import com.tc.net.ClientID;
+import com.tc.object.ObjectID;
 import com.tc.object.dna.api.MetaDataReader;
 import com.tc.object.gtx.GlobalTransactionID;
 import com.tc.object.locks.LockID;
@@ -42,11 +47,14 @@ import com.tc.object.tx.TransactionID;
 import com.tc.object.tx.TxnBatchID;
 import com.tc.object.tx.TxnType;
 import com.tc.objectserver.api.GarbageCollectionManager;
+import com.tc.objectserver.api.ObjectManager;
 import com.tc.objectserver.api.ServerMapEvictionManager;
 import com.tc.objectserver.api.Transaction;
 import com.tc.objectserver.api.TransactionProvider;
 import com.tc.objectserver.context.ApplyTransactionContext;
 import com.tc.objectserver.context.BroadcastChangeContext;
+import com.tc.objectserver.context.FlushApplyCommitContext;
+import com.tc.objectserver.core.api.ManagedObject;
 import com.tc.objectserver.core.api.ServerConfigurationContext;
 import com.tc.objectserver.core.impl.TestServerConfigurationContext;
 import com.tc.objectserver.event.ClientChannelMonitor;
@@ -56,6 +64,7 @@ import com.tc.objectserver.impl.ObjectInstanceMonitorImpl;
 import com.tc.objectserver.locks.LockManager;
 import com.tc.objectserver.locks.NotifiedWaiters;
 import com.tc.objectserver.locks.ServerLock;
+import com.tc.objectserver.managedobject.ApplyTransactionInfo;
 import com.tc.objectserver.tx.ServerTransaction;
 import com.tc.objectserver.tx.ServerTransactionImpl;
 import com.tc.objectserver.tx.ServerTransactionManager;
@@ -64,10 +73,12 @@ import com.tc.objectserver.tx.TxnObjectGrouping;
 import com.tc.util.SequenceID;
 import com.tc.util.concurrent.Runners;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import junit.framework.TestCase;
 import org.mockito.ArgumentMatcher;
@@ -80,6 +91,10 @@ public class ApplyTransactionChangeHandlerTest extends TestCase {
   private ArgumentCaptor<NotifiedWaiters> notifiedWaitersArgumentCaptor;
   private ServerEventBuffer               serverEventBuffer;
   private ClientChannelMonitor            clientChannelMonitor;
+  private ObjectManager                   objectManager;
+  private Transaction                     persistenceTransaction;
+  private ServerTransactionManager        transactionManager;
+  private TransactionalObjectManager      txnObjectManager;
 
   @Override
   public void setUp() throws Exception {
@@ -88,7 +103,7 @@ public class ApplyTransactionChangeHandlerTest extends TestCase {
     this.clientChannelMonitor = mock(ClientChannelMonitor.class);
     this.notifiedWaitersArgumentCaptor = ArgumentCaptor.forClass(NotifiedWaiters.class);
     TransactionProvider persistenceTransactionProvider = mock(TransactionProvider.class);
-    Transaction persistenceTransaction = mock(Transaction.class);
+    this.persistenceTransaction = mock(Transaction.class);
     when(persistenceTransactionProvider.newTransaction()).thenReturn(persistenceTransaction);
 
     this.handler = new ApplyTransactionChangeHandler(new ObjectInstanceMonitorImpl(),
@@ -97,15 +112,23 @@ public class ApplyTransactionChangeHandlerTest extends TestCase {
         serverEventBuffer, clientChannelMonitor);
 
     this.broadcastSink = mock(Sink.class);
+    this.transactionManager = mock(ServerTransactionManager.class);
+    this.txnObjectManager = mock(TransactionalObjectManager.class);
+    this.objectManager = mock(ObjectManager.class);
+    initializeHandler();
+  }
+
+  private void initializeHandler() {
     Stage broadcastStage = mock(Stage.class);
     when(broadcastStage.getSink()).thenReturn(broadcastSink);
     TestServerConfigurationContext context = new TestServerConfigurationContext();
-    context.transactionManager = mock(ServerTransactionManager.class);
-    context.txnObjectManager = mock(TransactionalObjectManager.class);
+    context.transactionManager = this.transactionManager;
+    context.txnObjectManager = this.txnObjectManager;
     context.addStage(ServerConfigurationContext.BROADCAST_CHANGES_STAGE, broadcastStage);
     context.addStage(ServerConfigurationContext.COMMIT_CHANGES_STAGE, mock(Stage.class));
     context.garbageCollectionManager = mock(GarbageCollectionManager.class);
     context.lockManager = this.lockManager;
+    context.objectManager = this.objectManager;
 
     this.handler.initializeContext(context);
   }
@@ -124,6 +147,138 @@ public class ApplyTransactionChangeHandlerTest extends TestCase {
     verifyNotifies(tx);
   }
 
+  public void testBatchCommitsOnce() throws Exception {
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        ((ApplyTransactionInfo) invocation.getArguments()[0]).setCommitNow(true);
+        return null;
+      }
+    }).when(txnObjectManager).applyTransactionComplete(any(ApplyTransactionInfo.class));
+
+    ServerTransaction tx1 = createServerTransaction(1);
+    ServerTransaction tx2 = createServerTransaction(2);
+    this.handler.handleEvents(Arrays.asList(new ApplyTransactionContext(tx1, new TxnObjectGrouping(tx1
+        .getServerTransactionID()), true, Collections.EMPTY_SET), new ApplyTransactionContext(tx2,
+        new TxnObjectGrouping(tx2.getServerTransactionID()), true, Collections.EMPTY_SET)));
+
+    verify(persistenceTransaction, times(1)).commit();
+    verify(transactionManager, times(1)).commit(any(Collection.class), any(Map.class),
+                                                argThat(new ArgumentMatcher<Collection>() {
+                                                  @Override
+                                                  public boolean matches(Collection stxIDs) {
+                                                    return stxIDs.size() == 2;
+                                                  }
+                                                }));
+  }
+
+  public void testGroupCommitDefersUntilFlush() throws Exception {
+    TransactionProvider persistenceTransactionProvider = mock(TransactionProvider.class);
+    when(persistenceTransactionProvider.newTransaction()).thenReturn(persistenceTransaction);
+    this.handler = new ApplyTransactionChangeHandler(new ObjectInstanceMonitorImpl(),
+        mock(ServerGlobalTransactionManager.class), mock(ServerMapEvictionManager.class),
+        persistenceTransactionProvider, Runners.newSingleThreadScheduledTaskRunner(), serverEventBuffer,
+        clientChannelMonitor, 60000, 2, Integer.MAX_VALUE);
+    initializeHandler();
+
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        ((ApplyTransactionInfo) invocation.getArguments()[0]).setCommitNow(true);
+        return null;
+      }
+    }).when(txnObjectManager).applyTransactionComplete(any(ApplyTransactionInfo.class));
+
+    assertEquals(-1, this.handler.getFlushDelay());
+    ServerTransaction tx1 = createServerTransaction(1);
+    this.handler.handleEvent(new ApplyTransactionContext(tx1, new TxnObjectGrouping(tx1.getServerTransactionID()),
+                                                         true, Collections.EMPTY_SET));
+    verify(persistenceTransaction, never()).commit();
+    assertTrue(this.handler.getFlushDelay() > 0);
+
+    // the second transaction fills the group
+    ServerTransaction tx2 = createServerTransaction(2);
+    this.handler.handleEvent(new ApplyTransactionContext(tx2, new TxnObjectGrouping(tx2.getServerTransactionID()),
+                                                         true, Collections.EMPTY_SET));
+    verify(persistenceTransaction, times(1)).commit();
+    assertEquals(-1, this.handler.getFlushDelay());
+
+    ServerTransaction tx3 = createServerTransaction(3);
+    this.handler.handleEvent(new ApplyTransactionContext(tx3, new TxnObjectGrouping(tx3.getServerTransactionID()),
+                                                         true, Collections.EMPTY_SET));
+    verify(persistenceTransaction, times(1)).commit();
+    this.handler.flush();
+    verify(persistenceTransaction, times(2)).commit();
+    verify(transactionManager, times(2)).commit(any(Collection.class), any(Map.class), any(Collection.class));
+  }
+
+  public void testGroupCommitFlushesWhenALookupIsBlocked() throws Exception {
+    TransactionProvider persistenceTransactionProvider = mock(TransactionProvider.class);
+    when(persistenceTransactionProvider.newTransaction()).thenReturn(persistenceTransaction);
+    this.handler = new ApplyTransactionChangeHandler(new ObjectInstanceMonitorImpl(),
+        mock(ServerGlobalTransactionManager.class), mock(ServerMapEvictionManager.class),
+        persistenceTransactionProvider, Runners.newSingleThreadScheduledTaskRunner(), serverEventBuffer,
+        clientChannelMonitor, 60000, 100, Integer.MAX_VALUE);
+    initializeHandler();
+
+    final ObjectID oid = new ObjectID(1);
+    final ManagedObject mo = mock(ManagedObject.class);
+    when(mo.getID()).thenReturn(oid);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        ApplyTransactionInfo applyInfo = (ApplyTransactionInfo) invocation.getArguments()[0];
+        applyInfo.setCommitNow(true);
+        applyInfo.addObjectsToBeReleased(Collections.singleton(mo));
+        return null;
+      }
+    }).when(txnObjectManager).applyTransactionComplete(any(ApplyTransactionInfo.class));
+
+    ServerTransaction tx1 = createServerTransaction(1);
+    this.handler.handleEvent(new ApplyTransactionContext(tx1, new TxnObjectGrouping(tx1.getServerTransactionID()),
+                                                         true, Collections.EMPTY_SET));
+    verify(persistenceTransaction, never()).commit();
+    assertTrue(this.handler.getFlushDelay() > 0);
+
+    // a lookup now waits for the held back object
+    when(objectManager.isLookupBlockedOn(oid)).thenReturn(true);
+    assertEquals(0, this.handler.getFlushDelay());
+    this.handler.flush();
+    verify(persistenceTransaction, times(1)).commit();
+    assertEquals(-1, this.handler.getFlushDelay());
+  }
+
+  public void testFlushApplyCommitContextCommitsRightAway() throws Exception {
+    TransactionProvider persistenceTransactionProvider = mock(TransactionProvider.class);
+    when(persistenceTransactionProvider.newTransaction()).thenReturn(persistenceTransaction);
+    this.handler = new ApplyTransactionChangeHandler(new ObjectInstanceMonitorImpl(),
+        mock(ServerGlobalTransactionManager.class), mock(ServerMapEvictionManager.class),
+        persistenceTransactionProvider, Runners.newSingleThreadScheduledTaskRunner(), serverEventBuffer,
+        clientChannelMonitor, 60000, 100, Integer.MAX_VALUE);
+    initializeHandler();
+
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        ((ApplyTransactionInfo) invocation.getArguments()[0]).setCommitNow(true);
+        return null;
+      }
+    }).when(txnObjectManager).applyTransactionComplete(any(ApplyTransactionInfo.class));
+
+    ServerTransaction tx1 = createServerTransaction(1);
+    this.handler.handleEvent(new ApplyTransactionContext(tx1, new TxnObjectGrouping(tx1.getServerTransactionID()),
+                                                         true, Collections.EMPTY_SET));
+    verify(persistenceTransaction, never()).commit();
+
+    // the flush takes the held back transaction with it
+    this.handler.handleEvent(new FlushApplyCommitContext(new TxnObjectGrouping(tx1.getServerTransactionID())));
+    verify(persistenceTransaction, times(1)).commit();
+    assertEquals(-1, this.handler.getFlushDelay());
+
+    this.handler.handleEvent(new FlushApplyCommitContext(new TxnObjectGrouping(tx1.getServerTransactionID())));
+    verify(persistenceTransaction, times(2)).commit();
+  }
+
   private void verifyNotifies(ServerTransaction tx) {
     verify(lockManager, times(tx.getNumApplicationTxn())).notify(any(LockID.class), any(ClientID.class), any(ThreadID.class),
         any(ServerLock.NotifyAction.class), any(NotifiedWaiters.class));
@@ -155,6 +310,10 @@ public class ApplyTransactionChangeHandlerTest extends TestCase {
   }
 
   private static ServerTransaction createServerTransaction() throws Exception {
+    return createServerTransaction(1);
+  }
+
+  private static ServerTransaction createServerTransaction(int txnID) throws Exception {
     final ClientID cid = new ClientID(1);
     LockID[] lockIDs = { new StringLockID("1") };
 
@@ -163,7 +322,7 @@ public class ApplyTransactionChangeHandlerTest extends TestCase {
       notifies.add(new NotifyImpl(new StringLockID("" + i), new ThreadID(i), i % 2 == 0));
     }
 
-    ServerTransaction txn = new ServerTransactionImpl(new TxnBatchID(1), new TransactionID(1), new SequenceID(1),
+    ServerTransaction txn = new ServerTransactionImpl(new TxnBatchID(1), new TransactionID(txnID), new SequenceID(txnID),
         lockIDs, cid, Collections.emptyList(), null,
                                                       Collections.emptyMap(), TxnType.NORMAL, notifies,
         new MetaDataReader[0], 1, new long[0]);
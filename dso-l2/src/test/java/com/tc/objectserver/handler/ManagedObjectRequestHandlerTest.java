@@ -117,6 +117,11 @@ public class ManagedObjectRequestHandlerTest extends TestCase {
 
     }
 
+    @Override
+    public void notifyTransactionsAckedFrom(NodeID nodeID, int numTxns) {
+      throw new ImplementMe();
+    }
+
     @Override
     public void notifyTransactionBroadcastedTo(NodeID nodeID) {
       throw new ImplementMe();
@@ -887,6 +887,11 @@ public class ObjectRequestManagerTest extends TestCase {
       throw new NotImplementedException(TestObjectManager.class);
     }
 
+    @Override
+    public boolean isLookupBlockedOn(ObjectID id) {
+      throw new NotImplementedException(TestObjectManager.class);
+    }
+
     @Override
     public GarbageCollector getGarbageCollector() {
       throw new NotImplementedException(TestObjectManager.class);
@@ -1018,6 +1023,11 @@ public class ObjectRequestManagerTest extends TestCase {
       throw new NotImplementedException(TestObjectManager.class);
     }
 
+    @Override
+    public ManagedObject getObjectByIDIfCached(final ObjectID id) {
+      throw new NotImplementedException(TestObjectManager.class);
+    }
+
     @Override
     public Set<ObjectID> deleteObjects(final Set<ObjectID> objectsToDelete) {
       return Collections.EMPTY_SET;
@@ -21,6 +21,7 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.atMost;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -230,4 +231,54 @@ public class ServerMapRequestManagerTest extends TestCase {
     
     verify(objectManager).lookupObjectsFor(eq(clientID), any(ObjectManagerResultsContext.class));
   }
+
+  public void testReadWithoutCheckout() throws Exception {
+    final ClientID clientID = new ClientID(0);
+    final ServerMapRequestID requestID = new ServerMapRequestID(0);
+    final ObjectID mapID = new ObjectID(1);
+    final Object portableKey = "key1";
+    final ObjectID portableValue = new ObjectID(1001);
+
+    ConcurrentDistributedServerMapManagedObjectState managedObjectState = mock(ConcurrentDistributedServerMapManagedObjectState.class);
+    when(managedObjectState.readStamp()).thenReturn(2L);
+    when(managedObjectState.validate(2L)).thenReturn(true);
+    when(managedObjectState.getValueForKey(portableKey)).thenReturn(new CDSMValue(portableValue, 0, 0, 0, 0));
+    ManagedObject managedObject = mock(ManagedObject.class);
+    when(managedObject.getManagedObjectState()).thenReturn(managedObjectState);
+    when(objectManager.getObjectByIDIfCached(mapID)).thenReturn(managedObject);
+
+    serverMapRequestManager.requestValues(clientID, mapID,
+                                          Collections.singletonList(new ServerMapGetValueRequest(requestID, Collections
+                                              .singleton(portableKey))));
+
+    verify(objectManager, never()).lookupObjectsFor(any(NodeID.class), any(ObjectManagerResultsContext.class));
+    ArgumentCaptor<ServerMapRequestPrefetchObjectsContext> capture = ArgumentCaptor.forClass(ServerMapRequestPrefetchObjectsContext.class);
+    verify(prefetchSink).add(capture.capture());
+    ServerMapGetValueResponse response = capture.getValue().getAnswers().iterator().next();
+    assertEquals(portableValue, ((CompoundResponse) response.getValues().get(portableKey)).getData());
+  }
+
+  public void testWritePendingFallsBackToCheckout() throws Exception {
+    final ClientID clientID = new ClientID(0);
+    final ObjectID mapID = new ObjectID(1);
+    final Object portableKey = "key1";
+
+    ConcurrentDistributedServerMapManagedObjectState managedObjectState = mock(ConcurrentDistributedServerMapManagedObjectState.class);
+    when(managedObjectState.readStamp()).thenReturn(2L);
+    // a write starts while the key is being read
+    when(managedObjectState.validate(2L)).thenReturn(true, false);
+    ManagedObject managedObject = mock(ManagedObject.class);
+    when(managedObject.getManagedObjectState()).thenReturn(managedObjectState);
+    when(objectManager.getObjectByIDIfCached(mapID)).thenReturn(managedObject);
+
+    serverMapRequestManager.requestValues(clientID, mapID,
+                                          Collections.singletonList(new ServerMapGetValueRequest(
+                                                                                                 new ServerMapRequestID(0),
+                                                                                                 Collections
+                                                                                                     .singleton(portableKey))));
+
+    verify(managedObjectState).getValueForKey(portableKey);
+    verify(objectManager).lookupObjectsFor(eq(clientID), any(ObjectManagerResultsContext.class));
+    verify(prefetchSink, never()).add(any(ServerMapRequestPrefetchObjectsContext.class));
+  }
 }
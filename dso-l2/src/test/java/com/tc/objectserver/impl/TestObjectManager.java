@@ -181,6 +181,11 @@ public class TestObjectManager implements ObjectManager {
     return 0;
   }
 
+  @Override
+  public boolean isLookupBlockedOn(ObjectID id) {
+    return false;
+  }
+
   @Override
   public Set getRootIDs() {
     return new HashSet();
@@ -239,6 +244,11 @@ public class TestObjectManager implements ObjectManager {
     throw new ImplementMe();
   }
 
+  @Override
+  public ManagedObject getObjectByIDIfCached(ObjectID id) {
+    throw new ImplementMe();
+  }
+
   @Override
   public ObjectIDSet getObjectIDsInCache() {
     throw new ImplementMe();
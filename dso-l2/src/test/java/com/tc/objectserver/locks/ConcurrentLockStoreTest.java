@@ -0,0 +1,135 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.locks;
+
+import com.tc.object.locks.LockID;
+import com.tc.object.locks.StringLockID;
+import com.tc.objectserver.locks.LockStore.LockIterator;
+import com.tc.objectserver.locks.factory.NonGreedyLockPolicyFactory;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class ConcurrentLockStoreTest extends TestCase {
+  private ConcurrentLockStore store;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    store = new ConcurrentLockStore(4, new NonGreedyLockPolicyFactory());
+  }
+
+  public void testCheckOutReturnsSameLock() {
+    LockID lid = new StringLockID("1");
+    ServerLock lock = store.checkOut(lid);
+    store.checkIn(lock);
+    assertSame(lock, store.checkOut(lid));
+    store.checkIn(lock);
+  }
+
+  public void testUnrelatedLocksDoNotBlock() throws Exception {
+    ServerLock lock = store.checkOut(new StringLockID("1"));
+    try {
+      final CountDownLatch checkedOut = new CountDownLatch(1);
+      Thread other = new Thread() {
+        @Override
+        public void run() {
+          store.checkIn(store.checkOut(new StringLockID("2")));
+          checkedOut.countDown();
+        }
+      };
+      other.start();
+      assertTrue(checkedOut.await(30, TimeUnit.SECONDS));
+    } finally {
+      store.checkIn(lock);
+    }
+  }
+
+  public void testCheckOutWaitsForCheckIn() throws Exception {
+    final LockID lid = new StringLockID("1");
+    ServerLock lock = store.checkOut(lid);
+    final CountDownLatch checkedOut = new CountDownLatch(1);
+    Thread other = new Thread() {
+      @Override
+      public void run() {
+        store.checkIn(store.checkOut(lid));
+        checkedOut.countDown();
+      }
+    };
+    other.start();
+    assertFalse(checkedOut.await(200, TimeUnit.MILLISECONDS));
+    store.checkIn(lock);
+    assertTrue(checkedOut.await(30, TimeUnit.SECONDS));
+  }
+
+  public void testRemovedLockIsReplaced() throws Exception {
+    final LockID lid = new StringLockID("1");
+    ServerLock lock = store.checkOut(lid);
+    final AtomicReference<ServerLock> waiterGot = new AtomicReference<ServerLock>();
+    Thread other = new Thread() {
+      @Override
+      public void run() {
+        ServerLock l = store.checkOut(lid);
+        waiterGot.set(l);
+        store.checkIn(l);
+      }
+    };
+    other.start();
+    assertSame(lock, store.remove(lid));
+
+    // checking it out again before checking in hands out a new lock to the same thread
+    ServerLock again = store.checkOut(lid);
+    assertNotSame(lock, again);
+    store.checkIn(again);
+    store.remove(lid);
+    store.checkIn(lock);
+
+    other.join(30000);
+    assertNotNull(waiterGot.get());
+    assertNotSame(lock, waiterGot.get());
+    assertNotSame(again, waiterGot.get());
+  }
+
+  public void testIteratorRemove() {
+    for (int i = 0; i < 10; i++) {
+      store.checkIn(store.checkOut(new StringLockID(String.valueOf(i))));
+    }
+    LockIterator iter = store.iterator();
+    int seen = 0;
+    ServerLock lock = iter.getNextLock(null);
+    while (lock != null) {
+      seen++;
+      if (seen % 2 == 0) {
+        iter.remove();
+      }
+      lock = iter.getNextLock(lock);
+    }
+    assertEquals(10, seen);
+
+    seen = 0;
+    iter = store.iterator();
+    lock = iter.getNextLock(null);
+    while (lock != null) {
+      seen++;
+      lock = iter.getNextLock(lock);
+    }
+    assertEquals(5, seen);
+  }
+}
@@ -0,0 +1,102 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.locks;
+
+import org.junit.experimental.categories.Category;
+import org.terracotta.test.categories.PerfTests;
+
+import com.tc.async.impl.NullSink;
+import com.tc.net.ClientID;
+import com.tc.object.locks.LockID;
+import com.tc.object.locks.ServerLockLevel;
+import com.tc.object.locks.StringLockID;
+import com.tc.object.locks.ThreadID;
+import com.tc.objectserver.locks.factory.NonGreedyLockPolicyFactory;
+
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the lock store strategies under a lock stage like load : many simulated clients, each locking and unlocking
+ * its own set of hot locks through one LockManagerImpl. The clients never contend for the same lock, any waiting is
+ * due to the lock store.
+ */
+@Category(PerfTests.class)
+public class LockManagerContentionPerfTest extends TestCase {
+  private static final int CLIENTS          = 16;
+  private static final int LOCKS_PER_CLIENT = 8;
+  private static final int OPS_PER_CLIENT   = 200000;
+  private static final int SEGMENTS         = 32;
+
+  public void testLockStores() throws Exception {
+    StringBuilder report = new StringBuilder();
+    for (int round = 0; round < 2; round++) {
+      report.append(report(new SegmentedLockStore(SEGMENTS, new NonGreedyLockPolicyFactory())));
+      report.append(report(new ConcurrentLockStore(SEGMENTS, new NonGreedyLockPolicyFactory())));
+    }
+    System.out.print("Lock store contention :\n" + report);
+  }
+
+  private String report(LockStore store) throws Exception {
+    long time = runLoad(store);
+    long rate = (CLIENTS * (long) OPS_PER_CLIENT * 1000) / Math.max(1, time);
+    return store.getClass().getSimpleName() + " : " + time + " ms, " + rate + " lock/unlock pairs/s\n";
+  }
+
+  private long runLoad(LockStore store) throws Exception {
+    final LockManagerImpl lockManager = new LockManagerImpl(new NullSink(), new NullChannelManager(), store);
+    lockManager.start();
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(CLIENTS);
+
+    for (int c = 0; c < CLIENTS; c++) {
+      final ClientID cid = new ClientID(c);
+      final LockID[] locks = new LockID[LOCKS_PER_CLIENT];
+      for (int i = 0; i < locks.length; i++) {
+        locks[i] = new StringLockID("client-" + c + "-lock-" + i);
+      }
+      Thread client = new Thread("simulated client " + c) {
+        @Override
+        public void run() {
+          ThreadID tid = new ThreadID(1);
+          try {
+            start.await();
+            for (int i = 0; i < OPS_PER_CLIENT; i++) {
+              LockID lid = locks[i % locks.length];
+              lockManager.lock(lid, cid, tid, ServerLockLevel.WRITE);
+              lockManager.unlock(lid, cid, tid);
+            }
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          } finally {
+            done.countDown();
+          }
+        }
+      };
+      client.setDaemon(true);
+      client.start();
+    }
+
+    long startTime = System.currentTimeMillis();
+    start.countDown();
+    done.await();
+    long time = System.currentTimeMillis() - startTime;
+    assertEquals(0, lockManager.getLockCount());
+    return time;
+  }
+}
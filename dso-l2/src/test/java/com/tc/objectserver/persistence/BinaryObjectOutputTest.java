@@ -0,0 +1,129 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence;
+
+import com.tc.object.ObjectID;
+import com.tc.test.TCTestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Date;
+
+public class BinaryObjectOutputTest extends TCTestCase {
+
+  public void testPrimitivesRoundTrip() throws Exception {
+    BinaryObjectOutput out = new BinaryObjectOutput(1);
+    out.writeBoolean(true);
+    out.writeByte(-3);
+    out.writeShort(-12345);
+    out.writeChar('\u20ac');
+    out.writeInt(Integer.MIN_VALUE);
+    out.writeLong(Long.MAX_VALUE);
+    out.writeFloat(1.5f);
+    out.writeDouble(-2.25d);
+    out.write(new byte[] { 1, 2, 3 });
+
+    BinaryObjectInput in = input(out);
+    assertTrue(in.readBoolean());
+    assertEquals(-3, in.readByte());
+    assertEquals(-12345, in.readShort());
+    assertEquals('\u20ac', in.readChar());
+    assertEquals(Integer.MIN_VALUE, in.readInt());
+    assertEquals(Long.MAX_VALUE, in.readLong());
+    assertEquals(1.5f, in.readFloat(), 0f);
+    assertEquals(-2.25d, in.readDouble(), 0d);
+    byte[] bytes = new byte[3];
+    in.readFully(bytes);
+    assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, bytes));
+    assertEquals(0, in.available());
+    assertEquals(-1, in.read());
+    try {
+      in.readInt();
+      fail();
+    } catch (EOFException e) {
+      // expected
+    }
+  }
+
+  public void testPrimitivesMatchDataOutputStream() throws Exception {
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    DataOutputStream dos = new DataOutputStream(expected);
+    BinaryObjectOutput out = new BinaryObjectOutput(16);
+    for (long l : new long[] { 0, -1, 42, Long.MIN_VALUE }) {
+      dos.writeLong(l);
+      out.writeLong(l);
+      dos.writeInt((int) l);
+      out.writeInt((int) l);
+      dos.writeShort((int) l);
+      out.writeShort((int) l);
+    }
+    dos.close();
+    assertTrue(Arrays.equals(expected.toByteArray(), out.toByteArray()));
+  }
+
+  public void testUTF() throws Exception {
+    StringBuilder longString = new StringBuilder();
+    for (int i = 0; i < 70000; i++) {
+      longString.append((char) ('a' + i % 26));
+    }
+    String[] strings = { "", "plain", "nul\u0000char", "\u00e9\u20ac\ud83d\ude00", longString.toString() };
+
+    BinaryObjectOutput out = new BinaryObjectOutput(16);
+    for (String s : strings) {
+      out.writeUTF(s);
+    }
+    BinaryObjectInput in = input(out);
+    for (String s : strings) {
+      assertEquals(s, in.readUTF());
+    }
+    assertEquals(0, in.available());
+  }
+
+  public void testObjects() throws Exception {
+    Object[] objects = { null, Long.valueOf(7), "literal", new ObjectID(99), Boolean.TRUE, new Date(12345),
+        Arrays.asList("not", "a", "literal") };
+
+    BinaryObjectOutput out = new BinaryObjectOutput(16);
+    for (Object o : objects) {
+      out.writeObject(o);
+    }
+    BinaryObjectInput in = input(out);
+    for (Object o : objects) {
+      assertEquals(o, in.readObject());
+    }
+    assertEquals(0, in.available());
+  }
+
+  public void testReadsFromBufferOffset() throws Exception {
+    BinaryObjectOutput out = new BinaryObjectOutput(16);
+    out.writeByte(0x01);
+    out.writeObject(new ObjectID(5));
+    out.writeLong(17);
+    byte[] data = out.toByteArray();
+
+    BinaryObjectInput in = new BinaryObjectInput(ByteBuffer.wrap(data, 1, data.length - 1));
+    assertEquals(new ObjectID(5), in.readObject());
+    assertEquals(17, in.readLong());
+  }
+
+  private static BinaryObjectInput input(BinaryObjectOutput out) {
+    return new BinaryObjectInput(ByteBuffer.wrap(out.toByteArray()));
+  }
+}
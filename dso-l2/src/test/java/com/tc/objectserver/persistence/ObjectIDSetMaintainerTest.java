@@ -0,0 +1,119 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.persistence;
+
+import org.terracotta.corestorage.Retriever;
+
+import com.tc.object.ObjectID;
+import com.tc.objectserver.core.api.ManagedObjectState;
+import com.tc.objectserver.managedobject.ManagedObjectStateStaticConfig;
+import com.tc.test.TCTestCase;
+import com.tc.util.ObjectIDSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ObjectIDSetMaintainerTest extends TCTestCase {
+
+  private static final byte EVICTABLE     = ManagedObjectStateStaticConfig.SERVER_MAP.getStateObjectType();
+  private static final byte NO_REFERENCES = ManagedObjectStateStaticConfig.SERIALIZED_CLUSTER_OBJECT
+                                              .getStateObjectType();
+  private static final byte REFERENCES    = ManagedObjectState.MAP_TYPE;
+
+  public void testTracksObjectTypes() {
+    ObjectIDSetMaintainer maintainer = new ObjectIDSetMaintainer(4);
+    maintainer.added(key(1), null, EVICTABLE);
+    maintainer.added(key(2), null, NO_REFERENCES);
+    maintainer.added(key(1000), null, REFERENCES);
+
+    assertEquals(3, maintainer.objectIDSnapshot().size());
+    assertTrue(maintainer.objectIDSnapshot().contains(new ObjectID(1000)));
+    assertEquals(1, maintainer.evictableObjectIDSetSnapshot().size());
+    assertTrue(maintainer.evictableObjectIDSetSnapshot().contains(new ObjectID(1)));
+    assertTrue(maintainer.hasNoReferences(new ObjectID(2)));
+    assertFalse(maintainer.hasNoReferences(new ObjectID(1000)));
+
+    maintainer.removed(key(1));
+    maintainer.removed(key(2));
+    assertEquals(1, maintainer.objectIDSnapshot().size());
+    assertTrue(maintainer.evictableObjectIDSetSnapshot().isEmpty());
+    assertFalse(maintainer.hasNoReferences(new ObjectID(2)));
+  }
+
+  public void testConcurrentMutationsAndSnapshots() throws Exception {
+    final ObjectIDSetMaintainer maintainer = new ObjectIDSetMaintainer(8);
+    final int threads = 4;
+    final int perThread = 20000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+    try {
+      List<Future<?>> writers = new ArrayList<Future<?>>();
+      for (int t = 0; t < threads; t++) {
+        final long base = t * (long) perThread;
+        writers.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for (long id = base; id < base + perThread; id++) {
+              maintainer.added(key(id), null, id % 2 == 0 ? REFERENCES : NO_REFERENCES);
+            }
+            // remove every fourth again
+            for (long id = base; id < base + perThread; id += 4) {
+              maintainer.removed(key(id));
+            }
+            return null;
+          }
+        }));
+      }
+      Future<Integer> snapshots = executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          int taken = 0;
+          for (int i = 0; i < 20; i++) {
+            int size = maintainer.objectIDSnapshot().size();
+            assertTrue(size >= 0 && size <= threads * perThread);
+            taken++;
+          }
+          return taken;
+        }
+      });
+      for (Future<?> writer : writers) {
+        writer.get();
+      }
+      assertEquals(20, snapshots.get().intValue());
+    } finally {
+      executor.shutdown();
+    }
+
+    ObjectIDSet all = maintainer.objectIDSnapshot();
+    assertEquals(threads * perThread * 3 / 4, all.size());
+    assertFalse(all.contains(new ObjectID(0)));
+    assertTrue(all.contains(new ObjectID(1)));
+    assertTrue(maintainer.hasNoReferences(new ObjectID(1)));
+  }
+
+  private static Retriever<Long> key(final long id) {
+    return new Retriever<Long>() {
+      @Override
+      public Long retrieve() {
+        return id;
+      }
+    };
+  }
+}
@@ -0,0 +1,75 @@
+/* 
+ * The contents of this file are subject to the Terracotta Public License Version
+ * 2.0 (the "License"); You may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at 
+ *
+ *      http://terracotta.org/legal/terracotta-public-license.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * The Covered Software is Terracotta Platform.
+ *
+ * The Initial Developer of the Covered Software is 
+ *      Terracotta, Inc., a Software AG company
+ */
+package com.tc.objectserver.tx;
+
+import com.tc.net.ClientID;
+import com.tc.object.tx.ServerTransactionID;
+import com.tc.object.tx.TransactionID;
+import com.tc.test.TCTestCase;
+
+public class ApplyLaneSchedulerTest extends TCTestCase {
+
+  public void testIdleLanesAreRoundRobin() {
+    ApplyLaneScheduler scheduler = new ApplyLaneScheduler(3);
+    assertEquals(0, scheduler.nextLane());
+    assertEquals(1, scheduler.nextLane());
+    assertEquals(2, scheduler.nextLane());
+    assertEquals(0, scheduler.nextLane());
+  }
+
+  public void testPicksLeastLoadedLane() {
+    ApplyLaneScheduler scheduler = new ApplyLaneScheduler(3);
+    for (int i = 0; i < 5; i++) {
+      scheduler.scheduled(0);
+    }
+    scheduler.scheduled(1);
+    scheduler.scheduled(2);
+    scheduler.scheduled(2);
+
+    assertEquals(1, scheduler.nextLane());
+    scheduler.scheduled(1);
+    scheduler.scheduled(1);
+    // lane 2 now has the fewest outstanding
+    assertEquals(2, scheduler.nextLane());
+
+    scheduler.completed(0);
+    scheduler.completed(0);
+    scheduler.completed(0);
+    scheduler.completed(0);
+    assertEquals(1, scheduler.getOutstanding(0));
+    assertEquals(0, scheduler.nextLane());
+  }
+
+  public void testGroupingKeepsItsLane() {
+    ApplyLaneScheduler scheduler = new ApplyLaneScheduler(4);
+    scheduler.nextLane();
+    int lane = scheduler.nextLane();
+    TxnObjectGrouping grouping = new TxnObjectGrouping(new ServerTransactionID(new ClientID(1),
+                                                                                new TransactionID(1)), lane);
+    assertEquals(lane, grouping.getApplyLane());
+    assertEquals(lane, grouping.hashCode());
+  }
+
+  public void testInvalidLaneCount() {
+    try {
+      new ApplyLaneScheduler(0);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
@@ -349,6 +349,38 @@ public class ServerTransactionManagerImplTest extends TestCase {
 
 
 
+  }
+
+  public void testBatchedAcknowledgements() throws Exception {
+    ClientID cid1 = new ClientID(1);
+    ClientID cid2 = new ClientID(2);
+    ClientID cid3 = new ClientID(3);
+    TransactionID tid1 = new TransactionID(1);
+    TransactionID tid2 = new TransactionID(2);
+
+    LockID[] lockIDs = new LockID[0];
+    List dnas = Collections.unmodifiableList(new LinkedList());
+    Map newRoots = Collections.unmodifiableMap(new HashMap());
+    Map<ServerTransactionID, ServerTransaction> txns = new HashMap<ServerTransactionID, ServerTransaction>();
+    TransactionID[] tids = new TransactionID[] { tid1, tid2 };
+    for (int i = 0; i < tids.length; i++) {
+      ServerTransaction tx = newServerTransactionImpl(new TxnBatchID(1), tids[i], new SequenceID(i + 1), lockIDs, cid1,
+                                                      dnas, null, newRoots, TxnType.NORMAL, new LinkedList(), 1);
+      txns.put(tx.getServerTransactionID(), tx);
+    }
+    this.transactionManager.incomingTransactions(cid1, txns);
+    this.transactionManager.transactionsRelayed(cid1, txns.keySet());
+    this.transactionManager.addWaitingForAcknowledgement(cid1, tid1, cid2);
+    this.transactionManager.addWaitingForAcknowledgement(cid1, tid2, cid2);
+    this.transactionManager.addWaitingForAcknowledgement(cid1, tid2, cid3);
+    doStages(cid1, txns, true);
+
+    this.transactionManager.acknowledgements(cid1, Arrays.asList(tid1, tid2), cid2);
+    assertFalse(this.transactionManager.isWaiting(cid1, tid1));
+    // still waiting for the other client
+    assertTrue(this.transactionManager.isWaiting(cid1, tid2));
+    this.transactionManager.acknowledgements(cid1, Collections.singletonList(tid2), cid3);
+    assertFalse(this.transactionManager.isWaiting(cid1, tid2));
   }
 
   public void test1ClientDisconnectWithWaiteeAsSameClient() throws Exception {
@@ -845,6 +877,11 @@ public class ServerTransactionManagerImplTest extends TestCase {
       // NOP
     }
 
+    @Override
+    public void notifyTransactionsAckedFrom(NodeID nodeID, int numTxns) {
+      // NOP
+    }
+
     @Override
     public void notifyTransactionBroadcastedTo(NodeID nodeID) {
       // NOP
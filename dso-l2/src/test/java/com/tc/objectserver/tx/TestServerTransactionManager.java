@@ -65,6 +65,11 @@ public class TestServerTransactionManager implements ServerTransactionManager {
     throw new ImplementMe();
   }
 
+  @Override
+  public void acknowledgements(NodeID waiter, Collection<TransactionID> requestIDs, NodeID waitee) {
+    throw new ImplementMe();
+  }
+
   @Override
   public void broadcasted(NodeID waiter, TransactionID requestID) {
     // NOP
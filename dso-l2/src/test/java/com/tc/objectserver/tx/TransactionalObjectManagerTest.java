@@ -67,7 +67,7 @@ public class TransactionalObjectManagerTest extends TCTestCase {
     this.objectManager = spy(new TestObjectManager());
     this.coordinator = spy(new TestTransactionalStageCoordinator());
     this.gtxMgr = new TestGlobalTransactionManager();
-    this.txObjectManager = new TransactionalObjectManagerImpl(this.objectManager, gtxMgr, this.coordinator);
+    this.txObjectManager = new TransactionalObjectManagerImpl(this.objectManager, gtxMgr, this.coordinator, 4);
     ServerConfigurationContext scc = mock(ServerConfigurationContext.class);
     when(scc.getTransactionManager()).thenReturn(new TestServerTransactionManager());
     serverEventBuffer = mock(ServerEventBuffer.class);
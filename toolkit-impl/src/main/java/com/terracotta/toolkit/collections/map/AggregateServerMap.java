@@ -310,9 +310,10 @@ public class AggregateServerMap<K, V> implements DistributedToolkitType<Internal
   }
 
   protected L1ServerMapLocalCacheStore<K, V> createLocalCacheStore() {
+    ServerMapLocalStoreConfig localStoreConfig = getLocalStoreConfig();
     ServerMapLocalStore<K, V> smLocalStore = serverMapLocalStoreFactory
-        .getOrCreateServerMapLocalStore(getLocalStoreConfig());
-    return new L1ServerMapLocalCacheStoreImpl<K, V>(smLocalStore);
+        .getOrCreateServerMapLocalStore(localStoreConfig);
+    return new L1ServerMapLocalCacheStoreImpl<K, V>(smLocalStore, localStoreConfig.isOverflowToOffheap());
   }
 
   private ServerMapLocalStoreConfig getLocalStoreConfig() {
@@ -29,9 +29,19 @@ import java.util.concurrent.CopyOnWriteArrayList;
 public class L1ServerMapLocalCacheStoreImpl<K, V> implements L1ServerMapLocalCacheStore<K, V> {
   private final List<L1ServerMapLocalCacheStoreListener<K, V>> listeners = new CopyOnWriteArrayList<L1ServerMapLocalCacheStoreListener<K, V>>();
   protected final ServerMapLocalStore<K, V>                    toolkitStore;
+  private final boolean                                        overflowToOffHeap;
 
   public L1ServerMapLocalCacheStoreImpl(ServerMapLocalStore<K, V> toolkitStore) {
+    this(toolkitStore, false);
+  }
+
+  /**
+   * When the store overflows to offheap the local cache keeps a valueoid -&gt; key meta mapping in it for each entry,
+   * the sizes and entry counts are halved or doubled here to account for it.
+   */
+  public L1ServerMapLocalCacheStoreImpl(ServerMapLocalStore<K, V> toolkitStore, boolean overflowToOffHeap) {
     this.toolkitStore = toolkitStore;
+    this.overflowToOffHeap = overflowToOffHeap;
     toolkitStore.addListener(new L1ListenerAdapter());
   }
 
@@ -62,7 +72,7 @@ public class L1ServerMapLocalCacheStoreImpl<K, V> implements L1ServerMapLocalCac
 
   @Override
   public int size() {
-    return toolkitStore.getSize() / 2;
+    return overflowToOffHeap ? toolkitStore.getSize() / 2 : toolkitStore.getSize();
   }
 
   private class L1ListenerAdapter implements ServerMapLocalStoreListener<K, V> {
@@ -77,12 +87,12 @@ public class L1ServerMapLocalCacheStoreImpl<K, V> implements L1ServerMapLocalCac
 
   @Override
   public int offHeapSize() {
-    return toolkitStore.getOffHeapSize() / 2;
+    return overflowToOffHeap ? toolkitStore.getOffHeapSize() / 2 : toolkitStore.getOffHeapSize();
   }
 
   @Override
   public int onHeapSize() {
-    return toolkitStore.getOnHeapSize() / 2;
+    return overflowToOffHeap ? toolkitStore.getOnHeapSize() / 2 : toolkitStore.getOnHeapSize();
   }
 
   @Override
@@ -139,12 +149,13 @@ public class L1ServerMapLocalCacheStoreImpl<K, V> implements L1ServerMapLocalCac
 
   @Override
   public int getMaxElementsInMemory() {
+    if (!overflowToOffHeap) { return toolkitStore.getMaxEntriesLocalHeap(); }
     return toolkitStore.getMaxEntriesLocalHeap() == 0 ? 0 : (toolkitStore.getMaxEntriesLocalHeap() - 1) / 2;
   }
 
   @Override
   public void setMaxEntriesLocalHeap(int maxEntriesLocalHeap) {
-    toolkitStore.setMaxEntriesLocalHeap(maxEntriesLocalHeap * 2 + 1);
+    toolkitStore.setMaxEntriesLocalHeap(overflowToOffHeap ? maxEntriesLocalHeap * 2 + 1 : maxEntriesLocalHeap);
   }
 
   @Override
@@ -161,4 +172,9 @@ public class L1ServerMapLocalCacheStoreImpl<K, V> implements L1ServerMapLocalCac
   public boolean isPinned() {
     return toolkitStore.isPinned();
   }
+
+  @Override
+  public boolean isOverflowToOffHeap() {
+    return overflowToOffHeap;
+  }
 }
@@ -86,8 +86,9 @@ public class EhcacheSMLocalStoreFactory implements ServerMapLocalStoreFactory {
 
     // wire up config
     if (config.getMaxCountLocalHeap() > 0) {
-      // this is due to the meta mapping we put in the shadow cache
-      cacheConfig.setMaxEntriesLocalHeap(config.getMaxCountLocalHeap() * 2 + 1);
+      // offheap stores also hold the meta mapping of each entry
+      cacheConfig.setMaxEntriesLocalHeap(config.isOverflowToOffheap() ? config.getMaxCountLocalHeap() * 2 + 1 : config
+          .getMaxCountLocalHeap());
     }
 
     if (config.getMaxBytesLocalHeap() > 0) {